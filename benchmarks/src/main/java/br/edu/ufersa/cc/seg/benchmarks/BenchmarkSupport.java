@@ -0,0 +1,88 @@
+package br.edu.ufersa.cc.seg.benchmarks;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Base64;
+import java.util.Random;
+
+import br.edu.ufersa.cc.seg.common.crypto.CryptoMode;
+import br.edu.ufersa.cc.seg.common.crypto.CryptoService;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+/**
+ * Utilitários compartilhados pelos benchmarks
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class BenchmarkSupport {
+
+    static final String HOST = "localhost";
+
+    // Mesmas chaves usadas pelos exemplos do projeto (demo)
+    private static final byte[] ENC_KEY = Base64.getDecoder().decode("DJXkb7GyuXP5Hfep9OLukQ==");
+    private static final byte[] HMAC_KEY = Base64.getDecoder()
+            .decode("QYp+xG2d7Ir8Xo2ZyD7m8FJKwrFrxd9ayN9i4mBQlTg=");
+
+    private static final long STARTUP_TIMEOUT_MS = 10_000;
+
+    static CryptoService crypto() {
+        return new CryptoService(ENC_KEY, HMAC_KEY);
+    }
+
+    static CryptoService crypto(final CryptoMode mode) {
+        return new CryptoService(ENC_KEY, HMAC_KEY, mode);
+    }
+
+    /**
+     * Conteúdo pseudoaleatório (e reprodutível) do tamanho informado
+     */
+    static byte[] payload(final int size) {
+        final var payload = new byte[size];
+        new Random(size).nextBytes(payload);
+        return payload;
+    }
+
+    static int freePort() throws IOException {
+        try (final var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Inicia a tarefa numa thread daemon, para que servidores sem método de
+     * parada não impeçam o fim da JVM do benchmark
+     */
+    static void startDaemon(final String name, final ServerTask task) {
+        Thread.ofPlatform().name(name).daemon().start(() -> {
+            try {
+                task.run();
+            } catch (final IOException e) {
+                throw new IllegalStateException("Falha ao iniciar " + name, e);
+            }
+        });
+    }
+
+    /**
+     * Espera até que a porta aceite conexões
+     */
+    static void awaitPort(final int port) throws IOException, InterruptedException {
+        final var deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MS;
+        while (true) {
+            try (final var socket = new Socket(HOST, port)) {
+                return;
+            } catch (final IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IOException("Servidor não respondeu na porta " + port, e);
+                }
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface ServerTask {
+        void run() throws IOException;
+    }
+
+}
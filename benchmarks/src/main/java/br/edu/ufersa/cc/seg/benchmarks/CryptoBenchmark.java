@@ -0,0 +1,88 @@
+package br.edu.ufersa.cc.seg.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.edu.ufersa.cc.seg.common.crypto.CryptoMode;
+import br.edu.ufersa.cc.seg.common.crypto.CryptoService;
+import br.edu.ufersa.cc.seg.common.crypto.SecurityMessage;
+
+/**
+ * Cifragem e decifragem de {@link CryptoService} nos dois modos e em vários
+ * tamanhos de mensagem, tanto pela API de arrays quanto pela de buffers
+ * (usada pelo transporte NIO).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CryptoBenchmark {
+
+    @Param({ "CBC_HMAC", "GCM" })
+    private CryptoMode mode;
+
+    @Param({ "64", "1024", "16384" })
+    private int size;
+
+    private CryptoService crypto;
+    private byte[] plaintext;
+    private SecurityMessage encrypted;
+
+    private ByteBuffer plainBuffer;
+    private ByteBuffer frameBuffer;
+    private ByteBuffer encryptedFrame;
+    private ByteBuffer outBuffer;
+
+    @Setup
+    public void setup() {
+        crypto = BenchmarkSupport.crypto(mode);
+        plaintext = BenchmarkSupport.payload(size);
+        encrypted = crypto.encrypt(plaintext);
+
+        plainBuffer = ByteBuffer.wrap(plaintext);
+        frameBuffer = ByteBuffer.allocate(crypto.maxFrameSize(size));
+        encryptedFrame = ByteBuffer.allocate(crypto.maxFrameSize(size));
+        crypto.encrypt(plainBuffer, encryptedFrame);
+        encryptedFrame.flip();
+        outBuffer = ByteBuffer.allocate(size);
+    }
+
+    @Benchmark
+    public SecurityMessage encrypt() {
+        return crypto.encrypt(plaintext);
+    }
+
+    @Benchmark
+    public byte[] decrypt() {
+        return crypto.decrypt(encrypted);
+    }
+
+    @Benchmark
+    public int encryptBuffer() {
+        plainBuffer.rewind();
+        frameBuffer.clear();
+        return crypto.encrypt(plainBuffer, frameBuffer);
+    }
+
+    @Benchmark
+    public int decryptBuffer() {
+        encryptedFrame.rewind();
+        outBuffer.clear();
+        return crypto.decrypt(encryptedFrame, outBuffer);
+    }
+
+}
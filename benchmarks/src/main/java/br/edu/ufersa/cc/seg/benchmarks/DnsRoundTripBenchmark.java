@@ -0,0 +1,152 @@
+package br.edu.ufersa.cc.seg.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.edu.ufersa.cc.seg.common.message.MessageCodec;
+import br.edu.ufersa.cc.seg.common.network.DatagramClient;
+import br.edu.ufersa.cc.seg.common.network.MultiplexedClient;
+import br.edu.ufersa.cc.seg.common.network.SecureServer;
+import br.edu.ufersa.cc.seg.common.network.SecureServers;
+import br.edu.ufersa.cc.seg.common.network.SecureTcpMessaging;
+import br.edu.ufersa.cc.seg.common.network.ServerTransport;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.Query;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.Update;
+import br.edu.ufersa.cc.seg.dns.resolver.DnsResolver;
+import br.edu.ufersa.cc.seg.dns.server.DnsServer;
+
+/**
+ * Ida e volta de um QUERY ao {@link DnsServer} pelo loopback, com cifragem,
+ * enquadramento e JSON. {@code query} usa uma conexão por thread, uma
+ * requisição por vez; {@code queryMultiplexed} compartilha uma única conexão
+ * multiplexada entre todas as threads (rode com {@code -t});
+ * {@code queryNewConnection} abre uma conexão para cada consulta;
+ * {@code queryDatagram} manda cada consulta num datagrama UDP, sem conexão
+ * ({@link DatagramClient});
+ * {@code resolveCached} resolve pelo {@link DnsResolver}, que depois da
+ * primeira consulta responde do cache, sem rede.
+ *
+ * <p>
+ * O modo {@link Mode#SampleTime} reporta os percentis p50/p99/p999.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DnsRoundTripBenchmark {
+
+    private static final String NAME = "servidor1";
+    private static final MessageCodec<DnsMessage> CODEC = new MessageCodec<>(DnsMessage.class);
+
+    @State(Scope.Benchmark)
+    public static class Server {
+
+        @Param({ "BLOCKING", "NIO" })
+        private ServerTransport transport;
+
+        private SecureServer server;
+        private SecureServer datagrams;
+        private MultiplexedClient shared;
+        private DatagramClient datagramClient;
+        private DnsResolver resolver;
+
+        @Setup
+        public void start() throws IOException, InterruptedException {
+            final var crypto = BenchmarkSupport.crypto();
+            server = SecureServers.create(transport, 0, crypto);
+            final var handler = new DnsServer(server.getPort());
+            BenchmarkSupport.startDaemon("dns-server", () -> server.start(handler));
+            BenchmarkSupport.awaitPort(server.getPort());
+            datagrams = SecureServers.datagram(0, crypto);
+            BenchmarkSupport.startDaemon("dns-udp", () -> datagrams.start(handler));
+
+            // Cadastra o nome consultado
+            try (final var messaging = new SecureTcpMessaging(BenchmarkSupport.HOST, server.getPort(), crypto)) {
+                messaging.sendSecure(CODEC.encode(new Update(NAME, "192.168.0.10")));
+                messaging.receiveSecure();
+            }
+
+            shared = new MultiplexedClient(BenchmarkSupport.HOST, server.getPort(), crypto);
+            datagramClient = new DatagramClient(BenchmarkSupport.HOST, datagrams.getPort(), crypto);
+            resolver = new DnsResolver(BenchmarkSupport.HOST, server.getPort(), crypto);
+            resolver.connect();
+        }
+
+        @TearDown
+        public void stop() throws IOException {
+            shared.close();
+            datagramClient.close();
+            resolver.close();
+            datagrams.close();
+            server.close();
+        }
+
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+
+        private SecureTcpMessaging messaging;
+
+        @Setup
+        public void connect(final Server server) throws IOException {
+            messaging = new SecureTcpMessaging(BenchmarkSupport.HOST, server.server.getPort(),
+                    BenchmarkSupport.crypto());
+        }
+
+        @TearDown
+        public void disconnect() throws IOException {
+            messaging.close();
+        }
+
+    }
+
+    @Benchmark
+    public DnsMessage query(final Client client) throws IOException {
+        client.messaging.sendSecure(CODEC.encode(new Query(NAME)));
+        return CODEC.decode(client.messaging.receiveSecure());
+    }
+
+    @Benchmark
+    public DnsMessage queryMultiplexed(final Server server)
+            throws IOException, InterruptedException, ExecutionException {
+        return CODEC.decode(server.shared.request(CODEC.encode(new Query(NAME))).get());
+    }
+
+    @Benchmark
+    public DnsMessage queryNewConnection(final Server server) throws IOException {
+        try (final var messaging = new SecureTcpMessaging(BenchmarkSupport.HOST, server.server.getPort(),
+                BenchmarkSupport.crypto())) {
+            messaging.sendSecure(CODEC.encode(new Query(NAME)));
+            return CODEC.decode(messaging.receiveSecure());
+        }
+    }
+
+    @Benchmark
+    public DnsMessage queryDatagram(final Server server)
+            throws IOException, InterruptedException, ExecutionException {
+        return CODEC.decode(server.datagramClient.request(CODEC.encode(new Query(NAME))).get());
+    }
+
+    @Benchmark
+    public String resolveCached(final Server server) throws InterruptedException, ExecutionException {
+        return server.resolver.resolve(NAME).get();
+    }
+
+}
@@ -0,0 +1,78 @@
+package br.edu.ufersa.cc.seg.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.edu.ufersa.cc.seg.common.crypto.FrameCodec;
+import br.edu.ufersa.cc.seg.common.crypto.SecurityMessage;
+
+/**
+ * Enquadramento binário ({@link FrameCodec}) de mensagens já cifradas, pelo
+ * caminho de buffers (NIO) e pelo de fluxos (usado por
+ * {@link br.edu.ufersa.cc.seg.common.network.SecureTcpMessaging}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameBenchmark {
+
+    @Param({ "64", "1024", "16384" })
+    private int size;
+
+    private SecurityMessage message;
+    private ByteBuffer buffer;
+    private byte[] frame;
+    private ByteArrayOutputStream sink;
+
+    @Setup
+    public void setup() {
+        message = BenchmarkSupport.crypto().encrypt(BenchmarkSupport.payload(size));
+        frame = FrameCodec.encode(message);
+        buffer = ByteBuffer.allocate(frame.length);
+        sink = new ByteArrayOutputStream(frame.length);
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        buffer.clear();
+        FrameCodec.encode(message, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public SecurityMessage decode() throws IOException {
+        return FrameCodec.decode(ByteBuffer.wrap(frame));
+    }
+
+    @Benchmark
+    public SecurityMessage writeThenRead() throws IOException {
+        sink.reset();
+        final var out = new DataOutputStream(sink);
+        FrameCodec.write(out, message);
+        out.flush();
+
+        final var in = new DataInputStream(new ByteArrayInputStream(sink.toByteArray()));
+        return FrameCodec.read(in);
+    }
+
+}
@@ -0,0 +1,119 @@
+package br.edu.ufersa.cc.seg.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.edu.ufersa.cc.seg.common.message.Message;
+import br.edu.ufersa.cc.seg.common.message.MessageCodec;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage;
+import br.edu.ufersa.cc.seg.p2p.message.NodeMessage;
+import br.edu.ufersa.cc.seg.servicediscovery.message.CalculatorMessage;
+import br.edu.ufersa.cc.seg.servicediscovery.message.DirectoryMessage;
+
+/**
+ * Serialização e desserialização JSON ({@link MessageCodec}) de cada tipo de
+ * mensagem dos protocolos.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageCodecBenchmark {
+
+    /**
+     * Uma mensagem típica de cada tipo, com o codec do seu protocolo
+     */
+    public enum SampleMessage {
+
+        DNS_QUERY(DnsMessage.class, new DnsMessage.Query("servidor1")),
+        DNS_RESPONSE(DnsMessage.class, new DnsMessage.Response("servidor1", "192.168.0.10")),
+        DNS_QUERY_NAMES(DnsMessage.class, new DnsMessage.NameQuery(DnsMessage.Match.SUFFIX, "svc.prod", null, 100)),
+        DNS_RECORDS(DnsMessage.class, new DnsMessage.Records(List.of(
+                new DnsMessage.NameRecord("api.svc.prod", "10.0.0.1"),
+                new DnsMessage.NameRecord("db.svc.prod", "10.0.0.2")), "db.svc.prod")),
+        DNS_UPDATE(DnsMessage.class, new DnsMessage.Update("servidor1", "192.168.0.11")),
+        DNS_ACK(DnsMessage.class, new DnsMessage.Ack("servidor1", "192.168.0.11")),
+        DNS_QUERY_BATCH(DnsMessage.class, new DnsMessage.QueryBatch(List.of("servidor1", "servidor2", "servidor3"))),
+        DNS_UPDATE_BATCH(DnsMessage.class, new DnsMessage.UpdateBatch(List.of(
+                new DnsMessage.NameRecord("servidor1", "192.168.0.11"),
+                new DnsMessage.NameRecord("servidor2", "192.168.0.21")))),
+        DNS_ACK_BATCH(DnsMessage.class, new DnsMessage.AckBatch(2)),
+        DNS_REGISTER_NOTIFY(DnsMessage.class, new DnsMessage.RegisterNotify()),
+        DNS_REGISTERED(DnsMessage.class, new DnsMessage.Registered()),
+        DNS_NOTIFY(DnsMessage.class, new DnsMessage.Notify("servidor1", "192.168.0.11")),
+        DNS_NOTIFY_BATCH(DnsMessage.class, new DnsMessage.NotifyBatch(List.of(
+                new DnsMessage.NameRecord("servidor1", "192.168.0.11"),
+                new DnsMessage.NameRecord("servidor2", "192.168.0.21")))),
+
+        DIRECTORY_REGISTER(DirectoryMessage.class, new DirectoryMessage.Register("calculator", "localhost:9200")),
+        DIRECTORY_REGISTERED(DirectoryMessage.class,
+                new DirectoryMessage.Registered("calculator", "localhost:9200")),
+        DIRECTORY_DISCOVER(DirectoryMessage.class, new DirectoryMessage.Discover("calculator")),
+        DIRECTORY_DISCOVERY_RESPONSE(DirectoryMessage.class,
+                new DirectoryMessage.DiscoveryResponse("calculator", "localhost:9200")),
+
+        CALCULATOR_CALL(CalculatorMessage.class, new CalculatorMessage.Call("+", 40, 2)),
+        CALCULATOR_RESPONSE(CalculatorMessage.class, CalculatorMessage.Response.success(42)),
+
+        NODE_SEARCH(NodeMessage.class, new NodeMessage.Search("arquivo45", 0)),
+        NODE_RESPONSE(NodeMessage.class, new NodeMessage.Response(0, "arquivo45", 4)),
+        ;
+
+        private final Sample<?> sample;
+
+        <M extends Message> SampleMessage(final Class<M> protocol, final M message) {
+            this.sample = new Sample<>(new MessageCodec<>(protocol), message);
+        }
+
+    }
+
+    private record Sample<M extends Message>(MessageCodec<M> codec, M message) {
+
+        byte[] encode() throws IOException {
+            return codec.encode(message);
+        }
+
+        M decode(final byte[] json) throws IOException {
+            return codec.decode(json);
+        }
+
+    }
+
+    @Param
+    private SampleMessage message;
+
+    private Sample<?> sample;
+    private byte[] json;
+
+    @Setup
+    public void setup() throws IOException {
+        sample = message.sample;
+        json = sample.encode();
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return sample.encode();
+    }
+
+    @Benchmark
+    public Message decode() throws IOException {
+        return sample.decode(json);
+    }
+
+}
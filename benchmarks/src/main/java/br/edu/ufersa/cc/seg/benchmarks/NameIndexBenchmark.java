@@ -0,0 +1,103 @@
+package br.edu.ufersa.cc.seg.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import br.edu.ufersa.cc.seg.dns.store.NameIndex;
+import br.edu.ufersa.cc.seg.dns.store.VersionedRecordStore;
+
+/**
+ * Consultas por zona no {@link NameIndex} comparadas à varredura da tabela
+ * inteira, com nomes {@code hostN.zoneM.svc.prod} espalhados em
+ * {@code zones} zonas.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NameIndexBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    @Param({ "100000" })
+    private int names;
+
+    @Param({ "100" })
+    private int zones;
+
+    private VersionedRecordStore store;
+    private NameIndex index;
+
+    @Setup
+    public void setup() {
+        store = new VersionedRecordStore();
+        index = NameIndex.of(store);
+        for (var i = 0; i < names; i++) {
+            store.put("host" + i + "." + zone(i % zones), "10.0." + (i >> 8 & 255) + "." + (i & 255));
+        }
+    }
+
+    /**
+     * Todas as páginas de uma zona
+     */
+    @Benchmark
+    public int suffixAllPages() {
+        final var zone = zone(ThreadLocalRandom.current().nextInt(zones));
+        var found = 0;
+        String after = null;
+        do {
+            final var page = index.suffix(zone, after, PAGE_SIZE);
+            found += page.bindings().size();
+            after = page.next();
+        } while (after != null);
+        return found;
+    }
+
+    @Benchmark
+    public NameIndex.Page wildcardFirstPage() {
+        return index.wildcard("*." + zone(ThreadLocalRandom.current().nextInt(zones)), null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public NameIndex.Binding longestSuffix() {
+        final var i = ThreadLocalRandom.current().nextInt(names);
+        return index.longestSuffix("a.host" + i + "." + zone(i % zones));
+    }
+
+    /**
+     * A mesma zona de {@link #suffixAllPages()} procurada sem o índice
+     */
+    @Benchmark
+    public void fullScan(final Blackhole blackhole) {
+        final var suffix = "." + zone(ThreadLocalRandom.current().nextInt(zones));
+        final BiConsumer<String, String> filter = (name, ip) -> {
+            if (name.endsWith(suffix)) {
+                blackhole.consume(ip);
+            }
+        };
+        try (final var snapshot = store.snapshot()) {
+            snapshot.forEach(filter);
+        }
+    }
+
+    private static String zone(final int zone) {
+        return "zone" + zone + ".svc.prod";
+    }
+
+}
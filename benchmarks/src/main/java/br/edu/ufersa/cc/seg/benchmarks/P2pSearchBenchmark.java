@@ -0,0 +1,92 @@
+package br.edu.ufersa.cc.seg.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.edu.ufersa.cc.seg.common.message.MessageCodec;
+import br.edu.ufersa.cc.seg.common.network.SecureTcpMessaging;
+import br.edu.ufersa.cc.seg.p2p.message.NodeMessage;
+import br.edu.ufersa.cc.seg.p2p.message.NodeMessage.Response;
+import br.edu.ufersa.cc.seg.p2p.message.NodeMessage.Search;
+import br.edu.ufersa.cc.seg.p2p.node.NodeServer;
+
+/**
+ * Busca completa no anel P2P de 6 nós pelo loopback: o SEARCH entra no nó 0,
+ * percorre o anel até o nó 3, que guarda o arquivo, e o RESPONSE segue até
+ * voltar ao nó 0 (6 saltos cifrados ao todo).
+ *
+ * <p>
+ * As mensagens do anel não levam identificador de requisição, então há uma
+ * única busca em andamento por vez. O modo {@link Mode#SampleTime} reporta os
+ * percentis p50/p99/p999.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+public class P2pSearchBenchmark {
+
+    private static final int RING_SIZE = 6;
+    private static final String FILE_NAME = "arquivo35";
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final MessageCodec<NodeMessage> codec = new MessageCodec<>(NodeMessage.class);
+    private final AtomicReference<CompletableFuture<Response>> pending = new AtomicReference<>();
+    private SecureTcpMessaging origin;
+
+    @Setup
+    public void start() throws IOException, InterruptedException {
+        final var ports = new ArrayList<Integer>();
+        for (var i = 0; i < RING_SIZE; i++) {
+            ports.add(BenchmarkSupport.freePort());
+        }
+
+        final var ring = NodeServer.createRing(BenchmarkSupport.HOST, ports, Thread.ofPlatform().daemon());
+        ring.onResponse(response -> {
+            final var request = pending.getAndSet(null);
+            if (request != null) {
+                request.complete(response);
+            }
+        });
+        for (final var port : ports) {
+            BenchmarkSupport.awaitPort(port);
+        }
+
+        origin = new SecureTcpMessaging(ring.getHost(), ring.getPort(), BenchmarkSupport.crypto());
+    }
+
+    @TearDown
+    public void stop() throws IOException {
+        origin.close();
+    }
+
+    @Benchmark
+    public Response search() throws IOException, InterruptedException, ExecutionException, TimeoutException {
+        final var response = new CompletableFuture<Response>();
+        pending.set(response);
+        origin.sendSecure(codec.encode(new Search(FILE_NAME, null)));
+        return response.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+}
@@ -0,0 +1,90 @@
+package br.edu.ufersa.cc.seg.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.edu.ufersa.cc.seg.dns.store.RecordStore;
+import br.edu.ufersa.cc.seg.dns.store.RecordStoreType;
+import br.edu.ufersa.cc.seg.dns.store.RecordStores;
+
+/**
+ * Leituras de cada {@link RecordStore} com escritas concorrentes: três
+ * threads consultam enquanto uma atualiza, e o grupo {@code snapshot} mede a
+ * abertura de snapshots sob a mesma carga.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordStoreBenchmark {
+
+    @Param({ "10000" })
+    private int names;
+
+    @Param({ "HEAP", "OFF_HEAP" })
+    private RecordStoreType type;
+
+    private RecordStore store;
+    private String[] keys;
+
+    @Setup
+    public void setup() {
+        store = RecordStores.create(type);
+        keys = new String[names];
+        for (var i = 0; i < names; i++) {
+            keys[i] = "servidor" + i;
+            store.put(keys[i], "10.0.0." + (i % 256));
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public String query() {
+        return store.get(randomKey());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public long update() {
+        return store.put(randomKey(), "10.0.1.1");
+    }
+
+    @Benchmark
+    @Group("snapshot")
+    @GroupThreads(3)
+    public String snapshotRead() {
+        try (final var snapshot = store.snapshot()) {
+            return snapshot.get(randomKey());
+        }
+    }
+
+    @Benchmark
+    @Group("snapshot")
+    @GroupThreads(1)
+    public long snapshotUpdate() {
+        return update();
+    }
+
+    private String randomKey() {
+        return keys[ThreadLocalRandom.current().nextInt(keys.length)];
+    }
+
+}
@@ -0,0 +1,109 @@
+package br.edu.ufersa.cc.seg.benchmarks;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.edu.ufersa.cc.seg.common.message.MessageCodec;
+import br.edu.ufersa.cc.seg.common.network.SecureTcpMessaging;
+import br.edu.ufersa.cc.seg.servicediscovery.message.CalculatorMessage;
+import br.edu.ufersa.cc.seg.servicediscovery.message.CalculatorMessage.Call;
+import br.edu.ufersa.cc.seg.servicediscovery.message.DirectoryMessage;
+import br.edu.ufersa.cc.seg.servicediscovery.message.DirectoryMessage.Discover;
+import br.edu.ufersa.cc.seg.servicediscovery.message.DirectoryMessage.DiscoveryResponse;
+import br.edu.ufersa.cc.seg.servicediscovery.server.CalculatorServer;
+import br.edu.ufersa.cc.seg.servicediscovery.server.DirectoryServer;
+
+/**
+ * Fluxo completo do cliente da calculadora pelo loopback: DISCOVER no
+ * {@link DirectoryServer} seguido de um CALL no endereço recebido. Cada
+ * thread mantém suas conexões abertas entre as operações.
+ *
+ * <p>
+ * O diretório ocupa a porta fixa 9100, onde a {@link CalculatorServer} se
+ * registra. O modo {@link Mode#SampleTime} reporta os percentis p50/p99/p999.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceDiscoveryBenchmark {
+
+    private static final int DIRECTORY_PORT = 9100;
+
+    private static final MessageCodec<DirectoryMessage> DIRECTORY_CODEC = new MessageCodec<>(DirectoryMessage.class);
+    private static final MessageCodec<CalculatorMessage> CALCULATOR_CODEC = new MessageCodec<>(
+            CalculatorMessage.class);
+
+    @State(Scope.Benchmark)
+    public static class Servers {
+
+        @Setup
+        public void start() throws IOException, InterruptedException {
+            BenchmarkSupport.startDaemon("directory-server", () -> new DirectoryServer().start(DIRECTORY_PORT));
+            BenchmarkSupport.awaitPort(DIRECTORY_PORT);
+
+            // A calculadora só abre a porta depois de se registrar no diretório
+            final var calculatorPort = BenchmarkSupport.freePort();
+            BenchmarkSupport.startDaemon("calculator-server", () -> new CalculatorServer(calculatorPort).start());
+            BenchmarkSupport.awaitPort(calculatorPort);
+        }
+
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+
+        private SecureTcpMessaging directory;
+        private final Map<String, SecureTcpMessaging> calculators = new HashMap<>();
+
+        @Setup
+        public void connect(final Servers servers) throws IOException {
+            directory = new SecureTcpMessaging(BenchmarkSupport.HOST, DIRECTORY_PORT, BenchmarkSupport.crypto());
+        }
+
+        SecureTcpMessaging calculator(final String address) throws IOException {
+            var messaging = calculators.get(address);
+            if (messaging == null) {
+                final var parts = address.split(":");
+                messaging = new SecureTcpMessaging(parts[0], Integer.parseInt(parts[1]), BenchmarkSupport.crypto());
+                calculators.put(address, messaging);
+            }
+            return messaging;
+        }
+
+        @TearDown
+        public void disconnect() throws IOException {
+            directory.close();
+            for (final var messaging : calculators.values()) {
+                messaging.close();
+            }
+        }
+
+    }
+
+    @Benchmark
+    public CalculatorMessage discoverAndCall(final Client client) throws IOException {
+        client.directory.sendSecure(DIRECTORY_CODEC.encode(new Discover("calculator")));
+        final var discovery = (DiscoveryResponse) DIRECTORY_CODEC.decode(client.directory.receiveSecure());
+
+        final var calculator = client.calculator(discovery.address());
+        calculator.sendSecure(CALCULATOR_CODEC.encode(new Call("+", 40, 2)));
+        return CALCULATOR_CODEC.decode(calculator.receiveSecure());
+    }
+
+}
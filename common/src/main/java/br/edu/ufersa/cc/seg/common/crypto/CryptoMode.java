@@ -0,0 +1,37 @@
+package br.edu.ufersa.cc.seg.common.crypto;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Esquemas de cifragem suportados. A versão é gravada em cada
+ * {@link SecurityMessage} para que o receptor saiba como validá-la e
+ * decifrá-la, independentemente do modo configurado localmente.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum CryptoMode {
+
+    /**
+     * AES-CBC seguido de HmacSHA256 sobre conteúdo cifrado, IV e timestamp
+     */
+    CBC_HMAC(1),
+
+    /**
+     * AES-GCM (cifra autenticada), com versão e timestamp como dados associados
+     */
+    GCM(2),
+    ;
+
+    private final int version;
+
+    public static CryptoMode fromVersion(final int version) {
+        for (final var mode : values()) {
+            if (mode.version == version) {
+                return mode;
+            }
+        }
+        throw new CryptoException("Versão de mensagem desconhecida: " + version);
+    }
+
+}
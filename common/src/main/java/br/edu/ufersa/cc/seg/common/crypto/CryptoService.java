@@ -1,107 +1,142 @@
 package br.edu.ufersa.cc.seg.common.crypto;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
+import javax.crypto.AEADBadTagException;
 import javax.crypto.Cipher;
 import javax.crypto.Mac;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
-import lombok.SneakyThrows;
+import br.edu.ufersa.cc.seg.common.utils.Settings;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * Serviço de criptografia que provê funções para confidencialidade (cifra
- * simétrica) e integridade/autenticidade (HMAC) das mensagens.
+ * simétrica) e integridade/autenticidade (HMAC ou AES-GCM) das mensagens.
+ *
+ * <p>
+ * As instâncias de {@link Cipher}, {@link Mac} e {@link SecureRandom} ficam
+ * num pool e são reaproveitadas entre mensagens, evitando a busca de provedor
+ * e as alocações a cada chamada. Cada operação usa seu conjunto com
+ * exclusividade, o que também funciona com threads virtuais (que tornariam
+ * inúteis caches por thread). Um pico de concorrência cria conjuntos a mais,
+ * que são descartados na devolução se o pool já estiver cheio.
+ *
+ * <p>
+ * Além da API com {@code byte[]} e {@link SecurityMessage}, há variantes com
+ * {@link ByteBuffer} que cifram direto para o quadro de {@link FrameCodec} e
+ * decifram direto do quadro, sem arrays intermediários.
  */
 @Slf4j
 public class CryptoService {
 
-    private static final String CIPHER_ALGORITHM = "AES/CBC/PKCS5Padding";
+    private static final String CBC_ALGORITHM = "AES/CBC/PKCS5Padding";
+    private static final String CBC_RAW_ALGORITHM = "AES/CBC/NoPadding";
+    private static final String GCM_ALGORITHM = "AES/GCM/NoPadding";
     private static final String HMAC_ALGORITHM = "HmacSHA256";
-    private static final int IV_SIZE = 16;
+    private static final String NON_BLOCKING_RANDOM = "NativePRNGNonBlocking";
+    private static final int CBC_IV_SIZE = 16;
+    private static final int CBC_BLOCK_SIZE = 16;
+    private static final int HMAC_SIZE = 32;
+    private static final int GCM_IV_SIZE = 12;
+    private static final int GCM_TAG_SIZE = 16;
+    private static final int GCM_TAG_BITS = GCM_TAG_SIZE * 8;
+
+    // Conjuntos guardados no pool: as operações não bloqueiam, então poucas
+    // rodam ao mesmo tempo além do número de núcleos
+    private static final int MAX_POOLED = 4 * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Chave de configuração do esquema usado para cifrar ({@link CryptoMode})
+     */
+    public static final String MODE_SETTING = "crypto.mode";
+
+    private static final ObjectWriter DEBUG_WRITER = new ObjectMapper().writerWithDefaultPrettyPrinter();
 
     private final SecretKey encryptionKey;
     private final SecretKey hmacKey;
-    private final SecureRandom secureRandom;
+    private final BlockingQueue<Engines> pool = new ArrayBlockingQueue<>(MAX_POOLED);
 
+    @Getter
+    private final CryptoMode mode;
+
+    /**
+     * Cria o serviço com o modo definido em {@value #MODE_SETTING} (padrão:
+     * {@link CryptoMode#CBC_HMAC})
+     */
     public CryptoService(final byte[] encryptionKey, final byte[] hmacKey) {
+        this(encryptionKey, hmacKey, Settings.getEnum(MODE_SETTING, CryptoMode.class, CryptoMode.CBC_HMAC));
+    }
+
+    public CryptoService(final byte[] encryptionKey, final byte[] hmacKey, final CryptoMode mode) {
         this.encryptionKey = new SecretKeySpec(encryptionKey, "AES");
         this.hmacKey = new SecretKeySpec(hmacKey, HMAC_ALGORITHM);
-        this.secureRandom = new SecureRandom();
+        this.mode = mode;
     }
 
     /**
-     * Cifra uma mensagem e gera o HMAC para garantir confidencialidade e
-     * integridade/autenticidade
+     * Cifra uma mensagem e gera o HMAC (ou a tag do GCM) para garantir
+     * confidencialidade e integridade/autenticidade
      */
     public SecurityMessage encrypt(final byte[] message) {
-        log.debug("Criptografando mensagem...\n{}", new String(message));
+        if (log.isDebugEnabled()) {
+            log.debug("Criptografando mensagem ({})...\n{}", mode, new String(message, StandardCharsets.UTF_8));
+        }
 
+        final var engines = acquire();
         try {
-            // Gerar IV aleatório
-            final var iv = new byte[IV_SIZE];
-            secureRandom.nextBytes(iv);
-            final var ivSpec = new IvParameterSpec(iv);
-
-            // Cifrar a mensagem
-            final var cipher = Cipher.getInstance(CIPHER_ALGORITHM);
-            cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, ivSpec);
-            final var encrypted = cipher.doFinal(message);
-
-            // Gera HMAC (encrypted + iv + timestamp para evitar replay)
-            final var timestamp = System.currentTimeMillis();
-            final var hmac = generateHmac(encrypted, iv, timestamp);
-
-            // Retorna mensagem segura
-            final var securityMessage = SecurityMessage.builder()
-                    .encryptedContent(encrypted)
-                    .hmac(hmac)
-                    .iv(iv)
-                    .timestamp(timestamp)
-                    .build();
-
-            final var writer = new ObjectMapper().writerWithDefaultPrettyPrinter();
-            log.debug("Mensagem criptografada:\n{}", writer.writeValueAsString(securityMessage));
+            final var securityMessage = mode == CryptoMode.GCM
+                    ? encryptGcm(engines, message)
+                    : encryptCbcHmac(engines, message);
+
+            if (log.isDebugEnabled()) {
+                log.debug("Mensagem criptografada:\n{}", DEBUG_WRITER.writeValueAsString(securityMessage));
+            }
 
             return securityMessage;
         } catch (final Exception e) {
             log.error("Erro ao cifrar mensagem", e);
             throw new CryptoException("Erro de criptografia", e);
+        } finally {
+            pool.offer(engines);
         }
     }
 
     /**
-     * Decifra uma mensagem e valida seu HMAC para garantir
-     * integridade/autenticidade
+     * Decifra uma mensagem e valida seu HMAC (ou tag do GCM) para garantir
+     * integridade/autenticidade. O esquema é escolhido pela versão da mensagem,
+     * e não pelo modo configurado localmente.
      */
-    @SneakyThrows
     public byte[] decrypt(final SecurityMessage secureMsg) {
-        final var writer = new ObjectMapper().writerWithDefaultPrettyPrinter();
-        log.debug("Descriptografando mensagem...\n{}", writer.writeValueAsString(secureMsg));
-
+        final var engines = acquire();
         try {
-            // Valida HMAC primeiro
-            final var expectedHmac = generateHmac(
-                    secureMsg.getEncryptedContent(),
-                    secureMsg.getIv(),
-                    secureMsg.getTimestamp());
-
-            if (!MessageDigest.isEqual(expectedHmac, secureMsg.getHmac())) {
-                throw new CryptoException("HMAC inválido - mensagem pode ter sido adulterada");
+            if (log.isDebugEnabled()) {
+                log.debug("Descriptografando mensagem...\n{}", DEBUG_WRITER.writeValueAsString(secureMsg));
             }
 
-            // Se HMAC ok, decifra
-            final var cipher = Cipher.getInstance(CIPHER_ALGORITHM);
-            cipher.init(Cipher.DECRYPT_MODE, encryptionKey,
-                    new IvParameterSpec(secureMsg.getIv()));
+            final var original = switch (CryptoMode.fromVersion(secureMsg.getVersion())) {
+                case GCM -> decryptGcm(engines, secureMsg);
+                case CBC_HMAC -> decryptCbcHmac(engines, secureMsg);
+            };
 
-            final var original = cipher.doFinal(secureMsg.getEncryptedContent());
-            log.debug("Mensagem descriptografada:\n{}", new String(original));
+            if (log.isDebugEnabled()) {
+                log.debug("Mensagem descriptografada:\n{}", new String(original, StandardCharsets.UTF_8));
+            }
 
             return original;
         } catch (final CryptoException e) {
@@ -109,40 +144,456 @@ public class CryptoService {
         } catch (final Exception e) {
             log.error("Erro ao decifrar mensagem", e);
             throw new CryptoException("Erro de criptografia", e);
+        } finally {
+            pool.offer(engines);
         }
     }
 
     /**
-     * Gera HMAC para os componentes da mensagem
+     * Tamanho máximo do quadro gerado por {@link #encrypt(ByteBuffer, ByteBuffer)}
+     * para um texto claro com o tamanho informado, no modo configurado
      */
-    private byte[] generateHmac(final byte[] encrypted, final byte[] iv, final long timestamp) {
+    public int maxFrameSize(final int plaintextLength) {
+        return mode == CryptoMode.GCM
+                ? FrameCodec.HEADER_SIZE + GCM_IV_SIZE + plaintextLength + GCM_TAG_SIZE
+                : FrameCodec.HEADER_SIZE + CBC_IV_SIZE + (plaintextLength / CBC_BLOCK_SIZE + 1) * CBC_BLOCK_SIZE
+                        + HMAC_SIZE;
+    }
+
+    /**
+     * Cifra os bytes restantes de {@code plaintext} e escreve o quadro completo
+     * ({@link FrameCodec}) em {@code out}, a partir da posição atual. O HMAC é
+     * calculado sobre o conteúdo já escrito em {@code out}, sem cópias.
+     *
+     * <p>
+     * Avança os dois buffers e devolve o tamanho do quadro. Em caso de erro, a
+     * posição de ambos é restaurada. Aceita buffers diretos, mas com buffers
+     * em heap o provedor padrão não precisa de arrays temporários.
+     */
+    public int encrypt(final ByteBuffer plaintext, final ByteBuffer out) {
+        final var plaintextStart = plaintext.position();
+        final var outStart = out.position();
+        if (out.remaining() < maxFrameSize(plaintext.remaining())) {
+            throw new CryptoException("Buffer de saída insuficiente para o quadro");
+        }
+
+        final var engines = acquire();
         try {
-            final var mac = Mac.getInstance(HMAC_ALGORITHM);
-            mac.init(hmacKey);
+            if (mode == CryptoMode.GCM) {
+                encryptGcm(engines, plaintext, out);
+            } else {
+                encryptCbcHmac(engines, plaintext, out);
+            }
+            return out.position() - outStart;
+        } catch (final Exception e) {
+            plaintext.position(plaintextStart);
+            out.position(outStart);
+            log.error("Erro ao cifrar mensagem", e);
+            throw new CryptoException("Erro de criptografia", e);
+        } finally {
+            pool.offer(engines);
+        }
+    }
+
+    /**
+     * Cifra a mensagem uma única vez num quadro completo ({@link FrameCodec}),
+     * pronto para {@code SealedMessaging.sendSealed}.
+     * O mesmo quadro pode ser escrito em várias conexões que usem estas chaves:
+     * cada uma o valida como se tivesse sido cifrado só para ela.
+     */
+    public byte[] seal(final byte[] message) {
+        // O tamanho máximo é exato nos dois modos (o padding do CBC é sempre aplicado)
+        final var frame = ByteBuffer.allocate(maxFrameSize(message.length));
+        encrypt(ByteBuffer.wrap(message), frame);
+        return frame.array();
+    }
+
+    /**
+     * Valida e decifra o quadro completo ({@link FrameCodec}) que começa na
+     * posição atual de {@code frame}, escrevendo o texto claro em {@code out}.
+     * O esquema é escolhido pela versão do quadro.
+     *
+     * <p>
+     * Em caso de sucesso, {@code frame} fica posicionado logo após o quadro e
+     * o tamanho do texto claro é devolvido. Em caso de erro, a posição de
+     * ambos é restaurada. {@code out} precisa de ao menos
+     * {@link FrameCodec#contentLength} bytes livres.
+     */
+    public int decrypt(final ByteBuffer frame, final ByteBuffer out) {
+        final var start = frame.position();
+        final var limit = frame.limit();
+        final var outStart = out.position();
 
-            // HMAC(encrypted + iv + timestamp)
-            mac.update(encrypted);
-            mac.update(iv);
-            mac.update(longToBytes(timestamp));
+        final var engines = acquire();
+        try {
+            final var length = FrameCodec.frameLength(frame, start);
+            if (length < 0 || limit - start < length) {
+                throw new CryptoException("Quadro incompleto");
+            }
+            if (out.remaining() < FrameCodec.contentLength(frame, start)) {
+                throw new CryptoException("Buffer de saída insuficiente para o texto claro");
+            }
 
-            return mac.doFinal();
+            switch (CryptoMode.fromVersion(Byte.toUnsignedInt(frame.get(start + FrameCodec.VERSION_OFFSET)))) {
+                case GCM -> decryptGcm(engines, frame, out);
+                case CBC_HMAC -> decryptCbcHmac(engines, frame, out);
+            }
 
+            frame.limit(limit).position(start + length);
+            return out.position() - outStart;
+        } catch (final CryptoException e) {
+            frame.limit(limit).position(start);
+            out.position(outStart);
+            throw e;
         } catch (final Exception e) {
-            log.error("Erro ao gerar HMAC", e);
-            throw new CryptoException("Erro ao gerar HMAC", e);
+            frame.limit(limit).position(start);
+            out.position(outStart);
+            log.error("Erro ao decifrar mensagem", e);
+            throw new CryptoException("Erro de criptografia", e);
+        } finally {
+            pool.offer(engines);
+        }
+    }
+
+    private void encryptCbcHmac(final Engines engines, final ByteBuffer plaintext, final ByteBuffer out)
+            throws GeneralSecurityException {
+        final var start = out.position();
+        final var iv = engines.cbcIv;
+        engines.random.nextBytes(iv);
+
+        // O padding PKCS#5 é aplicado aqui: com ele no provedor, o JDK copia a
+        // mensagem inteira para um array temporário
+        final var cipher = engines.cbcRaw();
+        cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new IvParameterSpec(iv));
+        final var tail = plaintext.remaining() % CBC_BLOCK_SIZE;
+        final var padding = CBC_BLOCK_SIZE - tail;
+        final var contentLength = plaintext.remaining() + padding;
+
+        // Cabeçalho e IV; o conteúdo é cifrado direto para o buffer de saída
+        final var timestamp = System.currentTimeMillis();
+        FrameCodec.putHeader(out, CryptoMode.CBC_HMAC.getVersion(), CBC_IV_SIZE, HMAC_SIZE, contentLength,
+                timestamp);
+        out.put(iv);
+        final var contentStart = out.position();
+
+        // Blocos completos direto do texto claro; o último, com padding, no bloco de trabalho
+        final var plaintextLimit = plaintext.limit();
+        plaintext.limit(plaintextLimit - tail);
+        cipher.update(plaintext, out);
+        plaintext.limit(plaintextLimit);
+        final var block = engines.block.clear();
+        block.put(plaintext);
+        while (block.hasRemaining()) {
+            block.put((byte) padding);
+        }
+        cipher.doFinal(block.flip(), out);
+
+        // HMAC(encrypted + iv + timestamp), lendo o conteúdo do próprio buffer
+        final var mac = engines.mac;
+        final var limit = out.limit();
+        out.limit(contentStart + contentLength).position(contentStart);
+        mac.update(out);
+        out.limit(limit);
+        mac.update(iv);
+        updateTimestamp(mac, timestamp);
+        mac.doFinal(engines.tag, 0);
+        out.put(engines.tag);
+    }
+
+    private void decryptCbcHmac(final Engines engines, final ByteBuffer frame, final ByteBuffer out)
+            throws GeneralSecurityException {
+        final var start = frame.position();
+        final var ivLength = Byte.toUnsignedInt(frame.get(start + FrameCodec.IV_LENGTH_OFFSET));
+        final var tagLength = Byte.toUnsignedInt(frame.get(start + FrameCodec.TAG_LENGTH_OFFSET));
+        if (ivLength != CBC_IV_SIZE || tagLength != HMAC_SIZE) {
+            throw new CryptoException("Quadro CBC com tamanhos de IV ou HMAC inválidos");
+        }
+
+        final var contentStart = start + FrameCodec.HEADER_SIZE + CBC_IV_SIZE;
+        final var tagStart = contentStart + frame.getInt(start + FrameCodec.CONTENT_LENGTH_OFFSET);
+        final var iv = engines.cbcIv;
+        frame.get(start + FrameCodec.HEADER_SIZE, iv);
+        frame.get(tagStart, engines.receivedTag);
+        final var timestamp = frame.getLong(start + FrameCodec.TIMESTAMP_OFFSET);
+
+        // Valida HMAC primeiro
+        final var mac = engines.mac;
+        frame.limit(tagStart).position(contentStart);
+        mac.update(frame);
+        mac.update(iv);
+        updateTimestamp(mac, timestamp);
+        mac.doFinal(engines.tag, 0);
+
+        if (!MessageDigest.isEqual(engines.tag, engines.receivedTag)) {
+            throw new CryptoException("HMAC inválido - mensagem pode ter sido adulterada");
+        }
+
+        // Se HMAC ok, decifra e remove o padding PKCS#5 (validado pela integridade)
+        final var cipher = engines.cbcRaw();
+        cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new IvParameterSpec(iv));
+        frame.position(contentStart);
+        // O padding só pode recuar até o início do que foi decifrado, não sobre o que já estava em out
+        final var outputStart = out.position();
+        cipher.doFinal(frame, out);
+
+        if (out.position() == outputStart) {
+            throw new CryptoException("Padding inválido");
+        }
+        final var padding = Byte.toUnsignedInt(out.get(out.position() - 1));
+        if (padding < 1 || padding > CBC_BLOCK_SIZE || out.position() - padding < outputStart) {
+            throw new CryptoException("Padding inválido");
+        }
+        out.position(out.position() - padding);
+    }
+
+    private void encryptGcm(final Engines engines, final ByteBuffer plaintext, final ByteBuffer out)
+            throws GeneralSecurityException {
+        final var iv = engines.gcmIv;
+        engines.random.nextBytes(iv);
+
+        final var timestamp = System.currentTimeMillis();
+        final var cipher = engines.gcm();
+        cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new GCMParameterSpec(GCM_TAG_BITS, iv));
+        cipher.updateAAD(associatedData(engines.aad, CryptoMode.GCM, timestamp));
+
+        // No quadro, o conteúdo e a tag são contíguos: exatamente a saída do GCM
+        FrameCodec.putHeader(out, CryptoMode.GCM.getVersion(), GCM_IV_SIZE, GCM_TAG_SIZE, plaintext.remaining(),
+                timestamp);
+        out.put(iv);
+        cipher.doFinal(plaintext, out);
+    }
+
+    private void decryptGcm(final Engines engines, final ByteBuffer frame, final ByteBuffer out)
+            throws GeneralSecurityException {
+        final var start = frame.position();
+        final var ivLength = Byte.toUnsignedInt(frame.get(start + FrameCodec.IV_LENGTH_OFFSET));
+        final var tagLength = Byte.toUnsignedInt(frame.get(start + FrameCodec.TAG_LENGTH_OFFSET));
+        if (ivLength != GCM_IV_SIZE || tagLength != GCM_TAG_SIZE) {
+            throw new CryptoException("Quadro GCM com tamanhos de IV ou tag inválidos");
+        }
+
+        final var contentStart = start + FrameCodec.HEADER_SIZE + GCM_IV_SIZE;
+        final var end = contentStart + frame.getInt(start + FrameCodec.CONTENT_LENGTH_OFFSET) + GCM_TAG_SIZE;
+        frame.get(start + FrameCodec.HEADER_SIZE, engines.gcmIv);
+
+        final var cipher = engines.gcm();
+        cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new GCMParameterSpec(GCM_TAG_BITS, engines.gcmIv));
+        cipher.updateAAD(associatedData(engines.aad, CryptoMode.GCM,
+                frame.getLong(start + FrameCodec.TIMESTAMP_OFFSET)));
+
+        try {
+            frame.limit(end).position(contentStart);
+            cipher.doFinal(frame, out);
+        } catch (final AEADBadTagException e) {
+            throw new CryptoException("Tag GCM inválida - mensagem pode ter sido adulterada", e);
+        }
+    }
+
+    private SecurityMessage encryptCbcHmac(final Engines engines, final byte[] message)
+            throws GeneralSecurityException {
+        // Gerar IV aleatório
+        final var iv = new byte[CBC_IV_SIZE];
+        engines.random.nextBytes(iv);
+
+        // Cifrar a mensagem
+        final var cipher = engines.cbc();
+        cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new IvParameterSpec(iv));
+        final var encrypted = cipher.doFinal(message);
+
+        // Gera HMAC (encrypted + iv + timestamp para evitar replay)
+        final var timestamp = System.currentTimeMillis();
+        final var hmac = generateHmac(engines.mac, encrypted, iv, timestamp);
+
+        // Retorna mensagem segura
+        return SecurityMessage.builder()
+                .version(CryptoMode.CBC_HMAC.getVersion())
+                .encryptedContent(encrypted)
+                .hmac(hmac)
+                .iv(iv)
+                .timestamp(timestamp)
+                .build();
+    }
+
+    private byte[] decryptCbcHmac(final Engines engines, final SecurityMessage secureMsg)
+            throws GeneralSecurityException {
+        // Valida HMAC primeiro
+        final var expectedHmac = generateHmac(engines.mac,
+                secureMsg.getEncryptedContent(),
+                secureMsg.getIv(),
+                secureMsg.getTimestamp());
+
+        if (!MessageDigest.isEqual(expectedHmac, secureMsg.getHmac())) {
+            throw new CryptoException("HMAC inválido - mensagem pode ter sido adulterada");
+        }
+
+        // Se HMAC ok, decifra
+        final var cipher = engines.cbc();
+        cipher.init(Cipher.DECRYPT_MODE, encryptionKey,
+                new IvParameterSpec(secureMsg.getIv()));
+
+        return cipher.doFinal(secureMsg.getEncryptedContent());
+    }
+
+    private SecurityMessage encryptGcm(final Engines engines, final byte[] message)
+            throws GeneralSecurityException {
+        // IV (nonce) aleatório de 96 bits, nunca reutilizado com a mesma chave
+        final var iv = new byte[GCM_IV_SIZE];
+        engines.random.nextBytes(iv);
+
+        // Cifra e autentica numa única passada; versão e timestamp entram como AAD
+        final var timestamp = System.currentTimeMillis();
+        final var cipher = engines.gcm();
+        cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new GCMParameterSpec(GCM_TAG_BITS, iv));
+        cipher.updateAAD(associatedData(engines.aad, CryptoMode.GCM, timestamp));
+        final var sealed = cipher.doFinal(message);
+
+        // O GCM devolve conteúdo cifrado || tag; a tag vai no campo de autenticação
+        final var contentLength = sealed.length - GCM_TAG_SIZE;
+        return SecurityMessage.builder()
+                .version(CryptoMode.GCM.getVersion())
+                .encryptedContent(Arrays.copyOf(sealed, contentLength))
+                .hmac(Arrays.copyOfRange(sealed, contentLength, sealed.length))
+                .iv(iv)
+                .timestamp(timestamp)
+                .build();
+    }
+
+    private byte[] decryptGcm(final Engines engines, final SecurityMessage secureMsg)
+            throws GeneralSecurityException {
+        final var cipher = engines.gcm();
+        cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new GCMParameterSpec(GCM_TAG_BITS, secureMsg.getIv()));
+        cipher.updateAAD(associatedData(engines.aad, CryptoMode.GCM, secureMsg.getTimestamp()));
+
+        try {
+            final var head = cipher.update(secureMsg.getEncryptedContent());
+            final var tail = cipher.doFinal(secureMsg.getHmac());
+            if (head == null || head.length == 0) {
+                return tail;
+            }
+
+            final var original = Arrays.copyOf(head, head.length + tail.length);
+            System.arraycopy(tail, 0, original, head.length, tail.length);
+            return original;
+        } catch (final AEADBadTagException e) {
+            throw new CryptoException("Tag GCM inválida - mensagem pode ter sido adulterada", e);
         }
     }
 
     /**
-     * Converte long para array de bytes
+     * Dados associados do GCM: versão (1 byte) + timestamp (8 bytes), escritos
+     * no array informado
      */
-    private static byte[] longToBytes(long x) {
-        final var result = new byte[8];
-        for (var i = 7; i >= 0; i--) {
-            result[i] = (byte) (x & 0xFF);
-            x >>= 8;
+    private static byte[] associatedData(final byte[] aad, final CryptoMode mode, final long timestamp) {
+        aad[0] = (byte) mode.getVersion();
+        for (var i = 1; i <= 8; i++) {
+            aad[i] = (byte) (timestamp >>> (64 - 8 * i));
         }
-        return result;
+        return aad;
+    }
+
+    /**
+     * Gera HMAC para os componentes da mensagem
+     */
+    private static byte[] generateHmac(final Mac hmac, final byte[] encrypted, final byte[] iv,
+            final long timestamp) {
+        // O Mac volta ao estado inicial (com a chave) após cada doFinal
+
+        // HMAC(encrypted + iv + timestamp)
+        hmac.update(encrypted);
+        hmac.update(iv);
+        updateTimestamp(hmac, timestamp);
+
+        return hmac.doFinal();
+    }
+
+    private static void updateTimestamp(final Mac hmac, final long timestamp) {
+        for (var shift = 56; shift >= 0; shift -= 8) {
+            hmac.update((byte) (timestamp >>> shift));
+        }
+    }
+
+    private Engines acquire() {
+        final var engines = pool.poll();
+        return engines != null ? engines : new Engines();
+    }
+
+    private Mac newMac() {
+        final var instance = newInstance(() -> Mac.getInstance(HMAC_ALGORITHM));
+        try {
+            instance.init(hmacKey);
+            return instance;
+        } catch (final GeneralSecurityException e) {
+            log.error("Erro ao inicializar HMAC", e);
+            throw new CryptoException("Erro ao inicializar HMAC", e);
+        }
+    }
+
+    /**
+     * Usa a fonte não bloqueante do sistema quando disponível, mantendo o
+     * {@link SecureRandom} padrão como alternativa
+     */
+    private static SecureRandom newRandom() {
+        try {
+            return SecureRandom.getInstance(NON_BLOCKING_RANDOM);
+        } catch (final NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+
+    private static <T> T newInstance(final Factory<T> factory) {
+        try {
+            return factory.create();
+        } catch (final GeneralSecurityException e) {
+            log.error("Algoritmo criptográfico indisponível", e);
+            throw new CryptoException("Algoritmo criptográfico indisponível", e);
+        }
+    }
+
+    /**
+     * Conjunto de instâncias usado por uma operação de cada vez. As cifras são
+     * criadas sob demanda, conforme o modo das mensagens tratadas. Os arrays
+     * de trabalho de tamanho fixo evitam alocações na API com buffers.
+     */
+    private final class Engines {
+
+        private final SecureRandom random = newRandom();
+        private final Mac mac = newMac();
+        private final byte[] cbcIv = new byte[CBC_IV_SIZE];
+        private final byte[] gcmIv = new byte[GCM_IV_SIZE];
+        private final byte[] aad = new byte[9];
+        private final byte[] tag = new byte[HMAC_SIZE];
+        private final byte[] receivedTag = new byte[HMAC_SIZE];
+        private final ByteBuffer block = ByteBuffer.allocate(CBC_BLOCK_SIZE);
+        private Cipher cbc;
+        private Cipher cbcRaw;
+        private Cipher gcm;
+
+        private Cipher cbc() {
+            if (cbc == null) {
+                cbc = newInstance(() -> Cipher.getInstance(CBC_ALGORITHM));
+            }
+            return cbc;
+        }
+
+        private Cipher cbcRaw() {
+            if (cbcRaw == null) {
+                cbcRaw = newInstance(() -> Cipher.getInstance(CBC_RAW_ALGORITHM));
+            }
+            return cbcRaw;
+        }
+
+        private Cipher gcm() {
+            if (gcm == null) {
+                gcm = newInstance(() -> Cipher.getInstance(GCM_ALGORITHM));
+            }
+            return gcm;
+        }
+
+    }
+
+    @FunctionalInterface
+    private interface Factory<T> {
+        T create() throws GeneralSecurityException;
     }
 
 }
@@ -0,0 +1,203 @@
+package br.edu.ufersa.cc.seg.common.crypto;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+/**
+ * Codificação binária de {@link SecurityMessage} para transmissão na rede.
+ *
+ * <p>
+ * Cada quadro tem um cabeçalho fixo de {@value #HEADER_SIZE} bytes seguido
+ * dos campos de tamanho variável:
+ *
+ * <pre>
+ * versão (1) | flags (1) | tamanho IV (1) | tamanho tag (1) | tamanho conteúdo (4)
+ * timestamp (8) | IV | conteúdo cifrado | tag (HMAC ou GCM)
+ * </pre>
+ *
+ * Inteiros em big-endian. Nenhuma reflexão ou descritor de classe é trafegado.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class FrameCodec {
+
+    public static final int HEADER_SIZE = 16;
+
+    /*
+     * Posições dos campos no cabeçalho
+     */
+    public static final int VERSION_OFFSET = 0;
+    public static final int IV_LENGTH_OFFSET = 2;
+    public static final int TAG_LENGTH_OFFSET = 3;
+    public static final int CONTENT_LENGTH_OFFSET = 4;
+    public static final int TIMESTAMP_OFFSET = 8;
+
+    /**
+     * Limite do conteúdo cifrado aceito, para não alocar memória arbitrária a
+     * partir de um cabeçalho malicioso
+     */
+    public static final int MAX_CONTENT_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Flags do quadro. Nenhuma definida por enquanto.
+     */
+    public static final int NO_FLAGS = 0;
+
+    /**
+     * Escreve o quadro no fluxo, sem dar flush
+     */
+    public static void write(final DataOutputStream out, final SecurityMessage message) throws IOException {
+        final var iv = message.getIv();
+        final var content = message.getEncryptedContent();
+        final var tag = message.getHmac();
+
+        out.writeByte(message.getVersion());
+        out.writeByte(NO_FLAGS);
+        out.writeByte(iv.length);
+        out.writeByte(tag.length);
+        out.writeInt(content.length);
+        out.writeLong(message.getTimestamp());
+        out.write(iv);
+        out.write(content);
+        out.write(tag);
+    }
+
+    /**
+     * Lê um quadro completo do fluxo. Lança {@link java.io.EOFException} se o
+     * fluxo terminar antes do quadro.
+     */
+    public static SecurityMessage read(final DataInputStream in) throws IOException {
+        final var version = in.readUnsignedByte();
+        in.readUnsignedByte(); // flags
+        final var ivLength = in.readUnsignedByte();
+        final var tagLength = in.readUnsignedByte();
+        final var contentLength = checkContentLength(in.readInt());
+        final var timestamp = in.readLong();
+
+        final var iv = new byte[ivLength];
+        final var content = new byte[contentLength];
+        final var tag = new byte[tagLength];
+        in.readFully(iv);
+        in.readFully(content);
+        in.readFully(tag);
+
+        return SecurityMessage.builder()
+                .version(version)
+                .iv(iv)
+                .timestamp(timestamp)
+                .encryptedContent(content)
+                .hmac(tag)
+                .build();
+    }
+
+    /**
+     * Tamanho do quadro, em bytes, para a mensagem informada
+     */
+    public static int encodedSize(final SecurityMessage message) {
+        return HEADER_SIZE + message.getIv().length + message.getEncryptedContent().length
+                + message.getHmac().length;
+    }
+
+    /**
+     * Codifica a mensagem num array com o quadro completo
+     */
+    public static byte[] encode(final SecurityMessage message) {
+        final var buffer = ByteBuffer.allocate(encodedSize(message));
+        encode(message, buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Codifica a mensagem a partir da posição atual do buffer
+     */
+    public static void encode(final SecurityMessage message, final ByteBuffer buffer) {
+        final var iv = message.getIv();
+        final var content = message.getEncryptedContent();
+        final var tag = message.getHmac();
+
+        putHeader(buffer, message.getVersion(), iv.length, tag.length, content.length, message.getTimestamp());
+        buffer.put(iv)
+                .put(content)
+                .put(tag);
+    }
+
+    /**
+     * Escreve apenas o cabeçalho a partir da posição atual do buffer, para
+     * quem preenche os campos variáveis diretamente
+     */
+    public static void putHeader(final ByteBuffer buffer, final int version, final int ivLength,
+            final int tagLength, final int contentLength, final long timestamp) {
+        buffer.put((byte) version)
+                .put((byte) NO_FLAGS)
+                .put((byte) ivLength)
+                .put((byte) tagLength)
+                .putInt(contentLength)
+                .putLong(timestamp);
+    }
+
+    /**
+     * Decodifica um quadro completo a partir da posição atual do buffer
+     */
+    public static SecurityMessage decode(final ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_SIZE) {
+            throw new StreamCorruptedException("Quadro incompleto");
+        }
+
+        final var version = Byte.toUnsignedInt(buffer.get());
+        buffer.get(); // flags
+        final var iv = new byte[Byte.toUnsignedInt(buffer.get())];
+        final var tag = new byte[Byte.toUnsignedInt(buffer.get())];
+        final var contentLength = checkContentLength(buffer.getInt());
+        final var timestamp = buffer.getLong();
+
+        if (buffer.remaining() < iv.length + contentLength + tag.length) {
+            throw new StreamCorruptedException("Quadro incompleto");
+        }
+
+        final var content = new byte[contentLength];
+        buffer.get(iv).get(content).get(tag);
+
+        return SecurityMessage.builder()
+                .version(version)
+                .iv(iv)
+                .timestamp(timestamp)
+                .encryptedContent(content)
+                .hmac(tag)
+                .build();
+    }
+
+    /**
+     * Tamanho total do quadro cujo cabeçalho começa na posição informada, ou -1
+     * se o cabeçalho ainda não estiver completo no buffer
+     */
+    public static int frameLength(final ByteBuffer buffer, final int offset) throws IOException {
+        if (buffer.limit() - offset < HEADER_SIZE) {
+            return -1;
+        }
+
+        final var ivLength = Byte.toUnsignedInt(buffer.get(offset + IV_LENGTH_OFFSET));
+        final var tagLength = Byte.toUnsignedInt(buffer.get(offset + TAG_LENGTH_OFFSET));
+        return HEADER_SIZE + ivLength + contentLength(buffer, offset) + tagLength;
+    }
+
+    /**
+     * Tamanho do conteúdo cifrado do quadro cujo cabeçalho (completo) começa
+     * na posição informada
+     */
+    public static int contentLength(final ByteBuffer buffer, final int offset) throws IOException {
+        return checkContentLength(buffer.getInt(offset + CONTENT_LENGTH_OFFSET));
+    }
+
+    private static int checkContentLength(final int length) throws IOException {
+        if (length < 0 || length > MAX_CONTENT_SIZE) {
+            throw new StreamCorruptedException("Tamanho de conteúdo inválido: " + length);
+        }
+        return length;
+    }
+
+}
@@ -1,5 +1,6 @@
 package br.edu.ufersa.cc.seg.common.crypto;
 
+import java.io.Serial;
 import java.io.Serializable;
 
 import lombok.Builder;
@@ -13,13 +14,23 @@ import lombok.Data;
 @Builder
 public class SecurityMessage implements Serializable {
 
+    // 2: campo version, incluído com o modo GCM
+    @Serial
+    private static final long serialVersionUID = 2L;
+
+    /**
+     * Versão do formato, que identifica o {@link CryptoMode} usado
+     */
+    @Builder.Default
+    private int version = CryptoMode.CBC_HMAC.getVersion();
+
     /**
      * Conteúdo cifrado com algoritmo simétrico
      */
     private byte[] encryptedContent;
 
     /**
-     * HMAC para integridade e autenticidade
+     * HMAC (ou tag de autenticação do GCM) para integridade e autenticidade
      */
     private byte[] hmac;
 
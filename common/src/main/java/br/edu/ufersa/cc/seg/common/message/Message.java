@@ -0,0 +1,20 @@
+package br.edu.ufersa.cc.seg.common.message;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import br.edu.ufersa.cc.seg.common.utils.MessageType;
+
+/**
+ * Mensagem tipada de um protocolo. Cada protocolo declara uma interface
+ * selada com suas mensagens (records) e o nome de cada uma no campo
+ * {@code "type"} do JSON.
+ */
+public interface Message {
+
+    /**
+     * Tipo da mensagem, usado para escolher o tratador
+     */
+    @JsonIgnore
+    MessageType type();
+
+}
@@ -0,0 +1,60 @@
+package br.edu.ufersa.cc.seg.common.message;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.exc.InvalidTypeIdException;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+/**
+ * Converte as mensagens de um protocolo de e para JSON, direto entre bytes e
+ * records, sem montar a árvore ({@code JsonNode}) intermediária.
+ *
+ * <p>
+ * O formato na rede é o mesmo de antes: um objeto com o campo
+ * {@code "type"} seguido dos campos da mensagem. Campos desconhecidos são
+ * ignorados; o tipo e os campos enumerados são aceitos em maiúsculas ou
+ * minúsculas.
+ */
+public class MessageCodec<M extends Message> {
+
+    private static final JsonMapper MAPPER = JsonMapper.builder()
+            .enable(MapperFeature.ACCEPT_CASE_INSENSITIVE_VALUES)
+            .enable(MapperFeature.ACCEPT_CASE_INSENSITIVE_ENUMS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
+            .build();
+
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+
+    /**
+     * Cria o codec para a interface que reúne as mensagens do protocolo
+     */
+    public MessageCodec(final Class<M> protocol) {
+        this.reader = MAPPER.readerFor(protocol);
+        this.writer = MAPPER.writerFor(protocol);
+    }
+
+    public byte[] encode(final M message) throws JsonProcessingException {
+        return writer.writeValueAsBytes(message);
+    }
+
+    /**
+     * Lê a mensagem. Lança {@link UnknownMessageTypeException} se o tipo
+     * estiver ausente ou não pertencer ao protocolo.
+     */
+    public M decode(final byte[] json) throws IOException {
+        try {
+            return reader.readValue(json);
+        } catch (final InvalidTypeIdException e) {
+            throw new UnknownMessageTypeException(e.getTypeId(), e);
+        }
+    }
+
+}
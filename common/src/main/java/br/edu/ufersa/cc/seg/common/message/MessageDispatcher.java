@@ -0,0 +1,105 @@
+package br.edu.ufersa.cc.seg.common.message;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+import br.edu.ufersa.cc.seg.common.network.SecureMessageHandler;
+import br.edu.ufersa.cc.seg.common.network.SecureMessaging;
+import br.edu.ufersa.cc.seg.common.utils.MessageType;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Tratador que decodifica as mensagens de um protocolo e as entrega ao
+ * tratador registrado para o seu {@link MessageType}.
+ *
+ * <pre>
+ * new MessageDispatcher&lt;&gt;(codec)
+ *         .on(MessageType.QUERY, Query.class, this::handleQuery)
+ *         .onUnknown(this::handleUnknown);
+ * </pre>
+ */
+@Slf4j
+public class MessageDispatcher<M extends Message> implements SecureMessageHandler {
+
+    @Getter
+    private final MessageCodec<M> codec;
+    private final Map<MessageType, TypedHandler<M>> handlers = new EnumMap<>(MessageType.class);
+    private UnknownHandler unknownHandler = (connection, type) -> log.warn("Tipo de mensagem desconhecido: {}", type);
+    private M rejectedReply;
+
+    public MessageDispatcher(final MessageCodec<M> codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * Registra o tratador das mensagens do tipo informado
+     */
+    public <T extends M> MessageDispatcher<M> on(final MessageType type, final Class<T> messageClass,
+            final TypedHandler<? super T> handler) {
+        handlers.put(type, (connection, message) -> handler.handle(connection, messageClass.cast(message)));
+        return this;
+    }
+
+    /**
+     * Define o que fazer com mensagens de tipo ausente, desconhecido ou sem
+     * tratador (por padrão, apenas registra um aviso)
+     */
+    public MessageDispatcher<M> onUnknown(final UnknownHandler handler) {
+        this.unknownHandler = handler;
+        return this;
+    }
+
+    /**
+     * Define a resposta enviada quando o servidor descarta uma mensagem por
+     * sobrecarga (por padrão, nenhuma)
+     */
+    public MessageDispatcher<M> onRejected(final M reply) {
+        this.rejectedReply = reply;
+        return this;
+    }
+
+    /**
+     * Codifica e envia a mensagem pela conexão
+     */
+    public void send(final SecureMessaging connection, final M message) throws IOException {
+        connection.sendSecure(codec.encode(message));
+    }
+
+    @Override
+    public void onMessage(final SecureMessaging connection, final byte[] message) throws IOException {
+        final M decoded;
+        try {
+            decoded = codec.decode(message);
+        } catch (final UnknownMessageTypeException e) {
+            unknownHandler.handle(connection, e.getTypeId());
+            return;
+        }
+
+        final var handler = handlers.get(decoded.type());
+        if (handler == null) {
+            unknownHandler.handle(connection, decoded.type().name());
+        } else {
+            handler.handle(connection, decoded);
+        }
+    }
+
+    @Override
+    public void onRejected(final SecureMessaging connection, final byte[] message) throws IOException {
+        if (rejectedReply != null) {
+            send(connection, rejectedReply);
+        }
+    }
+
+    @FunctionalInterface
+    public interface TypedHandler<T> {
+        void handle(SecureMessaging connection, T message) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface UnknownHandler {
+        void handle(SecureMessaging connection, String type) throws IOException;
+    }
+
+}
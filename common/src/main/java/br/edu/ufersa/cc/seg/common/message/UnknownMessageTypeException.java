@@ -0,0 +1,20 @@
+package br.edu.ufersa.cc.seg.common.message;
+
+import java.io.IOException;
+
+import lombok.Getter;
+
+/**
+ * Mensagem com tipo ausente ou desconhecido pelo protocolo
+ */
+@Getter
+public class UnknownMessageTypeException extends IOException {
+
+    private final String typeId;
+
+    public UnknownMessageTypeException(final String typeId, final Throwable cause) {
+        super("Tipo de mensagem desconhecido: " + typeId, cause);
+        this.typeId = typeId;
+    }
+
+}
@@ -0,0 +1,49 @@
+package br.edu.ufersa.cc.seg.common.network;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limita as requisições tratadas ao mesmo tempo. Quem excede o limite espera
+ * numa fila de tamanho máximo; com a fila cheia, a requisição é rejeitada.
+ */
+class AdmissionControl {
+
+    private final Semaphore permits;
+    private final int maxQueued;
+    private final ServerMetrics metrics;
+
+    AdmissionControl(final int maxInFlight, final int maxQueued, final ServerMetrics metrics) {
+        this.permits = new Semaphore(maxInFlight);
+        this.maxQueued = maxQueued;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Obtém uma vaga, esperando na fila se preciso. Retorna {@code false} se a
+     * requisição deve ser descartada.
+     */
+    boolean acquire() throws InterruptedException {
+        if (!permits.tryAcquire()) {
+            if (metrics.queued.incrementAndGet() > maxQueued) {
+                metrics.queued.decrementAndGet();
+                metrics.rejected.increment();
+                return false;
+            }
+
+            try {
+                permits.acquire();
+            } finally {
+                metrics.queued.decrementAndGet();
+            }
+        }
+
+        metrics.inFlight.incrementAndGet();
+        return true;
+    }
+
+    void release() {
+        metrics.inFlight.decrementAndGet();
+        permits.release();
+    }
+
+}
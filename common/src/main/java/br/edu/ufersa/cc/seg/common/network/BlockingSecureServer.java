@@ -0,0 +1,131 @@
+package br.edu.ufersa.cc.seg.common.network;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+
+import br.edu.ufersa.cc.seg.common.crypto.CryptoException;
+import br.edu.ufersa.cc.seg.common.crypto.CryptoService;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Servidor com sockets bloqueantes: cada conexão aceita é atendida por uma
+ * thread virtual própria, que prepara os fluxos e recebe mensagens até o
+ * cliente desconectar. A thread de aceite apenas aceita sockets.
+ *
+ * <p>
+ * O tratamento das mensagens passa por um controle de admissão: no máximo
+ * {@code maxInFlight} requisições ao mesmo tempo e {@code maxQueued} à
+ * espera. Excedido isso, a requisição é descartada e a conexão, encerrada.
+ * Requisições correlacionadas são despachadas por {@link MultiplexedHandler},
+ * também limitadas a {@code maxInFlight}.
+ */
+@Slf4j
+public class BlockingSecureServer implements SecureServer {
+
+    private final ServerSocket serverSocket;
+    private final CryptoService cryptoService;
+    private final AdmissionControl admission;
+    private final int maxInFlight;
+
+    @Getter
+    private final ServerMetrics metrics = new ServerMetrics();
+
+    public BlockingSecureServer(final int port, final CryptoService cryptoService, final int maxInFlight,
+            final int maxQueued) throws IOException {
+        this.serverSocket = new ServerSocket(port);
+        this.cryptoService = cryptoService;
+        this.admission = new AdmissionControl(maxInFlight, maxQueued, metrics);
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    public void start(final SecureMessageHandler handler) throws IOException {
+        final var dispatcher = new MultiplexedHandler(handler, maxInFlight);
+        final var threads = Thread.ofVirtual().name("secure-server-" + getPort() + "-", 0);
+
+        try {
+            // Fica ouvindo novos clientes
+            while (!serverSocket.isClosed()) {
+                // Aceita nova conexão
+                final var socket = serverSocket.accept();
+
+                // Delega uma nova thread virtual para atender
+                threads.start(() -> serve(socket, dispatcher));
+            }
+        } catch (final SocketException e) {
+            if (!serverSocket.isClosed()) {
+                throw e;
+            }
+        }
+    }
+
+    private void serve(final Socket socket, final SecureMessageHandler handler) {
+        final SecureChannel messenger;
+        try {
+            messenger = new SecureTcpMessaging(socket, cryptoService);
+        } catch (final IOException e) {
+            log.error("Erro ao preparar conexão: {}", e.getMessage());
+            closeQuietly(socket);
+            return;
+        }
+
+        metrics.activeConnections.incrementAndGet();
+        try {
+            while (true) {
+                final var message = messenger.receiveSecure();
+
+                if (!admission.acquire()) {
+                    log.warn("Servidor sobrecarregado, descartando requisição ({})", metrics);
+                    handler.onRejected(messenger, message);
+                    break;
+                }
+                try {
+                    handler.onMessage(messenger, message);
+                } finally {
+                    admission.release();
+                }
+            }
+        } catch (final EOFException e) {
+            log.debug("Cliente desconectado");
+        } catch (final IOException e) {
+            log.error("Cliente desconectado ou erro de E/S: {}", e.getMessage());
+        } catch (final CryptoException e) {
+            log.error("Erro de criptografia: {}", e.getMessage());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final Exception e) {
+            log.error("Erro processando cliente", e);
+        } finally {
+            metrics.activeConnections.decrementAndGet();
+            handler.onClose(messenger);
+            try {
+                messenger.close();
+            } catch (final IOException e) {
+                // Ignora
+            }
+        }
+    }
+
+    private static void closeQuietly(final Socket socket) {
+        try {
+            socket.close();
+        } catch (final IOException e) {
+            // Ignora
+        }
+    }
+
+    @Override
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+}
@@ -0,0 +1,48 @@
+package br.edu.ufersa.cc.seg.common.network;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+/**
+ * Envelope que associa uma mensagem a um identificador de correlação, para
+ * que várias requisições compartilhem a mesma conexão e sejam respondidas
+ * fora de ordem.
+ *
+ * <pre>
+ * marcador 0x00 (1) | identificador (8) | conteúdo
+ * </pre>
+ *
+ * O envelope vai dentro do conteúdo cifrado, então o identificador também é
+ * autenticado. Mensagens JSON nunca começam com o byte 0x00, o que permite
+ * distinguir envelopes de mensagens comuns.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class CorrelationEnvelope {
+
+    public static final byte MARKER = 0x00;
+    public static final int HEADER_SIZE = 1 + Long.BYTES;
+
+    public static byte[] wrap(final long correlationId, final byte[] message) {
+        return ByteBuffer.allocate(HEADER_SIZE + message.length)
+                .put(MARKER)
+                .putLong(correlationId)
+                .put(message)
+                .array();
+    }
+
+    public static boolean isEnvelope(final byte[] message) {
+        return message.length >= HEADER_SIZE && message[0] == MARKER;
+    }
+
+    public static long correlationId(final byte[] envelope) {
+        return ByteBuffer.wrap(envelope, 1, Long.BYTES).getLong();
+    }
+
+    public static byte[] content(final byte[] envelope) {
+        return Arrays.copyOfRange(envelope, HEADER_SIZE, envelope.length);
+    }
+
+}
@@ -0,0 +1,324 @@
+package br.edu.ufersa.cc.seg.common.network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import br.edu.ufersa.cc.seg.common.crypto.CryptoException;
+import br.edu.ufersa.cc.seg.common.crypto.CryptoService;
+import br.edu.ufersa.cc.seg.common.crypto.FrameCodec;
+import br.edu.ufersa.cc.seg.common.utils.Settings;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cliente de requisições avulsas por UDP ({@link SecureDatagramServer}): cada
+ * requisição vai cifrada num único datagrama, sem conexão, e a resposta
+ * volta noutro, associada pelo {@link CorrelationEnvelope}. Várias
+ * requisições podem estar pendentes ao mesmo tempo.
+ *
+ * <p>
+ * Sem resposta no prazo, o mesmo datagrama é reenviado, com o prazo dobrando
+ * a cada tentativa; esgotadas as tentativas, a requisição falha com
+ * {@link TimeoutException}. Respostas repetidas por causa de um reenvio são
+ * descartadas.
+ *
+ * <p>
+ * Requisições grandes demais para um datagrama, e as que o servidor avisa
+ * que têm resposta grande demais, são repetidas por TCP: por padrão numa
+ * {@link MultiplexedClient} aberta na primeira vez que for preciso, ou pelo
+ * caminho informado no construtor.
+ */
+@Slf4j
+public class DatagramClient implements Closeable {
+
+    /**
+     * Chave de configuração do prazo (ms) da primeira tentativa; cada reenvio
+     * espera o dobro da anterior
+     */
+    public static final String TIMEOUT_SETTING = "client.udp.timeout-ms";
+
+    /**
+     * Chave de configuração da quantidade de reenvios antes de a requisição
+     * falhar
+     */
+    public static final String RETRIES_SETTING = "client.udp.retries";
+
+    // Maior datagrama UDP possível
+    private static final int MAX_DATAGRAM_SIZE = 65_535;
+
+    private final String host;
+    private final int port;
+    private final CryptoService cryptoService;
+    private final DatagramChannel channel;
+    private final Function<byte[], CompletableFuture<byte[]>> fallback;
+    private final long timeout;
+    private final int retries;
+    private final int maxPayload;
+
+    private final ScheduledThreadPoolExecutor timers;
+    private final AtomicLong nextId = new AtomicLong();
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    private final LongAdder retransmits = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private volatile boolean closed;
+
+    // Conexão TCP própria, usada quando não há caminho alternativo informado
+    private MultiplexedClient tcp;
+
+    /**
+     * Requisição à espera de resposta, com o quadro já cifrado para os
+     * reenvios
+     */
+    private static final class Pending {
+
+        private final byte[] message;
+        private final byte[] frame;
+        private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+        // Próximo reenvio (ou o fim do prazo), cancelado quando a resposta chega
+        private volatile ScheduledFuture<?> timer;
+
+        private Pending(final byte[] message, final byte[] frame) {
+            this.message = message;
+            this.frame = frame;
+        }
+
+    }
+
+    /**
+     * Cria o cliente com os prazos configurados ({@value #TIMEOUT_SETTING},
+     * {@value #RETRIES_SETTING}), repetindo por uma conexão TCP própria o que
+     * não couber num datagrama
+     */
+    public DatagramClient(final String host, final int port, final CryptoService cryptoService)
+            throws IOException {
+        this(host, port, cryptoService, null);
+    }
+
+    /**
+     * Cria o cliente com os prazos configurados, repetindo pelo
+     * {@code fallback} informado o que não couber num datagrama
+     */
+    public DatagramClient(final String host, final int port, final CryptoService cryptoService,
+            final Function<byte[], CompletableFuture<byte[]>> fallback) throws IOException {
+        this(host, port, cryptoService, fallback, Duration.ofMillis(Settings.getLong(TIMEOUT_SETTING, 200)),
+                Settings.getInt(RETRIES_SETTING, 3));
+    }
+
+    public DatagramClient(final String host, final int port, final CryptoService cryptoService,
+            final Function<byte[], CompletableFuture<byte[]>> fallback, final Duration timeout, final int retries)
+            throws IOException {
+        this.host = host;
+        this.port = port;
+        this.cryptoService = cryptoService;
+        this.fallback = fallback == null ? this::requestTcp : fallback;
+        this.timeout = timeout.toMillis();
+        this.retries = retries;
+        this.maxPayload = SecureServers.maxDatagram();
+
+        this.timers = new ScheduledThreadPoolExecutor(1,
+                Thread.ofPlatform().name("datagram-timer").daemon().factory());
+        this.timers.setRemoveOnCancelPolicy(true);
+
+        // Conectado: só recebe datagramas do servidor
+        this.channel = DatagramChannel.open();
+        this.channel.connect(new InetSocketAddress(host, port));
+        Thread.ofVirtual().name("datagram-reader").start(this::readLoop);
+    }
+
+    /**
+     * Envia a requisição e devolve a resposta futura
+     */
+    public CompletableFuture<byte[]> request(final byte[] message) {
+        final var id = nextId.incrementAndGet();
+        if (closed) {
+            return CompletableFuture.failedFuture(new IOException("Cliente encerrado"));
+        }
+
+        final byte[] frame;
+        try {
+            frame = cryptoService.seal(CorrelationEnvelope.wrap(id, message));
+        } catch (final CryptoException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (frame.length > maxPayload) {
+            fallbacks.increment();
+            return fallback.apply(message);
+        }
+
+        final var request = new Pending(message, frame);
+        pending.put(id, request);
+        request.result.whenComplete((result, error) -> {
+            pending.remove(id, request);
+            final var timer = request.timer;
+            if (timer != null) {
+                timer.cancel(false);
+            }
+        });
+        transmit(id, request, 0);
+        return request.result;
+    }
+
+    /**
+     * Datagramas reenviados por falta de resposta no prazo
+     */
+    public long getRetransmits() {
+        return retransmits.sum();
+    }
+
+    /**
+     * Requisições repetidas por TCP por não caberem num datagrama
+     */
+    public long getFallbacks() {
+        return fallbacks.sum();
+    }
+
+    /**
+     * Quantidade de requisições aguardando resposta por UDP
+     */
+    public int pendingRequests() {
+        return pending.size();
+    }
+
+    private void transmit(final long id, final Pending request, final int attempt) {
+        // Respondida, ou já repetida por TCP
+        if (pending.get(id) != request) {
+            return;
+        }
+        if (attempt > 0) {
+            retransmits.increment();
+        }
+
+        try {
+            channel.write(ByteBuffer.wrap(request.frame));
+        } catch (final PortUnreachableException e) {
+            // Servidor ainda não escuta: o próximo reenvio tenta de novo
+        } catch (final IOException e) {
+            request.result.completeExceptionally(e);
+            return;
+        }
+
+        final var delay = timeout << attempt;
+        try {
+            request.timer = attempt < retries
+                    ? timers.schedule(() -> transmit(id, request, attempt + 1), delay, TimeUnit.MILLISECONDS)
+                    : timers.schedule(() -> expire(id, request), delay, TimeUnit.MILLISECONDS);
+        } catch (final RejectedExecutionException e) {
+            request.result.completeExceptionally(new IOException("Cliente encerrado"));
+            return;
+        }
+        // A resposta pode ter chegado antes de o reenvio ser agendado
+        if (request.result.isDone()) {
+            request.timer.cancel(false);
+        }
+    }
+
+    private void expire(final long id, final Pending request) {
+        if (pending.get(id) == request) {
+            request.result.completeExceptionally(
+                    new TimeoutException("Sem resposta após " + (retries + 1) + " tentativas"));
+        }
+    }
+
+    private void readLoop() {
+        final var buffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+        try {
+            while (!closed) {
+                buffer.clear();
+                try {
+                    channel.read(buffer);
+                } catch (final PortUnreachableException e) {
+                    continue;
+                }
+                buffer.flip();
+
+                final byte[] message;
+                try {
+                    message = cryptoService.decrypt(FrameCodec.decode(buffer));
+                } catch (final IOException | CryptoException e) {
+                    log.debug("Datagrama inválido descartado: {}", e.getMessage());
+                    continue;
+                }
+                if (!CorrelationEnvelope.isEnvelope(message)) {
+                    continue;
+                }
+
+                final var id = CorrelationEnvelope.correlationId(message);
+                final var request = pending.get(id);
+                if (request == null) {
+                    log.debug("Resposta repetida ou expirada descartada");
+                    continue;
+                }
+
+                final var content = CorrelationEnvelope.content(message);
+                if (content.length > 0) {
+                    request.result.complete(content);
+                } else if (pending.remove(id, request)) {
+                    // Envelope vazio: a resposta não cabe num datagrama
+                    fallbacks.increment();
+                    fallback.apply(request.message).whenComplete((result, error) -> {
+                        if (error != null) {
+                            request.result.completeExceptionally(error);
+                        } else {
+                            request.result.complete(result);
+                        }
+                    });
+                }
+            }
+        } catch (final ClosedChannelException e) {
+            // Encerrado por close()
+        } catch (final IOException e) {
+            log.error("Recepção de datagramas encerrada: {}", e.getMessage());
+        } finally {
+            closed = true;
+            final var cause = new IOException("Cliente encerrado");
+            pending.values().forEach(request -> request.result.completeExceptionally(cause));
+        }
+    }
+
+    private CompletableFuture<byte[]> requestTcp(final byte[] message) {
+        try {
+            return tcp().request(message);
+        } catch (final IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private synchronized MultiplexedClient tcp() throws IOException {
+        if (closed) {
+            throw new IOException("Cliente encerrado");
+        }
+        if (tcp == null || !tcp.isOpen()) {
+            tcp = new MultiplexedClient(host, port, cryptoService);
+        }
+        return tcp;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        channel.close();
+        timers.shutdownNow();
+        synchronized (this) {
+            if (tcp != null) {
+                tcp.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,165 @@
+package br.edu.ufersa.cc.seg.common.network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import br.edu.ufersa.cc.seg.common.crypto.CryptoException;
+import br.edu.ufersa.cc.seg.common.crypto.CryptoService;
+import br.edu.ufersa.cc.seg.common.utils.Settings;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cliente que mantém várias requisições pendentes numa única conexão. Cada
+ * requisição vai num {@link CorrelationEnvelope} e é concluída quando chega a
+ * resposta com o mesmo identificador, em qualquer ordem.
+ *
+ * <p>
+ * Uma thread virtual lê as respostas continuamente. Mensagens sem envelope
+ * (como notificações do servidor) são entregues ao ouvinte registrado em
+ * {@link #onUnsolicited}. Se a conexão cair, todas as requisições pendentes
+ * falham e o cliente fica fechado.
+ */
+@Slf4j
+public class MultiplexedClient implements Closeable {
+
+    /**
+     * Chave de configuração do tempo (ms) padrão de espera por uma resposta
+     */
+    public static final String REQUEST_TIMEOUT_SETTING = "client.request-timeout-ms";
+
+    private final SecureChannel connection;
+    private final Duration defaultTimeout;
+    private final AtomicLong nextId = new AtomicLong();
+    private final Map<Long, CompletableFuture<byte[]>> pending = new ConcurrentHashMap<>();
+    private volatile Consumer<byte[]> unsolicitedListener = message -> log.debug("Mensagem sem requisição descartada");
+    private volatile Runnable closeListener = () -> {
+    };
+    private volatile boolean closed;
+    private final AtomicBoolean closeNotified = new AtomicBoolean();
+
+    public MultiplexedClient(final String host, final int port, final CryptoService cryptoService)
+            throws IOException {
+        this(new SecureTcpMessaging(host, port, cryptoService),
+                Duration.ofMillis(Settings.getLong(REQUEST_TIMEOUT_SETTING, 5_000)));
+    }
+
+    public MultiplexedClient(final SecureChannel connection, final Duration defaultTimeout) {
+        this.connection = connection;
+        this.defaultTimeout = defaultTimeout;
+        Thread.ofVirtual().name("mux-reader").start(this::readLoop);
+    }
+
+    /**
+     * Envia a requisição e devolve a resposta futura, com o tempo de espera
+     * padrão
+     */
+    public CompletableFuture<byte[]> request(final byte[] message) {
+        return request(message, defaultTimeout);
+    }
+
+    /**
+     * Envia a requisição e devolve a resposta futura. A resposta falha com
+     * {@link java.util.concurrent.TimeoutException} se não chegar no prazo.
+     */
+    public CompletableFuture<byte[]> request(final byte[] message, final Duration timeout) {
+        final var id = nextId.incrementAndGet();
+        final var response = new CompletableFuture<byte[]>();
+        if (closed) {
+            response.completeExceptionally(new IOException("Conexão encerrada"));
+            return response;
+        }
+
+        pending.put(id, response);
+        response.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((result, error) -> pending.remove(id));
+
+        try {
+            connection.sendSecure(CorrelationEnvelope.wrap(id, message));
+        } catch (final IOException | CryptoException e) {
+            response.completeExceptionally(e);
+        }
+        return response;
+    }
+
+    /**
+     * Define quem recebe as mensagens que chegam sem envelope
+     */
+    public void onUnsolicited(final Consumer<byte[]> listener) {
+        this.unsolicitedListener = listener;
+    }
+
+    /**
+     * Define quem é avisado quando a conexão é encerrada, por queda ou por
+     * {@link #close()}
+     */
+    public void onClose(final Runnable listener) {
+        this.closeListener = listener;
+    }
+
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Quantidade de requisições aguardando resposta
+     */
+    public int pendingRequests() {
+        return pending.size();
+    }
+
+    private void readLoop() {
+        try {
+            while (!closed) {
+                final var message = connection.receiveSecure();
+                if (!CorrelationEnvelope.isEnvelope(message)) {
+                    unsolicitedListener.accept(message);
+                    continue;
+                }
+
+                final var response = pending.get(CorrelationEnvelope.correlationId(message));
+                if (response != null) {
+                    response.complete(CorrelationEnvelope.content(message));
+                } else {
+                    log.debug("Resposta para requisição expirada ou desconhecida descartada");
+                }
+            }
+        } catch (final IOException | CryptoException e) {
+            if (!closed) {
+                log.error("Conexão multiplexada encerrada: {}", e.getMessage());
+            }
+            failPending(e);
+        } catch (final Exception e) {
+            log.error("Erro lendo respostas", e);
+            failPending(e);
+        }
+    }
+
+    private void failPending(final Exception cause) {
+        closed = true;
+        for (final var response : pending.values()) {
+            response.completeExceptionally(cause);
+        }
+        pending.clear();
+
+        // Tanto close() quanto a thread de leitura passam por aqui
+        if (closeNotified.compareAndSet(false, true)) {
+            closeListener.run();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        connection.close();
+        failPending(new IOException("Conexão encerrada"));
+    }
+
+}
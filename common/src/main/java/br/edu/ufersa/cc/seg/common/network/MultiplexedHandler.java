@@ -0,0 +1,181 @@
+package br.edu.ufersa.cc.seg.common.network;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import br.edu.ufersa.cc.seg.common.crypto.CryptoException;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Decorador de {@link SecureMessageHandler} que atende requisições em
+ * {@link CorrelationEnvelope} concorrentemente, cada uma numa thread virtual,
+ * permitindo respostas fora de ordem na mesma conexão.
+ *
+ * <p>
+ * O tratador recebe o conteúdo sem envelope e uma visão da conexão cuja
+ * primeira mensagem enviada é a resposta, com o mesmo identificador da
+ * requisição; envios seguintes (notificações) saem sem envelope. Mensagens
+ * sem envelope são tratadas como antes, na thread da conexão.
+ *
+ * <p>
+ * No máximo {@code maxConcurrent} requisições correlacionadas rodam ao mesmo
+ * tempo; as demais esperam numa fila, na ordem de chegada, sem ocupar a
+ * thread da conexão. Com outras {@code maxConcurrent} na fila, a requisição
+ * é recusada: o cliente recebe o erro de
+ * {@link SecureMessageHandler#onRejected} e a conexão segue aberta.
+ */
+@Slf4j
+public class MultiplexedHandler implements SecureMessageHandler {
+
+    private final SecureMessageHandler delegate;
+    private final Semaphore permits;
+    private final int maxQueued;
+    private final Queue<Request> waiting = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * Requisição correlacionada à espera de uma vaga
+     */
+    private record Request(SecureMessaging connection, CorrelatedMessaging correlated, byte[] content) {
+    }
+
+    public MultiplexedHandler(final SecureMessageHandler delegate, final int maxConcurrent) {
+        this.delegate = delegate;
+        this.permits = new Semaphore(maxConcurrent);
+        this.maxQueued = maxConcurrent;
+    }
+
+    @Override
+    public void onMessage(final SecureMessaging connection, final byte[] message) throws IOException {
+        if (!CorrelationEnvelope.isEnvelope(message)) {
+            delegate.onMessage(connection, message);
+            return;
+        }
+
+        final var correlated = new CorrelatedMessaging(connection, CorrelationEnvelope.correlationId(message));
+        final var content = CorrelationEnvelope.content(message);
+
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            log.warn("Fila de requisições cheia, recusando a requisição {}", correlated.correlationId);
+            delegate.onRejected(correlated, content);
+            return;
+        }
+        waiting.add(new Request(connection, correlated, content));
+        drain();
+    }
+
+    /**
+     * Inicia as requisições da fila enquanto houver vaga. Chamado depois de
+     * cada entrada na fila e de cada vaga liberada, de modo que nenhuma fica
+     * esperando com vaga livre.
+     */
+    private void drain() {
+        while (!waiting.isEmpty() && permits.tryAcquire()) {
+            final var request = waiting.poll();
+            if (request == null) {
+                permits.release();
+                continue;
+            }
+            queued.decrementAndGet();
+            Thread.startVirtualThread(() -> {
+                try {
+                    run(request);
+                } finally {
+                    permits.release();
+                    drain();
+                }
+            });
+        }
+    }
+
+    private void run(final Request request) {
+        final var correlationId = request.correlated().correlationId;
+        try {
+            delegate.onMessage(request.correlated(), request.content());
+        } catch (final IOException e) {
+            log.error("Erro de E/S ao tratar requisição {}: {}", correlationId, e.getMessage());
+            closeQuietly(request.connection());
+        } catch (final CryptoException e) {
+            log.error("Erro de criptografia na requisição {}: {}", correlationId, e.getMessage());
+        } catch (final Exception e) {
+            log.error("Erro ao tratar requisição {}", correlationId, e);
+        }
+    }
+
+    @Override
+    public void onRejected(final SecureMessaging connection, final byte[] message) throws IOException {
+        // O erro leva o identificador, para a requisição falhar já no cliente
+        if (CorrelationEnvelope.isEnvelope(message)) {
+            delegate.onRejected(new CorrelatedMessaging(connection, CorrelationEnvelope.correlationId(message)),
+                    CorrelationEnvelope.content(message));
+        } else {
+            delegate.onRejected(connection, message);
+        }
+    }
+
+    @Override
+    public void onClose(final SecureMessaging connection) {
+        delegate.onClose(connection);
+    }
+
+    private static void closeQuietly(final SecureMessaging connection) {
+        try {
+            connection.close();
+        } catch (final IOException e) {
+            // Ignora
+        }
+    }
+
+    /**
+     * Visão da conexão para uma requisição correlacionada
+     */
+    private static final class CorrelatedMessaging implements SecureMessaging {
+
+        private final SecureMessaging connection;
+        private final long correlationId;
+        private final AtomicBoolean replied = new AtomicBoolean();
+
+        private CorrelatedMessaging(final SecureMessaging connection, final long correlationId) {
+            this.connection = connection;
+            this.correlationId = correlationId;
+        }
+
+        @Override
+        public void sendSecure(final byte[] message) throws IOException {
+            if (replied.compareAndSet(false, true)) {
+                connection.sendSecure(CorrelationEnvelope.wrap(correlationId, message));
+            } else {
+                connection.sendSecure(message);
+            }
+        }
+
+        @Override
+        public SecureMessaging connection() {
+            return connection;
+        }
+
+        @Override
+        public long pendingBytes() {
+            return connection.pendingBytes();
+        }
+
+        @Override
+        public boolean awaitPendingBelow(final long bytes, final long timeout, final TimeUnit unit)
+                throws IOException {
+            return connection.awaitPendingBelow(bytes, timeout, unit);
+        }
+
+        @Override
+        public void close() throws IOException {
+            connection.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,570 @@
+package br.edu.ufersa.cc.seg.common.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import br.edu.ufersa.cc.seg.common.crypto.CryptoException;
+import br.edu.ufersa.cc.seg.common.crypto.CryptoService;
+import br.edu.ufersa.cc.seg.common.crypto.FrameCodec;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Servidor não bloqueante baseado em seletores. A thread que chama
+ * {@link #start} aceita conexões e as distribui entre um pequeno conjunto de
+ * laços de eventos, que fazem o enquadramento e a decifragem das mensagens.
+ *
+ * <p>
+ * O tratador não roda no laço de eventos: cada conexão entrega suas
+ * mensagens, em ordem, numa thread virtual própria, e um tratador que
+ * bloqueia (ex.: esperando o disco) só atrasa a sua conexão. Com
+ * {@value #MAX_INBOUND} mensagens à espera, a conexão deixa de ser lida até o
+ * tratador alcançá-las. Requisições correlacionadas rodam concorrentemente
+ * ({@link MultiplexedHandler}), até {@code maxInFlight} ao mesmo tempo.
+ *
+ * <p>
+ * As respostas são escritas sem bloquear o laço; o que o socket não aceita
+ * na hora fica numa fila. Com mais de {@code maxOutbound} bytes na fila, quem
+ * envia espera ela escoar e, se o par não ler por
+ * {@value #SEND_TIMEOUT_SECONDS} s, a conexão é encerrada.
+ *
+ * <p>
+ * Cada conexão reaproveita seus buffers: os quadros são decifrados direto do
+ * buffer de leitura e cifrados direto no buffer de escrita, de modo que a
+ * única alocação por mensagem é o array entregue ao tratador. Buffers que
+ * cresceram para um quadro grande voltam ao tamanho inicial depois dele.
+ */
+@Slf4j
+public class NioSecureServer implements SecureServer {
+
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    // Mensagens recebidas à espera do tratador antes de a conexão parar de ser lida
+    private static final int MAX_INBOUND = 64;
+
+    // Tempo que um envio espera a fila de saída escoar antes de encerrar a conexão
+    private static final long SEND_TIMEOUT_SECONDS = 10;
+
+    private final ServerSocketChannel serverChannel;
+    private final CryptoService cryptoService;
+    private final List<EventLoop> eventLoops;
+    private final Selector acceptSelector;
+    private final int maxInFlight;
+    private final long maxOutbound;
+
+    @Getter
+    private final ServerMetrics metrics = new ServerMetrics();
+
+    public NioSecureServer(final int port, final CryptoService cryptoService, final int eventLoops,
+            final int maxInFlight, final long maxOutbound) throws IOException {
+        this.cryptoService = cryptoService;
+        this.maxInFlight = maxInFlight;
+        this.maxOutbound = maxOutbound;
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(port));
+        this.serverChannel.configureBlocking(false);
+        this.acceptSelector = Selector.open();
+        this.eventLoops = new ArrayList<>(eventLoops);
+        for (var i = 0; i < Math.max(1, eventLoops); i++) {
+            this.eventLoops.add(new EventLoop());
+        }
+    }
+
+    @Override
+    public void start(final SecureMessageHandler handler) throws IOException {
+        final var dispatcher = new MultiplexedHandler(handler, maxInFlight);
+        for (var i = 0; i < eventLoops.size(); i++) {
+            final var loop = eventLoops.get(i);
+            loop.handler = dispatcher;
+            final var thread = new Thread(loop, "nio-loop-" + getPort() + "-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+        var next = 0;
+        try {
+            while (serverChannel.isOpen()) {
+                acceptSelector.select();
+                acceptSelector.selectedKeys().clear();
+
+                // Distribui as novas conexões entre os laços (round-robin)
+                SocketChannel channel;
+                while ((channel = serverChannel.accept()) != null) {
+                    eventLoops.get(next).register(channel);
+                    next = (next + 1) % eventLoops.size();
+                }
+            }
+        } catch (final ClosedSelectorException e) {
+            // Servidor fechado
+        } catch (final IOException e) {
+            if (serverChannel.isOpen()) {
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverChannel.close();
+        acceptSelector.close();
+        for (final var loop : eventLoops) {
+            loop.close();
+        }
+    }
+
+    /**
+     * Laço de eventos: um seletor atendendo várias conexões numa única thread
+     */
+    private final class EventLoop implements Runnable {
+
+        private final Selector selector;
+        private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+        private SecureMessageHandler handler;
+
+        private EventLoop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        private void register(final SocketChannel channel) {
+            pending.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (selector.isOpen()) {
+                    selector.select();
+                    registerPending();
+
+                    final var keys = selector.selectedKeys();
+                    for (final var key : keys) {
+                        final var connection = (NioConnection) key.attachment();
+                        if (!key.isValid()) {
+                            connection.close();
+                            continue;
+                        }
+                        if (key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.onWritable();
+                        }
+                    }
+                    keys.clear();
+                }
+            } catch (final ClosedSelectorException e) {
+                // Servidor fechado
+            } catch (final IOException e) {
+                log.error("Erro no laço de eventos", e);
+            }
+        }
+
+        private void registerPending() {
+            SocketChannel channel;
+            while ((channel = pending.poll()) != null) {
+                try {
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                    final var connection = new NioConnection(channel, handler, Thread.currentThread());
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                    metrics.activeConnections.incrementAndGet();
+                } catch (final IOException e) {
+                    log.error("Erro ao registrar conexão: {}", e.getMessage());
+                    closeQuietly(channel);
+                }
+            }
+        }
+
+        private void close() throws IOException {
+            for (final var key : selector.keys()) {
+                ((NioConnection) key.attachment()).close();
+            }
+            selector.close();
+        }
+
+    }
+
+    /**
+     * Conexão atendida por um laço de eventos. As mensagens recebidas vão ao
+     * tratador, em ordem, por uma thread virtual da própria conexão.
+     */
+    private final class NioConnection implements SealedMessaging {
+
+        private final SocketChannel channel;
+        private final SecureMessageHandler handler;
+        private final Thread loopThread;
+        private final Queue<byte[]> inbound = new ArrayDeque<>();
+        private final Queue<ByteBuffer> outbound = new ArrayDeque<>();
+        private final ReentrantLock sending = new ReentrantLock();
+        private final Condition drained = sending.newCondition();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        private ByteBuffer plainBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        private ByteBuffer writeBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        private SelectionKey key;
+        // Protegido por inbound
+        private boolean delivering;
+        private volatile boolean readPaused;
+        // Protegido por sending
+        private long queuedBytes;
+        // Maior limite pedido por quem está em awaitPendingBelow, ou -1
+        private long lowWater = -1;
+        private int lowWaiters;
+
+        private NioConnection(final SocketChannel channel, final SecureMessageHandler handler,
+                final Thread loopThread) {
+            this.channel = channel;
+            this.handler = handler;
+            this.loopThread = loopThread;
+        }
+
+        private void onReadable() {
+            try {
+                if (channel.read(readBuffer) < 0) {
+                    close();
+                    return;
+                }
+
+                // Extrai todos os quadros completos disponíveis
+                readBuffer.flip();
+                var length = FrameCodec.frameLength(readBuffer, readBuffer.position());
+                while (length >= 0 && readBuffer.remaining() >= length && !closed.get()) {
+                    // Decifra do buffer de leitura para o de texto claro, sem cópias
+                    final var contentLength = FrameCodec.contentLength(readBuffer, readBuffer.position());
+                    if (plainBuffer.capacity() < contentLength) {
+                        plainBuffer = ByteBuffer.allocate(contentLength);
+                    }
+                    plainBuffer.clear();
+                    deliver(Arrays.copyOf(plainBuffer.array(), cryptoService.decrypt(readBuffer, plainBuffer)));
+
+                    length = FrameCodec.frameLength(readBuffer, readBuffer.position());
+                }
+                readBuffer.compact();
+
+                if (length > readBuffer.capacity()) {
+                    // Garante espaço para o próximo quadro inteiro
+                    readBuffer = resized(readBuffer, length);
+                } else if (readBuffer.capacity() > INITIAL_BUFFER_SIZE && readBuffer.position() <= INITIAL_BUFFER_SIZE
+                        && length <= INITIAL_BUFFER_SIZE) {
+                    // Passado o quadro grande, devolve a memória
+                    readBuffer = resized(readBuffer, INITIAL_BUFFER_SIZE);
+                }
+                if (plainBuffer.capacity() > INITIAL_BUFFER_SIZE) {
+                    plainBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+                }
+            } catch (final IOException e) {
+                log.error("Cliente desconectado ou erro de E/S: {}", e.getMessage());
+                close();
+            } catch (final CryptoException e) {
+                log.error("Erro de criptografia: {}", e.getMessage());
+                close();
+            } catch (final Exception e) {
+                log.error("Erro processando cliente", e);
+                close();
+            }
+        }
+
+        /**
+         * Enfileira a mensagem para o tratador, fora do laço de eventos. Com
+         * {@value #MAX_INBOUND} mensagens à espera, a conexão para de ser lida
+         * até o tratador alcançá-las.
+         */
+        private void deliver(final byte[] message) {
+            final boolean start;
+            final boolean pause;
+            synchronized (inbound) {
+                inbound.add(message);
+                pause = inbound.size() >= MAX_INBOUND && !readPaused;
+                if (pause) {
+                    readPaused = true;
+                }
+                start = !delivering;
+                delivering = true;
+            }
+            if (pause) {
+                updateInterest();
+            }
+            if (start) {
+                Thread.startVirtualThread(this::deliverLoop);
+            }
+        }
+
+        private void deliverLoop() {
+            while (true) {
+                final byte[] message;
+                final boolean resume;
+                synchronized (inbound) {
+                    message = closed.get() ? null : inbound.poll();
+                    if (message == null) {
+                        inbound.clear();
+                        delivering = false;
+                        return;
+                    }
+                    resume = readPaused && inbound.size() < MAX_INBOUND / 2;
+                    if (resume) {
+                        readPaused = false;
+                    }
+                }
+                if (resume) {
+                    updateInterest();
+                }
+
+                metrics.inFlight.incrementAndGet();
+                try {
+                    handler.onMessage(this, message);
+                } catch (final IOException e) {
+                    log.error("Cliente desconectado ou erro de E/S: {}", e.getMessage());
+                    close();
+                } catch (final CryptoException e) {
+                    log.error("Erro de criptografia: {}", e.getMessage());
+                    close();
+                } catch (final Exception e) {
+                    log.error("Erro processando cliente", e);
+                    close();
+                } finally {
+                    metrics.inFlight.decrementAndGet();
+                }
+            }
+        }
+
+        private void onWritable() {
+            sending.lock();
+            try {
+                flushOutbound();
+            } catch (final IOException e) {
+                log.error("Erro ao escrever para o cliente: {}", e.getMessage());
+                close();
+            } finally {
+                sending.unlock();
+            }
+        }
+
+        /**
+         * Escreve o que for possível sem bloquear e ajusta o interesse em
+         * escrita conforme sobrar algo na fila. Chamado com {@code sending}.
+         */
+        private void flushOutbound() throws IOException {
+            while (!outbound.isEmpty()) {
+                final var buffer = outbound.peek();
+                queuedBytes -= channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    break;
+                }
+                outbound.poll();
+            }
+            if (queuedBytes <= maxOutbound || queuedBytes <= lowWater) {
+                drained.signalAll();
+            }
+            updateInterest();
+        }
+
+        /**
+         * Interesse no seletor conforme a leitura esteja pausada e sobre algo
+         * a escrever
+         */
+        private void updateInterest() {
+            sending.lock();
+            try {
+                final var interest = (readPaused ? 0 : SelectionKey.OP_READ)
+                        | (outbound.isEmpty() ? 0 : SelectionKey.OP_WRITE);
+                if (key.isValid() && key.interestOps() != interest) {
+                    key.interestOps(interest);
+                    key.selector().wakeup();
+                }
+            } finally {
+                sending.unlock();
+            }
+        }
+
+        @Override
+        public void sendSecure(final byte[] message) throws IOException {
+            final var plaintext = ByteBuffer.wrap(message);
+            final var size = cryptoService.maxFrameSize(message.length);
+            sending.lock();
+            try {
+                awaitRoom();
+                if (!outbound.isEmpty()) {
+                    // Ainda há escrita pendente: o quadro entra na fila
+                    final var frame = ByteBuffer.allocate(size);
+                    cryptoService.encrypt(plaintext, frame);
+                    enqueue(frame.flip());
+                    return;
+                }
+
+                // Caminho comum: cifra no buffer de escrita e tenta enviar na hora
+                final var buffer = size > INITIAL_BUFFER_SIZE ? ByteBuffer.allocate(size) : writeBuffer;
+                buffer.clear();
+                cryptoService.encrypt(plaintext, buffer);
+                buffer.flip();
+                channel.write(buffer);
+
+                // O que não coube no socket é copiado para a fila
+                if (buffer.hasRemaining()) {
+                    enqueue(buffer == writeBuffer
+                            ? ByteBuffer.allocate(buffer.remaining()).put(buffer).flip()
+                            : buffer);
+                    flushOutbound();
+                }
+            } finally {
+                sending.unlock();
+            }
+        }
+
+        @Override
+        public void sendSealed(final byte[] frame) throws IOException {
+            // Visão própria sobre o quadro compartilhado: o que não couber entra na fila sem cópia
+            final var buffer = ByteBuffer.wrap(frame);
+            sending.lock();
+            try {
+                awaitRoom();
+                if (!outbound.isEmpty()) {
+                    enqueue(buffer);
+                    return;
+                }
+
+                channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    enqueue(buffer);
+                    flushOutbound();
+                }
+            } finally {
+                sending.unlock();
+            }
+        }
+
+        private void enqueue(final ByteBuffer buffer) {
+            outbound.add(buffer);
+            queuedBytes += buffer.remaining();
+        }
+
+        /**
+         * Espera a fila de saída baixar de {@code maxOutbound} bytes. Um par
+         * que não lê por {@value #SEND_TIMEOUT_SECONDS} s, ou um envio do
+         * próprio laço de eventos (que não pode esperar por si mesmo), encerra
+         * a conexão. Chamado com {@code sending}.
+         */
+        private void awaitRoom() throws IOException {
+            var remaining = TimeUnit.SECONDS.toNanos(SEND_TIMEOUT_SECONDS);
+            while (queuedBytes > maxOutbound && !closed.get()) {
+                if (Thread.currentThread() == loopThread || remaining <= 0) {
+                    log.warn("Fila de saída com {} bytes não escoou, encerrando a conexão", queuedBytes);
+                    close();
+                    break;
+                }
+                try {
+                    remaining = drained.awaitNanos(remaining);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrompido aguardando a fila de saída", e);
+                }
+            }
+            if (closed.get()) {
+                throw new IOException("Conexão encerrada");
+            }
+        }
+
+        @Override
+        public long pendingBytes() {
+            sending.lock();
+            try {
+                return queuedBytes;
+            } finally {
+                sending.unlock();
+            }
+        }
+
+        @Override
+        public boolean awaitPendingBelow(final long bytes, final long timeout, final TimeUnit unit)
+                throws IOException {
+            var remaining = unit.toNanos(timeout);
+            sending.lock();
+            try {
+                lowWater = Math.max(lowWater, bytes);
+                lowWaiters++;
+                try {
+                    // Acordado por flushOutbound ao baixar do limite, ou por close
+                    while (queuedBytes > bytes && !closed.get()) {
+                        if (remaining <= 0) {
+                            return false;
+                        }
+                        remaining = drained.awaitNanos(remaining);
+                    }
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrompido aguardando a fila de saída", e);
+                } finally {
+                    if (--lowWaiters == 0) {
+                        lowWater = -1;
+                    }
+                }
+                if (closed.get()) {
+                    throw new IOException("Conexão encerrada");
+                }
+                return true;
+            } finally {
+                sending.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                if (key != null) {
+                    key.cancel();
+                    metrics.activeConnections.decrementAndGet();
+                }
+                closeQuietly(channel);
+                signalDrained();
+                handler.onClose(this);
+            }
+        }
+
+        private void signalDrained() {
+            sending.lock();
+            try {
+                drained.signalAll();
+            } finally {
+                sending.unlock();
+            }
+        }
+
+    }
+
+    private static ByteBuffer resized(final ByteBuffer buffer, final int capacity) {
+        final var resized = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        return resized.put(buffer);
+    }
+
+    private static void closeQuietly(final SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (final IOException e) {
+            // Ignora
+        }
+    }
+
+}
@@ -0,0 +1,21 @@
+package br.edu.ufersa.cc.seg.common.network;
+
+import java.io.IOException;
+
+import br.edu.ufersa.cc.seg.common.crypto.CryptoService;
+
+/**
+ * Conexão que aceita quadros já cifrados. Datagramas e visões de uma única
+ * resposta não a implementam: o quadro não leva o identificador da
+ * requisição.
+ */
+public interface SealedMessaging extends SecureMessaging {
+
+    /**
+     * Envia um quadro já cifrado por {@link CryptoService#seal}, sem cifrar de
+     * novo. Serve para enviar a mesma mensagem a muitas conexões cifrando uma
+     * só vez; o quadro não é alterado e pode ser compartilhado entre elas.
+     */
+    void sendSealed(byte[] frame) throws IOException;
+
+}
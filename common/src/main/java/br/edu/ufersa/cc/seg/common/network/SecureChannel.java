@@ -0,0 +1,19 @@
+package br.edu.ufersa.cc.seg.common.network;
+
+import java.io.IOException;
+
+/**
+ * Conexão segura que também lê as próprias mensagens, bloqueando até a
+ * próxima chegar: o lado de recebimento dos clientes e do
+ * {@link BlockingSecureServer}. Conexões atendidas por um laço de eventos
+ * entregam as mensagens ao tratador e só implementam
+ * {@link SecureMessaging}.
+ */
+public interface SecureChannel extends SecureMessaging {
+
+    /**
+     * Recebe uma mensagem de forma segura (decifra e valida HMAC)
+     */
+    byte[] receiveSecure() throws IOException;
+
+}
@@ -0,0 +1,282 @@
+package br.edu.ufersa.cc.seg.common.network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import br.edu.ufersa.cc.seg.common.crypto.CryptoException;
+import br.edu.ufersa.cc.seg.common.crypto.CryptoService;
+import br.edu.ufersa.cc.seg.common.utils.Settings;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Pool de conexões seguras de clientes, mantidas abertas por host:porta para
+ * atender várias requisições.
+ *
+ * <p>
+ * Uma conexão obtida com {@link #acquire} volta ao pool quando fechada, a
+ * menos que tenha apresentado erro. Conexões ociosas por mais de
+ * {@code idleTimeout} são encerradas, e as que ficaram paradas por mais de
+ * {@code validateAfter} são verificadas antes de serem reaproveitadas.
+ */
+@Slf4j
+public class SecureConnectionPool implements Closeable {
+
+    /**
+     * Chave de configuração do máximo de conexões simultâneas por host:porta
+     */
+    public static final String MAX_PER_ROUTE_SETTING = "client.pool.max-per-route";
+
+    /**
+     * Chave de configuração do tempo (ms) até encerrar uma conexão ociosa
+     */
+    public static final String IDLE_TIMEOUT_SETTING = "client.pool.idle-timeout-ms";
+
+    /**
+     * Chave de configuração do tempo (ms) de ociosidade a partir do qual a
+     * conexão é verificada antes do uso
+     */
+    public static final String VALIDATE_AFTER_SETTING = "client.pool.validate-after-ms";
+
+    private static final Duration ACQUIRE_TIMEOUT = Duration.ofSeconds(30);
+
+    private final CryptoService cryptoService;
+    private final int maxPerRoute;
+    private final long idleTimeoutNanos;
+    private final long validateAfterNanos;
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    /**
+     * Cria o pool com os limites definidos na configuração
+     */
+    public SecureConnectionPool(final CryptoService cryptoService) {
+        this(cryptoService,
+                Settings.getInt(MAX_PER_ROUTE_SETTING, 8),
+                Duration.ofMillis(Settings.getLong(IDLE_TIMEOUT_SETTING, 30_000)),
+                Duration.ofMillis(Settings.getLong(VALIDATE_AFTER_SETTING, 2_000)));
+    }
+
+    public SecureConnectionPool(final CryptoService cryptoService, final int maxPerRoute,
+            final Duration idleTimeout, final Duration validateAfter) {
+        this.cryptoService = cryptoService;
+        this.maxPerRoute = maxPerRoute;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.validateAfterNanos = validateAfter.toNanos();
+
+        final var period = Math.max(1, idleTimeout.toMillis() / 2);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("pool-evictor").daemon().factory());
+        this.evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Obtém uma conexão para o destino, reaproveitando uma ociosa se houver.
+     * Fechar a conexão a devolve ao pool.
+     */
+    public SecureChannel acquire(final String host, final int port) throws IOException {
+        return acquire(host, port, true);
+    }
+
+    /**
+     * Envia uma requisição e aguarda a resposta. Se o envio por uma conexão
+     * reaproveitada falhar, tenta uma vez mais numa conexão nova. Uma falha
+     * ao receber não é repetida: o servidor pode já ter aplicado a
+     * requisição (ex.: uma atualização), então a conexão é descartada e o
+     * erro segue para quem chamou.
+     */
+    public byte[] exchange(final String host, final int port, final byte[] request) throws IOException {
+        try (final var connection = acquire(host, port, true)) {
+            try {
+                connection.sendSecure(request);
+            } catch (final IOException e) {
+                if (!connection.reused) {
+                    throw e;
+                }
+                log.debug("Conexão reaproveitada com {}:{} falhou, reconectando: {}", host, port, e.getMessage());
+                // Devolve a vaga da rota antes de pedir outra
+                connection.close();
+                return exchangeOnNewConnection(host, port, request);
+            }
+            return connection.receiveSecure();
+        }
+    }
+
+    private byte[] exchangeOnNewConnection(final String host, final int port, final byte[] request)
+            throws IOException {
+        try (final var connection = acquire(host, port, false)) {
+            connection.sendSecure(request);
+            return connection.receiveSecure();
+        }
+    }
+
+    private PooledConnection acquire(final String host, final int port, final boolean allowReuse)
+            throws IOException {
+        if (closed) {
+            throw new IOException("Pool de conexões encerrado");
+        }
+
+        final var route = routes.computeIfAbsent(host + ":" + port, key -> new Route(host, port));
+        try {
+            if (!route.permits.tryAcquire(ACQUIRE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new IOException("Tempo esgotado aguardando conexão livre para " + host + ":" + port);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrompido aguardando conexão para " + host + ":" + port, e);
+        }
+
+        try {
+            if (allowReuse) {
+                final var idle = route.pollValid();
+                if (idle != null) {
+                    return new PooledConnection(route, idle, true);
+                }
+            }
+
+            return new PooledConnection(route, new SecureTcpMessaging(host, port, cryptoService), false);
+        } catch (final IOException | RuntimeException e) {
+            route.permits.release();
+            throw e;
+        }
+    }
+
+    private void evictIdle() {
+        final var now = System.nanoTime();
+        for (final var route : routes.values()) {
+            route.idle.removeIf(entry -> {
+                if (now - entry.lastUsed > idleTimeoutNanos || !entry.connection.isOpen()) {
+                    closeQuietly(entry.connection);
+                    return true;
+                }
+                return false;
+            });
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        for (final var route : routes.values()) {
+            IdleEntry entry;
+            while ((entry = route.idle.poll()) != null) {
+                closeQuietly(entry.connection);
+            }
+        }
+    }
+
+    private static void closeQuietly(final SecureMessaging connection) {
+        try {
+            connection.close();
+        } catch (final IOException e) {
+            // Ignora
+        }
+    }
+
+    private record IdleEntry(SecureTcpMessaging connection, long lastUsed) {
+    }
+
+    /**
+     * Conexões de um mesmo host:porta
+     */
+    private final class Route {
+
+        private final String address;
+        private final Semaphore permits = new Semaphore(maxPerRoute);
+        private final ConcurrentLinkedDeque<IdleEntry> idle = new ConcurrentLinkedDeque<>();
+
+        private Route(final String host, final int port) {
+            this.address = host + ":" + port;
+        }
+
+        /**
+         * Retira a conexão ociosa mais recente que ainda esteja válida
+         */
+        private SecureTcpMessaging pollValid() {
+            IdleEntry entry;
+            while ((entry = idle.pollFirst()) != null) {
+                final var idleFor = System.nanoTime() - entry.lastUsed;
+                final var valid = idleFor <= idleTimeoutNanos
+                        && (idleFor < validateAfterNanos ? entry.connection.isOpen() : entry.connection.probe());
+                if (valid) {
+                    return entry.connection;
+                }
+
+                log.debug("Descartando conexão inválida com {}", address);
+                closeQuietly(entry.connection);
+            }
+            return null;
+        }
+
+        private void release(final SecureTcpMessaging connection, final boolean broken) {
+            try {
+                if (broken || closed || !connection.isOpen()) {
+                    closeQuietly(connection);
+                } else {
+                    idle.addFirst(new IdleEntry(connection, System.nanoTime()));
+                }
+            } finally {
+                permits.release();
+            }
+        }
+
+    }
+
+    /**
+     * Conexão emprestada do pool. Qualquer erro de E/S ou de criptografia a
+     * invalida, pois o fluxo pode ter ficado dessincronizado.
+     */
+    private static final class PooledConnection implements SecureChannel {
+
+        private final Route route;
+        private final SecureTcpMessaging delegate;
+        private final boolean reused;
+        private boolean broken;
+        private boolean released;
+
+        private PooledConnection(final Route route, final SecureTcpMessaging delegate, final boolean reused) {
+            this.route = route;
+            this.delegate = delegate;
+            this.reused = reused;
+        }
+
+        @Override
+        public void sendSecure(final byte[] message) throws IOException {
+            try {
+                delegate.sendSecure(message);
+            } catch (final IOException | CryptoException e) {
+                broken = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public byte[] receiveSecure() throws IOException {
+            try {
+                return delegate.receiveSecure();
+            } catch (final IOException | CryptoException e) {
+                broken = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                route.release(delegate, broken);
+            }
+        }
+
+    }
+
+}
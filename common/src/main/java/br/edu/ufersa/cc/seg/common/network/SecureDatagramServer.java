@@ -0,0 +1,194 @@
+package br.edu.ufersa.cc.seg.common.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import br.edu.ufersa.cc.seg.common.crypto.CryptoException;
+import br.edu.ufersa.cc.seg.common.crypto.CryptoService;
+import br.edu.ufersa.cc.seg.common.crypto.FrameCodec;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Servidor de requisições avulsas por UDP: cada datagrama traz um único
+ * quadro cifrado ({@link FrameCodec}) com uma requisição num
+ * {@link CorrelationEnvelope}, e a resposta volta num único datagrama com o
+ * mesmo identificador. Não há conexão, então não há notificações nem
+ * {@link SecureMessageHandler#onClose}.
+ *
+ * <p>
+ * Algumas threads recebem do mesmo canal, cada uma decifrando o datagrama e
+ * chamando o tratador ali mesmo, como os laços de eventos do
+ * {@link NioSecureServer}: sem troca de thread por requisição, o tratador
+ * não deve bloquear. Com todas ocupadas, os datagramas esperam no buffer do
+ * sistema e, com ele cheio, são perdidos; o cliente retransmite. Datagramas
+ * inválidos (sem envelope, com HMAC errado ou truncados) são descartados sem
+ * resposta.
+ *
+ * <p>
+ * Uma resposta cujo quadro passaria de {@code maxPayload} bytes é trocada por
+ * um envelope vazio com o mesmo identificador, que avisa o cliente para
+ * repetir a requisição por TCP. O aviso também é cifrado, então não pode ser
+ * forjado para desviar o cliente.
+ */
+@Slf4j
+public class SecureDatagramServer implements SecureServer {
+
+    // Maior datagrama UDP possível
+    private static final int MAX_DATAGRAM_SIZE = 65_535;
+    private static final int RECEIVE_BUFFER_SIZE = 1024 * 1024;
+
+    private final DatagramChannel channel;
+    private final CryptoService cryptoService;
+    private final int receivers;
+    private final int maxPayload;
+
+    @Getter
+    private final ServerMetrics metrics = new ServerMetrics();
+
+    public SecureDatagramServer(final int port, final CryptoService cryptoService, final int receivers,
+            final int maxPayload) throws IOException {
+        this.channel = DatagramChannel.open();
+        // Rajadas esperam no buffer do sistema enquanto a thread de recepção decifra
+        this.channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_SIZE);
+        this.channel.bind(new InetSocketAddress(port));
+        this.cryptoService = cryptoService;
+        this.receivers = Math.max(1, receivers);
+        this.maxPayload = maxPayload;
+    }
+
+    @Override
+    public void start(final SecureMessageHandler handler) throws IOException {
+        final var threads = new ArrayList<Thread>(receivers - 1);
+        for (var i = 1; i < receivers; i++) {
+            final var thread = new Thread(() -> receive(handler), "datagram-server-" + getPort() + "-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+
+        // A thread atual também recebe, até o servidor ser fechado
+        receive(handler);
+        for (final var thread : threads) {
+            try {
+                thread.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void receive(final SecureMessageHandler handler) {
+        final var buffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+        try {
+            while (channel.isOpen()) {
+                buffer.clear();
+                final var source = channel.receive(buffer);
+                buffer.flip();
+
+                final byte[] message;
+                try {
+                    message = cryptoService.decrypt(FrameCodec.decode(buffer));
+                } catch (final IOException | CryptoException e) {
+                    log.debug("Datagrama inválido de {} descartado: {}", source, e.getMessage());
+                    continue;
+                }
+                if (!CorrelationEnvelope.isEnvelope(message)) {
+                    log.debug("Datagrama sem envelope de {} descartado", source);
+                    continue;
+                }
+
+                serve(handler, source, message);
+            }
+        } catch (final ClosedChannelException e) {
+            // Encerrado por close()
+        } catch (final IOException e) {
+            log.error("Recepção de datagramas encerrada: {}", e.getMessage());
+        }
+    }
+
+    private void serve(final SecureMessageHandler handler, final SocketAddress source, final byte[] message) {
+        final var reply = new DatagramReply(source, CorrelationEnvelope.correlationId(message));
+        metrics.inFlight.incrementAndGet();
+        try {
+            handler.onMessage(reply, CorrelationEnvelope.content(message));
+        } catch (final IOException e) {
+            log.error("Erro de E/S ao responder {}: {}", source, e.getMessage());
+        } catch (final CryptoException e) {
+            log.error("Erro de criptografia ao responder {}: {}", source, e.getMessage());
+        } catch (final Exception e) {
+            log.error("Erro ao tratar datagrama de {}", source, e);
+        } finally {
+            metrics.inFlight.decrementAndGet();
+        }
+    }
+
+    @Override
+    public int getPort() {
+        try {
+            return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        } catch (final IOException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Visão de um datagrama recebido: aceita uma única resposta, enviada ao
+     * remetente com o identificador da requisição
+     */
+    private final class DatagramReply implements SecureMessaging {
+
+        private final SocketAddress target;
+        private final long correlationId;
+        private final AtomicBoolean replied = new AtomicBoolean();
+
+        private DatagramReply(final SocketAddress target, final long correlationId) {
+            this.target = target;
+            this.correlationId = correlationId;
+        }
+
+        @Override
+        public void sendSecure(final byte[] message) throws IOException {
+            if (!replied.compareAndSet(false, true)) {
+                throw new IOException("Datagrama já respondido");
+            }
+
+            var frame = cryptoService.seal(CorrelationEnvelope.wrap(correlationId, message));
+            if (frame.length > maxPayload) {
+                metrics.truncated.increment();
+                frame = cryptoService.seal(CorrelationEnvelope.wrap(correlationId, new byte[0]));
+            }
+            channel.send(ByteBuffer.wrap(frame), target);
+        }
+
+        @Override
+        public boolean isDatagram() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+            // Nada a encerrar: o canal é do servidor
+        }
+
+        @Override
+        public String toString() {
+            return "datagrama de " + target + " #" + correlationId;
+        }
+
+    }
+
+}
@@ -0,0 +1,34 @@
+package br.edu.ufersa.cc.seg.common.network;
+
+import java.io.IOException;
+
+/**
+ * Tratador das mensagens recebidas por um {@link SecureServer}. As mensagens
+ * de uma mesma conexão são entregues em ordem, uma de cada vez.
+ */
+@FunctionalInterface
+public interface SecureMessageHandler {
+
+    /**
+     * Trata uma mensagem já decifrada e validada. Respostas são enviadas pela
+     * própria conexão. Uma exceção encerra a conexão.
+     */
+    void onMessage(SecureMessaging connection, byte[] message) throws IOException;
+
+    /**
+     * Chamado quando o servidor descarta a mensagem por sobrecarga, antes de
+     * encerrar a conexão, para que o cliente receba um erro do protocolo em
+     * vez de só ver a conexão cair. Por padrão, nada é enviado.
+     */
+    default void onRejected(final SecureMessaging connection, final byte[] message) throws IOException {
+        // Nada a enviar por padrão
+    }
+
+    /**
+     * Chamado uma única vez quando a conexão é encerrada, por qualquer motivo
+     */
+    default void onClose(final SecureMessaging connection) {
+        // Nada a fazer por padrão
+    }
+
+}
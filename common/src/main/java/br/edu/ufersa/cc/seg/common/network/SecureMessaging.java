@@ -2,9 +2,13 @@ package br.edu.ufersa.cc.seg.common.network;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Interface comum para comunicação segura entre processos
+ * Interface comum para comunicação segura entre processos: o lado de envio,
+ * que os tratadores recebem em {@link SecureMessageHandler#onMessage}. Quem
+ * também lê as mensagens por conta própria implementa {@link SecureChannel};
+ * quem aceita quadros já cifrados, {@link SealedMessaging}.
  */
 public interface SecureMessaging extends Closeable {
 
@@ -14,8 +18,42 @@ public interface SecureMessaging extends Closeable {
     void sendSecure(byte[] message) throws IOException;
 
     /**
-     * Recebe uma mensagem de forma segura (decifra e valida HMAC)
+     * Conexão por trás desta visão: ela mesma, exceto em decoradores como o
+     * do {@link MultiplexedHandler}. Serve para identificar a conexão em
+     * {@link SecureMessageHandler#onClose}.
      */
-    byte[] receiveSecure() throws IOException;
+    default SecureMessaging connection() {
+        return this;
+    }
+
+    /**
+     * Se a mensagem chegou num datagrama avulso ({@link SecureDatagramServer}):
+     * aceita uma única resposta, e não há conexão para notificações
+     * posteriores
+     */
+    default boolean isDatagram() {
+        return false;
+    }
+
+    /**
+     * Bytes já aceitos por {@link #sendSecure} que ainda não foram escritos no
+     * socket; sempre 0 quando o envio é síncrono
+     */
+    default long pendingBytes() {
+        return 0;
+    }
+
+    /**
+     * Espera até {@link #pendingBytes()} baixar a {@code bytes} ou menos, sem
+     * consultar em laço: quem só enfileira o envio avisa quando o socket
+     * escoa. Retorna na hora quando o envio é síncrono.
+     *
+     * @return {@code false} se o tempo acabou antes
+     * @throws IOException se a conexão foi encerrada durante a espera
+     */
+    default boolean awaitPendingBelow(final long bytes, final long timeout, final TimeUnit unit)
+            throws IOException {
+        return true;
+    }
 
 }
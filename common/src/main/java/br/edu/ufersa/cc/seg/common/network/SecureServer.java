@@ -0,0 +1,28 @@
+package br.edu.ufersa.cc.seg.common.network;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Servidor que aceita conexões seguras e entrega cada mensagem recebida a um
+ * {@link SecureMessageHandler}
+ */
+public interface SecureServer extends Closeable {
+
+    /**
+     * Passa a aceitar conexões, bloqueando a thread atual até o servidor ser
+     * fechado
+     */
+    void start(SecureMessageHandler handler) throws IOException;
+
+    /**
+     * Porta local em que o servidor escuta
+     */
+    int getPort();
+
+    /**
+     * Contadores de conexões e requisições do servidor
+     */
+    ServerMetrics getMetrics();
+
+}
@@ -0,0 +1,92 @@
+package br.edu.ufersa.cc.seg.common.network;
+
+import java.io.IOException;
+
+import br.edu.ufersa.cc.seg.common.crypto.CryptoService;
+import br.edu.ufersa.cc.seg.common.utils.Settings;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+/**
+ * Criação de {@link SecureServer} conforme a configuração
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class SecureServers {
+
+    /**
+     * Chave de configuração do transporte usado pelos servidores
+     * ({@link ServerTransport})
+     */
+    public static final String TRANSPORT_SETTING = "server.transport";
+
+    /**
+     * Chave de configuração da quantidade de threads de eventos do transporte
+     * NIO
+     */
+    public static final String EVENT_LOOPS_SETTING = "server.nio.loops";
+
+    /**
+     * Chave de configuração do máximo de requisições tratadas ao mesmo tempo
+     * pelo transporte {@link ServerTransport#BLOCKING} e de requisições
+     * correlacionadas ({@link MultiplexedHandler}) em qualquer transporte
+     */
+    public static final String MAX_IN_FLIGHT_SETTING = "server.max-in-flight";
+
+    /**
+     * Chave de configuração do máximo de requisições à espera de vaga antes
+     * de o servidor passar a rejeitá-las
+     */
+    public static final String MAX_QUEUED_SETTING = "server.max-queued";
+
+    /**
+     * Chave de configuração do máximo de bytes, em KiB, na fila de saída de
+     * uma conexão do transporte NIO antes de quem envia esperar
+     */
+    public static final String MAX_OUTBOUND_SETTING = "server.nio.max-outbound-kb";
+
+    /**
+     * Chave de configuração do maior quadro enviado num datagrama UDP, em
+     * bytes, pelo {@link SecureDatagramServer} e pelo {@link DatagramClient}
+     */
+    public static final String MAX_DATAGRAM_SETTING = "udp.max-payload";
+
+    /**
+     * Cria um servidor na porta informada com o transporte definido em
+     * {@value #TRANSPORT_SETTING} (padrão: {@link ServerTransport#BLOCKING})
+     */
+    public static SecureServer create(final int port, final CryptoService cryptoService) throws IOException {
+        final var transport = Settings.getEnum(TRANSPORT_SETTING, ServerTransport.class, ServerTransport.BLOCKING);
+        return create(transport, port, cryptoService);
+    }
+
+    public static SecureServer create(final ServerTransport transport, final int port,
+            final CryptoService cryptoService) throws IOException {
+        final var maxInFlight = Settings.getInt(MAX_IN_FLIGHT_SETTING, 256);
+        return switch (transport) {
+            case BLOCKING -> new BlockingSecureServer(port, cryptoService, maxInFlight,
+                    Settings.getInt(MAX_QUEUED_SETTING, 1024));
+            case NIO -> new NioSecureServer(port, cryptoService, Settings.getInt(EVENT_LOOPS_SETTING,
+                    Math.min(4, Runtime.getRuntime().availableProcessors())), maxInFlight,
+                    Settings.getLong(MAX_OUTBOUND_SETTING, 4096) * 1024);
+        };
+    }
+
+    /**
+     * Cria um servidor UDP na porta informada, para requisições avulsas
+     * ({@link SecureDatagramServer}), com tantas threads de recepção quanto
+     * os laços de eventos do transporte NIO ({@value #EVENT_LOOPS_SETTING})
+     */
+    public static SecureServer datagram(final int port, final CryptoService cryptoService) throws IOException {
+        return new SecureDatagramServer(port, cryptoService, Settings.getInt(EVENT_LOOPS_SETTING,
+                Math.min(4, Runtime.getRuntime().availableProcessors())), maxDatagram());
+    }
+
+    /**
+     * Maior quadro num datagrama ({@value #MAX_DATAGRAM_SETTING}); o padrão,
+     * 1232 bytes, cabe num pacote sem fragmentação em IPv4 e IPv6
+     */
+    static int maxDatagram() {
+        return Settings.getInt(MAX_DATAGRAM_SETTING, 1232);
+    }
+
+}
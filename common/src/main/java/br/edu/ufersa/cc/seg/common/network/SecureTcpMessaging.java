@@ -1,31 +1,45 @@
 package br.edu.ufersa.cc.seg.common.network;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
 
 import br.edu.ufersa.cc.seg.common.crypto.CryptoService;
-import br.edu.ufersa.cc.seg.common.crypto.SecurityMessage;
+import br.edu.ufersa.cc.seg.common.crypto.FrameCodec;
 import lombok.RequiredArgsConstructor;
 
 /**
- * Implementação TCP da interface SecureMessaging
+ * Implementação TCP de {@link SecureChannel}. As mensagens trafegam no
+ * formato binário de {@link FrameCodec}.
  */
 @RequiredArgsConstructor
-public class SecureTcpMessaging implements SecureMessaging {
+public class SecureTcpMessaging implements SecureChannel, SealedMessaging {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
 
     private final Socket socket;
     private final CryptoService cryptoService;
-    private final ObjectOutputStream out;
-    private final ObjectInputStream in;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+
+    // Trava em vez de synchronized: uma thread virtual bloqueada no envio a um
+    // par que não lê libera a thread portadora
+    private final ReentrantLock sending = new ReentrantLock();
 
     public SecureTcpMessaging(final Socket socket, final CryptoService cryptoService) throws IOException {
         this.socket = socket;
         this.cryptoService = cryptoService;
-        this.out = new ObjectOutputStream(socket.getOutputStream());
-        this.in = new ObjectInputStream(socket.getInputStream());
+
+        // Cada quadro sai num único flush; sem Nagle para não atrasar respostas curtas
+        socket.setTcpNoDelay(true);
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
     }
 
     public SecureTcpMessaging(final String host, final int port, final CryptoService cryptoService) throws IOException {
@@ -39,24 +53,77 @@ public class SecureTcpMessaging implements SecureMessaging {
     @Override
     public void sendSecure(final byte[] message) throws IOException {
         final var secureMsg = cryptoService.encrypt(message);
-        out.writeObject(secureMsg);
-        out.flush();
+
+        // Vários tratadores podem responder pela mesma conexão ao mesmo tempo
+        sending.lock();
+        try {
+            FrameCodec.write(out, secureMsg);
+            out.flush();
+        } finally {
+            sending.unlock();
+        }
+    }
+
+    @Override
+    public void sendSealed(final byte[] frame) throws IOException {
+        sending.lock();
+        try {
+            out.write(frame);
+            out.flush();
+        } finally {
+            sending.unlock();
+        }
     }
 
     @Override
     public byte[] receiveSecure() throws IOException {
+        final var secureMsg = FrameCodec.read(in);
+        return cryptoService.decrypt(secureMsg);
+    }
+
+    /**
+     * Verificação barata de que o socket continua utilizável deste lado
+     */
+    public boolean isOpen() {
+        return !socket.isClosed() && socket.isConnected() && !socket.isInputShutdown()
+                && !socket.isOutputShutdown();
+    }
+
+    /**
+     * Verifica se a conexão ociosa continua viva: espera brevemente por dados
+     * e considera inválida se o par a encerrou ou enviou algo inesperado.
+     */
+    public boolean probe() {
+        if (!isOpen()) {
+            return false;
+        }
+
         try {
-            final var secureMsg = (SecurityMessage) in.readObject();
-            return cryptoService.decrypt(secureMsg);
-        } catch (final ClassNotFoundException e) {
-            throw new IOException("Erro ao deserializar mensagem", e);
+            socket.setSoTimeout(1);
+            in.mark(1);
+            final var read = in.read();
+            if (read >= 0) {
+                in.reset();
+            }
+            return false;
+        } catch (final SocketTimeoutException e) {
+            // Nada a ler: a conexão segue aberta e ociosa
+            return true;
+        } catch (final IOException e) {
+            return false;
+        } finally {
+            try {
+                socket.setSoTimeout(0);
+            } catch (final IOException e) {
+                // Ignora; a conexão será descartada no próximo erro
+            }
         }
     }
 
     @Override
     public void close() throws IOException {
-        in.close();
-        out.close();
+        // O socket primeiro: fechar o buffer de saída o esvaziaria, esperando
+        // atrás de um envio bloqueado num par que não lê
         socket.close();
     }
 
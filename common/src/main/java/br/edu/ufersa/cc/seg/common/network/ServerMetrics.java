@@ -0,0 +1,59 @@
+package br.edu.ufersa.cc.seg.common.network;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores de um {@link SecureServer}, atualizados enquanto ele atende
+ */
+public class ServerMetrics {
+
+    final AtomicInteger activeConnections = new AtomicInteger();
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger queued = new AtomicInteger();
+    final LongAdder rejected = new LongAdder();
+    final LongAdder truncated = new LongAdder();
+
+    /**
+     * Conexões abertas no momento
+     */
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    /**
+     * Requisições sendo tratadas no momento
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Requisições aguardando vaga para serem tratadas
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * Requisições descartadas (e conexões encerradas) por excesso de carga
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Respostas grandes demais para um datagrama, trocadas pelo aviso para
+     * repetir por TCP (só em {@link SecureDatagramServer})
+     */
+    public long getTruncated() {
+        return truncated.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "conexões=" + getActiveConnections() + ", em andamento=" + getInFlight()
+                + ", na fila=" + getQueued() + ", rejeitadas=" + getRejected() + ", truncadas=" + getTruncated();
+    }
+
+}
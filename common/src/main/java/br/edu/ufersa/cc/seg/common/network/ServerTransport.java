@@ -0,0 +1,20 @@
+package br.edu.ufersa.cc.seg.common.network;
+
+/**
+ * Implementações de {@link SecureServer} disponíveis
+ */
+public enum ServerTransport {
+
+    /**
+     * Sockets bloqueantes, com uma thread virtual por conexão e controle de
+     * admissão
+     */
+    BLOCKING,
+
+    /**
+     * Canais não bloqueantes com seletores, atendidos por poucas threads
+     */
+    NIO,
+    ;
+
+}
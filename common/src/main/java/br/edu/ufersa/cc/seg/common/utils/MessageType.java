@@ -1,16 +1,34 @@
 package br.edu.ufersa.cc.seg.common.utils;
 
+/**
+ * Tipos de mensagem dos protocolos. O mesmo nome pode aparecer em mais de um
+ * protocolo (ex.: {@code RESPONSE}), cada um com seus próprios campos.
+ */
 public enum MessageType {
 
     QUERY,
     RESPONSE,
+    QUERY_NAMES,
+    QUERY_PTR,
+    RECORDS,
 
     UPDATE,
     ACK,
+    QUERY_BATCH,
+    UPDATE_BATCH,
+    ACK_BATCH,
 
     REGISTER_NOTIFY,
     REGISTERED,
     NOTIFY,
+    NOTIFY_BATCH,
+
+    REGISTER,
+    DISCOVER,
+    DISCOVERY_RESPONSE,
+    CALL,
+
+    SEARCH,
 
     ERROR,
     ;
@@ -0,0 +1,53 @@
+package br.edu.ufersa.cc.seg.common.utils;
+
+import java.util.Locale;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+/**
+ * Leitura de configurações da aplicação.
+ *
+ * <p>
+ * Cada chave (ex.: {@code crypto.mode}) é procurada primeiro nas propriedades
+ * do sistema ({@code -Dcrypto.mode=GCM}) e depois nas variáveis de ambiente,
+ * em maiúsculas e com pontos trocados por sublinhados ({@code CRYPTO_MODE}).
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class Settings {
+
+    public static String get(final String key, final String defaultValue) {
+        final var property = System.getProperty(key);
+        if (property != null && !property.isBlank()) {
+            return property.trim();
+        }
+
+        final var env = System.getenv(key.toUpperCase(Locale.ROOT).replace('.', '_').replace('-', '_'));
+        if (env != null && !env.isBlank()) {
+            return env.trim();
+        }
+
+        return defaultValue;
+    }
+
+    public static int getInt(final String key, final int defaultValue) {
+        final var value = get(key, null);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    public static long getLong(final String key, final long defaultValue) {
+        final var value = get(key, null);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    public static boolean getBoolean(final String key, final boolean defaultValue) {
+        final var value = get(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    public static <E extends Enum<E>> E getEnum(final String key, final Class<E> type, final E defaultValue) {
+        final var value = get(key, null);
+        return value == null ? defaultValue : Enum.valueOf(type, value.toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+
+}
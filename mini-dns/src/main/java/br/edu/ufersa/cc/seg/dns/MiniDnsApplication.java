@@ -1,15 +1,22 @@
 package br.edu.ufersa.cc.seg.dns;
 
+import br.edu.ufersa.cc.seg.common.utils.Settings;
 import br.edu.ufersa.cc.seg.dns.server.DnsServer;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public class MiniDnsApplication {
 
+    /**
+     * Chave de configuração da porta (TCP e UDP) do servidor; réplicas na
+     * mesma máquina usam portas diferentes
+     */
+    public static final String PORT_SETTING = "dns.port";
+
     private static final int PORT = 9000;
 
     public static void main(final String[] args) {
-        new DnsServer(PORT).start();
+        new DnsServer(Settings.getInt(PORT_SETTING, PORT)).start();
     }
 
 }
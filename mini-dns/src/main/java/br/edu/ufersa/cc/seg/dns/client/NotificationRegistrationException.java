@@ -1,14 +0,0 @@
-package br.edu.ufersa.cc.seg.dns.client;
-
-/**
- * Exceção lançada quando o registro para receber notificações falha
- */
-public class NotificationRegistrationException extends Exception {
-    public NotificationRegistrationException(String message) {
-        super(message);
-    }
-
-    public NotificationRegistrationException(String message, Throwable cause) {
-        super(message, cause);
-    }
-}
\ No newline at end of file
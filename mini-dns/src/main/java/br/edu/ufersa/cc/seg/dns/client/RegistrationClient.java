@@ -1,16 +1,22 @@
 package br.edu.ufersa.cc.seg.dns.client;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
 import java.util.Scanner;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 import br.edu.ufersa.cc.seg.common.crypto.CryptoService;
-import br.edu.ufersa.cc.seg.common.network.SecureTcpMessaging;
+import br.edu.ufersa.cc.seg.common.message.MessageCodec;
+import br.edu.ufersa.cc.seg.common.network.SecureConnectionPool;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.NameRecord;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.Update;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.UpdateBatch;
 
 /**
- * Cliente simples que envia UPDATE (registrador)
+ * Cliente simples que envia UPDATE (registrador), ou UPDATE_BATCH para vários
+ * registros de uma vez
  */
 public class RegistrationClient {
 
@@ -23,7 +29,8 @@ public class RegistrationClient {
     private static final byte[] HMAC_KEY = Base64.getDecoder().decode("QYp+xG2d7Ir8Xo2ZyD7m8FJKwrFrxd9ayN9i4mBQlTg=");
 
     private static CryptoService cryptoService = new CryptoService(ENC_KEY, HMAC_KEY);
-    private static ObjectMapper mapper = new ObjectMapper();
+    private static MessageCodec<DnsMessage> codec = new MessageCodec<>(DnsMessage.class);
+    private static SecureConnectionPool pool = new SecureConnectionPool(cryptoService);
 
     public static void main(final String[] args) throws Exception {
         final var scanner = new Scanner(System.in);
@@ -34,13 +41,15 @@ public class RegistrationClient {
             repeat = interact(scanner);
         }
 
-        // Fechar entrada
+        // Fechar conexões e entrada
+        pool.close();
         scanner.close();
     }
 
     private static boolean interact(final Scanner scanner) throws IOException {
         // Receber dados do usuário
         System.out.println("REGISTRAR NOVO DOMÍNIO (Digite 'x' para sair)");
+        System.out.println("Vários de uma vez: nome=ip nome=ip ...");
         System.out.print("Nome:\t");
         final var name = scanner.nextLine();
 
@@ -49,27 +58,66 @@ public class RegistrationClient {
             return false;
         }
 
+        if (name.contains("=")) {
+            final var records = parseRecords(name);
+            System.out.println("Resposta: " + registerAll(records, readTtl(scanner)));
+            System.out.println();
+            return true;
+        }
+
         System.out.print("IP:\t");
         final var ip = scanner.nextLine();
+        final var ttl = readTtl(scanner);
+
+        // Enviar UPDATE (por uma conexão reaproveitada) e imprimir resposta
+        final var request = codec.encode(new Update(name, ip, ttl));
+        final var response = codec.decode(pool.exchange(SERVER_HOST, SERVER_PORT, request));
+        System.out.println("Resposta: " + response);
+
+        System.out.println();
+        return true;
+    }
 
-        // Abrir conexão
-        try (final var messenger = new SecureTcpMessaging(SERVER_HOST, SERVER_PORT, cryptoService)) {
-            // Construir mensagem UPDATE
-            final var request = mapper.createObjectNode();
-            request.put("type", "UPDATE");
-            request.put("name", name);
-            request.put("ip", ip);
+    /**
+     * Registra todos os nomes numa só mensagem, aplicada pelo servidor de uma
+     * vez, e devolve a resposta ({@code ACK_BATCH} ou {@code ERROR})
+     */
+    public static DnsMessage registerAll(final List<NameRecord> records) throws IOException {
+        return registerAll(records, 0);
+    }
 
-            // Enviar
-            messenger.sendSecure(mapper.writeValueAsBytes(request));
+    /**
+     * Como {@link #registerAll(List)}, com os registros válidos por
+     * {@code ttl} segundos (0 para sem prazo)
+     */
+    public static DnsMessage registerAll(final List<NameRecord> records, final long ttl) throws IOException {
+        final var request = codec.encode(new UpdateBatch(records, ttl));
+        return codec.decode(pool.exchange(SERVER_HOST, SERVER_PORT, request));
+    }
 
-            // Receber e imprimir resposta
-            final var responseInBytes = messenger.receiveSecure();
-            System.out.println("Resposta: " + new String(responseInBytes));
+    /**
+     * TTL em segundos; vazio (ou inválido) é sem prazo
+     */
+    private static long readTtl(final Scanner scanner) {
+        System.out.print("TTL em segundos (vazio para sem prazo):\t");
+        final var input = scanner.nextLine().trim();
+        try {
+            return input.isEmpty() ? 0 : Long.parseLong(input);
+        } catch (final NumberFormatException e) {
+            System.out.println("TTL inválido, registrando sem prazo");
+            return 0;
         }
+    }
 
-        System.out.println();
-        return true;
+    private static List<NameRecord> parseRecords(final String input) {
+        final var records = new ArrayList<NameRecord>();
+        for (final var pair : input.trim().split("\\s+")) {
+            final var separator = pair.indexOf('=');
+            records.add(separator < 0
+                    ? new NameRecord(pair, null)
+                    : new NameRecord(pair.substring(0, separator), pair.substring(separator + 1)));
+        }
+        return records;
     }
 
 }
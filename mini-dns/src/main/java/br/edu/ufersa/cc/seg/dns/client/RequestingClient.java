@@ -1,15 +1,24 @@
 package br.edu.ufersa.cc.seg.dns.client;
 
-import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
 import java.util.Scanner;
-
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.concurrent.CompletableFuture;
 
 import br.edu.ufersa.cc.seg.common.crypto.CryptoService;
-import br.edu.ufersa.cc.seg.common.network.SecureMessaging;
-import br.edu.ufersa.cc.seg.common.network.SecureTcpMessaging;
+import br.edu.ufersa.cc.seg.common.message.MessageCodec;
+import br.edu.ufersa.cc.seg.common.network.MultiplexedClient;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.ErrorMessage;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.Match;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.NameQuery;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.NameRecord;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.PtrQuery;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.Records;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.Response;
+import br.edu.ufersa.cc.seg.dns.resolver.DnsResolver;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 
@@ -27,23 +36,32 @@ public class RequestingClient {
     private static final byte[] HMAC_KEY = Base64.getDecoder().decode("QYp+xG2d7Ir8Xo2ZyD7m8FJKwrFrxd9ayN9i4mBQlTg=");
 
     private static CryptoService cryptoService = new CryptoService(ENC_KEY, HMAC_KEY);
-    private static ObjectMapper mapper = new ObjectMapper();
+    private static MessageCodec<DnsMessage> codec = new MessageCodec<>(DnsMessage.class);
+
+    // Consultas compartilham uma conexão, com várias pendentes ao mesmo tempo
+    private static MultiplexedClient queryClient;
+
+    // Nomes exatos: cache local mantido pelas notificações do servidor
+    private static DnsResolver resolver = new DnsResolver(SERVER_HOST, SERVER_PORT, cryptoService);
 
     public static void main(final String[] args) throws Exception {
         final var scanner = new Scanner(System.in);
 
-        final var notificationListener = new Thread(() -> listenNotifications(scanner));
-
-        final var interaction = new Thread(() -> {
-            interact(scanner);
-            notificationListener.interrupt();
-        });
+        resolver.onChange((name, ip) -> System.out.printf("%n[ATUALIZAÇÃO] %s → %s%n", name,
+                ip == null ? "REMOVIDO" : ip));
+        try {
+            resolver.connect();
+            log.info("Registrado para receber notificações");
+        } catch (final IOException e) {
+            log.error("Falha ao conectar ao servidor DNS: {}", e.getMessage());
+        }
 
-        notificationListener.start();
-        Thread.sleep(1000);
-        interaction.start();
-        interaction.join();
+        interact(scanner);
 
+        resolver.close();
+        if (queryClient != null) {
+            queryClient.close();
+        }
         scanner.close();
     }
 
@@ -54,14 +72,18 @@ public class RequestingClient {
             do {
                 System.out.println("\nCONSULTAR DOMÍNIO");
                 System.out.println("Digite 'x' para sair");
-                System.out.print("Nome:\t");
+                System.out.println("Curingas: *.zona | Também: sufixo:zona, prefixo:nome, especifico:nome, reverso:ip");
+                System.out.println("Digite 'cache' para ver as estatísticas do cache");
+                System.out.print("Nome(s), separados por espaço:\t");
 
                 input = scanner.nextLine().trim();
-                if (!"x".equalsIgnoreCase(input)) {
-                    sendQuery(input);
+                if ("cache".equalsIgnoreCase(input)) {
+                    System.out.printf("%d nomes no cache: %s%n", resolver.cachedNames(), resolver.metrics());
+                } else if (!"x".equalsIgnoreCase(input) && !input.isEmpty()) {
+                    sendQueries(input.split("\\s+"));
                 }
 
-            } while (!"x".equalsIgnoreCase(input) && !Thread.currentThread().isInterrupted());
+            } while (!"x".equalsIgnoreCase(input));
         } catch (final IllegalStateException e) {
             System.out.println();
             log.info("Encerrando...");
@@ -71,85 +93,131 @@ public class RequestingClient {
         }
     }
 
-    @SneakyThrows
-    private static void sendQuery(final String name) {
-        try (final var messenger = new SecureTcpMessaging(SERVER_HOST, SERVER_PORT, cryptoService)) {
-
-            // Envia requisição
-            final var request = mapper.createObjectNode();
-            request.put("type", "QUERY");
-            request.put("name", name);
-            messenger.sendSecure(mapper.writeValueAsBytes(request));
-
-            // Processa resposta
-            final var responseInBytes = messenger.receiveSecure();
-            final var responseInJson = mapper.readTree(responseInBytes);
-            printResponse(responseInJson);
+    /**
+     * Envia todas as consultas de uma vez e imprime as respostas conforme
+     * chegam. Os nomes exatos saem do cache ou vão juntos num único
+     * QUERY_BATCH.
+     */
+    private static void sendQueries(final String[] inputs) throws IOException {
+        final var responses = new ArrayList<CompletableFuture<?>>();
+        final var names = new ArrayList<String>();
+
+        for (final var input : inputs) {
+            final var nameQuery = nameQuery(input);
+            if (nameQuery == null) {
+                names.add(input);
+            } else {
+                responses.add(requestPages(queryClient(), nameQuery).exceptionally(e -> printError(input, e)));
+            }
+        }
+
+        // Envia requisição e processa a resposta quando chegar
+        if (names.size() == 1) {
+            final var name = names.get(0);
+            responses.add(query(name)
+                    .thenAccept(ip -> printResponse(new Response(name, ip)))
+                    .exceptionally(e -> printError(name, e)));
+        } else if (!names.isEmpty()) {
+            responses.add(queryAll(names)
+                    .thenAccept(records -> printResponse(new Records(records, null)))
+                    .exceptionally(e -> printError(String.join(" ", names), e)));
         }
+
+        CompletableFuture.allOf(responses.toArray(CompletableFuture[]::new)).join();
     }
 
-    private static void printResponse(final JsonNode resp) {
-        final var type = resp.get("type").asText();
-        final var name = resp.get("name").asText();
+    /**
+     * IP do nome, ou {@code null} se ele não existir; do cache, quando
+     * possível
+     */
+    public static CompletableFuture<String> query(final String name) {
+        return resolver.resolve(name);
+    }
 
-        if ("RESPONSE".equals(type)) {
-            if (resp.has("ip")) {
-                final var ip = resp.get("ip").asText();
-                System.out.printf("%s → %s%n", name, ip);
-            } else {
-                System.out.printf("%s → NÃO ENCONTRADO%n", name);
-            }
-        } else {
-            System.out.printf("Erro: %s%n", resp.get("message"));
-        }
+    /**
+     * Consulta todos os nomes; os que não estão no cache vão numa só
+     * mensagem. Devolve um registro por nome, na mesma ordem, com IP
+     * {@code null} para os que não existirem.
+     */
+    public static CompletableFuture<List<NameRecord>> queryAll(final List<String> names) {
+        return resolver.resolveAll(names).thenApply(resolved -> names.stream()
+                .map(name -> new NameRecord(name, resolved.get(name)))
+                .toList());
     }
 
-    @SneakyThrows
-    private static void listenNotifications(final Scanner scanner) {
-        while (!Thread.currentThread().isInterrupted()) {
-            try (final var messenger = new SecureTcpMessaging(SERVER_HOST, SERVER_PORT, cryptoService)) {
-                registerForNotifications(messenger);
-                receiveNotifications(messenger);
-            } catch (final EOFException e) {
-                log.error("Credenciais desconhecidas");
-                Thread.currentThread().interrupt();
-                scanner.close();
-            } catch (final Exception e) {
-                if (Thread.currentThread().isInterrupted()) {
-                    break;
+    private static Void printError(final String name, final Throwable e) {
+        System.out.printf("%s → ERRO: %s%n", name, e.getMessage());
+        return null;
+    }
+
+    /**
+     * Consulta de vários nomes indicada pela entrada ({@link NameQuery} ou
+     * {@link PtrQuery}), ou {@code null} para uma consulta simples
+     */
+    private static DnsMessage nameQuery(final String input) {
+        final var separator = input.indexOf(':');
+        final var kind = separator > 0 ? input.substring(0, separator).toLowerCase() : "";
+        final var pattern = input.substring(separator + 1);
+        return switch (kind) {
+            case "sufixo" -> new NameQuery(Match.SUFFIX, pattern);
+            case "prefixo" -> new NameQuery(Match.PREFIX, pattern);
+            case "especifico" -> new NameQuery(Match.LONGEST_SUFFIX, pattern);
+            case "reverso" -> new PtrQuery(pattern);
+            default -> input.contains("*") ? new NameQuery(Match.WILDCARD, input) : null;
+        };
+    }
+
+    /**
+     * Pede as páginas uma a uma, imprimindo cada uma ao chegar
+     */
+    private static CompletableFuture<Void> requestPages(final MultiplexedClient client, final DnsMessage query) {
+        try {
+            return client.request(codec.encode(query)).thenCompose(responseInBytes -> {
+                final var response = decode(responseInBytes);
+                printResponse(response);
+                if (response instanceof Records(var records, var next) && next != null) {
+                    return requestPages(client, nextPage(query, next));
                 }
-                log.error("Erro no listener de notificações", e);
-                Thread.sleep(1000); // Espera antes de reconectar
-            }
+                return CompletableFuture.completedFuture(null);
+            });
+        } catch (final IOException e) {
+            return CompletableFuture.failedFuture(e);
         }
     }
 
-    @SneakyThrows
-    private static void registerForNotifications(final SecureMessaging messenger) {
-        final var request = mapper.createObjectNode();
-        request.put("type", "REGISTER_NOTIFY");
-        messenger.sendSecure(mapper.writeValueAsBytes(request));
-
-        final var responseInBytes = messenger.receiveSecure();
-        final var responseInJson = mapper.readTree(responseInBytes);
-        if (!"REGISTERED".equals(responseInJson.get("type").asText())) {
-            throw new NotificationRegistrationException("Registro para notificação falhou: " + responseInJson);
-        }
+    /**
+     * A mesma consulta, continuando depois de {@code next}
+     */
+    private static DnsMessage nextPage(final DnsMessage query, final String next) {
+        return switch (query) {
+            case NameQuery(var match, var pattern, var after, var limit) -> new NameQuery(match, pattern, next, limit);
+            case PtrQuery(var ip, var after, var limit) -> new PtrQuery(ip, next, limit);
+            default -> throw new IllegalArgumentException("Consulta sem páginas: " + query);
+        };
+    }
 
-        log.info("Registrado para receber notificações");
+    private static synchronized MultiplexedClient queryClient() throws IOException {
+        if (queryClient == null || !queryClient.isOpen()) {
+            queryClient = new MultiplexedClient(SERVER_HOST, SERVER_PORT, cryptoService);
+        }
+        return queryClient;
     }
 
     @SneakyThrows
-    private static void receiveNotifications(final SecureMessaging messenger) {
-        while (!Thread.currentThread().isInterrupted()) {
-            final var notificationInBytes = messenger.receiveSecure();
-            final var notificationInJson = mapper.readTree(notificationInBytes);
-
-            if ("NOTIFY".equals(notificationInJson.get("type").asText())) {
-                final var name = notificationInJson.get("name").asText();
-                final var ip = notificationInJson.get("ip").asText();
-                System.out.printf("%n[ATUALIZAÇÃO] %s → %s%n", name, ip);
-            }
+    private static DnsMessage decode(final byte[] json) {
+        return codec.decode(json);
+    }
+
+    private static void printResponse(final DnsMessage message) {
+        switch (message) {
+            case Response(var name, var ip) when ip != null -> System.out.printf("%s → %s%n", name, ip);
+            case Response(var name, var ip) -> System.out.printf("%s → NÃO ENCONTRADO%n", name);
+            case Records(var records, var next) when records.isEmpty() && next == null ->
+                System.out.println("Nenhum nome encontrado");
+            case Records(var records, var next) -> records.forEach(found -> System.out.printf("%s → %s%n",
+                    found.name(), found.ip() == null ? "NÃO ENCONTRADO" : found.ip()));
+            case ErrorMessage(var text) -> System.out.printf("Erro: %s%n", text);
+            default -> System.out.printf("Resposta inesperada: %s%n", message);
         }
     }
 
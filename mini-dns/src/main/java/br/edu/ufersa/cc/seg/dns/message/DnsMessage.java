@@ -0,0 +1,327 @@
+package br.edu.ufersa.cc.seg.dns.message;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+
+import br.edu.ufersa.cc.seg.common.message.Message;
+import br.edu.ufersa.cc.seg.common.utils.MessageType;
+
+/**
+ * Mensagens do protocolo do DNS
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+@JsonSubTypes({
+        @JsonSubTypes.Type(value = DnsMessage.Query.class, name = "QUERY"),
+        @JsonSubTypes.Type(value = DnsMessage.Response.class, name = "RESPONSE"),
+        @JsonSubTypes.Type(value = DnsMessage.NameQuery.class, name = "QUERY_NAMES"),
+        @JsonSubTypes.Type(value = DnsMessage.PtrQuery.class, name = "QUERY_PTR"),
+        @JsonSubTypes.Type(value = DnsMessage.Records.class, name = "RECORDS"),
+        @JsonSubTypes.Type(value = DnsMessage.Update.class, name = "UPDATE"),
+        @JsonSubTypes.Type(value = DnsMessage.Ack.class, name = "ACK"),
+        @JsonSubTypes.Type(value = DnsMessage.QueryBatch.class, name = "QUERY_BATCH"),
+        @JsonSubTypes.Type(value = DnsMessage.UpdateBatch.class, name = "UPDATE_BATCH"),
+        @JsonSubTypes.Type(value = DnsMessage.AckBatch.class, name = "ACK_BATCH"),
+        @JsonSubTypes.Type(value = DnsMessage.RegisterNotify.class, name = "REGISTER_NOTIFY"),
+        @JsonSubTypes.Type(value = DnsMessage.Registered.class, name = "REGISTERED"),
+        @JsonSubTypes.Type(value = DnsMessage.Notify.class, name = "NOTIFY"),
+        @JsonSubTypes.Type(value = DnsMessage.NotifyBatch.class, name = "NOTIFY_BATCH"),
+        @JsonSubTypes.Type(value = DnsMessage.ErrorMessage.class, name = "ERROR"),
+})
+public sealed interface DnsMessage extends Message {
+
+    /**
+     * Consulta do IP de um nome
+     */
+    record Query(String name) implements DnsMessage {
+        @Override
+        public MessageType type() {
+            return MessageType.QUERY;
+        }
+    }
+
+    /**
+     * Resposta a uma consulta; {@code ip} nulo se o nome não existir
+     */
+    record Response(String name, String ip) implements DnsMessage {
+        @Override
+        public MessageType type() {
+            return MessageType.RESPONSE;
+        }
+    }
+
+    /**
+     * Forma de casar o {@code pattern} de um {@link NameQuery}
+     */
+    enum Match {
+
+        /**
+         * Nomes sob a zona, incluindo a própria ({@code svc.prod})
+         */
+        SUFFIX,
+
+        /**
+         * Nomes da zona cujo primeiro rótulo começa com o informado
+         * ({@code ap.svc.prod} encontra {@code api.svc.prod})
+         */
+        PREFIX,
+
+        /**
+         * {@code *} casa com qualquer rótulo; à esquerda, com um ou mais
+         * ({@code *.svc.prod})
+         */
+        WILDCARD,
+
+        /**
+         * O registro mais específico entre o nome e suas zonas
+         */
+        LONGEST_SUFFIX,
+
+    }
+
+    /**
+     * Consulta de vários nomes. A resposta ({@link Records}) vem em páginas de
+     * até {@code limit} registros; para a próxima, repete-se a consulta com
+     * {@code after} igual ao {@code next} recebido.
+     */
+    record NameQuery(Match match, String pattern, String after, int limit) implements DnsMessage {
+
+        public NameQuery(final Match match, final String pattern) {
+            this(match, pattern, null, 0);
+        }
+
+        @Override
+        public MessageType type() {
+            return MessageType.QUERY_NAMES;
+        }
+    }
+
+    /**
+     * Consulta reversa: os nomes que apontam para o IP, como um registro PTR.
+     * A resposta ({@link Records}) traz um registro por nome, todos com o IP
+     * consultado, em páginas de até {@code limit}; para a próxima, repete-se
+     * a consulta com {@code after} igual ao {@code next} recebido.
+     */
+    record PtrQuery(String ip, String after, int limit) implements DnsMessage {
+
+        public PtrQuery(final String ip) {
+            this(ip, null, 0);
+        }
+
+        @Override
+        public MessageType type() {
+            return MessageType.QUERY_PTR;
+        }
+    }
+
+    /**
+     * Registro devolvido numa página de {@link Records}
+     */
+    record NameRecord(String name, String ip) {
+    }
+
+    /**
+     * Página de resposta a um {@link NameQuery} ou {@link PtrQuery};
+     * {@code next} nulo na última
+     */
+    record Records(List<NameRecord> records, String next) implements DnsMessage {
+        @Override
+        public MessageType type() {
+            return MessageType.RECORDS;
+        }
+    }
+
+    /**
+     * Inclusão ou alteração de um registro, válido por {@code ttl} segundos
+     * (0 para sem prazo). Ao vencer, o registro é removido e os inscritos
+     * recebem um NOTIFY com IP nulo.
+     */
+    record Update(String name, String ip, long ttl) implements DnsMessage {
+
+        public Update(final String name, final String ip) {
+            this(name, ip, 0);
+        }
+
+        @Override
+        public MessageType type() {
+            return MessageType.UPDATE;
+        }
+    }
+
+    /**
+     * Confirmação de um UPDATE
+     */
+    record Ack(String name, String ip) implements DnsMessage {
+        @Override
+        public MessageType type() {
+            return MessageType.ACK;
+        }
+    }
+
+    /**
+     * Consulta de vários nomes exatos numa só mensagem. A resposta é um
+     * {@link Records} com um registro por nome, na mesma ordem, e IP nulo
+     * para os que não existirem.
+     */
+    record QueryBatch(List<String> names) implements DnsMessage {
+        @Override
+        public MessageType type() {
+            return MessageType.QUERY_BATCH;
+        }
+    }
+
+    /**
+     * Inclusão ou alteração de vários registros, aplicadas juntas: ou todas
+     * ou nenhuma. Todos valem por {@code ttl} segundos (0 para sem prazo).
+     */
+    record UpdateBatch(List<NameRecord> records, long ttl) implements DnsMessage {
+
+        public UpdateBatch(final List<NameRecord> records) {
+            this(records, 0);
+        }
+
+        @Override
+        public MessageType type() {
+            return MessageType.UPDATE_BATCH;
+        }
+    }
+
+    /**
+     * Confirmação de um UPDATE_BATCH com a quantidade de registros aplicados
+     */
+    record AckBatch(int count) implements DnsMessage {
+        @Override
+        public MessageType type() {
+            return MessageType.ACK_BATCH;
+        }
+    }
+
+    /**
+     * Como o servidor coloca em dia um inscrito que informou de que versão
+     * parou
+     */
+    enum Sync {
+
+        /**
+         * Nenhuma versão informada: só as alterações a partir de agora
+         */
+        NONE,
+
+        /**
+         * Só as alterações posteriores à versão informada, com o valor mais
+         * recente de cada nome
+         */
+        DELTA,
+
+        /**
+         * A versão saiu do histórico do servidor: a tabela inteira, começando
+         * por um NOTIFY_BATCH com {@code reset}
+         */
+        SNAPSHOT,
+
+    }
+
+    /**
+     * Nomes que interessam a um inscrito: os exatos de {@code names} e os que
+     * começam por um dos {@code prefixes}
+     */
+    record NameFilter(List<String> names, List<String> prefixes) {
+
+        public boolean matches(final String name) {
+            if (names != null && names.contains(name)) {
+                return true;
+            }
+            return prefixes != null && prefixes.stream().anyMatch(name::startsWith);
+        }
+
+    }
+
+    /**
+     * Pedido para receber notificações de alterações. Com {@code since} (a
+     * {@code version} da última notificação aplicada), o servidor primeiro
+     * envia o que mudou desde então. Com {@code filter}, só as alterações dos
+     * nomes que ele inclui; sem ele, de todos.
+     */
+    record RegisterNotify(Long since, NameFilter filter) implements DnsMessage {
+
+        public RegisterNotify() {
+            this(null);
+        }
+
+        public RegisterNotify(final Long since) {
+            this(since, null);
+        }
+
+        @Override
+        public MessageType type() {
+            return MessageType.REGISTER_NOTIFY;
+        }
+    }
+
+    /**
+     * Confirmação da inscrição em notificações. {@code version} é a versão em
+     * que o inscrito estará ao aplicar a recuperação indicada por {@code sync};
+     * as notificações seguintes são de versões posteriores.
+     */
+    record Registered(long version, Sync sync) implements DnsMessage {
+
+        public Registered() {
+            this(0, Sync.NONE);
+        }
+
+        @Override
+        public MessageType type() {
+            return MessageType.REGISTERED;
+        }
+    }
+
+    /**
+     * Notificação de alteração enviada aos inscritos; IP nulo se o nome foi
+     * removido por ter vencido. {@code version} é a versão da tabela depois da
+     * alteração.
+     */
+    record Notify(String name, String ip, long version) implements DnsMessage {
+
+        public Notify(final String name, final String ip) {
+            this(name, ip, 0);
+        }
+
+        @Override
+        public MessageType type() {
+            return MessageType.NOTIFY;
+        }
+    }
+
+    /**
+     * Notificação com várias alterações: as de um UPDATE_BATCH, os nomes
+     * vencidos removidos juntos (IP nulo), alterações seguidas agrupadas ou a
+     * recuperação de um inscrito. Com {@code reset}, o inscrito descarta o que
+     * sabia antes de aplicá-la. {@code version} é a versão em que o inscrito
+     * fica depois de aplicá-la (0 no meio de uma recuperação por snapshot).
+     */
+    record NotifyBatch(List<NameRecord> records, long version, boolean reset) implements DnsMessage {
+
+        public NotifyBatch(final List<NameRecord> records) {
+            this(records, 0, false);
+        }
+
+        @Override
+        public MessageType type() {
+            return MessageType.NOTIFY_BATCH;
+        }
+    }
+
+    /**
+     * Resposta de erro a qualquer requisição: consulta ou atualização
+     * inválida, tipo desconhecido, servidor sobrecarregado ou falha ao
+     * gravar. {@code message} descreve o motivo.
+     */
+    record ErrorMessage(String message) implements DnsMessage {
+        @Override
+        public MessageType type() {
+            return MessageType.ERROR;
+        }
+    }
+
+}
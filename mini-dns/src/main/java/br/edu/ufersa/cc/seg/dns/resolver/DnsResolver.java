@@ -0,0 +1,545 @@
+package br.edu.ufersa.cc.seg.dns.resolver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+import br.edu.ufersa.cc.seg.common.crypto.CryptoService;
+import br.edu.ufersa.cc.seg.common.message.MessageCodec;
+import br.edu.ufersa.cc.seg.common.network.DatagramClient;
+import br.edu.ufersa.cc.seg.common.network.MultiplexedClient;
+import br.edu.ufersa.cc.seg.common.utils.Settings;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.ErrorMessage;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.NameFilter;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.Notify;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.NotifyBatch;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.Query;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.QueryBatch;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.Records;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.RegisterNotify;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.Registered;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.Response;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.Sync;
+import br.edu.ufersa.cc.seg.dns.resolver.ResolverCache.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Resolvedor de nomes com cache local, mantido coerente pelas notificações
+ * do servidor.
+ *
+ * <p>
+ * Usa uma única conexão multiplexada, inscrita em REGISTER_NOTIFY: as
+ * consultas e os NOTIFY chegam pelo mesmo caminho, e cada NOTIFY atualiza o
+ * cache na hora. Um acerto no cache não usa rede nem criptografia.
+ *
+ * <p>
+ * Cada notificação traz a versão da tabela em que o resolvedor fica ao
+ * aplicá-la. Se a conexão cai, o cache deixa de ser consultado (as consultas
+ * vão ao servidor) e, ao reconectar, o resolvedor pede as alterações desde a
+ * última versão aplicada: o servidor envia só os nomes alterados desde então
+ * ou, se ela já saiu do histórico dele, a tabela inteira, começando por um
+ * NOTIFY_BATCH com {@code reset}. O cache volta a ser usado quando a
+ * recuperação termina, sem ter sido esvaziado.
+ *
+ * <p>
+ * Com {@value #UDP_SETTING}, as consultas que não saem do cache vão por UDP
+ * ({@link DatagramClient}); a conexão TCP continua para as notificações e
+ * para o que não cabe num datagrama.
+ *
+ * <p>
+ * Com {@link #watching}, o resolvedor acompanha só alguns nomes: o servidor
+ * notifica só as alterações deles, e só eles ficam no cache.
+ *
+ * <p>
+ * Cada registro vale por um tempo (TTL; nomes inexistentes, por menos
+ * tempo), que limita o atraso caso uma notificação se perca sem a conexão
+ * cair. Nomes muito usados são consultados de novo em segundo plano a partir
+ * de 80% do TTL, para não expirarem no meio do uso. Consultas simultâneas ao
+ * mesmo nome viram uma só.
+ */
+@Slf4j
+public class DnsResolver implements Closeable {
+
+    /**
+     * Chave de configuração da quantidade máxima de nomes no cache
+     */
+    public static final String MAX_SIZE_SETTING = "dns.cache.max-size";
+
+    /**
+     * Chave de configuração do TTL (ms) dos nomes resolvidos
+     */
+    public static final String TTL_SETTING = "dns.cache.ttl-ms";
+
+    /**
+     * Chave de configuração do TTL (ms) dos nomes inexistentes
+     */
+    public static final String NEGATIVE_TTL_SETTING = "dns.cache.negative-ttl-ms";
+
+    /**
+     * Chave de configuração que faz as consultas ao servidor irem por UDP
+     */
+    public static final String UDP_SETTING = "dns.resolver.udp";
+
+    // Fração do TTL a partir da qual um nome muito usado é renovado
+    private static final double REFRESH_AHEAD = 0.8;
+
+    // Frequência estimada a partir da qual o nome é considerado muito usado
+    private static final int HOT_FREQUENCY = 3;
+
+    // Limite de nomes por QUERY_BATCH aceito pelo servidor
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    private static final Duration REGISTRATION_TIMEOUT = Duration.ofSeconds(5);
+
+    private final String host;
+    private final int port;
+    private final CryptoService cryptoService;
+    private final MessageCodec<DnsMessage> codec = new MessageCodec<>(DnsMessage.class);
+    private final ResolverMetrics metrics = new ResolverMetrics();
+    private final ResolverCache cache;
+    private final long ttl;
+    private final long negativeTtl;
+    private final boolean udp;
+
+    // Consultas em andamento, para que pedidos simultâneos do mesmo nome esperem a mesma
+    private final Map<String, Load> loading = new ConcurrentHashMap<>();
+    private final List<BiConsumer<String, String>> changeListeners = new CopyOnWriteArrayList<>();
+
+    private MultiplexedClient client;
+    // Consultas por UDP, se configurado; o que não cabe num datagrama vai por client
+    private DatagramClient datagrams;
+    private volatile boolean closed;
+
+    // Nomes acompanhados pelas notificações (todos, se nulo); só eles ficam no cache
+    private volatile NameFilter filter;
+
+    // Versão da tabela já aplicada ao cache (-1 antes da primeira inscrição)
+    private volatile long cursor = -1;
+    // Versão a alcançar para que o cache volte a ser consultado
+    private volatile long syncTarget;
+
+    /**
+     * Consulta em andamento. Marcada como desatualizada se um NOTIFY do nome
+     * chegar antes da resposta, que então não é guardada.
+     */
+    private static final class Load {
+
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private volatile boolean stale;
+
+    }
+
+    /**
+     * Cria o resolvedor com o tamanho, os TTLs e o transporte das consultas
+     * configurados ({@value #MAX_SIZE_SETTING}, {@value #TTL_SETTING},
+     * {@value #NEGATIVE_TTL_SETTING} e {@value #UDP_SETTING})
+     */
+    public DnsResolver(final String host, final int port, final CryptoService cryptoService) {
+        this(host, port, cryptoService, Settings.getInt(MAX_SIZE_SETTING, 10_000),
+                Duration.ofMillis(Settings.getLong(TTL_SETTING, 30_000)),
+                Duration.ofMillis(Settings.getLong(NEGATIVE_TTL_SETTING, 5_000)),
+                Settings.getBoolean(UDP_SETTING, false));
+    }
+
+    public DnsResolver(final String host, final int port, final CryptoService cryptoService, final int maximumSize,
+            final Duration ttl, final Duration negativeTtl) {
+        this(host, port, cryptoService, maximumSize, ttl, negativeTtl, false);
+    }
+
+    /**
+     * Com {@code udp}, as consultas que não saem do cache (QUERY e
+     * QUERY_BATCH) vão em datagramas avulsos, com reenvio; as que não cabem
+     * num datagrama, e as respostas grandes demais, vão pela conexão TCP das
+     * notificações. A inscrição continua sempre por TCP.
+     */
+    public DnsResolver(final String host, final int port, final CryptoService cryptoService, final int maximumSize,
+            final Duration ttl, final Duration negativeTtl, final boolean udp) {
+        this.host = host;
+        this.port = port;
+        this.cryptoService = cryptoService;
+        this.cache = new ResolverCache(maximumSize, metrics);
+        this.ttl = ttl.toNanos();
+        this.negativeTtl = negativeTtl.toNanos();
+        this.udp = udp;
+    }
+
+    /**
+     * Acompanha só os nomes do filtro: o servidor notifica só as alterações
+     * deles, e os demais são sempre consultados no servidor, sem passar pelo
+     * cache. Deve ser chamado antes de conectar.
+     */
+    public DnsResolver watching(final NameFilter filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    /**
+     * Conecta e se inscreve nas notificações já, em vez de esperar a primeira
+     * consulta
+     */
+    public void connect() throws IOException {
+        connection();
+    }
+
+    /**
+     * IP do nome, ou {@code null} se ele não existir. Do cache, quando
+     * possível; senão, consultando o servidor.
+     */
+    public CompletableFuture<String> resolve(final String name) {
+        if (!synced() || !watched(name)) {
+            return load(name);
+        }
+
+        final var now = System.nanoTime();
+        final var cached = cache.get(name, now);
+        if (cached == null) {
+            return load(name);
+        }
+
+        if (now - cached.refreshAt() >= 0 && cache.frequency(name) >= HOT_FREQUENCY) {
+            refresh(name);
+        }
+        return CompletableFuture.completedFuture(cached.ip());
+    }
+
+    /**
+     * IPs dos nomes, na mesma ordem ({@code null} para os inexistentes). Os
+     * que não estão no cache vão juntos em QUERY_BATCH.
+     */
+    public CompletableFuture<Map<String, String>> resolveAll(final List<String> names) {
+        final var now = System.nanoTime();
+        final var synced = synced();
+        final var results = new LinkedHashMap<String, CompletableFuture<String>>();
+        final var batch = new LinkedHashMap<String, Load>();
+
+        for (final var name : names) {
+            if (results.containsKey(name)) {
+                continue;
+            }
+            final var cached = synced && watched(name) ? cache.get(name, now) : null;
+            if (cached != null) {
+                results.put(name, CompletableFuture.completedFuture(cached.ip()));
+                continue;
+            }
+
+            final var load = new Load();
+            final var existing = loading.putIfAbsent(name, load);
+            if (existing == null) {
+                batch.put(name, load);
+            }
+            results.put(name, (existing == null ? load : existing).result);
+        }
+
+        final var pending = new ArrayList<>(batch.entrySet());
+        for (var start = 0; start < pending.size(); start += MAX_BATCH_SIZE) {
+            sendBatch(pending.subList(start, Math.min(start + MAX_BATCH_SIZE, pending.size())));
+        }
+
+        return CompletableFuture.allOf(results.values().toArray(CompletableFuture[]::new)).thenApply(ignored -> {
+            final var resolved = new LinkedHashMap<String, String>();
+            results.forEach((name, result) -> resolved.put(name, result.join()));
+            return resolved;
+        });
+    }
+
+    /**
+     * Registra quem deve ser avisado de cada alteração notificada pelo
+     * servidor ({@code ip} nulo se o nome foi removido)
+     */
+    public void onChange(final BiConsumer<String, String> listener) {
+        changeListeners.add(listener);
+    }
+
+    public ResolverMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Quantidade de nomes no cache
+     */
+    public int cachedNames() {
+        return cache.size();
+    }
+
+    /**
+     * Se o cache acompanha o servidor: conectado e com a recuperação aplicada
+     */
+    private boolean synced() {
+        return cursor >= syncTarget;
+    }
+
+    /**
+     * Se as alterações do nome são notificadas, e ele pode ficar no cache
+     */
+    private boolean watched(final String name) {
+        final var current = filter;
+        return current == null || current.matches(name);
+    }
+
+    private CompletableFuture<String> load(final String name) {
+        final var load = new Load();
+        final var existing = loading.putIfAbsent(name, load);
+        if (existing != null) {
+            return existing.result;
+        }
+
+        send(name, load);
+        return load.result;
+    }
+
+    /**
+     * Renova o nome em segundo plano, se ninguém já o estiver consultando
+     */
+    private void refresh(final String name) {
+        final var load = new Load();
+        if (loading.putIfAbsent(name, load) == null) {
+            metrics.refreshes.increment();
+            send(name, load);
+        }
+    }
+
+    private void send(final String name, final Load load) {
+        final CompletableFuture<byte[]> response;
+        try {
+            response = request(codec.encode(new Query(name)));
+        } catch (final IOException e) {
+            fail(name, load, e);
+            return;
+        }
+
+        response.whenComplete((bytes, error) -> {
+            if (error != null) {
+                fail(name, load, error);
+                return;
+            }
+            try {
+                switch (codec.decode(bytes)) {
+                    case Response(var ignored, var ip) -> complete(name, load, ip);
+                    case ErrorMessage(var message) -> fail(name, load, new IOException(message));
+                    case DnsMessage other -> fail(name, load, new IOException("Resposta inesperada: " + other));
+                }
+            } catch (final IOException e) {
+                fail(name, load, e);
+            }
+        });
+    }
+
+    private void sendBatch(final List<Map.Entry<String, Load>> batch) {
+        final var names = batch.stream().map(Map.Entry::getKey).toList();
+        final CompletableFuture<byte[]> response;
+        try {
+            response = request(codec.encode(new QueryBatch(names)));
+        } catch (final IOException e) {
+            batch.forEach(entry -> fail(entry.getKey(), entry.getValue(), e));
+            return;
+        }
+
+        response.whenComplete((bytes, error) -> {
+            try {
+                if (error != null) {
+                    throw error;
+                }
+                if (!(codec.decode(bytes) instanceof Records(var records, var next))
+                        || records.size() != batch.size()) {
+                    throw new IOException("Resposta inesperada ao lote");
+                }
+                for (var i = 0; i < batch.size(); i++) {
+                    complete(batch.get(i).getKey(), batch.get(i).getValue(), records.get(i).ip());
+                }
+            } catch (final Throwable e) {
+                batch.forEach(entry -> fail(entry.getKey(), entry.getValue(), e));
+            }
+        });
+    }
+
+    private void complete(final String name, final Load load, final String ip) {
+        if (!load.stale && watched(name)) {
+            cache.put(name, value(ip, System.nanoTime()));
+
+            // Um NOTIFY pode ter chegado entre a verificação e a inclusão
+            if (load.stale) {
+                cache.invalidate(name);
+            }
+        }
+        loading.remove(name, load);
+        load.result.complete(ip);
+    }
+
+    private void fail(final String name, final Load load, final Throwable error) {
+        metrics.loadFailures.increment();
+        loading.remove(name, load);
+        load.result.completeExceptionally(error);
+    }
+
+    private Value value(final String ip, final long now) {
+        final var lifetime = ip == null ? negativeTtl : ttl;
+        return new Value(ip, now + lifetime, now + (long) (lifetime * REFRESH_AHEAD));
+    }
+
+    /**
+     * Envia a consulta por UDP, se configurado, ou pela conexão das
+     * notificações
+     */
+    private CompletableFuture<byte[]> request(final byte[] message) throws IOException {
+        return udp ? datagrams().request(message) : connection().request(message);
+    }
+
+    private synchronized DatagramClient datagrams() throws IOException {
+        if (closed) {
+            throw new IOException("Resolvedor encerrado");
+        }
+        if (datagrams == null) {
+            datagrams = new DatagramClient(host, port, cryptoService, this::requestTcp);
+        }
+        return datagrams;
+    }
+
+    private CompletableFuture<byte[]> requestTcp(final byte[] message) {
+        try {
+            return connection().request(message);
+        } catch (final IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Conexão atual, ou uma nova já inscrita nas notificações
+     */
+    private synchronized MultiplexedClient connection() throws IOException {
+        if (closed) {
+            throw new IOException("Resolvedor encerrado");
+        }
+        if (client != null && client.isOpen()) {
+            return client;
+        }
+
+        final var fresh = new MultiplexedClient(host, port, cryptoService);
+        fresh.onUnsolicited(this::onNotification);
+        fresh.onClose(() -> onDisconnect(fresh));
+
+        // Retoma da última versão aplicada, se já houve inscrição
+        final var since = cursor < 0 ? null : cursor;
+        final Registered registered;
+        try {
+            final var reply = codec.decode(fresh.request(codec.encode(new RegisterNotify(since, filter)))
+                    .get(REGISTRATION_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS));
+            if (!(reply instanceof Registered accepted)) {
+                throw new IOException("Inscrição nas notificações recusada: " + reply);
+            }
+            registered = accepted;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fresh.close();
+            throw new IOException("Interrompido ao se inscrever nas notificações", e);
+        } catch (final ExecutionException | TimeoutException | IOException e) {
+            fresh.close();
+            throw new IOException("Falha ao se inscrever nas notificações", e);
+        }
+
+        if (registered.sync() == Sync.NONE) {
+            // Sem recuperação: o que estava no cache não foi acompanhado por esta inscrição
+            cache.clear();
+            cursor = registered.version();
+        }
+        syncTarget = registered.version();
+        client = fresh;
+        log.info("Resolvedor conectado a {}:{} e inscrito nas notificações (versão {}, recuperação {})", host, port,
+                registered.version(), registered.sync());
+        return fresh;
+    }
+
+    private void onDisconnect(final MultiplexedClient lost) {
+        synchronized (this) {
+            if (lost != client) {
+                return;
+            }
+            client = null;
+        }
+
+        // Notificações podem ter se perdido: o cache só volta a valer depois da recuperação
+        syncTarget = Long.MAX_VALUE;
+        if (!closed) {
+            log.warn("Conexão do resolvedor caiu na versão {}; cache suspenso até a recuperação", cursor);
+        }
+    }
+
+    private void onNotification(final byte[] message) {
+        final DnsMessage notification;
+        try {
+            notification = codec.decode(message);
+        } catch (final IOException e) {
+            log.warn("Notificação ilegível descartada: {}", e.getMessage());
+            return;
+        }
+
+        switch (notification) {
+            case Notify(var name, var ip, var version) -> {
+                apply(name, ip);
+                cursor = version;
+            }
+            case NotifyBatch(var records, var version, var reset) -> {
+                if (reset) {
+                    // Recuperação com a tabela inteira: o que estava no cache pode ter sido removido
+                    cache.clear();
+                }
+                records.forEach(found -> apply(found.name(), found.ip()));
+                cursor = version;
+            }
+            default -> log.debug("Mensagem inesperada na conexão do resolvedor: {}", notification);
+        }
+    }
+
+    /**
+     * Atualiza o nome se ele estiver no cache e avisa os ouvintes
+     */
+    private void apply(final String name, final String ip) {
+        metrics.notifications.increment();
+
+        final var load = loading.get(name);
+        if (load != null) {
+            load.stale = true;
+        }
+        if (ip == null) {
+            cache.invalidate(name);
+        } else {
+            cache.replace(name, value(ip, System.nanoTime()));
+        }
+
+        for (final var listener : changeListeners) {
+            listener.accept(name, ip);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        final MultiplexedClient current;
+        final DatagramClient currentDatagrams;
+        synchronized (this) {
+            closed = true;
+            current = client;
+            client = null;
+            currentDatagrams = datagrams;
+            datagrams = null;
+        }
+        if (currentDatagrams != null) {
+            currentDatagrams.close();
+        }
+        if (current != null) {
+            current.close();
+        }
+        cache.clear();
+    }
+
+}
@@ -0,0 +1,94 @@
+package br.edu.ufersa.cc.seg.dns.resolver;
+
+/**
+ * Estimativa aproximada de quantas vezes cada nome foi acessado recentemente
+ * (Count-Min Sketch com contadores de 4 bits), usada pelo
+ * {@link ResolverCache} para decidir quem entra e quem sai.
+ *
+ * <p>
+ * Cada nome incrementa 4 contadores, um em cada linha, e a frequência é o
+ * menor deles. Depois de um certo número de incrementos todos os contadores
+ * são divididos por dois, para que acessos antigos percam peso. Não é
+ * seguro para uso concorrente; o cache o protege com sua trava.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+
+    // Cada long guarda 16 contadores de 4 bits
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(final int maximumSize) {
+        final var length = Integer.highestOneBit(Math.max(8, maximumSize - 1)) << 1;
+        this.table = new long[length];
+        this.tableMask = length - 1;
+        this.sampleSize = 10 * Math.max(1, maximumSize);
+    }
+
+    /**
+     * Frequência estimada, de 0 a 15
+     */
+    int frequency(final Object item) {
+        final var hash = spread(item.hashCode());
+        final var start = (hash & 3) << 2;
+        var frequency = MAX_COUNT;
+        for (var i = 0; i < 4; i++) {
+            final var index = indexOf(hash, i);
+            final var count = (int) ((table[index] >>> ((start + i) << 2)) & 0xF);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    void increment(final Object item) {
+        final var hash = spread(item.hashCode());
+        final var start = (hash & 3) << 2;
+        var added = false;
+        for (var i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(final int index, final int counter) {
+        final var offset = counter << 2;
+        final var mask = 0xFL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Divide todos os contadores por dois
+     */
+    private void reset() {
+        for (var i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    private int indexOf(final int hash, final int row) {
+        var result = (hash + SEEDS[row]) * SEEDS[row];
+        result += result >>> 32;
+        return (int) result & tableMask;
+    }
+
+    private static int spread(final int hashCode) {
+        var hash = hashCode * 0x9E3779B9;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+}
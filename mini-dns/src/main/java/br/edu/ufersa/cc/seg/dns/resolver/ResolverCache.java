@@ -0,0 +1,316 @@
+package br.edu.ufersa.cc.seg.dns.resolver;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cache limitado de resoluções com política W-TinyLFU.
+ *
+ * <p>
+ * Nomes novos entram numa pequena janela LRU (1% do tamanho). Quem sai da
+ * janela disputa a vaga com o candidato a sair da área principal, e fica o
+ * que foi mais acessado segundo o {@link FrequencySketch}. Assim, uma
+ * varredura de nomes usados uma única vez não expulsa os nomes populares. A
+ * área principal é uma LRU segmentada: um nome acessado de novo passa da
+ * parte de experiência ({@code probation}) para a protegida.
+ *
+ * <p>
+ * Leituras não usam travas: consultam o mapa e só reordenam as filas se a
+ * trava estiver livre, senão o acesso deixa de ser contado. Inclusões e
+ * remoções são serializadas pela trava.
+ */
+final class ResolverCache {
+
+    private static final int REMOVED = -1;
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final Map<String, Node> data = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final ResolverMetrics metrics;
+
+    private final AccessQueue window = new AccessQueue();
+    private final AccessQueue probation = new AccessQueue();
+    private final AccessQueue protectedQueue = new AccessQueue();
+    private final int maximumSize;
+    private final int windowMaximum;
+    private final int protectedMaximum;
+    private int size;
+
+    /**
+     * Resolução guardada, válida até {@code expiresAt} ({@link System#nanoTime()});
+     * a partir de {@code refreshAt} pode ser renovada antes de expirar. IP
+     * {@code null} indica nome inexistente.
+     */
+    record Value(String ip, long expiresAt, long refreshAt) {
+    }
+
+    ResolverCache(final int maximumSize, final ResolverMetrics metrics) {
+        this.maximumSize = maximumSize;
+        this.windowMaximum = Math.max(1, maximumSize / 100);
+        this.protectedMaximum = (int) ((maximumSize - windowMaximum) * 0.8);
+        this.sketch = new FrequencySketch(maximumSize);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Resolução ainda válida em {@code now}, ou {@code null}; conta o acesso
+     * como acerto ou falta
+     */
+    Value get(final String name, final long now) {
+        final var node = data.get(name);
+        final var value = node == null ? null : node.value;
+        if (value == null || now - value.expiresAt() >= 0) {
+            metrics.misses.increment();
+            recordAccess(name, null);
+            return null;
+        }
+
+        metrics.hits.increment();
+        recordAccess(name, node);
+        return value;
+    }
+
+    /**
+     * Frequência estimada de acessos recentes ao nome, de 0 a 15. Lida sem
+     * trava, pode estar levemente desatualizada.
+     */
+    int frequency(final String name) {
+        return sketch.frequency(name);
+    }
+
+    void put(final String name, final Value value) {
+        lock.lock();
+        try {
+            final var existing = data.get(name);
+            if (existing != null) {
+                existing.value = value;
+                return;
+            }
+
+            final var node = new Node(name, value);
+            data.put(name, node);
+            node.queue = WINDOW;
+            window.add(node);
+            size++;
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Troca o valor apenas se o nome já estiver no cache; devolve se estava
+     */
+    boolean replace(final String name, final Value value) {
+        lock.lock();
+        try {
+            final var node = data.get(name);
+            if (node == null) {
+                return false;
+            }
+            node.value = value;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void invalidate(final String name) {
+        lock.lock();
+        try {
+            final var node = data.remove(name);
+            if (node != null) {
+                unlink(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void clear() {
+        lock.lock();
+        try {
+            // Leitores podem ainda ter os nós em mãos
+            data.values().forEach(node -> node.queue = REMOVED);
+            data.clear();
+            window.clear();
+            probation.clear();
+            protectedQueue.clear();
+            size = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        return data.size();
+    }
+
+    private void recordAccess(final String name, final Node node) {
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            sketch.increment(name);
+            if (node != null) {
+                onAccess(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onAccess(final Node node) {
+        switch (node.queue) {
+            case WINDOW -> window.moveToBack(node);
+            case PROBATION -> {
+                // Segundo acesso: passa para a parte protegida
+                probation.remove(node);
+                node.queue = PROTECTED;
+                protectedQueue.add(node);
+                if (protectedQueue.size > protectedMaximum) {
+                    final var demoted = protectedQueue.poll();
+                    demoted.queue = PROBATION;
+                    probation.add(demoted);
+                }
+            }
+            case PROTECTED -> protectedQueue.moveToBack(node);
+            default -> {
+                // Já removido por outra operação
+            }
+        }
+    }
+
+    /**
+     * Esvazia a janela excedente; com o cache cheio, quem sai da janela só
+     * entra na área principal se for mais acessado que o próximo a sair dela
+     */
+    private void evict() {
+        while (window.size > windowMaximum) {
+            final var candidate = window.poll();
+            if (size <= maximumSize) {
+                candidate.queue = PROBATION;
+                probation.add(candidate);
+                continue;
+            }
+
+            final var victim = probation.size > 0 ? probation.peek() : protectedQueue.peek();
+            if (victim != null && sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                evict(victim);
+                candidate.queue = PROBATION;
+                probation.add(candidate);
+            } else {
+                // Já fora da janela: só falta sair do mapa
+                data.remove(candidate.key, candidate);
+                candidate.queue = REMOVED;
+                size--;
+                metrics.evictions.increment();
+            }
+        }
+    }
+
+    private void evict(final Node node) {
+        data.remove(node.key, node);
+        unlink(node);
+        metrics.evictions.increment();
+    }
+
+    private void unlink(final Node node) {
+        switch (node.queue) {
+            case WINDOW -> window.remove(node);
+            case PROBATION -> probation.remove(node);
+            case PROTECTED -> protectedQueue.remove(node);
+            default -> {
+                return;
+            }
+        }
+        node.queue = REMOVED;
+        size--;
+    }
+
+    private static final class Node {
+
+        private final String key;
+        private volatile Value value;
+
+        // Protegidos pela trava do cache
+        private int queue = REMOVED;
+        private Node previous;
+        private Node next;
+
+        private Node(final String key, final Value value) {
+            this.key = key;
+            this.value = value;
+        }
+
+    }
+
+    /**
+     * Lista duplamente encadeada em ordem de acesso: o mais antigo na frente
+     */
+    private static final class AccessQueue {
+
+        private Node head;
+        private Node tail;
+        private int size;
+
+        void add(final Node node) {
+            node.previous = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            size++;
+        }
+
+        void remove(final Node node) {
+            if (node.previous == null) {
+                head = node.next;
+            } else {
+                node.previous.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.previous;
+            } else {
+                node.next.previous = node.previous;
+            }
+            node.previous = null;
+            node.next = null;
+            size--;
+        }
+
+        void moveToBack(final Node node) {
+            if (node != tail) {
+                remove(node);
+                add(node);
+            }
+        }
+
+        Node peek() {
+            return head;
+        }
+
+        Node poll() {
+            final var node = head;
+            if (node != null) {
+                remove(node);
+            }
+            return node;
+        }
+
+        void clear() {
+            head = null;
+            tail = null;
+            size = 0;
+        }
+
+    }
+
+}
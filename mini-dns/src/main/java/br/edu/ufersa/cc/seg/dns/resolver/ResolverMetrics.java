@@ -0,0 +1,76 @@
+package br.edu.ufersa.cc.seg.dns.resolver;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores de um {@link DnsResolver}, atualizados enquanto ele resolve
+ */
+public class ResolverMetrics {
+
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder loadFailures = new LongAdder();
+    final LongAdder refreshes = new LongAdder();
+    final LongAdder evictions = new LongAdder();
+    final LongAdder notifications = new LongAdder();
+
+    /**
+     * Resoluções atendidas pelo cache, sem rede
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Resoluções que precisaram consultar o servidor
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Fração das resoluções atendidas pelo cache
+     */
+    public double getHitRate() {
+        final var hits = getHits();
+        final var total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Consultas ao servidor que falharam
+     */
+    public long getLoadFailures() {
+        return loadFailures.sum();
+    }
+
+    /**
+     * Consultas feitas antes de o registro expirar, para nomes muito usados
+     */
+    public long getRefreshes() {
+        return refreshes.sum();
+    }
+
+    /**
+     * Registros descartados para respeitar o tamanho máximo do cache
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Alterações recebidas por NOTIFY
+     */
+    public long getNotifications() {
+        return notifications.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "acertos=" + getHits() + ", faltas=" + getMisses()
+                + ", taxa de acerto=%.1f%%".formatted(100 * getHitRate())
+                + ", falhas=" + getLoadFailures() + ", renovações=" + getRefreshes()
+                + ", descartes=" + getEvictions() + ", notificações=" + getNotifications();
+    }
+
+}
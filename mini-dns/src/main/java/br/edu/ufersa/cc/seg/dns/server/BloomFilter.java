@@ -0,0 +1,88 @@
+package br.edu.ufersa.cc.seg.dns.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Filtro de Bloom de nomes: responde "com certeza ausente" ou "talvez
+ * presente". Não há falsos negativos; com {@value #BITS_PER_NAME} bits por
+ * nome e {@value #HASHES} funções de hash, cerca de 1% de falsos positivos
+ * até a capacidade para a qual foi criado.
+ *
+ * <p>
+ * Nomes não podem ser retirados; quem usa reconstrói o filtro quando as
+ * remoções o deixam impreciso. Inclusões e consultas podem ser concorrentes.
+ */
+final class BloomFilter {
+
+    private static final int BITS_PER_NAME = 10;
+    private static final int HASHES = 7;
+
+    private final AtomicLongArray words;
+    private final long mask;
+    private final int capacity;
+
+    BloomFilter(final int capacity) {
+        final var bits = Long.highestOneBit(Math.max(64, (long) capacity * BITS_PER_NAME - 1) << 1);
+        this.words = new AtomicLongArray((int) (bits >>> 6));
+        this.mask = bits - 1;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Inclui o nome; devolve {@code false} se ele já parecia presente
+     */
+    boolean add(final String name) {
+        final var hash = hash(name);
+        final var step = Long.rotateLeft(hash, 32) | 1;
+        var changed = false;
+        for (var i = 0; i < HASHES; i++) {
+            final var index = hash + i * step & mask;
+            final var bit = 1L << index;
+            if ((words.get((int) (index >>> 6)) & bit) == 0) {
+                words.getAndAccumulate((int) (index >>> 6), bit, (word, set) -> word | set);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * {@code false} se o nome com certeza não foi incluído
+     */
+    boolean mightContain(final String name) {
+        final var hash = hash(name);
+        final var step = Long.rotateLeft(hash, 32) | 1;
+        for (var i = 0; i < HASHES; i++) {
+            final var index = hash + i * step & mask;
+            if ((words.get((int) (index >>> 6)) & 1L << index) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Nomes para os quais o filtro foi dimensionado
+     */
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Tamanho do filtro em bytes
+     */
+    long bytes() {
+        return words.length() * (long) Long.BYTES;
+    }
+
+    private static long hash(final String name) {
+        var hash = 0x9E3779B97F4A7C15L;
+        for (var i = 0; i < name.length(); i++) {
+            hash = (hash ^ name.charAt(i)) * 0xBF58476D1CE4E5B9L;
+        }
+        hash ^= hash >>> 31;
+        hash *= 0x94D049BB133111EBL;
+        return hash ^ hash >>> 29;
+    }
+
+}
@@ -0,0 +1,429 @@
+package br.edu.ufersa.cc.seg.dns.server;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongPredicate;
+import java.util.function.Predicate;
+
+import br.edu.ufersa.cc.seg.common.network.SecureMessaging;
+import br.edu.ufersa.cc.seg.common.utils.Settings;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.NameFilter;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.NameRecord;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.Registered;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.Sync;
+import br.edu.ufersa.cc.seg.dns.store.RecordStore;
+import br.edu.ufersa.cc.seg.dns.store.RecordStore.Change;
+
+/**
+ * Log das alterações recentes da tabela, para que um inscrito que se
+ * reconecta receba só o que perdeu.
+ *
+ * <p>
+ * Acompanha a tabela como ouvinte e guarda, por versão, as últimas
+ * {@value #LOG_SIZE_SETTING} alterações (as recuperadas do log em disco
+ * entram também, então o histórico sobrevive a um reinício). As alterações só
+ * são publicadas no {@link NotifyFanout} depois de gravadas
+ * ({@link #publish}), na ordem das versões.
+ *
+ * <p>
+ * Um inscrito que informa a versão em que parou recebe, se ela ainda estiver
+ * no log, só os nomes alterados desde então, com o valor mais recente de
+ * cada um. Se ela já saiu do log (ou é desconhecida), recebe a tabela
+ * inteira, começando por um NOTIFY_BATCH com {@code reset}; a imagem cifrada
+ * da tabela é reaproveitada pelos inscritos seguintes enquanto o log cobrir o
+ * que mudou depois dela. Um inscrito com filtro recebe só os nomes que o
+ * filtro inclui, numa recuperação montada só para ele. Nos dois casos, a recuperação e as notificações
+ * seguintes formam uma sequência sem lacunas nem repetições.
+ */
+class ChangeFeed implements RecordStore.ChangeListener {
+
+    /**
+     * Chave de configuração da quantidade de alterações mantidas no log
+     */
+    static final String LOG_SIZE_SETTING = "dns.notify.log-size";
+
+    private final RecordStore store;
+    private final NotifyFanout fanout;
+    private final LongPredicate awaitDurable;
+    private final int logSize;
+
+    // Log e alterações confirmadas ainda não publicadas, protegidos por logLock.
+    // Tudo depois de floor está no log.
+    private final ReentrantLock logLock = new ReentrantLock();
+    private final ArrayDeque<Entry> changes = new ArrayDeque<>();
+    private final ArrayDeque<Entry> unpublished = new ArrayDeque<>();
+    private int logged;
+    private long floor = -1;
+    private boolean ready;
+
+    // Publicações e inscrições, serializadas entre si
+    private final ReentrantLock publishLock = new ReentrantLock();
+    private volatile long published;
+    private Delta lastDelta;
+
+    // Imagem cifrada da tabela, construída por um inscrito e reaproveitada pelos demais
+    private final ReentrantLock imageLock = new ReentrantLock();
+    private Image image;
+
+    /**
+     * Alterações de uma versão
+     */
+    private record Entry(long version, List<NameRecord> records) {
+    }
+
+    /**
+     * Última recuperação por delta, reaproveitada por quem parou na mesma
+     * versão
+     */
+    private record Delta(long since, long until, List<byte[]> frames) {
+    }
+
+    /**
+     * Tabela inteira numa versão, já cifrada
+     */
+    private record Image(long version, List<byte[]> frames) {
+    }
+
+    private ChangeFeed(final RecordStore store, final NotifyFanout fanout,
+            final LongPredicate awaitDurable, final int logSize) {
+        this.store = store;
+        this.fanout = fanout;
+        this.awaitDurable = awaitDurable;
+        this.logSize = logSize;
+    }
+
+    /**
+     * Cria o log e passa a acompanhar as alterações da tabela. Deve ser
+     * registrado antes da restauração, para guardar também as alterações
+     * recuperadas do log em disco. {@code awaitDurable} espera uma versão
+     * chegar ao disco e diz se chegou.
+     */
+    static ChangeFeed of(final RecordStore store, final NotifyFanout fanout,
+            final LongPredicate awaitDurable) {
+        final var feed = new ChangeFeed(store, fanout, awaitDurable, Settings.getInt(LOG_SIZE_SETTING, 100_000));
+        store.addListener(feed);
+        return feed;
+    }
+
+    /**
+     * Alteração recuperada do disco. Os registros do snapshot (versão 0) já
+     * estão na base do histórico e não entram no log.
+     */
+    @Override
+    public void onChange(final long version, final String name, final String ip) {
+        if (version == 0) {
+            return;
+        }
+
+        logLock.lock();
+        try {
+            // Um lote do log em disco chega uma alteração por vez, todas com a mesma versão
+            final var last = changes.peekLast();
+            if (last != null && last.version() == version) {
+                last.records().add(new NameRecord(name, ip));
+                logged++;
+                evict();
+                return;
+            }
+            final var records = new ArrayList<NameRecord>();
+            records.add(new NameRecord(name, ip));
+            append(new Entry(version, records));
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    @Override
+    public void onChanges(final long version, final List<Change> changed) {
+        final var entry = new Entry(version,
+                changed.stream().map(change -> new NameRecord(change.name(), change.ip())).toList());
+
+        logLock.lock();
+        try {
+            append(entry);
+            if (ready) {
+                unpublished.add(entry);
+            }
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    /**
+     * Passa a publicar as alterações posteriores a {@code version}. Chamado
+     * depois da restauração, quando tudo até ela já está em disco.
+     */
+    void ready(final long version) {
+        publishLock.lock();
+        logLock.lock();
+        try {
+            if (floor < 0) {
+                floor = version;
+            }
+            published = version;
+            ready = true;
+        } finally {
+            logLock.unlock();
+            publishLock.unlock();
+        }
+    }
+
+    /**
+     * Publica, na ordem, as alterações confirmadas até {@code durable}, já
+     * gravada. Alterações de versões seguidas saem juntas, em lotes de até
+     * {@value NotifyFanout#MAX_BATCH} registros.
+     */
+    void publish(final long durable) {
+        publishLock.lock();
+        try {
+            var batch = new ArrayList<NameRecord>();
+            var version = published;
+            while (true) {
+                final Entry next;
+                logLock.lock();
+                try {
+                    next = unpublished.peek();
+                    if (next == null || next.version() > durable) {
+                        break;
+                    }
+                    unpublished.poll();
+                } finally {
+                    logLock.unlock();
+                }
+
+                if (!batch.isEmpty() && batch.size() + next.records().size() > NotifyFanout.MAX_BATCH) {
+                    fanout.publish(batch, version);
+                    batch = new ArrayList<>();
+                }
+                batch.addAll(next.records());
+                version = next.version();
+            }
+
+            if (!batch.isEmpty()) {
+                fanout.publish(batch, version);
+            }
+            published = version;
+        } finally {
+            publishLock.unlock();
+        }
+    }
+
+    /**
+     * Inscreve a conexão, colocando-a em dia a partir de {@code since} (sem
+     * recuperação se nulo), só com os nomes de {@code filter} (todos, se
+     * nulo). A resposta {@link Registered} informa a versão em que o inscrito
+     * fica e como será a recuperação.
+     */
+    void subscribe(final SecureMessaging messenger, final Long since, final NameFilter filter)
+            throws IOException {
+        publishLock.lock();
+        try {
+            final var version = published;
+            if (since == null) {
+                fanout.subscribe(messenger, new Registered(version, Sync.NONE), List.of(), version, filter);
+                return;
+            }
+            if (since <= version && since >= floor()) {
+                final var frames = delta(since, version, filter);
+                fanout.metrics().deltaSyncs.increment();
+                fanout.subscribe(messenger, new Registered(version, Sync.DELTA), frames, version, filter);
+                return;
+            }
+        } finally {
+            publishLock.unlock();
+        }
+
+        while (true) {
+            // Construída fora da trava: publicações seguem enquanto a tabela é percorrida
+            final var current = filter == null ? image() : image(filter);
+
+            publishLock.lock();
+            try {
+                final var version = published;
+                if (current.version() >= version || current.version() >= floor()) {
+                    final var frames = new ArrayList<>(current.frames());
+                    if (version > current.version()) {
+                        frames.addAll(delta(current.version(), version, filter));
+                    }
+                    final var after = Math.max(current.version(), version);
+                    fanout.metrics().snapshotSyncs.increment();
+                    fanout.subscribe(messenger, new Registered(after, Sync.SNAPSHOT), frames, after, filter);
+                    return;
+                }
+            } finally {
+                publishLock.unlock();
+            }
+            // O log avançou além da imagem enquanto ela era construída
+        }
+    }
+
+    private long floor() {
+        logLock.lock();
+        try {
+            return floor;
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    private void append(final Entry entry) {
+        if (changes.isEmpty() && floor < 0) {
+            floor = entry.version() - 1;
+        }
+        changes.add(entry);
+        logged += entry.records().size();
+        evict();
+    }
+
+    private void evict() {
+        while (logged > logSize && !changes.isEmpty()) {
+            final var oldest = changes.poll();
+            logged -= oldest.records().size();
+            floor = oldest.version();
+        }
+    }
+
+    /**
+     * Nomes alterados depois de {@code since} até {@code until} que o filtro
+     * inclui, com o valor mais recente, cifrados. Só o último lote leva o
+     * inscrito a {@code until}. Chamado com {@code publishLock}.
+     */
+    private List<byte[]> delta(final long since, final long until, final NameFilter filter) throws IOException {
+        if (filter == null && lastDelta != null && lastDelta.since() == since && lastDelta.until() == until) {
+            return lastDelta.frames();
+        }
+
+        final var entries = new ArrayDeque<Entry>();
+        logLock.lock();
+        try {
+            final var iterator = changes.descendingIterator();
+            while (iterator.hasNext()) {
+                final var entry = iterator.next();
+                if (entry.version() <= since) {
+                    break;
+                }
+                if (entry.version() <= until) {
+                    entries.addFirst(entry);
+                }
+            }
+        } finally {
+            logLock.unlock();
+        }
+
+        final var latest = new LinkedHashMap<String, String>();
+        for (final var entry : entries) {
+            entry.records().forEach(found -> latest.put(found.name(), found.ip()));
+        }
+        final var matches = matcher(filter);
+        final var records = new ArrayList<NameRecord>(latest.size());
+        latest.forEach((name, ip) -> {
+            if (matches.test(name)) {
+                records.add(new NameRecord(name, ip));
+            }
+        });
+
+        final var frames = new ArrayList<byte[]>();
+        for (var start = 0; start < records.size(); start += NotifyFanout.MAX_BATCH) {
+            final var end = Math.min(start + NotifyFanout.MAX_BATCH, records.size());
+            frames.add(fanout.seal(NotifyFanout.notification(records.subList(start, end),
+                    end == records.size() ? until : since, false)));
+        }
+
+        if (filter != null) {
+            return frames;
+        }
+        lastDelta = new Delta(since, until, List.copyOf(frames));
+        return lastDelta.frames();
+    }
+
+    /**
+     * Imagem da tabela que o log ainda consegue completar até a versão
+     * publicada, construída se preciso
+     */
+    private Image image() throws IOException {
+        imageLock.lock();
+        try {
+            if (image != null && (image.version() >= published || image.version() >= floor())) {
+                return image;
+            }
+
+            final var records = new ArrayList<NameRecord>();
+            final long version;
+            try (final var snapshot = store.snapshot()) {
+                version = snapshot.version();
+                snapshot.forEach((name, ip) -> records.add(new NameRecord(name, ip)));
+            }
+
+            image = seal(version, records);
+            return image;
+        } finally {
+            imageLock.unlock();
+        }
+    }
+
+    /**
+     * Imagem só com os nomes que o filtro inclui, para um único inscrito. Sem
+     * prefixos, lê só os nomes exatos, sem percorrer a tabela.
+     */
+    private Image image(final NameFilter filter) throws IOException {
+        final var records = new ArrayList<NameRecord>();
+        final long version;
+        try (final var snapshot = store.snapshot()) {
+            version = snapshot.version();
+            if (filter.prefixes() == null || filter.prefixes().isEmpty()) {
+                for (final var name : new LinkedHashSet<>(filter.names())) {
+                    final var ip = snapshot.get(name);
+                    if (ip != null) {
+                        records.add(new NameRecord(name, ip));
+                    }
+                }
+            } else {
+                final var matches = matcher(filter);
+                snapshot.forEach((name, ip) -> {
+                    if (matches.test(name)) {
+                        records.add(new NameRecord(name, ip));
+                    }
+                });
+            }
+        }
+        return seal(version, records);
+    }
+
+    /**
+     * Teste do filtro com os nomes exatos num conjunto (todos, se nulo)
+     */
+    private static Predicate<String> matcher(final NameFilter filter) {
+        if (filter == null) {
+            return name -> true;
+        }
+        final var names = filter.names() == null ? Set.<String>of() : new HashSet<>(filter.names());
+        final var prefixes = filter.prefixes() == null ? List.<String>of() : filter.prefixes();
+        return name -> names.contains(name) || prefixes.stream().anyMatch(name::startsWith);
+    }
+
+    private Image seal(final long version, final List<NameRecord> records) throws IOException {
+        // O inscrito não pode ver alterações que ainda podem se perder
+        if (!awaitDurable.test(version)) {
+            throw new IOException("Versão " + version + " não foi persistida");
+        }
+
+        // O primeiro lote descarta o que o inscrito sabia; só o último o leva à versão
+        final var frames = new ArrayList<byte[]>();
+        var start = 0;
+        do {
+            final var end = Math.min(start + NotifyFanout.MAX_BATCH, records.size());
+            frames.add(fanout.seal(NotifyFanout.notification(records.subList(start, end),
+                    end == records.size() ? version : 0, start == 0)));
+            start = end;
+        } while (start < records.size());
+        return new Image(version, List.copyOf(frames));
+    }
+
+}
@@ -1,25 +1,53 @@
 package br.edu.ufersa.cc.seg.dns.server;
 
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import br.edu.ufersa.cc.seg.common.crypto.CryptoException;
 import br.edu.ufersa.cc.seg.common.crypto.CryptoService;
+import br.edu.ufersa.cc.seg.common.message.MessageCodec;
+import br.edu.ufersa.cc.seg.common.message.MessageDispatcher;
+import br.edu.ufersa.cc.seg.common.network.SecureMessageHandler;
 import br.edu.ufersa.cc.seg.common.network.SecureMessaging;
-import br.edu.ufersa.cc.seg.common.network.SecureTcpMessaging;
+import br.edu.ufersa.cc.seg.common.network.SecureServer;
+import br.edu.ufersa.cc.seg.common.network.SecureServers;
+import br.edu.ufersa.cc.seg.common.utils.Settings;
+import br.edu.ufersa.cc.seg.common.utils.MessageType;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.Ack;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.AckBatch;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.ErrorMessage;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.NameFilter;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.NameQuery;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.NameRecord;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.Query;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.PtrQuery;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.QueryBatch;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.Records;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.RegisterNotify;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.Response;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.Update;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.UpdateBatch;
+import br.edu.ufersa.cc.seg.dns.store.NameIndex;
+import br.edu.ufersa.cc.seg.dns.store.RecordExpiry;
+import br.edu.ufersa.cc.seg.dns.store.RecordStore;
+import br.edu.ufersa.cc.seg.dns.store.RecordStores;
+import br.edu.ufersa.cc.seg.dns.store.ReverseIndex;
+import br.edu.ufersa.cc.seg.dns.store.ZoneStorage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 @RequiredArgsConstructor
-public class DnsServer {
+public class DnsServer implements SecureMessageHandler {
+
+    /**
+     * Chave de configuração do primário ({@code host:porta}) que este servidor
+     * acompanha como réplica somente leitura; vazia para ser o primário
+     */
+    public static final String PRIMARY_SETTING = "dns.primary";
 
     private static final byte[] ENC_KEY = java.util.Base64.getDecoder()
             .decode("DJXkb7GyuXP5Hfep9OLukQ==");
@@ -27,181 +55,491 @@ public class DnsServer {
             .decode("QYp+xG2d7Ir8Xo2ZyD7m8FJKwrFrxd9ayN9i4mBQlTg=");
 
     private final CryptoService cryptoService = new CryptoService(ENC_KEY, HMAC_KEY);
-    private final ObjectMapper mapper = new ObjectMapper();
-
-    private final Map<String, String> servers = new HashMap<>();
-    private final List<SecureMessaging> listeners = new ArrayList<>();
+    private final MessageCodec<DnsMessage> codec = new MessageCodec<>(DnsMessage.class);
+    private final MessageDispatcher<DnsMessage> dispatcher = new MessageDispatcher<>(codec)
+            .on(MessageType.QUERY, Query.class, this::handleQuery)
+            .on(MessageType.QUERY_NAMES, NameQuery.class, this::handleNameQuery)
+            .on(MessageType.QUERY_PTR, PtrQuery.class, this::handlePtrQuery)
+            .on(MessageType.UPDATE, Update.class, this::handleUpdate)
+            .on(MessageType.QUERY_BATCH, QueryBatch.class, this::handleQueryBatch)
+            .on(MessageType.UPDATE_BATCH, UpdateBatch.class, this::handleUpdateBatch)
+            .on(MessageType.REGISTER_NOTIFY, RegisterNotify.class, this::handleRegisterNotify)
+            .onUnknown(this::handleUnknown);
+    // Por UDP, só consultas: atualizações e inscrições precisam de conexão
+    private final MessageDispatcher<DnsMessage> datagramDispatcher = new MessageDispatcher<>(codec)
+            .on(MessageType.QUERY, Query.class, this::handleQuery)
+            .on(MessageType.QUERY_NAMES, NameQuery.class, this::handleNameQuery)
+            .on(MessageType.QUERY_PTR, PtrQuery.class, this::handlePtrQuery)
+            .on(MessageType.QUERY_BATCH, QueryBatch.class, this::handleQueryBatch)
+            .onUnknown(this::handleDatagramUnknown);
+
+    // Limites de tamanho dos textos de um registro (nome DNS e IPv6 textual)
+    private static final int MAX_NAME_LENGTH = 253;
+    private static final int MAX_IP_LENGTH = 45;
+
+    // Registros por página nas consultas de vários nomes
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    // Nomes ou registros por QUERY_BATCH/UPDATE_BATCH
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    // Nomes e prefixos somados no filtro de uma inscrição
+    private static final int MAX_FILTER_SIZE = 1000;
+
+    // Maior TTL aceito, em segundos (o mesmo limite do DNS)
+    private static final long MAX_TTL = Integer.MAX_VALUE;
+
+    // Linhas da tabela impressas a cada UPDATE, no nível DEBUG
+    private static final int MAX_PRINTED = 50;
+
+    // Consultas leem sem travas enquanto atualizações de outras conexões são aplicadas;
+    // no heap ou fora dele, conforme dns.store
+    private final RecordStore records = RecordStores.create();
+    // Zonas, prefixos e curingas sem percorrer a tabela inteira
+    private final NameIndex index = NameIndex.of(records);
+    // Nomes de um IP sem percorrer a tabela
+    private final ReverseIndex reverse = ReverseIndex.of(records);
+    // Registros com TTL são removidos ao vencer, sem varrer a tabela
+    private final RecordExpiry expiry = RecordExpiry.of(records);
+    // Consultas por nome, com o tempo de nomes existentes e inexistentes em separado
+    private final QueryMetrics queries = new QueryMetrics();
+    // Nomes inexistentes respondidos sem consultar a tabela nem passar pelo JSON
+    private final NegativeCache negative = NegativeCache.of(records, codec, queries);
+    // NOTIFY sai da thread de cada inscrito, sem atrasar o ACK
+    private final NotifyFanout notifications = new NotifyFanout(cryptoService, codec);
+    // Quem se reconecta recebe só o que perdeu
+    private final ChangeFeed feed = ChangeFeed.of(records, notifications, this::awaitDurable);
+    // Versões do primário e atraso, se este servidor for réplica
+    private final ReplicationMetrics replication = new ReplicationMetrics();
     private final int port;
 
+    // Ausente quando o servidor é usado só como tratador, sem start()
+    private ZoneStorage storage;
+    // Presente só numa réplica: aplica as alterações do primário e repassa as atualizações
+    private ReplicaFollower follower;
+
     /**
-     * Inicia o servidor DNS, ouvindo por conexões e processando requisições
-     * dos clientes.
+     * Inicia o servidor DNS, restaurando a tabela do disco, ouvindo por
+     * conexões TCP e por consultas avulsas em UDP na mesma porta, e
+     * processando requisições dos clientes.
+     *
+     * <p>
+     * Com {@value #PRIMARY_SETTING}, o servidor é uma réplica somente
+     * leitura: segue a tabela do primário a partir da versão restaurada,
+     * responde as consultas e as inscrições com ela e repassa as atualizações
+     * ao primário.
      */
     public void start() {
-        populateServers();
+        final var primary = Settings.get(PRIMARY_SETTING, null);
+        try (final var zone = ZoneStorage.open(records)) {
+            storage = zone;
+
+            // Registros de exemplo apenas numa tabela nova; a réplica recebe os do primário
+            if (records.version() == 0 && primary == null) {
+                populateServers();
+            }
 
-        try (final var serverSocket = new ServerSocket(port)) {
-            log.info("DNS Server iniciado na porta {}", port);
+            // Tudo até aqui já está em disco; as notificações seguem a partir desta versão
+            feed.ready(records.version());
+            negative.ready();
+
+            if (primary == null) {
+                // Só depois da restauração, para que as remoções entrem no log
+                expiry.start(this::notifyExpired);
+            } else {
+                // Os registros vencidos são removidos pelo primário e chegam como as demais alterações
+                follower = ReplicaFollower.start(primary, cryptoService, codec, records, replication,
+                        this::publishReplicated);
+                log.info("DNS Server como réplica de {}", primary);
+            }
 
-            // Fica ouvindo novos clientes
-            while (true) {
-                // Aceita nova conexão
-                final var messenger = new SecureTcpMessaging(serverSocket, cryptoService);
+            try (final var server = SecureServers.create(port, cryptoService);
+                    final var datagrams = SecureServers.datagram(port, cryptoService)) {
+                Thread.ofVirtual().name("dns-udp").start(() -> serveDatagrams(datagrams));
+                log.info("DNS Server iniciado na porta {} (TCP e UDP)", port);
 
-                // Delega uma nova thread para atender
-                new Thread(() -> handleClient(messenger)).start();
+                // Fica ouvindo novos clientes
+                server.start(this);
+            } finally {
+                if (follower != null) {
+                    follower.close();
+                }
+                expiry.close();
+                notifications.close();
             }
         } catch (final IOException e) {
             log.error("Erro ao iniciar servidor DNS", e);
         }
     }
 
-    private void populateServers() {
-        servers.put("servidor1", "192.168.0.10");
-        servers.put("servidor2", "192.168.0.20");
-        servers.put("servidor3", "192.168.0.30");
-        servers.put("servidor4", "192.168.0.40");
-        servers.put("servidor5", "192.168.0.50");
-        servers.put("servidor6", "192.168.0.60");
-        servers.put("servidor7", "192.168.0.70");
-        servers.put("servidor8", "192.168.0.80");
-        servers.put("servidor9", "192.168.0.90");
-        servers.put("servidor10", "192.168.0.100");
-    }
-
-    private void handleClient(final SecureMessaging messenger) {
-        // Inicializa valores padrão
-        var registeredForNotify = false;
-
+    private void serveDatagrams(final SecureServer datagrams) {
         try {
-            while (true) {
-                // Recebe mensagem criptografada em bytes
-                final var requestInBytes = messenger.receiveSecure();
-
-                // Descarta se payload for nulo
-                if (requestInBytes == null)
-                    break;
-
-                // Transforma em JSON e obter tipo
-                final var requestInJson = mapper.readTree(requestInBytes);
-                final var type = requestInJson.get("type").asText();
-
-                switch (type) {
-                    case "QUERY": {
-                        handleQuery(messenger, requestInJson);
-                        break;
-                    }
-                    case "UPDATE": {
-                        handleUpdate(messenger, requestInJson);
-                        break;
-                    }
-                    case "REGISTER_NOTIFY": {
-                        // Cliente quer receber notificações; mantemos a conexão aberta
-                        registeredForNotify = true;
-                        handleRegisterNotify(messenger);
-                        break;
-                    }
-                    default: {
-                        final var err = mapper.createObjectNode();
-                        err.put("type", "ERROR");
-                        err.put("message", "Unknown type: " + type);
-                        messenger.sendSecure(mapper.writeValueAsBytes(err));
-                        break;
-                    }
-                }
-            }
+            datagrams.start(this);
         } catch (final IOException e) {
-            log.error("Cliente desconectado ou erro de E/S: {}", e.getMessage());
-        } catch (final CryptoException e) {
-            log.error("Erro de criptografia: {}", e.getMessage());
-        } catch (final Exception e) {
-            log.error("Erro processando cliente", e);
-        } finally {
-            if (registeredForNotify && messenger != null) {
-                listeners.remove(messenger);
-            }
-            if (messenger != null) {
-                try {
-                    messenger.close();
-                } catch (final IOException e) {
-                    // ignore
-                }
+            log.error("Erro no transporte UDP", e);
+        }
+    }
+
+    /**
+     * Entrega das notificações, com os contadores e o atraso de cada inscrito
+     */
+    public NotifyFanout getNotifications() {
+        return notifications;
+    }
+
+    /**
+     * Consultas por nome, com o tempo de tratamento de nomes existentes e
+     * inexistentes em separado
+     */
+    public QueryMetrics getQueries() {
+        return queries;
+    }
+
+    /**
+     * Versão do primário, versão aplicada e atraso da réplica; zerados num
+     * primário
+     */
+    public ReplicationMetrics getReplication() {
+        return replication;
+    }
+
+    private void populateServers() {
+        records.put("servidor1", "192.168.0.10");
+        records.put("servidor2", "192.168.0.20");
+        records.put("servidor3", "192.168.0.30");
+        records.put("servidor4", "192.168.0.40");
+        records.put("servidor5", "192.168.0.50");
+        records.put("servidor6", "192.168.0.60");
+        records.put("servidor7", "192.168.0.70");
+        records.put("servidor8", "192.168.0.80");
+        records.put("servidor9", "192.168.0.90");
+        records.put("servidor10", "192.168.0.100");
+    }
+
+    @Override
+    public void onMessage(final SecureMessaging messenger, final byte[] requestInBytes) throws IOException {
+        (messenger.isDatagram() ? datagramDispatcher : dispatcher).onMessage(messenger, requestInBytes);
+    }
+
+    @Override
+    public void onRejected(final SecureMessaging messenger, final byte[] requestInBytes) throws IOException {
+        dispatcher.send(messenger, new ErrorMessage("Servidor sobrecarregado"));
+    }
+
+    @Override
+    public void onClose(final SecureMessaging messenger) {
+        // Conexão encerrada deixa de receber notificações
+        notifications.unsubscribe(messenger);
+    }
+
+    private void handleQuery(final SecureMessaging messenger, final Query query) throws IOException {
+        final var start = System.nanoTime();
+        final var name = query.name();
+        if (!isValidName(name)) {
+            // Antes da tabela e do cache de faltas, que não guardam nomes assim
+            dispatcher.send(messenger, new ErrorMessage("Consulta inválida"));
+            return;
+        }
+
+        // Nome inexistente barrado pelo filtro ou já no cache de faltas
+        var response = negative.lookup(name);
+        if (response == null) {
+            // Lida antes da tabela: uma inclusão depois disso impede a falta de ir ao cache
+            final var generation = negative.generation();
+
+            // Encontrar o IP correspondente e responder
+            final var ip = records.get(name);
+            if (ip != null) {
+                dispatcher.send(messenger, new Response(name, ip));
+                queries.hits.increment();
+                queries.hitNanos.add(System.nanoTime() - start);
+                return;
             }
+            response = negative.missed(name, generation);
         }
+
+        messenger.sendSecure(response);
+        queries.misses.increment();
+        queries.missNanos.add(System.nanoTime() - start);
     }
 
-    private void handleQuery(final SecureMessaging messenger, final JsonNode request) throws IOException {
-        // Obter o nome
-        final var name = request.get("name").asText();
+    private void handleNameQuery(final SecureMessaging messenger, final NameQuery query) throws IOException {
+        final var pattern = query.pattern();
+        final var after = query.after();
+        if (query.match() == null || pattern == null || pattern.length() > MAX_NAME_LENGTH
+                || after != null && after.length() > MAX_NAME_LENGTH) {
+            dispatcher.send(messenger, new ErrorMessage("Consulta inválida"));
+            return;
+        }
 
-        // Encontrar o IP correspondente
-        final var ip = servers.get(name);
+        final var limit = query.limit() <= 0 ? DEFAULT_PAGE_SIZE : Math.min(query.limit(), MAX_PAGE_SIZE);
+        final var page = switch (query.match()) {
+            case SUFFIX -> index.suffix(pattern, after, limit);
+            case PREFIX -> index.prefix(pattern, after, limit);
+            case WILDCARD -> index.wildcard(pattern, after, limit);
+            case LONGEST_SUFFIX -> {
+                final var binding = index.longestSuffix(pattern);
+                yield new NameIndex.Page(binding == null ? List.of() : List.of(binding), null);
+            }
+        };
 
-        // Criar mensagem de resposta
-        final var resp = mapper.createObjectNode();
-        resp.put("type", "RESPONSE");
-        resp.put("name", name);
-        resp.put("ip", ip);
+        final var found = page.bindings().stream()
+                .map(binding -> new NameRecord(binding.name(), binding.ip()))
+                .toList();
+        dispatcher.send(messenger, new Records(found, page.next()));
+    }
 
-        messenger.sendSecure(mapper.writeValueAsBytes(resp));
+    private void handlePtrQuery(final SecureMessaging messenger, final PtrQuery query) throws IOException {
+        final var ip = query.ip();
+        final var after = query.after();
+        if (ip == null || ip.isEmpty() || ip.length() > MAX_IP_LENGTH
+                || after != null && after.length() > MAX_NAME_LENGTH) {
+            dispatcher.send(messenger, new ErrorMessage("Consulta inválida"));
+            return;
+        }
+
+        final var limit = query.limit() <= 0 ? DEFAULT_PAGE_SIZE : Math.min(query.limit(), MAX_PAGE_SIZE);
+        final var page = reverse.lookup(ip, after, limit);
+        final var found = page.names().stream()
+                .map(name -> new NameRecord(name, ip))
+                .toList();
+        dispatcher.send(messenger, new Records(found, page.next()));
+    }
+
+    private void handleQueryBatch(final SecureMessaging messenger, final QueryBatch query) throws IOException {
+        final var names = query.names();
+        if (names == null || names.size() > MAX_BATCH_SIZE) {
+            dispatcher.send(messenger, new ErrorMessage("Lote inválido"));
+            return;
+        }
+
+        // Cada nome é lido da última versão confirmada no momento da leitura; um
+        // nome inválido volta sem IP, sem passar pela tabela
+        final var found = names.stream()
+                .map(name -> new NameRecord(name, isValidName(name) ? records.get(name) : null))
+                .toList();
+        dispatcher.send(messenger, new Records(found, null));
     }
 
-    private void handleUpdate(final SecureMessaging messenger, final JsonNode request) throws IOException {
+    private void handleUpdate(final SecureMessaging messenger, final Update update) throws IOException {
+        final var name = update.name();
+        final var ip = update.ip();
+        if (!isValid(name, ip) || !isValid(update.ttl())) {
+            dispatcher.send(messenger, new ErrorMessage("Registro inválido"));
+            return;
+        }
+        if (follower != null) {
+            forward(messenger, update);
+            return;
+        }
+
         // Inclui novo registro
-        final var name = request.get("name").asText();
-        final var ip = request.get("ip").asText();
-        servers.put(name, ip);
+        final var version = records.put(name, ip, expiresAt(update.ttl()));
 
         // Imprime log
-        log.info("Novo registro: {} -> {}", name, ip);
-        printMap();
+        log.info("Novo registro (versão {}): {} -> {}{}", version, name, ip, describe(update.ttl()));
+        if (log.isDebugEnabled()) {
+            printMap();
+        }
+
+        // Só confirma depois que a alteração estiver em disco. A espera ocupa
+        // só a thread que entrega as mensagens desta conexão, nunca um laço
+        // de eventos do transporte NIO.
+        if (!awaitDurable(version)) {
+            dispatcher.send(messenger, new ErrorMessage("Falha ao persistir o registro"));
+            return;
+        }
 
         // Envia ACK para o registrador
-        final var response = mapper.createObjectNode();
-        response.put("type", "ACK");
-        response.put("name", name);
-        response.put("ip", ip);
-        messenger.sendSecure(mapper.writeValueAsBytes(response));
-
-        // Envia NOTIFY para os listeners
-        final var notify = mapper.createObjectNode();
-        notify.put("type", "NOTIFY");
-        notify.put("name", name);
-        notify.put("ip", ip);
-        final var notifyBytes = mapper.writeValueAsBytes(notify);
-
-        for (final var listener : listeners) {
+        dispatcher.send(messenger, new Ack(name, ip));
+
+        // Enfileira o NOTIFY para os inscritos
+        feed.publish(version);
+    }
+
+    private void handleUpdateBatch(final SecureMessaging messenger, final UpdateBatch update) throws IOException {
+        final var batch = update.records();
+        if (batch == null || batch.isEmpty() || batch.size() > MAX_BATCH_SIZE || !isValid(update.ttl())
+                || !batch.stream().allMatch(found -> found != null && isValid(found.name(), found.ip()))) {
+            dispatcher.send(messenger, new ErrorMessage("Lote inválido"));
+            return;
+        }
+        if (follower != null) {
+            forward(messenger, update);
+            return;
+        }
+
+        // Nome repetido no lote fica com o último IP
+        final var bindings = new LinkedHashMap<String, String>();
+        batch.forEach(found -> bindings.put(found.name(), found.ip()));
+
+        // Todos os registros entram numa única versão
+        final var version = records.putAll(bindings, expiresAt(update.ttl()));
+
+        log.info("Novos registros (versão {}): {}{}", version, bindings.size(), describe(update.ttl()));
+
+        if (!awaitDurable(version)) {
+            dispatcher.send(messenger, new ErrorMessage("Falha ao persistir os registros"));
+            return;
+        }
+
+        dispatcher.send(messenger, new AckBatch(bindings.size()));
+
+        // Uma única notificação para o lote inteiro
+        feed.publish(version);
+    }
+
+    /**
+     * Réplica: repassa a atualização ao primário e devolve a resposta dele
+     * (ACK ou erro) sem decodificar. A alteração chega à tabela local pelas
+     * notificações do primário, como as demais; até lá, esta réplica ainda
+     * responde com o valor anterior.
+     */
+    private void forward(final SecureMessaging messenger, final DnsMessage update) throws IOException {
+        follower.forward(codec.encode(update)).whenComplete((reply, error) -> {
             try {
-                listener.sendSecure(notifyBytes);
-            } catch (final IOException e) {
-                // Problema com listener — remove
-                listeners.remove(listener);
-                try {
-                    listener.close();
-                } catch (final IOException ex) {
-                    // Ignora
+                if (error == null) {
+                    messenger.sendSecure(reply);
+                } else {
+                    log.warn("Atualização não repassada ao primário: {}", error.getMessage());
+                    dispatcher.send(messenger, new ErrorMessage("Primário indisponível"));
                 }
+            } catch (final IOException e) {
+                log.error("Falha ao responder atualização repassada: {}", e.getMessage());
             }
+        });
+    }
+
+    /**
+     * Réplica: espera a versão aplicada chegar ao disco e a publica aos
+     * inscritos desta réplica
+     */
+    private void publishReplicated(final long version) {
+        if (awaitDurable(version)) {
+            feed.publish(version);
         }
     }
 
-    private void handleRegisterNotify(final SecureMessaging messenger) throws IOException {
-        // Adiciona conexão à lista de listeners
-        listeners.add(messenger);
+    private static boolean isValidName(final String name) {
+        return name != null && !name.isEmpty() && name.length() <= MAX_NAME_LENGTH;
+    }
+
+    private static boolean isValid(final String name, final String ip) {
+        return isValidName(name) && ip != null && !ip.isEmpty() && ip.length() <= MAX_IP_LENGTH;
+    }
 
-        // Cria mensagem confirmando a inscrição
-        final var response = mapper.createObjectNode();
-        response.put("type", "REGISTERED");
+    /**
+     * Filtro com ao menos um nome ou prefixo, todos não vazios, até
+     * {@value #MAX_FILTER_SIZE} no total
+     */
+    private static boolean isValid(final NameFilter filter) {
+        final var names = filter.names() == null ? List.<String>of() : filter.names();
+        final var prefixes = filter.prefixes() == null ? List.<String>of() : filter.prefixes();
+        final var size = names.size() + prefixes.size();
+        return size > 0 && size <= MAX_FILTER_SIZE
+                && Stream.concat(names.stream(), prefixes.stream())
+                        .allMatch(DnsServer::isValidName);
+    }
 
-        // Envia mensagem
-        messenger.sendSecure(mapper.writeValueAsBytes(response));
+    private static boolean isValid(final long ttl) {
+        return ttl >= 0 && ttl <= MAX_TTL;
     }
 
+    /**
+     * Prazo absoluto de um TTL em segundos; 0 se não vence
+     */
+    private static long expiresAt(final long ttl) {
+        return ttl == 0 ? 0 : System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttl);
+    }
+
+    private static String describe(final long ttl) {
+        return ttl == 0 ? "" : " (TTL " + ttl + " s)";
+    }
+
+    /**
+     * Avisa os inscritos dos nomes removidos numa mesma versão por terem
+     * vencido
+     */
+    private void notifyExpired(final List<String> names) {
+        log.info("Registros vencidos removidos: {}", names.size());
+
+        // As remoções já estão no log de alterações; saem quando gravadas
+        final var version = records.version();
+        if (awaitDurable(version)) {
+            feed.publish(version);
+        }
+    }
+
+    /**
+     * Espera a alteração chegar ao disco; devolve {@code false} se falhar
+     */
+    private boolean awaitDurable(final long version) {
+        // Sem persistência quando usado só como tratador
+        if (storage == null) {
+            return true;
+        }
+        try {
+            storage.awaitDurable(version);
+            return true;
+        } catch (final IOException e) {
+            log.error("Versão {} não foi persistida: {}", version, e.getMessage());
+            return false;
+        }
+    }
+
+    private void handleRegisterNotify(final SecureMessaging messenger, final RegisterNotify request)
+            throws IOException {
+        if (!NotifyFanout.accepts(messenger)) {
+            dispatcher.send(messenger, new ErrorMessage("Conexão não aceita notificações"));
+            return;
+        }
+        final var filter = request.filter();
+        if (filter != null && !isValid(filter)) {
+            dispatcher.send(messenger, new ErrorMessage("Filtro inválido"));
+            return;
+        }
+
+        // Cliente quer receber notificações; mantemos a conexão aberta. A
+        // resposta sai pela thread do inscrito, antes da recuperação e de
+        // qualquer NOTIFY.
+        try {
+            feed.subscribe(messenger, request.since(), filter);
+        } catch (final IOException e) {
+            log.error("Falha ao inscrever nas notificações: {}", e.getMessage());
+            dispatcher.send(messenger, new ErrorMessage("Falha ao inscrever nas notificações"));
+        }
+    }
+
+    private void handleUnknown(final SecureMessaging messenger, final String type) throws IOException {
+        dispatcher.send(messenger, new ErrorMessage("Unknown type: " + type));
+    }
+
+    private void handleDatagramUnknown(final SecureMessaging messenger, final String type) throws IOException {
+        dispatcher.send(messenger, new ErrorMessage("Tipo não aceito por UDP: " + type));
+    }
+
+    /**
+     * Imprime as primeiras {@value #MAX_PRINTED} linhas da tabela, para
+     * depuração: percorrê-la custa O(N) e segura um snapshot
+     */
     private void printMap() {
-        final var text = new StringBuilder("ESTADO ATUAL DA TABELA DNS:\n");
-        servers.forEach((name, ip) -> text.append(name).append(" -> ").append(ip).append("\n"));
+        // Snapshot: a tabela impressa é de uma única versão, mesmo com atualizações concorrentes
+        try (final var snapshot = records.snapshot()) {
+            final var text = new StringBuilder("ESTADO ATUAL DA TABELA DNS (versão ")
+                    .append(snapshot.version()).append("):\n");
+            final var printed = new int[1];
+            snapshot.forEach((name, ip) -> {
+                if (printed[0]++ < MAX_PRINTED) {
+                    text.append(name).append(" -> ").append(ip).append("\n");
+                }
+            });
+            if (printed[0] > MAX_PRINTED) {
+                text.append("... e mais ").append(printed[0] - MAX_PRINTED).append(" registros\n");
+            }
 
-        log.info(text.toString());
+            log.debug(text.toString());
+        }
     }
 
 }
@@ -0,0 +1,325 @@
+package br.edu.ufersa.cc.seg.dns.server;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import br.edu.ufersa.cc.seg.common.message.MessageCodec;
+import br.edu.ufersa.cc.seg.common.utils.Settings;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.Response;
+import br.edu.ufersa.cc.seg.dns.store.RecordStore;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Atalho para consultas de nomes inexistentes (erros de digitação,
+ * varreduras): responde sem consultar a tabela e sem passar pelo JSON.
+ *
+ * <p>
+ * Um filtro de Bloom com todos os nomes da tabela descarta a maior parte dos
+ * inexistentes. Os que ele deixa passar e a tabela confirma que não existem
+ * ficam num cache de faltas ({@value #TTL_SETTING}); qualquer inclusão do
+ * nome o retira do cache. Nos dois casos, a resposta sai de um modelo pronto
+ * do RESPONSE com IP nulo, em que só o nome é inserido.
+ *
+ * <p>
+ * Acompanha a tabela como ouvinte: cada nome incluído entra no filtro antes de
+ * a atualização ser confirmada ao cliente. Nomes não saem de um filtro de
+ * Bloom, então remoções só são contadas; quando elas (ou inclusões além da
+ * capacidade) o deixam impreciso, um filtro novo é montado em segundo plano a
+ * partir de um snapshot, recebendo também as alterações feitas durante a
+ * montagem, e substitui o antigo. Enquanto não há filtro (antes de
+ * {@link #ready()} e da primeira montagem), toda consulta vai à tabela.
+ */
+@Slf4j
+class NegativeCache implements RecordStore.ChangeListener {
+
+    /**
+     * Chave de configuração do tempo que um nome inexistente fica no cache de
+     * faltas, em milissegundos
+     */
+    static final String TTL_SETTING = "dns.negative.ttl-ms";
+
+    /**
+     * Chave de configuração da quantidade máxima de nomes no cache de faltas
+     */
+    static final String MAX_SIZE_SETTING = "dns.negative.max-size";
+
+    // Capacidade mínima do filtro, em nomes; ele é montado com o dobro dos nomes da tabela
+    private static final int MIN_CAPACITY = 1 << 16;
+
+    private final RecordStore store;
+    private final MessageCodec<DnsMessage> codec;
+    private final QueryMetrics metrics;
+    private final long ttl;
+    private final int maxSize;
+
+    // Partes do RESPONSE com IP nulo antes e depois do nome
+    private final byte[] prefix;
+    private final byte[] suffix;
+
+    // Filtro em uso e, durante uma montagem, o próximo
+    private volatile BloomFilter filter;
+    private volatile BloomFilter next;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private volatile boolean ready;
+
+    // Nomes no filtro em uso quando foi montado, e o que mudou desde então
+    private volatile int built;
+    private final LongAdder added = new LongAdder();
+    private final LongAdder removed = new LongAdder();
+
+    private final Map<String, Miss> misses = new ConcurrentHashMap<>();
+    // Muda a cada inclusão, para que uma falta lida antes dela não entre no cache
+    private final AtomicLong generation = new AtomicLong();
+    private volatile long nextPurge;
+
+    /**
+     * Resposta pronta de um nome inexistente, válida até {@code expiresAt}
+     * ({@link System#nanoTime()})
+     */
+    private record Miss(byte[] response, long expiresAt) {
+    }
+
+    private NegativeCache(final RecordStore store, final MessageCodec<DnsMessage> codec, final QueryMetrics metrics,
+            final long ttl, final int maxSize) {
+        this.store = store;
+        this.codec = codec;
+        this.metrics = metrics;
+        this.ttl = ttl;
+        this.maxSize = maxSize;
+
+        // O modelo vem do próprio codec, então segue o mesmo formato das demais respostas
+        final var marker = "\u0000nome\u0000";
+        final var template = encode(marker);
+        final var quoted = quote(marker);
+        final var at = indexOf(template, quoted);
+        if (at < 0) {
+            throw new IllegalStateException("Nome não encontrado no modelo de resposta");
+        }
+        this.prefix = Arrays.copyOf(template, at);
+        this.suffix = Arrays.copyOfRange(template, at + quoted.length, template.length);
+    }
+
+    /**
+     * Cria o atalho e passa a acompanhar as alterações da tabela
+     */
+    static NegativeCache of(final RecordStore store, final MessageCodec<DnsMessage> codec,
+            final QueryMetrics metrics) {
+        final var cache = new NegativeCache(store, codec, metrics, Settings.getLong(TTL_SETTING, 2000),
+                Settings.getInt(MAX_SIZE_SETTING, 10_000));
+        store.addListener(cache);
+        return cache;
+    }
+
+    @Override
+    public void onChange(final long version, final String name, final String ip) {
+        if (ip == null) {
+            removed.increment();
+            rebuildIfStale();
+            return;
+        }
+
+        // O próximo antes do atual: se a troca acontecer no meio, o atual já é o próximo
+        final var building = next;
+        final var current = filter;
+        if (building != null) {
+            building.add(name);
+        }
+        if (current != null && current.add(name)) {
+            added.increment();
+            rebuildIfStale();
+        }
+
+        generation.incrementAndGet();
+        misses.remove(name);
+    }
+
+    /**
+     * A tabela terminou de ser restaurada: monta o primeiro filtro. Antes
+     * disso, um snapshot pode não ver os registros restaurados.
+     */
+    void ready() {
+        ready = true;
+        rebuild();
+    }
+
+    /**
+     * Resposta pronta se o nome com certeza não existe, ou {@code null} se é
+     * preciso consultar a tabela
+     */
+    byte[] lookup(final String name) {
+        final var current = filter;
+        if (current != null && !current.mightContain(name)) {
+            metrics.filtered.increment();
+            return response(name);
+        }
+
+        final var miss = misses.get(name);
+        if (miss != null && System.nanoTime() - miss.expiresAt() < 0) {
+            metrics.cachedMisses.increment();
+            return miss.response();
+        }
+        return null;
+    }
+
+    /**
+     * Versão das inclusões, lida antes de consultar a tabela e repassada a
+     * {@link #missed}
+     */
+    long generation() {
+        return generation.get();
+    }
+
+    /**
+     * A tabela não tem o nome: guarda a resposta no cache de faltas e a
+     * devolve. Se algum nome foi incluído desde {@code generation}, a falta
+     * pode já estar desatualizada e não fica no cache.
+     */
+    byte[] missed(final String name, final long generation) {
+        if (filter != null) {
+            metrics.falsePositives.increment();
+        }
+
+        final var response = response(name);
+        final var now = System.nanoTime();
+        if (misses.size() >= maxSize && !purge(now)) {
+            return response;
+        }
+
+        final var miss = new Miss(response, now + TimeUnit.MILLISECONDS.toNanos(ttl));
+        misses.put(name, miss);
+        // Uma inclusão depois da leitura da geração pode ter vindo antes do put
+        if (this.generation.get() != generation) {
+            misses.remove(name, miss);
+        }
+        return response;
+    }
+
+    /**
+     * Retira as faltas vencidas, no máximo uma vez por TTL; devolve se há
+     * espaço para mais uma
+     */
+    private boolean purge(final long now) {
+        if (now - nextPurge >= 0) {
+            nextPurge = now + TimeUnit.MILLISECONDS.toNanos(ttl);
+            misses.values().removeIf(miss -> now - miss.expiresAt() >= 0);
+        }
+        return misses.size() < maxSize;
+    }
+
+    private byte[] response(final String name) {
+        // O gerador escreve pares substitutos (emojis) como escapes \\u e o modelo não; o codec decide
+        for (var i = 0; i < name.length(); i++) {
+            if (Character.isSurrogate(name.charAt(i))) {
+                return encode(name);
+            }
+        }
+
+        final var quoted = quote(name);
+        final var response = new byte[prefix.length + quoted.length + suffix.length];
+        System.arraycopy(prefix, 0, response, 0, prefix.length);
+        System.arraycopy(quoted, 0, response, prefix.length, quoted.length);
+        System.arraycopy(suffix, 0, response, prefix.length + quoted.length, suffix.length);
+        return response;
+    }
+
+    /**
+     * Monta um filtro novo em segundo plano se as remoções ou as inclusões
+     * desde a última montagem o deixaram impreciso
+     */
+    private void rebuildIfStale() {
+        final var current = filter;
+        if (current == null) {
+            return;
+        }
+        if (built + added.sum() > current.capacity() || removed.sum() > Math.max(built, MIN_CAPACITY) / 2) {
+            rebuild();
+        }
+    }
+
+    private void rebuild() {
+        if (!ready || !rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        Thread.ofVirtual().name("dns-bloom").start(() -> {
+            try {
+                build();
+            } catch (final RuntimeException e) {
+                log.error("Falha ao montar o filtro de nomes", e);
+            } finally {
+                next = null;
+                rebuilding.set(false);
+            }
+        });
+    }
+
+    private void build() {
+        final var start = System.nanoTime();
+
+        // A tabela não informa o tamanho; contar custa uma passada a mais, sem alocar
+        final var count = new int[1];
+        try (final var snapshot = store.snapshot()) {
+            snapshot.forEach((name, ip) -> count[0]++);
+        }
+        final var candidate = new BloomFilter(Math.max(MIN_CAPACITY, 2 * count[0]));
+
+        // Publicado antes do snapshot: o que ele não vê chega pelo ouvinte
+        next = candidate;
+        count[0] = 0;
+        try (final var snapshot = store.snapshot()) {
+            snapshot.forEach((name, ip) -> {
+                candidate.add(name);
+                count[0]++;
+            });
+        }
+
+        built = count[0];
+        added.reset();
+        removed.reset();
+        filter = candidate;
+        next = null;
+        metrics.rebuilds.increment();
+
+        log.info("Filtro de nomes montado: {} nomes, {} KB, em {} ms", count[0], candidate.bytes() / 1024,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private byte[] encode(final String name) {
+        try {
+            return codec.encode(new Response(name, null));
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] quote(final String value) {
+        final var escaped = JsonStringEncoder.getInstance().quoteAsUTF8(value);
+        final var quoted = new byte[escaped.length + 2];
+        quoted[0] = '"';
+        System.arraycopy(escaped, 0, quoted, 1, escaped.length);
+        quoted[quoted.length - 1] = '"';
+        return quoted;
+    }
+
+    private static int indexOf(final byte[] data, final byte[] target) {
+        outer: for (var i = 0; i <= data.length - target.length; i++) {
+            for (var j = 0; j < target.length; j++) {
+                if (data[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+}
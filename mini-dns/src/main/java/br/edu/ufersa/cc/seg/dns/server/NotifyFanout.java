@@ -0,0 +1,565 @@
+package br.edu.ufersa.cc.seg.dns.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import br.edu.ufersa.cc.seg.common.crypto.CryptoService;
+import br.edu.ufersa.cc.seg.common.message.MessageCodec;
+import br.edu.ufersa.cc.seg.common.network.SealedMessaging;
+import br.edu.ufersa.cc.seg.common.network.SecureMessaging;
+import br.edu.ufersa.cc.seg.common.utils.Settings;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.NameFilter;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.NameRecord;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.Notify;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.NotifyBatch;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Entrega das notificações de alteração aos inscritos, fora da thread de
+ * quem alterou.
+ *
+ * <p>
+ * Cada inscrito tem sua fila de alterações pendentes, indexada pelo nome, e
+ * uma thread virtual que a esvazia. {@link #publish} só acrescenta às filas:
+ * um inscrito lento não atrasa o ACK nem os demais inscritos. Enquanto um
+ * inscrito está atrasado, alterações seguidas do mesmo nome viram uma só,
+ * com o valor mais recente; o que estiver pendente sai junto num
+ * NOTIFY_BATCH.
+ *
+ * <p>
+ * Cada publicação é cifrada uma única vez, e o mesmo quadro é escrito para
+ * todos os inscritos em dia ({@link SealedMessaging#sendSealed}): o custo de
+ * AES e HMAC de uma alteração não cresce com o número de inscritos. Só quem
+ * acumula mais de {@value #MAX_SHARED} quadros passa a agrupar por nome e a
+ * cifrar os próprios lotes.
+ *
+ * <p>
+ * Um inscrito pode pedir só alguns nomes, exatos ou por prefixo. Cada
+ * alteração é casada com os filtros num {@link SubscriptionIndex}, sem
+ * percorrer os inscritos, e só chega a quem a incluiu. Um inscrito que inclui
+ * todas as alterações de uma publicação recebe o quadro compartilhado; quem
+ * inclui só parte delas recebe um lote próprio, cifrado pela sua thread.
+ *
+ * <p>
+ * Toda notificação leva a versão em que o inscrito fica ao aplicá-la, para
+ * que ele possa pedir, ao se reconectar, só o que perdeu
+ * ({@link ChangeFeed}).
+ *
+ * <p>
+ * Um inscrito que acumula mais de {@value #MAX_PENDING_SETTING} nomes
+ * pendentes, ou fica mais de {@value #MAX_LAG_SETTING} ms sem alcançar as
+ * alterações, é desconectado. Ao se reconectar, pede o que perdeu.
+ */
+@Slf4j
+public class NotifyFanout implements Closeable {
+
+    /**
+     * Chave de configuração do máximo de nomes pendentes por inscrito
+     */
+    public static final String MAX_PENDING_SETTING = "dns.notify.max-pending";
+
+    /**
+     * Chave de configuração do atraso máximo (ms) de um inscrito
+     */
+    public static final String MAX_LAG_SETTING = "dns.notify.max-lag-ms";
+
+    // Registros por NOTIFY_BATCH
+    static final int MAX_BATCH = 1000;
+
+    // Quadros compartilhados na fila de um inscrito antes de ele passar a agrupar por nome
+    private static final int MAX_SHARED = 64;
+
+    // Bytes aguardando o socket a partir dos quais o escritor espera (envio não bloqueante)
+    private static final long HIGH_WATER = 256 * 1024;
+
+    // Intervalo em que o escritor esperando o socket confere se foi parado
+    private static final long STOP_CHECK_MILLIS = 500;
+
+    private final CryptoService cryptoService;
+    private final MessageCodec<DnsMessage> codec;
+    private final int maxPending;
+    private final long maxLag;
+    private final NotifyMetrics metrics = new NotifyMetrics();
+    private final Map<SecureMessaging, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private final ReentrantLock indexLock = new ReentrantLock();
+    private final SubscriptionIndex<Subscriber> index = new SubscriptionIndex<>();
+    private final AtomicLong nextId = new AtomicLong();
+
+    /**
+     * Atraso de um inscrito
+     *
+     * @param pending   nomes ainda não entregues
+     * @param lagMillis há quanto tempo a alteração mais antiga não entregue
+     *                  espera (0 se está em dia)
+     */
+    public record SubscriberLag(String subscriber, int pending, long lagMillis, long delivered, long coalesced) {
+    }
+
+    /**
+     * Publicação para as filas dos inscritos. {@code frame} é o quadro já
+     * cifrado, compartilhado; nulo quando {@code changes} é só a parte que o
+     * filtro do inscrito inclui, cifrada pelo próprio escritor.
+     */
+    private record Broadcast(List<NameRecord> changes, long version, byte[] frame, long publishedAt) {
+    }
+
+    /**
+     * Cria o fan-out com os limites configurados ({@value #MAX_PENDING_SETTING}
+     * e {@value #MAX_LAG_SETTING})
+     */
+    public NotifyFanout(final CryptoService cryptoService, final MessageCodec<DnsMessage> codec) {
+        this(cryptoService, codec, Settings.getInt(MAX_PENDING_SETTING, 10_000),
+                Duration.ofMillis(Settings.getLong(MAX_LAG_SETTING, 10_000)));
+    }
+
+    public NotifyFanout(final CryptoService cryptoService, final MessageCodec<DnsMessage> codec,
+            final int maxPending, final Duration maxLag) {
+        this.cryptoService = cryptoService;
+        this.codec = codec;
+        this.maxPending = maxPending;
+        this.maxLag = maxLag.toNanos();
+    }
+
+    /**
+     * Passa a entregar as alterações à conexão do inscrito. Antes delas, o
+     * escritor do inscrito envia {@code reply} como resposta ao pedido de
+     * inscrição (por {@code messenger}) e, em seguida, os quadros já cifrados
+     * de {@code catchUp}. Publicações de versões até {@code after}, já
+     * cobertas pela recuperação, não são entregues a ele. Com {@code filter},
+     * só as alterações dos nomes que ele inclui. A conexão por trás de
+     * {@code messenger} deve aceitar quadros já cifrados
+     * ({@link #accepts}).
+     */
+    public void subscribe(final SecureMessaging messenger, final DnsMessage reply, final List<byte[]> catchUp,
+            final long after, final NameFilter filter) {
+        if (!(messenger.connection() instanceof final SealedMessaging connection)) {
+            throw new IllegalArgumentException("Conexão não aceita quadros já cifrados");
+        }
+        final var subscriber = new Subscriber("inscrito-" + nextId.incrementAndGet(), messenger, connection,
+                reply, catchUp, after, filter);
+
+        // Nova inscrição na mesma conexão substitui a anterior
+        final Subscriber previous;
+        indexLock.lock();
+        try {
+            previous = subscribers.put(connection, subscriber);
+            if (previous != null) {
+                index.remove(previous, previous.filter);
+            }
+            index.add(subscriber, filter);
+        } finally {
+            indexLock.unlock();
+        }
+        if (previous == null) {
+            metrics.subscribers.incrementAndGet();
+        } else {
+            previous.stop();
+        }
+        subscriber.start();
+    }
+
+    /**
+     * Se a conexão por trás de {@code messenger} pode ser inscrita
+     */
+    public static boolean accepts(final SecureMessaging messenger) {
+        return messenger.connection() instanceof SealedMessaging;
+    }
+
+    /**
+     * Para de entregar à conexão (ex.: encerrada), descartando o pendente
+     */
+    public void unsubscribe(final SecureMessaging messenger) {
+        final Subscriber subscriber;
+        indexLock.lock();
+        try {
+            subscriber = subscribers.remove(messenger.connection());
+            if (subscriber != null) {
+                index.remove(subscriber, subscriber.filter);
+            }
+        } finally {
+            indexLock.unlock();
+        }
+        if (subscriber != null) {
+            metrics.subscribers.decrementAndGet();
+            subscriber.stop();
+        }
+    }
+
+    /**
+     * Enfileira para todos os inscritos as alterações que levam a tabela à
+     * versão informada. Deve ser chamado na ordem das versões.
+     */
+    public void publish(final List<NameRecord> changes, final long version) {
+        if (changes.isEmpty() || subscribers.isEmpty()) {
+            return;
+        }
+
+        // Quem recebe o quê, sem cifrar nada com a trava do índice
+        final List<Subscriber> everything;
+        final var partial = new LinkedHashMap<Subscriber, List<NameRecord>>();
+        var skipped = 0L;
+        indexLock.lock();
+        try {
+            everything = new ArrayList<>(index.unfiltered());
+            for (final var change : changes) {
+                index.match(change.name(), subscriber -> {
+                    final var matched = partial.computeIfAbsent(subscriber, ignored -> new ArrayList<>());
+                    // Mais de um nome ou prefixo do mesmo filtro pode casar
+                    if (matched.isEmpty() || matched.get(matched.size() - 1) != change) {
+                        matched.add(change);
+                    }
+                });
+            }
+            skipped = (long) index.filtered() * changes.size();
+        } finally {
+            indexLock.unlock();
+        }
+
+        final var iterator = partial.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final var entry = iterator.next();
+            skipped -= entry.getValue().size();
+            if (entry.getValue().size() == changes.size()) {
+                // O filtro inclui a publicação inteira: recebe o quadro compartilhado
+                everything.add(entry.getKey());
+                iterator.remove();
+            }
+        }
+        metrics.filtered.add(skipped);
+
+        final var publishedAt = System.nanoTime();
+        if (!everything.isEmpty()) {
+            final byte[] frame;
+            try {
+                frame = seal(notification(changes, version, false));
+            } catch (final IOException e) {
+                log.error("Falha ao codificar notificação", e);
+                return;
+            }
+            final var broadcast = new Broadcast(changes, version, frame, publishedAt);
+            for (final var subscriber : everything) {
+                offer(subscriber, broadcast);
+            }
+        }
+        partial.forEach((subscriber, matched) -> offer(subscriber, new Broadcast(matched, version, null, publishedAt)));
+    }
+
+    private void offer(final Subscriber subscriber, final Broadcast broadcast) {
+        if (!subscriber.offer(broadcast)) {
+            disconnect(subscriber, "ficou para trás");
+        }
+    }
+
+    /**
+     * Codifica e cifra a mensagem uma vez, para ser enviada a vários inscritos
+     */
+    byte[] seal(final DnsMessage message) throws IOException {
+        final var frame = cryptoService.seal(codec.encode(message));
+        metrics.encrypted.increment();
+        return frame;
+    }
+
+    public NotifyMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Atraso atual de cada inscrito
+     */
+    public List<SubscriberLag> lag() {
+        final var now = System.nanoTime();
+        return subscribers.values().stream().map(subscriber -> subscriber.lag(now)).toList();
+    }
+
+    /**
+     * NOTIFY para uma alteração; NOTIFY_BATCH para várias ou para um
+     * {@code reset}
+     */
+    static DnsMessage notification(final List<NameRecord> changes, final long version, final boolean reset) {
+        return changes.size() == 1 && !reset
+                ? new Notify(changes.get(0).name(), changes.get(0).ip(), version)
+                : new NotifyBatch(changes, version, reset);
+    }
+
+    private void disconnect(final Subscriber subscriber, final String reason) {
+        final boolean removed;
+        indexLock.lock();
+        try {
+            removed = subscribers.remove(subscriber.connection, subscriber);
+            if (removed) {
+                index.remove(subscriber, subscriber.filter);
+            }
+        } finally {
+            indexLock.unlock();
+        }
+        if (removed) {
+            metrics.subscribers.decrementAndGet();
+            metrics.disconnected.increment();
+            log.warn("Inscrito desconectado ({}): {}", reason, subscriber.lag(System.nanoTime()));
+            subscriber.stop();
+            try {
+                subscriber.connection.close();
+            } catch (final IOException e) {
+                // Ignora
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for (final var subscriber : subscribers.values()) {
+            unsubscribe(subscriber.connection);
+        }
+    }
+
+    /**
+     * Fila de um inscrito e a thread que a entrega
+     */
+    private final class Subscriber {
+
+        private final String id;
+        private final SecureMessaging messenger;
+        private final SealedMessaging connection;
+        private final DnsMessage reply;
+        private final long after;
+        private final NameFilter filter;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+
+        // Protegidos pela trava. A recuperação sai primeiro; as publicações
+        // enfileiradas inteiras são sempre mais antigas que o agrupado por
+        // nome, e saem antes dele.
+        private final ArrayDeque<byte[]> catchUp;
+        private final ArrayDeque<Broadcast> shared = new ArrayDeque<>();
+        private final LinkedHashMap<String, String> pending = new LinkedHashMap<>();
+        private boolean catchingUp = true;
+        private int sharedChanges;
+        // Versão em que o inscrito fica ao receber tudo o que já foi enfileirado
+        private long queuedVersion;
+        // Versão em que ele fica antes do agrupado por nome
+        private long pendingFrom;
+        private long behindSince;
+        private long pendingSince;
+        private long delivered;
+        private long coalesced;
+        private boolean stopped;
+
+        private Subscriber(final String id, final SecureMessaging messenger, final SealedMessaging connection,
+                final DnsMessage reply, final List<byte[]> catchUp, final long after, final NameFilter filter) {
+            this.id = id;
+            this.messenger = messenger;
+            this.connection = connection;
+            this.reply = reply;
+            this.catchUp = new ArrayDeque<>(catchUp);
+            this.after = after;
+            this.filter = filter;
+            this.queuedVersion = after;
+        }
+
+        private void start() {
+            Thread.ofVirtual().name(id).start(this::writeLoop);
+        }
+
+        /**
+         * Acrescenta as alterações; devolve {@code false} se o inscrito passou
+         * dos limites de atraso
+         */
+        private boolean offer(final Broadcast broadcast) {
+            final var now = broadcast.publishedAt();
+            lock.lock();
+            try {
+                if (stopped || broadcast.version() <= after) {
+                    return true;
+                }
+                if (pending.isEmpty() && shared.size() < MAX_SHARED) {
+                    shared.add(broadcast);
+                    sharedChanges += broadcast.changes().size();
+                } else {
+                    if (pending.isEmpty()) {
+                        pendingSince = now;
+                        pendingFrom = queuedVersion;
+                    }
+                    for (final var change : broadcast.changes()) {
+                        final var replaced = pending.containsKey(change.name());
+                        pending.put(change.name(), change.ip());
+                        if (replaced) {
+                            coalesced++;
+                            metrics.coalesced.increment();
+                        }
+                    }
+                }
+                queuedVersion = broadcast.version();
+                metrics.published.add(broadcast.changes().size());
+                changed.signal();
+
+                final var withinPending = sharedChanges + pending.size() <= maxPending;
+                if (catchingUp) {
+                    // A recuperação pode ser longa; o atraso só conta depois dela
+                    return withinPending;
+                }
+                if (behindSince == 0) {
+                    behindSince = now;
+                }
+                return withinPending && now - behindSince <= maxLag;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private SubscriberLag lag(final long now) {
+            lock.lock();
+            try {
+                return new SubscriberLag(id, sharedChanges + pending.size(),
+                        behindSince == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(now - behindSince), delivered, coalesced);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void stop() {
+            lock.lock();
+            try {
+                stopped = true;
+                catchUp.clear();
+                shared.clear();
+                pending.clear();
+                changed.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void writeLoop() {
+            if (!sendCatchUp()) {
+                return;
+            }
+
+            while (true) {
+                Broadcast next = null;
+                final var batch = new ArrayList<NameRecord>();
+                var version = 0L;
+                lock.lock();
+                try {
+                    while (shared.isEmpty() && pending.isEmpty() && !stopped) {
+                        changed.awaitUninterruptibly();
+                    }
+                    if (stopped) {
+                        return;
+                    }
+
+                    if (!shared.isEmpty()) {
+                        next = shared.poll();
+                        sharedChanges -= next.changes().size();
+                    } else {
+                        // O que entrar depois disto vai na próxima mensagem
+                        final var iterator = pending.entrySet().iterator();
+                        while (iterator.hasNext() && batch.size() < MAX_BATCH) {
+                            final var entry = iterator.next();
+                            batch.add(new NameRecord(entry.getKey(), entry.getValue()));
+                            iterator.remove();
+                        }
+
+                        // Só o último pedaço do agrupado leva o inscrito à versão mais nova
+                        version = pending.isEmpty() ? queuedVersion : pendingFrom;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+
+                final var sent = next != null ? next.changes().size() : batch.size();
+                try {
+                    if (next != null && next.frame() != null) {
+                        connection.sendSealed(next.frame());
+                    } else if (next != null) {
+                        // Só a parte da publicação que o filtro inclui
+                        connection.sendSecure(codec.encode(notification(next.changes(), next.version(), false)));
+                        metrics.encrypted.increment();
+                    } else {
+                        connection.sendSecure(codec.encode(notification(batch, version, false)));
+                        metrics.encrypted.increment();
+                    }
+                    metrics.frames.increment();
+                    metrics.delivered.add(sent);
+                    awaitDrain();
+                } catch (final IOException e) {
+                    disconnect(this, "falha no envio: " + e.getMessage());
+                    return;
+                }
+
+                lock.lock();
+                try {
+                    // Atrasado agora só desde o mais antigo ainda não entregue
+                    delivered += sent;
+                    behindSince = !shared.isEmpty() ? shared.peek().publishedAt()
+                            : !pending.isEmpty() ? pendingSince : 0;
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        /**
+         * Envia a resposta à inscrição e a recuperação; devolve {@code false}
+         * se o inscrito foi parado ou desconectado
+         */
+        private boolean sendCatchUp() {
+            try {
+                messenger.sendSecure(codec.encode(reply));
+                while (true) {
+                    final byte[] frame;
+                    lock.lock();
+                    try {
+                        if (stopped) {
+                            return false;
+                        }
+                        frame = catchUp.poll();
+                        if (frame == null) {
+                            // O atraso do que chegou durante a recuperação começa a contar agora
+                            catchingUp = false;
+                            behindSince = shared.isEmpty() && pending.isEmpty() ? 0 : System.nanoTime();
+                            return true;
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+
+                    connection.sendSealed(frame);
+                    metrics.frames.increment();
+                    awaitDrain();
+                }
+            } catch (final IOException e) {
+                disconnect(this, "falha no envio: " + e.getMessage());
+                return false;
+            }
+        }
+
+        private void awaitDrain() throws IOException {
+            // Envio que só enfileira (NIO): espera o aviso de que o socket escoou
+            // antes de mandar mais; o prazo só serve para notar que foi parado
+            while (!connection.awaitPendingBelow(HIGH_WATER, STOP_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                lock.lock();
+                try {
+                    if (stopped) {
+                        return;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+    }
+
+}
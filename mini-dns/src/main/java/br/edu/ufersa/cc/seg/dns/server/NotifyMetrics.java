@@ -0,0 +1,105 @@
+package br.edu.ufersa.cc.seg.dns.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores de um {@link NotifyFanout}, somados entre todos os inscritos
+ */
+public class NotifyMetrics {
+
+    final AtomicInteger subscribers = new AtomicInteger();
+    final LongAdder published = new LongAdder();
+    final LongAdder delivered = new LongAdder();
+    final LongAdder frames = new LongAdder();
+    final LongAdder encrypted = new LongAdder();
+    final LongAdder coalesced = new LongAdder();
+    final LongAdder filtered = new LongAdder();
+    final LongAdder disconnected = new LongAdder();
+    final LongAdder deltaSyncs = new LongAdder();
+    final LongAdder snapshotSyncs = new LongAdder();
+
+    /**
+     * Inscritos no momento
+     */
+    public int getSubscribers() {
+        return subscribers.get();
+    }
+
+    /**
+     * Alterações publicadas, contadas uma vez por inscrito
+     */
+    public long getPublished() {
+        return published.sum();
+    }
+
+    /**
+     * Alterações entregues aos inscritos
+     */
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    /**
+     * Mensagens NOTIFY e NOTIFY_BATCH enviadas
+     */
+    public long getFrames() {
+        return frames.sum();
+    }
+
+    /**
+     * Mensagens cifradas: uma por publicação, compartilhada pelos inscritos em
+     * dia, mais uma por lote próprio de inscrito atrasado
+     */
+    public long getEncrypted() {
+        return encrypted.sum();
+    }
+
+    /**
+     * Alterações substituídas por outra mais nova do mesmo nome antes de
+     * serem entregues
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Alterações não enviadas a inscritos cujo filtro não as inclui, contadas
+     * uma vez por inscrito
+     */
+    public long getFiltered() {
+        return filtered.sum();
+    }
+
+    /**
+     * Inscritos desconectados por ficarem para trás ou por falha no envio
+     */
+    public long getDisconnected() {
+        return disconnected.sum();
+    }
+
+    /**
+     * Inscrições que retomaram de uma versão ainda no log de alterações,
+     * recebendo só o que perderam
+     */
+    public long getDeltaSyncs() {
+        return deltaSyncs.sum();
+    }
+
+    /**
+     * Inscrições que retomaram de uma versão fora do log e receberam a tabela
+     * inteira
+     */
+    public long getSnapshotSyncs() {
+        return snapshotSyncs.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "inscritos=" + getSubscribers() + ", publicadas=" + getPublished() + ", entregues=" + getDelivered()
+                + ", mensagens=" + getFrames() + ", cifradas=" + getEncrypted() + ", agrupadas=" + getCoalesced()
+                + ", filtradas=" + getFiltered() + ", desconectados=" + getDisconnected() + ", retomadas por delta="
+                + getDeltaSyncs() + ", retomadas por snapshot=" + getSnapshotSyncs();
+    }
+
+}
@@ -0,0 +1,89 @@
+package br.edu.ufersa.cc.seg.dns.server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores das consultas QUERY de um {@link DnsServer}, com o tempo de
+ * tratamento (da mensagem já decifrada até a resposta enviada) separado para
+ * nomes existentes e inexistentes
+ */
+public class QueryMetrics {
+
+    final LongAdder hits = new LongAdder();
+    final LongAdder hitNanos = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder missNanos = new LongAdder();
+    final LongAdder filtered = new LongAdder();
+    final LongAdder cachedMisses = new LongAdder();
+    final LongAdder falsePositives = new LongAdder();
+    final LongAdder rebuilds = new LongAdder();
+
+    /**
+     * Consultas de nomes existentes
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Consultas de nomes inexistentes
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Tempo médio de tratamento de um nome existente, em nanossegundos
+     */
+    public long getAverageHitNanos() {
+        final var count = hits.sum();
+        return count == 0 ? 0 : hitNanos.sum() / count;
+    }
+
+    /**
+     * Tempo médio de tratamento de um nome inexistente, em nanossegundos
+     */
+    public long getAverageMissNanos() {
+        final var count = misses.sum();
+        return count == 0 ? 0 : missNanos.sum() / count;
+    }
+
+    /**
+     * Nomes inexistentes descartados pelo filtro de Bloom, sem consultar a
+     * tabela
+     */
+    public long getFiltered() {
+        return filtered.sum();
+    }
+
+    /**
+     * Nomes inexistentes respondidos pelo cache de faltas, sem consultar a
+     * tabela
+     */
+    public long getCachedMisses() {
+        return cachedMisses.sum();
+    }
+
+    /**
+     * Nomes inexistentes que o filtro de Bloom deixou passar
+     */
+    public long getFalsePositives() {
+        return falsePositives.sum();
+    }
+
+    /**
+     * Reconstruções do filtro de Bloom
+     */
+    public long getRebuilds() {
+        return rebuilds.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "encontrados=" + getHits() + " (média " + getAverageHitNanos() + " ns), inexistentes="
+                + getMisses() + " (média " + getAverageMissNanos() + " ns), barrados pelo filtro="
+                + getFiltered() + ", do cache de faltas=" + getCachedMisses() + ", falsos positivos="
+                + getFalsePositives() + ", reconstruções do filtro=" + getRebuilds();
+    }
+
+}
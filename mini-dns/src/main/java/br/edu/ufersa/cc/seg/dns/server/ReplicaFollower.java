@@ -0,0 +1,382 @@
+package br.edu.ufersa.cc.seg.dns.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongConsumer;
+
+import br.edu.ufersa.cc.seg.common.crypto.CryptoService;
+import br.edu.ufersa.cc.seg.common.message.MessageCodec;
+import br.edu.ufersa.cc.seg.common.network.MultiplexedClient;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.Notify;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.NotifyBatch;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.RegisterNotify;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.Registered;
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.Sync;
+import br.edu.ufersa.cc.seg.dns.store.RecordStore;
+import br.edu.ufersa.cc.seg.dns.store.RecordStore.Change;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Mantém a tabela de uma réplica somente leitura igual à de um primário.
+ *
+ * <p>
+ * A réplica se inscreve no primário como qualquer cliente (REGISTER_NOTIFY),
+ * informando a versão em que parou, e aplica cada NOTIFY e NOTIFY_BATCH com
+ * a versão do primário ({@link RecordStore#replicate}). As versões das duas
+ * tabelas coincidem, mesmo quando uma notificação não muda nada na réplica
+ * (a versão é confirmada sem alterações): uma réplica reiniciada retoma de
+ * onde parou, e um resolvedor pode trocar de servidor mantendo a versão.
+ * Quadros de uma recuperação ou de um lote agrupado que ainda não levam a
+ * uma versão nova são acumulados e aplicados juntos, então a tabela nunca
+ * mostra um estado que o primário não teve. Uma recuperação com a tabela
+ * inteira ({@code reset}) remove os nomes locais que ela não traz.
+ *
+ * <p>
+ * As notificações não levam o prazo de validade dos registros, então eles
+ * chegam à réplica sem prazo e nunca vencem nela: quem remove um registro
+ * vencido é o primário, e a remoção chega como qualquer outra alteração. Sem
+ * o primário, a réplica segue servindo registros que já venceram lá.
+ *
+ * <p>
+ * A aplicação e a gravação ficam numa thread própria: a leitura da conexão
+ * só decodifica e enfileira. Quadros que chegam juntos são gravados com um
+ * único {@code persist}, que espera o disco e publica as alterações aos
+ * inscritos da réplica.
+ *
+ * <p>
+ * Se a conexão cai, a réplica continua servindo a última versão aplicada e
+ * se reconecta com espera crescente. Atualizações recebidas pela réplica vão
+ * ao primário pela mesma conexão ({@link #forward}).
+ */
+@Slf4j
+class ReplicaFollower implements Closeable {
+
+    private static final Duration REGISTRATION_TIMEOUT = Duration.ofSeconds(5);
+
+    // Espera entre tentativas de reconexão, dobrando até o máximo
+    private static final long MIN_BACKOFF_MS = 100;
+    private static final long MAX_BACKOFF_MS = 5_000;
+
+    // Quadros aplicados antes de esperar o disco, mesmo com mais na fila
+    private static final int MAX_UNPERSISTED = 64;
+
+    private final String host;
+    private final int port;
+    private final CryptoService cryptoService;
+    private final MessageCodec<DnsMessage> codec;
+    private final RecordStore store;
+    private final ReplicationMetrics metrics;
+    private final LongConsumer persist;
+
+    private final BlockingQueue<Inbound> inbox = new LinkedBlockingQueue<>();
+    private volatile MultiplexedClient client;
+    private volatile boolean closed;
+
+    // Estado da thread de aplicação: versão alcançada e o que ainda não leva a uma versão nova
+    private long cursor;
+    private final Map<String, String> pending = new HashMap<>();
+    private boolean pendingReset;
+    // Recebimento do quadro mais antigo ainda não gravado (System.nanoTime)
+    private long oldestReceived;
+    private int unpersisted;
+
+    /**
+     * Notificação recebida de uma conexão; {@code message} nulo indica que a
+     * conexão caiu
+     */
+    private record Inbound(MultiplexedClient source, DnsMessage message, long receivedAt) {
+    }
+
+    private ReplicaFollower(final String host, final int port, final CryptoService cryptoService,
+            final MessageCodec<DnsMessage> codec, final RecordStore store, final ReplicationMetrics metrics,
+            final LongConsumer persist) {
+        this.host = host;
+        this.port = port;
+        this.cryptoService = cryptoService;
+        this.codec = codec;
+        this.store = store;
+        this.metrics = metrics;
+        this.persist = persist;
+    }
+
+    /**
+     * Passa a acompanhar o primário em {@code primary} ({@code host:porta}) a
+     * partir da versão atual da tabela, já restaurada. {@code persist} espera
+     * uma versão aplicada chegar ao disco e a publica.
+     */
+    static ReplicaFollower start(final String primary, final CryptoService cryptoService,
+            final MessageCodec<DnsMessage> codec, final RecordStore store, final ReplicationMetrics metrics,
+            final LongConsumer persist) {
+        final var separator = primary.lastIndexOf(':');
+        if (separator <= 0 || separator == primary.length() - 1) {
+            throw new IllegalArgumentException("Primário deve ser host:porta: " + primary);
+        }
+        final var follower = new ReplicaFollower(primary.substring(0, separator),
+                Integer.parseInt(primary.substring(separator + 1)), cryptoService, codec, store, metrics, persist);
+        follower.cursor = store.version();
+        metrics.appliedVersion.set(follower.cursor);
+        Thread.ofVirtual().name("dns-replica").start(follower::run);
+        return follower;
+    }
+
+    /**
+     * Envia a atualização ao primário e devolve a resposta dele, sem
+     * decodificar
+     */
+    CompletableFuture<byte[]> forward(final byte[] message) {
+        final var current = client;
+        if (current == null || !current.isOpen()) {
+            metrics.forwardFailures.increment();
+            return CompletableFuture.failedFuture(new IOException("Sem conexão com o primário"));
+        }
+        metrics.forwarded.increment();
+        return current.request(message).whenComplete((reply, error) -> {
+            if (error != null) {
+                metrics.forwardFailures.increment();
+            }
+        });
+    }
+
+    private void run() {
+        var backoff = MIN_BACKOFF_MS;
+        var first = true;
+        while (!closed) {
+            if (!first) {
+                metrics.reconnects.increment();
+            }
+            first = false;
+
+            try {
+                final var connection = connect();
+                backoff = MIN_BACKOFF_MS;
+                follow(connection);
+            } catch (final IOException e) {
+                if (!closed) {
+                    log.warn("Réplica sem o primário {}:{}: {}", host, port, e.getMessage());
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (final RuntimeException e) {
+                log.error("Falha ao aplicar alterações do primário", e);
+            } finally {
+                metrics.connected.set(false);
+                discard();
+            }
+
+            try {
+                Thread.sleep(backoff);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+        }
+    }
+
+    /**
+     * Conecta e se inscreve a partir da versão aplicada
+     */
+    private MultiplexedClient connect() throws IOException, InterruptedException {
+        final var fresh = new MultiplexedClient(host, port, cryptoService);
+        fresh.onUnsolicited(message -> receive(fresh, message));
+        fresh.onClose(() -> inbox.add(new Inbound(fresh, null, 0)));
+
+        final Registered registered;
+        try {
+            final var reply = codec.decode(fresh.request(codec.encode(new RegisterNotify(cursor, null)))
+                    .get(REGISTRATION_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS));
+            if (!(reply instanceof Registered accepted)) {
+                throw new IOException("Inscrição recusada pelo primário: " + reply);
+            }
+            registered = accepted;
+        } catch (final ExecutionException | TimeoutException | IOException e) {
+            fresh.close();
+            throw new IOException("Falha ao se inscrever no primário", e);
+        } catch (final InterruptedException e) {
+            fresh.close();
+            throw e;
+        }
+
+        // Primário com menos alterações que a réplica (ex.: tabela dele apagada): não há como seguir
+        if (registered.version() < cursor) {
+            fresh.close();
+            throw new IOException("Primário na versão " + registered.version() + ", atrás da réplica (versão "
+                    + cursor + ")");
+        }
+
+        if (registered.sync() == Sync.SNAPSHOT) {
+            metrics.snapshotSyncs.increment();
+        }
+        metrics.primaryVersion.accumulate(registered.version());
+        metrics.connected.set(true);
+        client = fresh;
+        if (closed) {
+            fresh.close();
+        }
+        log.info("Réplica inscrita no primário {}:{} na versão {} (recuperação {} a partir da versão {})", host,
+                port, registered.version(), registered.sync(), cursor);
+        return fresh;
+    }
+
+    /**
+     * Chamado pela thread de leitura da conexão: só decodifica e enfileira
+     */
+    private void receive(final MultiplexedClient source, final byte[] message) {
+        final DnsMessage notification;
+        try {
+            notification = codec.decode(message);
+        } catch (final IOException e) {
+            log.warn("Notificação do primário ilegível descartada: {}", e.getMessage());
+            return;
+        }
+
+        switch (notification) {
+            case Notify notify -> metrics.primaryVersion.accumulate(notify.version());
+            case NotifyBatch batch -> metrics.primaryVersion.accumulate(batch.version());
+            default -> {
+                log.debug("Mensagem inesperada na conexão com o primário: {}", notification);
+                return;
+            }
+        }
+        inbox.add(new Inbound(source, notification, System.nanoTime()));
+    }
+
+    /**
+     * Aplica as notificações da conexão até ela cair
+     */
+    private void follow(final MultiplexedClient connection) throws InterruptedException {
+        while (!closed) {
+            final var inbound = inbox.take();
+            if (inbound.source() != connection) {
+                // Resto de uma conexão anterior
+                continue;
+            }
+            if (inbound.message() == null) {
+                flush();
+                if (!closed) {
+                    log.warn("Conexão com o primário caiu na versão {}; réplica segue servindo essa versão",
+                            cursor);
+                }
+                return;
+            }
+
+            apply(inbound);
+            if (inbox.isEmpty() || unpersisted >= MAX_UNPERSISTED) {
+                flush();
+            }
+        }
+    }
+
+    private void apply(final Inbound inbound) {
+        if (pending.isEmpty() && !pendingReset && unpersisted == 0) {
+            oldestReceived = inbound.receivedAt();
+        }
+
+        final long version;
+        switch (inbound.message()) {
+            case Notify(var name, var ip, var notified) -> {
+                pending.put(name, ip);
+                version = notified;
+            }
+            case NotifyBatch(var records, var notified, var reset) -> {
+                if (reset) {
+                    pending.clear();
+                    pendingReset = true;
+                }
+                records.forEach(found -> pending.put(found.name(), found.ip()));
+                version = notified;
+            }
+            default -> throw new IllegalStateException("Notificação inesperada: " + inbound.message());
+        }
+
+        // Quadros intermediários (recuperação, lote agrupado) trazem uma versão já alcançada
+        if (version <= cursor) {
+            return;
+        }
+
+        // Mesmo sem nada a mudar aqui a versão é confirmada, para a tabela, o
+        // log e a próxima inscrição seguirem na versão do primário
+        store.replicate(version, changes());
+        cursor = version;
+        pending.clear();
+        pendingReset = false;
+        unpersisted++;
+    }
+
+    /**
+     * Alterações acumuladas que mudam a tabela local; numa recuperação com a
+     * tabela inteira, também a remoção dos nomes que ela não traz
+     */
+    private List<Change> changes() {
+        final var changes = new ArrayList<Change>();
+        pending.forEach((name, ip) -> {
+            // A réplica só é alterada por aqui, então a leitura não corre com outra escrita
+            if (!Objects.equals(store.get(name), ip)) {
+                changes.add(new Change(name, ip));
+            }
+        });
+        if (pendingReset) {
+            try (final var snapshot = store.snapshot()) {
+                snapshot.forEach((name, ip) -> {
+                    if (!pending.containsKey(name)) {
+                        changes.add(new Change(name, null));
+                    }
+                });
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Grava o que foi aplicado desde a última vez e atualiza o atraso
+     */
+    private void flush() {
+        if (unpersisted == 0) {
+            return;
+        }
+        persist.accept(cursor);
+
+        final var delay = System.nanoTime() - oldestReceived;
+        metrics.applied.add(unpersisted);
+        metrics.persisted.increment();
+        metrics.delayNanos.add(delay);
+        metrics.maxDelayNanos.accumulate(delay);
+        metrics.appliedVersion.set(cursor);
+        unpersisted = 0;
+    }
+
+    /**
+     * Descarta o que não chegou a uma versão nova: a próxima inscrição
+     * retoma da versão aplicada
+     */
+    private void discard() {
+        flush();
+        pending.clear();
+        pendingReset = false;
+        client = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        final var current = client;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+}
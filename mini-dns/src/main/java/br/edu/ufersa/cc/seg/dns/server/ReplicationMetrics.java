@@ -0,0 +1,128 @@
+package br.edu.ufersa.cc.seg.dns.server;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Estado de uma réplica ({@link ReplicaFollower}): versão do primário,
+ * versão aplicada e o atraso entre receber uma alteração e servi-la. Num
+ * primário, tudo fica zerado.
+ */
+public class ReplicationMetrics {
+
+    final AtomicBoolean connected = new AtomicBoolean();
+    final LongAccumulator primaryVersion = new LongAccumulator(Math::max, 0);
+    final AtomicLong appliedVersion = new AtomicLong();
+    final LongAdder applied = new LongAdder();
+    final LongAdder persisted = new LongAdder();
+    final LongAdder delayNanos = new LongAdder();
+    final LongAccumulator maxDelayNanos = new LongAccumulator(Math::max, 0);
+    final LongAdder reconnects = new LongAdder();
+    final LongAdder snapshotSyncs = new LongAdder();
+    final LongAdder forwarded = new LongAdder();
+    final LongAdder forwardFailures = new LongAdder();
+
+    /**
+     * Se a réplica está conectada e inscrita no primário
+     */
+    public boolean isConnected() {
+        return connected.get();
+    }
+
+    /**
+     * Versão mais nova do primário que a réplica já conhece
+     */
+    public long getPrimaryVersion() {
+        return primaryVersion.get();
+    }
+
+    /**
+     * Versão do primário até a qual a réplica já aplicou e gravou as
+     * alterações
+     */
+    public long getAppliedVersion() {
+        return appliedVersion.get();
+    }
+
+    /**
+     * Versões do primário ainda não aplicadas pela réplica
+     */
+    public long getLag() {
+        return Math.max(0, getPrimaryVersion() - getAppliedVersion());
+    }
+
+    /**
+     * Versões do primário aplicadas na réplica; quadros de uma recuperação ou
+     * de um lote agrupado contam uma vez
+     */
+    public long getApplied() {
+        return applied.sum();
+    }
+
+    /**
+     * Gravações das versões aplicadas; versões recebidas juntas são gravadas
+     * de uma vez
+     */
+    public long getPersisted() {
+        return persisted.sum();
+    }
+
+    /**
+     * Tempo médio entre receber a alteração mais antiga de uma gravação e ela
+     * estar aplicada e gravada na réplica, em nanossegundos
+     */
+    public long getAverageDelayNanos() {
+        final var count = persisted.sum();
+        return count == 0 ? 0 : delayNanos.sum() / count;
+    }
+
+    /**
+     * Maior tempo entre receber uma alteração e ela estar aplicada e gravada,
+     * em nanossegundos
+     */
+    public long getMaxDelayNanos() {
+        return maxDelayNanos.get();
+    }
+
+    /**
+     * Conexões com o primário refeitas depois de uma queda
+     */
+    public long getReconnects() {
+        return reconnects.sum();
+    }
+
+    /**
+     * Inscrições em que o primário enviou a tabela inteira, por a réplica
+     * ter parado antes do log de alterações dele
+     */
+    public long getSnapshotSyncs() {
+        return snapshotSyncs.sum();
+    }
+
+    /**
+     * Atualizações repassadas ao primário
+     */
+    public long getForwarded() {
+        return forwarded.sum();
+    }
+
+    /**
+     * Atualizações que não puderam ser repassadas ao primário
+     */
+    public long getForwardFailures() {
+        return forwardFailures.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "conectada=" + isConnected() + ", versão do primário=" + getPrimaryVersion() + ", aplicada="
+                + getAppliedVersion() + " (atraso de " + getLag() + " versões), versões aplicadas=" + getApplied()
+                + ", gravações=" + getPersisted() + " (média " + getAverageDelayNanos() / 1000 + " µs, máximo "
+                + getMaxDelayNanos() / 1000 + " µs), reconexões=" + getReconnects() + ", retomadas por snapshot="
+                + getSnapshotSyncs() + ", atualizações repassadas=" + getForwarded() + " (falhas: "
+                + getForwardFailures() + ")";
+    }
+
+}
@@ -0,0 +1,174 @@
+package br.edu.ufersa.cc.seg.dns.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import br.edu.ufersa.cc.seg.dns.message.DnsMessage.NameFilter;
+
+/**
+ * Índice dos filtros dos inscritos: dado um nome alterado, encontra quem se
+ * interessa por ele sem percorrer os inscritos.
+ *
+ * <p>
+ * Nomes exatos ficam num mapa. Prefixos ficam numa árvore de caracteres
+ * (trie), percorrida ao longo do nome alterado: cada nó visitado é um prefixo
+ * do nome, e seus inscritos o recebem. O custo de uma busca depende do
+ * tamanho do nome, não da quantidade de inscritos ou de prefixos. Inscritos
+ * sem filtro ficam à parte e recebem tudo.
+ *
+ * <p>
+ * Não é seguro para uso concorrente; quem usa sincroniza.
+ */
+class SubscriptionIndex<T> {
+
+    private final Set<T> unfiltered = new LinkedHashSet<>();
+    private final Map<String, Set<T>> exact = new HashMap<>();
+    private final Node<T> root = new Node<>();
+    private int filtered;
+
+    /**
+     * Nó da árvore de prefixos; filhos e inscritos criados sob demanda
+     */
+    private static final class Node<T> {
+
+        private Map<Character, Node<T>> children;
+        private Set<T> subscribers;
+
+    }
+
+    /**
+     * Passa a entregar a {@code subscriber} os nomes de {@code filter} (todos,
+     * se nulo)
+     */
+    void add(final T subscriber, final NameFilter filter) {
+        if (filter == null) {
+            unfiltered.add(subscriber);
+            return;
+        }
+
+        filtered++;
+        if (filter.names() != null) {
+            for (final var name : filter.names()) {
+                exact.computeIfAbsent(name, ignored -> new LinkedHashSet<>()).add(subscriber);
+            }
+        }
+        if (filter.prefixes() != null) {
+            for (final var prefix : filter.prefixes()) {
+                var node = root;
+                for (var i = 0; i < prefix.length(); i++) {
+                    if (node.children == null) {
+                        node.children = new HashMap<>();
+                    }
+                    node = node.children.computeIfAbsent(prefix.charAt(i), ignored -> new Node<>());
+                }
+                if (node.subscribers == null) {
+                    node.subscribers = new LinkedHashSet<>();
+                }
+                node.subscribers.add(subscriber);
+            }
+        }
+    }
+
+    /**
+     * Desfaz um {@link #add} com o mesmo filtro, podando os nós que ficam
+     * vazios
+     */
+    void remove(final T subscriber, final NameFilter filter) {
+        if (filter == null) {
+            unfiltered.remove(subscriber);
+            return;
+        }
+
+        filtered--;
+        if (filter.names() != null) {
+            for (final var name : filter.names()) {
+                final var subscribers = exact.get(name);
+                if (subscribers != null && subscribers.remove(subscriber) && subscribers.isEmpty()) {
+                    exact.remove(name);
+                }
+            }
+        }
+        if (filter.prefixes() != null) {
+            for (final var prefix : filter.prefixes()) {
+                remove(subscriber, prefix);
+            }
+        }
+    }
+
+    private void remove(final T subscriber, final String prefix) {
+        final var path = new ArrayList<Node<T>>(prefix.length() + 1);
+        var node = root;
+        path.add(node);
+        for (var i = 0; i < prefix.length(); i++) {
+            node = node.children == null ? null : node.children.get(prefix.charAt(i));
+            if (node == null) {
+                return;
+            }
+            path.add(node);
+        }
+        if (node.subscribers == null || !node.subscribers.remove(subscriber)) {
+            return;
+        }
+        if (node.subscribers.isEmpty()) {
+            node.subscribers = null;
+        }
+
+        // De baixo para cima, enquanto o nó não leva a nenhum inscrito
+        for (var i = prefix.length(); i > 0; i--) {
+            final var current = path.get(i);
+            if (current.subscribers != null || current.children != null && !current.children.isEmpty()) {
+                return;
+            }
+            final var parent = path.get(i - 1);
+            parent.children.remove(prefix.charAt(i - 1));
+            if (parent.children.isEmpty()) {
+                parent.children = null;
+            }
+        }
+    }
+
+    /**
+     * Entrega a {@code action} cada inscrito com filtro que inclui o nome. Um
+     * inscrito pode aparecer mais de uma vez, se mais de um de seus nomes ou
+     * prefixos casar.
+     */
+    void match(final String name, final Consumer<T> action) {
+        final var named = exact.get(name);
+        if (named != null) {
+            named.forEach(action);
+        }
+
+        var node = root;
+        for (var i = 0; ; i++) {
+            if (node.subscribers != null) {
+                node.subscribers.forEach(action);
+            }
+            if (i == name.length() || node.children == null) {
+                return;
+            }
+            node = node.children.get(name.charAt(i));
+            if (node == null) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Inscritos sem filtro, que recebem todas as alterações
+     */
+    Set<T> unfiltered() {
+        return unfiltered;
+    }
+
+    /**
+     * Quantidade de inscritos com filtro
+     */
+    int filtered() {
+        return filtered;
+    }
+
+}
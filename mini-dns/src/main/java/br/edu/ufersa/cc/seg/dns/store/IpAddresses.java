@@ -0,0 +1,173 @@
+package br.edu.ufersa.cc.seg.dns.store;
+
+import java.util.Arrays;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+/**
+ * Conversão de endereços IP em texto para números e de volta, usada pela
+ * {@link OffHeapRecordStore} para guardar os endereços sem objetos.
+ *
+ * <p>
+ * Só a forma canônica é convertida: IPv4 em decimal sem zeros à esquerda e
+ * IPv6 em minúsculas, com a maior sequência de zeros abreviada (RFC 5952).
+ * Qualquer outra grafia volta {@code null} e é guardada como texto, para que
+ * a consulta devolva exatamente o que foi registrado.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class IpAddresses {
+
+    /**
+     * IPv4 canônico como inteiro sem sinal, ou -1 se não for um
+     */
+    static long parseIpv4(final String ip) {
+        final var length = ip.length();
+        if (length < 7 || length > 15) {
+            return -1;
+        }
+
+        long address = 0;
+        var octets = 0;
+        var i = 0;
+        while (i < length) {
+            final var start = i;
+            var octet = 0;
+            while (i < length && ip.charAt(i) >= '0' && ip.charAt(i) <= '9') {
+                octet = octet * 10 + ip.charAt(i) - '0';
+                i++;
+            }
+            final var digits = i - start;
+            if (digits == 0 || digits > 3 || octet > 255 || digits > 1 && ip.charAt(start) == '0') {
+                return -1;
+            }
+            address = address << 8 | octet;
+            octets++;
+
+            if (i < length) {
+                if (ip.charAt(i) != '.' || octets == 4) {
+                    return -1;
+                }
+                i++;
+                if (i == length) {
+                    return -1;
+                }
+            }
+        }
+        return octets == 4 ? address : -1;
+    }
+
+    static String formatIpv4(final int address) {
+        return (address >>> 24) + "." + (address >>> 16 & 0xFF) + "." + (address >>> 8 & 0xFF) + "."
+                + (address & 0xFF);
+    }
+
+    /**
+     * IPv6 canônico como dois inteiros de 64 bits (mais e menos
+     * significativo), ou {@code null} se não for um
+     */
+    static long[] parseIpv6(final String ip) {
+        if (ip.length() < 2 || ip.length() > 39 || ip.indexOf(':') < 0) {
+            return null;
+        }
+
+        final var groups = new int[8];
+        var count = 0;
+        var gap = -1;
+        var i = 0;
+        final var length = ip.length();
+        if (ip.startsWith("::")) {
+            gap = 0;
+            i = 2;
+        }
+        while (i < length) {
+            final var start = i;
+            var group = 0;
+            while (i < length && Character.digit(ip.charAt(i), 16) >= 0) {
+                group = group << 4 | Character.digit(ip.charAt(i), 16);
+                i++;
+            }
+            if (i == start || i - start > 4 || count == 8) {
+                return null;
+            }
+            groups[count++] = group;
+
+            if (i < length) {
+                if (ip.charAt(i) != ':') {
+                    return null;
+                }
+                i++;
+                if (i < length && ip.charAt(i) == ':') {
+                    if (gap >= 0) {
+                        return null;
+                    }
+                    gap = count;
+                    i++;
+                } else if (i == length) {
+                    return null;
+                }
+            }
+        }
+        if (gap < 0 && count != 8 || gap >= 0 && count == 8) {
+            return null;
+        }
+
+        // Desloca os grupos depois da abreviação para o fim
+        if (gap >= 0) {
+            final var shift = 8 - count;
+            System.arraycopy(groups, gap, groups, gap + shift, count - gap);
+            Arrays.fill(groups, gap, gap + shift, 0);
+        }
+
+        long high = 0;
+        long low = 0;
+        for (var g = 0; g < 4; g++) {
+            high = high << 16 | groups[g];
+            low = low << 16 | groups[g + 4];
+        }
+
+        final var address = new long[] { high, low };
+        return formatIpv6(high, low).equals(ip) ? address : null;
+    }
+
+    static String formatIpv6(final long high, final long low) {
+        final var groups = new int[8];
+        for (var g = 0; g < 4; g++) {
+            groups[g] = (int) (high >>> (48 - 16 * g)) & 0xFFFF;
+            groups[g + 4] = (int) (low >>> (48 - 16 * g)) & 0xFFFF;
+        }
+
+        // Maior sequência de dois ou mais grupos zerados; a primeira, no empate
+        var bestStart = -1;
+        var bestLength = 1;
+        for (var g = 0; g < 8;) {
+            if (groups[g] != 0) {
+                g++;
+                continue;
+            }
+            final var start = g;
+            while (g < 8 && groups[g] == 0) {
+                g++;
+            }
+            if (g - start > bestLength) {
+                bestStart = start;
+                bestLength = g - start;
+            }
+        }
+
+        final var text = new StringBuilder(39);
+        for (var g = 0; g < 8; g++) {
+            if (g == bestStart) {
+                text.append("::");
+                g += bestLength - 1;
+                continue;
+            }
+            if (text.length() > 0 && text.charAt(text.length() - 1) != ':') {
+                text.append(':');
+            }
+            text.append(Integer.toHexString(groups[g]));
+        }
+        return text.toString();
+    }
+
+}
@@ -0,0 +1,276 @@
+package br.edu.ufersa.cc.seg.dns.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Índice hierárquico dos nomes da tabela DNS: uma árvore de rótulos lidos da
+ * direita para a esquerda ({@code api.svc.prod} fica em
+ * {@code prod → svc → api}). Assim, todos os nomes sob uma zona formam uma
+ * subárvore e são encontrados sem percorrer a tabela inteira.
+ *
+ * <p>
+ * Mantido junto da {@link RecordStore} como ouvinte das alterações,
+ * que chegam já serializadas. Consultas não usam travas e podem ver
+ * alterações feitas durante a própria busca.
+ *
+ * <p>
+ * Os resultados saem na ordem da árvore: cada nome antes dos nomes abaixo
+ * dele e irmãos em ordem alfabética do rótulo. Uma consulta pode continuar
+ * depois do último nome de uma página ({@code after}), sem estado no
+ * servidor.
+ */
+public class NameIndex implements RecordStore.ChangeListener {
+
+    /**
+     * Rótulo que, em consultas curinga, casa com qualquer rótulo
+     */
+    public static final String WILDCARD = "*";
+
+    private final Node root = new Node();
+
+    /**
+     * Registro encontrado por uma consulta
+     */
+    public record Binding(String name, String ip) {
+    }
+
+    /**
+     * Página de resultados; {@code next} é o nome a informar como
+     * {@code after} para continuar, ou {@code null} se não houver mais
+     */
+    public record Page(List<Binding> bindings, String next) {
+    }
+
+    /**
+     * Cria o índice e o registra como ouvinte da tabela, que deve estar vazia
+     * (registros restaurados do disco também passam pelos ouvintes)
+     */
+    public static NameIndex of(final RecordStore store) {
+        final var index = new NameIndex();
+        store.addListener(index);
+        return index;
+    }
+
+    @Override
+    public void onChange(final long version, final String name, final String ip) {
+        if (ip == null) {
+            remove(name);
+        } else {
+            put(name, ip);
+        }
+    }
+
+    /**
+     * Nomes sob a zona (incluindo a própria), ex.: {@code svc.prod} encontra
+     * {@code svc.prod} e {@code a.b.svc.prod}. A zona vazia lista a tabela
+     * inteira.
+     */
+    public Page suffix(final String zone, final String after, final int limit) {
+        final var steps = zone.isEmpty() ? new Step[0] : literals(reversedLabels(zone), 0);
+        return search(new Pattern(steps, true, true), after, limit);
+    }
+
+    /**
+     * Nomes da zona de {@code name} cujo primeiro rótulo começa com o
+     * primeiro rótulo de {@code name}, ex.: {@code ap.svc.prod} encontra
+     * {@code api.svc.prod} e {@code app.svc.prod}
+     */
+    public Page prefix(final String name, final String after, final int limit) {
+        final var labels = reversedLabels(name);
+        final var steps = literals(labels, 1);
+        steps[labels.length - 1] = new Step(StepKind.PREFIX, labels[labels.length - 1]);
+        return search(new Pattern(steps, true, false), after, limit);
+    }
+
+    /**
+     * Nomes que casam com o padrão, em que {@value #WILDCARD} casa com
+     * qualquer rótulo. Como no DNS, um {@value #WILDCARD} à esquerda casa com
+     * um ou mais rótulos: {@code *.svc.prod} encontra tudo sob
+     * {@code svc.prod}, mas não o próprio {@code svc.prod}.
+     */
+    public Page wildcard(final String pattern, final String after, final int limit) {
+        final var labels = reversedLabels(pattern);
+        final var subtree = WILDCARD.equals(labels[labels.length - 1]);
+        final var steps = new Step[subtree ? labels.length - 1 : labels.length];
+        for (var i = 0; i < steps.length; i++) {
+            steps[i] = WILDCARD.equals(labels[i])
+                    ? new Step(StepKind.ANY, "")
+                    : new Step(StepKind.LITERAL, labels[i]);
+        }
+        return search(new Pattern(steps, !subtree, subtree), after, limit);
+    }
+
+    /**
+     * Registro de nome mais longo que seja sufixo de {@code name} (o próprio
+     * nome ou uma de suas zonas), ou {@code null} se nenhum existir
+     */
+    public Binding longestSuffix(final String name) {
+        Binding found = null;
+        var node = root;
+        for (final var label : reversedLabels(name)) {
+            node = node.children.get(label);
+            if (node == null) {
+                break;
+            }
+            final var binding = node.binding;
+            if (binding != null) {
+                found = binding;
+            }
+        }
+        return found;
+    }
+
+    private void put(final String name, final String ip) {
+        var node = root;
+        for (final var label : reversedLabels(name)) {
+            node = node.children.computeIfAbsent(label, ignored -> new Node());
+        }
+        node.binding = new Binding(name, ip);
+    }
+
+    private void remove(final String name) {
+        final var labels = reversedLabels(name);
+        final var path = new Node[labels.length + 1];
+        path[0] = root;
+        for (var i = 0; i < labels.length; i++) {
+            path[i + 1] = path[i].children.get(labels[i]);
+            if (path[i + 1] == null) {
+                return;
+            }
+        }
+        path[labels.length].binding = null;
+
+        // Desfaz os nós que ficaram sem registro e sem filhos
+        for (var i = labels.length; i > 0; i--) {
+            final var node = path[i];
+            if (node.binding != null || !node.children.isEmpty()) {
+                break;
+            }
+            path[i - 1].children.remove(labels[i - 1], node);
+        }
+    }
+
+    private Page search(final Pattern pattern, final String after, final int limit) {
+        final var found = new ArrayList<Binding>(Math.min(limit + 1, 1024));
+        final var cursor = after == null ? null : reversedLabels(after);
+        walk(root, 0, pattern, cursor, found, limit + 1);
+
+        if (found.size() <= limit) {
+            return new Page(found, null);
+        }
+        final var page = found.subList(0, limit);
+        return new Page(new ArrayList<>(page), page.get(limit - 1).name());
+    }
+
+    /**
+     * Percorre a árvore em pré-ordem a partir de {@code node}, na
+     * profundidade {@code depth}. Enquanto {@code cursor} não for
+     * {@code null}, o caminho até aqui é o mesmo do último nome já entregue e
+     * só o que vem depois dele na ordem da árvore é visitado. Devolve
+     * {@code false} quando já encontrou {@code max} registros.
+     */
+    private static boolean walk(final Node node, final int depth, final Pattern pattern, final String[] cursor,
+            final List<Binding> found, final int max) {
+        final var matched = depth >= pattern.steps.length;
+
+        // No caminho do cursor, o próprio nó vem antes dele (ou é ele)
+        final var binding = node.binding;
+        if (matched && cursor == null && binding != null && (depth == pattern.steps.length
+                ? pattern.self
+                : pattern.subtree)) {
+            found.add(binding);
+            if (found.size() >= max) {
+                return false;
+            }
+        }
+        if (matched && !pattern.subtree) {
+            return true;
+        }
+
+        final var from = cursor != null && depth < cursor.length ? cursor[depth] : null;
+        final var step = matched ? null : pattern.steps[depth];
+        if (step != null && step.kind == StepKind.LITERAL) {
+            final var child = node.children.get(step.label);
+            if (child == null || from != null && step.label.compareTo(from) < 0) {
+                return true;
+            }
+            return walk(child, depth + 1, pattern, step.label.equals(from) ? cursor : null, found, max);
+        }
+
+        for (final var child : children(node, step, from).entrySet()) {
+            final var label = child.getKey();
+            if (step != null && !label.startsWith(step.label)) {
+                break;
+            }
+            if (!walk(child.getValue(), depth + 1, pattern, label.equals(from) ? cursor : null, found, max)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Filhos que podem casar com o passo ({@link StepKind#ANY} quando
+     * {@code null}), a partir do rótulo {@code from} (inclusive) quando
+     * continuando depois de um cursor
+     */
+    private static NavigableMap<String, Node> children(final Node node, final Step step, final String from) {
+        var start = from;
+        if (step != null && (start == null || start.compareTo(step.label) < 0)) {
+            start = step.label;
+        }
+        return start == null ? node.children : node.children.tailMap(start, true);
+    }
+
+    private static Step[] literals(final String[] labels, final int extra) {
+        final var steps = new Step[labels.length];
+        for (var i = 0; i < labels.length - extra; i++) {
+            steps[i] = new Step(StepKind.LITERAL, labels[i]);
+        }
+        return steps;
+    }
+
+    private static String[] reversedLabels(final String name) {
+        final var labels = name.split("\\.", -1);
+        for (int i = 0, j = labels.length - 1; i < j; i++, j--) {
+            final var label = labels[i];
+            labels[i] = labels[j];
+            labels[j] = label;
+        }
+        return labels;
+    }
+
+    private static final class Node {
+
+        private final ConcurrentSkipListMap<String, Node> children = new ConcurrentSkipListMap<>();
+
+        // Nulo nos nós que só existem como zona de outros nomes
+        private volatile Binding binding;
+
+    }
+
+    private enum StepKind {
+        LITERAL,
+        // Rótulos que começam com o do passo
+        PREFIX,
+        // Qualquer rótulo; o do passo é vazio
+        ANY,
+    }
+
+    /**
+     * Condição sobre o rótulo de uma profundidade da árvore
+     */
+    private record Step(StepKind kind, String label) {
+    }
+
+    /**
+     * Rótulos a casar a partir da raiz; depois deles, o nó alcançado entra
+     * se {@code self} e os nós abaixo dele entram se {@code subtree}
+     */
+    private record Pattern(Step[] steps, boolean self, boolean subtree) {
+    }
+
+}
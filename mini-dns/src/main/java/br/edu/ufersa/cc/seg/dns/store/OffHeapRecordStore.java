@@ -0,0 +1,865 @@
+package br.edu.ufersa.cc.seg.dns.store;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Tabela de registros DNS compacta, fora do heap, para dezenas de milhões de
+ * nomes.
+ *
+ * <p>
+ * Cada registro ocupa uma faixa contígua de uma arena de páginas de memória
+ * direta: versões de criação e de remoção, prazo, hash, endereço e nome em
+ * UTF-8. IPv4 e IPv6 canônicos ficam como números ({@link IpAddresses});
+ * outras grafias, como texto. O índice é uma tabela de endereçamento aberto
+ * num único {@code long[]}, com parte do hash e a posição do registro em cada
+ * entrada. O hash é de 64 bits sobre o nome em UTF-8, com semente sorteada
+ * por instância, para que ninguém escolha nomes que caiam todos na mesma
+ * sequência de sondagem. Nenhum registro tem objeto próprio no heap, então o coletor de
+ * lixo não percorre a tabela, por maior que ela seja.
+ *
+ * <p>
+ * Consultas não travam: usam a leitura otimista do {@link StampedLock} e só
+ * repetem com a trava se uma escrita as cruzou. Uma escrita altera o endereço
+ * no próprio registro quando ele cabe; senão, marca o registro como removido
+ * e acrescenta outro no fim da arena. O espaço dos registros removidos é
+ * recuperado por compactação quando passa de metade da arena: os registros
+ * vivos são copiados para uma arena nova enquanto as consultas seguem na
+ * antiga, e só a troca das duas as trava.
+ *
+ * <p>
+ * Enquanto há um snapshot aberto, cada escrita guarda no heap o valor
+ * anterior do nome, e os registros removidos continuam na arena; o snapshot
+ * combina os dois para ver a tabela como era na sua versão. O que só os
+ * snapshots fechados usavam é descartado quando eles fecham, por isso devem
+ * ser fechados.
+ *
+ * <p>
+ * A arena usa memória direta, limitada por {@code -XX:MaxDirectMemorySize}
+ * (por padrão, o tamanho máximo do heap).
+ */
+@Slf4j
+public class OffHeapRecordStore implements RecordStore {
+
+    // Layout de um registro, alinhado em 8 bytes: cabeçalho, endereço e nome
+    private static final int CREATED = 0;
+    private static final int DELETED = 8;
+    private static final int EXPIRES_AT = 16;
+    private static final int HASH = 24;
+    private static final int NAME_LENGTH = 28;
+    private static final int KIND = 30;
+    private static final int CAPACITY = 31;
+    private static final int VALUE = 32;
+
+    // Formas do endereço
+    private static final byte TEXT = 0;
+    private static final byte IPV4 = 4;
+    private static final byte IPV6 = 6;
+
+    private static final int MAX_NAME_BYTES = 0xFFFF;
+    private static final int MAX_TEXT_BYTES = 0xFE;
+
+    /**
+     * Versão de remoção de um registro vivo
+     */
+    private static final long LIVE = Long.MAX_VALUE;
+
+    // Posição na página em 26 bits; as primeiras páginas são menores
+    private static final int PAGE_BITS = 26;
+    private static final int MAX_PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int FIRST_PAGE_SIZE = 1 << 20;
+
+    // Entradas do índice: 23 bits do hash e a posição do registro em unidades de 8 bytes, mais 1
+    private static final long EMPTY = 0;
+    private static final long TOMBSTONE = -1;
+    private static final int TAG_SHIFT = 40;
+    private static final long OFFSET_MASK = (1L << TAG_SHIFT) - 1;
+    private static final int MIN_SLOTS = 1024;
+
+    // Espaço morto mínimo para compactar
+    private static final long MIN_COMPACTION = 16L << 20;
+
+    // Registros lidos por vez, com a trava, ao percorrer um snapshot
+    private static final int CHUNK = 4096;
+
+    private static final VarHandle WORDS = MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.LITTLE_ENDIAN);
+
+    private final Set<Snapshot> openSnapshots = ConcurrentHashMap.newKeySet();
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+    // Serializa as escritas e a entrega aos ouvintes
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Protege arena, índice e valores anteriores; consultas leem de forma otimista
+    private final StampedLock lock = new StampedLock();
+    private volatile long committed;
+
+    private final long seed = new SecureRandom().nextLong();
+    private Arena arena = new Arena();
+    private long garbage;
+
+    private long[] slots = new long[MIN_SLOTS];
+    private int live;
+    private int used;
+
+    // Valor anterior de cada nome alterado desde o snapshot aberto mais antigo
+    private final Map<String, Undo> undo = new HashMap<>();
+
+    @Override
+    public long version() {
+        return committed;
+    }
+
+    @Override
+    public String get(final String name) {
+        final var key = encodeName(name);
+        final var hash = hash(key);
+
+        final var stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                final var ip = lookup(key, hash);
+                if (lock.validate(stamp)) {
+                    return ip;
+                }
+            } catch (final RuntimeException e) {
+                // Leu a arena ou o índice no meio de uma escrita; repete com a trava
+            }
+        }
+
+        final var read = lock.readLock();
+        try {
+            return lookup(key, hash);
+        } finally {
+            lock.unlockRead(read);
+        }
+    }
+
+    @Override
+    public long put(final String name, final String ip, final long expiresAt) {
+        return write(List.of(new Change(name, ip, expiresAt)));
+    }
+
+    @Override
+    public long remove(final String name) {
+        return write(List.of(new Change(name, null)));
+    }
+
+    @Override
+    public long putAll(final Map<String, String> bindings, final long expiresAt) {
+        final var changes = new ArrayList<Change>(bindings.size());
+        bindings.forEach((name, ip) -> changes.add(new Change(name, ip, expiresAt)));
+        return write(changes);
+    }
+
+    @Override
+    public List<Change> removeExpired(final Collection<String> names, final long now) {
+        writeLock.lock();
+        try {
+            // Só escritas mudam a arena, e elas estão travadas
+            final var changes = new ArrayList<Change>();
+            for (final var name : names) {
+                final var key = encodeName(name);
+                final var i = find(slots, key, hash(key));
+                if (i >= 0) {
+                    final var address = address(slots[i]);
+                    final var expiresAt = page(address).getLong(position(address) + EXPIRES_AT);
+                    if (expiresAt != 0 && expiresAt <= now) {
+                        changes.add(new Change(name, null));
+                    }
+                }
+            }
+            if (!changes.isEmpty()) {
+                write(changes);
+            }
+            return changes;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void addListener(final ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public Snapshot snapshot() {
+        // Com a trava, nenhuma escrita fica entre ler a versão e registrar o snapshot
+        final var stamp = lock.readLock();
+        try {
+            final var snapshot = new Snapshot(committed);
+            openSnapshots.add(snapshot);
+            return snapshot;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void restore(final long version, final Change change) {
+        final var key = encodeName(change.name());
+        final var value = change.ip() == null ? null : encodeValue(change.ip());
+
+        writeLock.lock();
+        try {
+            final var stamp = lock.writeLock();
+            try {
+                apply(version, change, key, value, false);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            maintain();
+
+            for (final var listener : listeners) {
+                listener.onChange(version, change);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void restoreVersion(final long version) {
+        committed = version;
+    }
+
+    /**
+     * Registros existentes
+     */
+    public int size() {
+        final var stamp = lock.readLock();
+        try {
+            return live;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Memória direta reservada pela arena, em bytes
+     */
+    public long arenaBytes() {
+        final var stamp = lock.readLock();
+        try {
+            return arena.bytes;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Bytes da arena ocupados por registros removidos ou realocados, ainda não
+     * compactados
+     */
+    public long garbageBytes() {
+        final var stamp = lock.readLock();
+        try {
+            return garbage;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Tamanho do índice no heap, em bytes
+     */
+    public long indexBytes() {
+        final var stamp = lock.readLock();
+        try {
+            return slots.length * (long) Long.BYTES;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void replicate(final long version, final List<Change> changes) {
+        if (version <= 0) {
+            throw new IllegalArgumentException("Versão " + version + " inválida");
+        }
+        write(changes, version);
+    }
+
+    private long write(final List<Change> changes) {
+        return write(changes, -1);
+    }
+
+    /**
+     * Confirma as alterações na versão {@code requested} ou, se negativa, na
+     * seguinte à atual
+     */
+    private long write(final List<Change> changes, final long requested) {
+        // Convertidos antes de travar: um nome ou endereço inválido não deixa o lote pela metade
+        final var keys = new byte[changes.size()][];
+        final var values = new Value[changes.size()];
+        for (var i = 0; i < changes.size(); i++) {
+            final var change = changes.get(i);
+            keys[i] = encodeName(change.name());
+            values[i] = change.ip() == null ? null : encodeValue(change.ip());
+        }
+
+        writeLock.lock();
+        try {
+            if (requested >= 0 && requested <= committed) {
+                throw new IllegalArgumentException(
+                        "Versão " + requested + " não é maior que a atual (" + committed + ")");
+            }
+            final var version = requested < 0 ? committed + 1 : requested;
+            final var stamp = lock.writeLock();
+            try {
+                final var keepUndo = !openSnapshots.isEmpty();
+                for (var i = 0; i < changes.size(); i++) {
+                    apply(version, changes.get(i), keys[i], values[i], keepUndo);
+                }
+                committed = version;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            maintain();
+
+            for (final var listener : listeners) {
+                listener.onChanges(version, changes);
+            }
+            return version;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Aplica uma alteração na arena e no índice; {@code value} nulo remove
+     */
+    private void apply(final long version, final Change change, final byte[] key, final Value value,
+            final boolean keepUndo) {
+        if (value != null && (used + 1) * 4L > slots.length * 3L) {
+            rehash();
+        }
+
+        final var hash = hash(key);
+        final var i = find(slots, key, hash);
+        if (i < 0) {
+            if (value == null) {
+                return;
+            }
+            if (keepUndo) {
+                remember(change.name(), version, null, 0);
+            }
+            final var free = -i - 1;
+            if (slots[free] == EMPTY) {
+                used++;
+            }
+            slots[free] = slot(hash, append(version, key, hash, value, change.expiresAt()));
+            live++;
+            return;
+        }
+
+        final var address = address(slots[i]);
+        final var page = page(address);
+        final var position = position(address);
+        if (keepUndo) {
+            remember(change.name(), version, readIp(page, position), page.getLong(position + EXPIRES_AT));
+        }
+
+        if (value == null) {
+            page.putLong(position + DELETED, version);
+            garbage += size(page, position);
+            slots[i] = TOMBSTONE;
+            live--;
+        } else if (value.capacity() <= (page.get(position + CAPACITY) & 0xFF)) {
+            writeValue(page, position, value);
+            page.putLong(position + EXPIRES_AT, change.expiresAt());
+        } else {
+            // Não cabe: o registro antigo fica para os snapshots até a compactação
+            page.putLong(position + DELETED, version);
+            garbage += size(page, position);
+            slots[i] = slot(hash, append(version, key, hash, value, change.expiresAt()));
+        }
+    }
+
+    /**
+     * Guarda o valor do nome antes da versão, uma vez por versão
+     */
+    private void remember(final String name, final long version, final String ip, final long expiresAt) {
+        final var head = undo.get(name);
+        if (head == null || head.version != version) {
+            undo.put(name, new Undo(version, ip, expiresAt, head));
+        }
+    }
+
+    /**
+     * Valor anterior à primeira alteração do nome depois de {@code version},
+     * ou {@code null} se ele não mudou desde então
+     */
+    private Undo undoneAt(final String name, final long version) {
+        Undo found = null;
+        for (var entry = undo.get(name); entry != null && entry.version > version; entry = entry.older) {
+            found = entry;
+        }
+        return found;
+    }
+
+    /**
+     * Compacta a arena, se preciso. Chamado com {@code writeLock}, mas sem a
+     * trava das consultas.
+     */
+    private void maintain() {
+        if (garbage > MIN_COMPACTION && garbage * 2 > arena.used && openSnapshots.isEmpty()) {
+            compact();
+        }
+    }
+
+    /**
+     * Reconstrói o índice sem as marcas de remoção, dobrando-o enquanto
+     * passar de metade da ocupação
+     */
+    private void rehash() {
+        var capacity = slots.length;
+        while ((live + 1) * 2L > capacity) {
+            capacity <<= 1;
+        }
+
+        final var table = new long[capacity];
+        for (final var slot : slots) {
+            if (slot != EMPTY && slot != TOMBSTONE) {
+                final var address = address(slot);
+                insert(table, page(address).getInt(position(address) + HASH), slot);
+            }
+        }
+        slots = table;
+        used = live;
+    }
+
+    /**
+     * Copia os registros vivos para uma arena nova e troca as duas. A cópia
+     * roda só com {@code writeLock}: nenhuma escrita muda a arena antiga
+     * enquanto isso, e as consultas continuam lendo dela. A trava das
+     * consultas fica só com a troca. Só vale sem snapshots abertos, que ainda
+     * poderiam ler os removidos ou estar no meio da arena antiga; se um abrir
+     * durante a cópia, ela é descartada.
+     */
+    private void compact() {
+        final var source = arena;
+        final var target = new Arena();
+        final var table = new long[slots.length];
+        for (final var slot : slots) {
+            if (slot != EMPTY && slot != TOMBSTONE) {
+                final var from = address(slot);
+                final var page = source.page(from);
+                final var position = position(from);
+                final var size = size(page, position);
+                final var to = target.reserve(size);
+                target.page(to).put(position(to), page, position, size);
+                // A parte do hash na entrada não muda, só a posição do registro
+                insert(table, page.getInt(position + HASH), slot & ~OFFSET_MASK | offset(to));
+            }
+        }
+
+        final var stamp = lock.writeLock();
+        try {
+            if (!openSnapshots.isEmpty()) {
+                return;
+            }
+            final var freed = garbage;
+            arena = target;
+            slots = table;
+            used = live;
+            garbage = 0;
+            log.info("Tabela compactada: {} registros, {} MB liberados", live, freed >> 20);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private long append(final long version, final byte[] key, final long hash, final Value value,
+            final long expiresAt) {
+        final var capacity = value.capacity();
+        final var address = arena.reserve(align(VALUE + capacity + key.length));
+        final var page = page(address);
+        final var position = position(address);
+        page.putLong(position + CREATED, version)
+                .putLong(position + DELETED, LIVE)
+                .putLong(position + EXPIRES_AT, expiresAt)
+                .putInt(position + HASH, (int) hash)
+                .putShort(position + NAME_LENGTH, (short) key.length)
+                .put(position + CAPACITY, (byte) capacity)
+                .put(position + VALUE + capacity, key);
+        writeValue(page, position, value);
+        return address;
+    }
+
+    private String lookup(final byte[] key, final long hash) {
+        final var table = slots;
+        final var i = find(table, key, hash);
+        if (i < 0) {
+            return null;
+        }
+        final var address = address(table[i]);
+        return readIp(page(address), position(address));
+    }
+
+    /**
+     * Posição do nome no índice, ou {@code -(posição livre) - 1} se não
+     * existir. Percorre no máximo o índice inteiro, mesmo lendo no meio de
+     * uma escrita.
+     */
+    private int find(final long[] table, final byte[] key, final long hash) {
+        final var tag = hash >>> 41;
+        final var mask = table.length - 1;
+        var free = -1;
+        var i = (int) hash & mask;
+        for (var probes = 0; probes < table.length; probes++, i = i + 1 & mask) {
+            final var slot = table[i];
+            if (slot == EMPTY) {
+                return -(free < 0 ? i : free) - 1;
+            }
+            if (slot == TOMBSTONE) {
+                if (free < 0) {
+                    free = i;
+                }
+            } else if (slot >>> TAG_SHIFT == tag && matches(address(slot), key)) {
+                return i;
+            }
+        }
+        return -Math.max(free, 0) - 1;
+    }
+
+    /**
+     * Põe a entrada na primeira posição livre a partir da parte baixa do hash,
+     * a guardada no registro
+     */
+    private static void insert(final long[] table, final int hash, final long slot) {
+        final var mask = table.length - 1;
+        var i = hash & mask;
+        while (table[i] != EMPTY) {
+            i = i + 1 & mask;
+        }
+        table[i] = slot;
+    }
+
+    private boolean matches(final long address, final byte[] key) {
+        final var page = page(address);
+        final var position = position(address);
+        if ((page.getShort(position + NAME_LENGTH) & 0xFFFF) != key.length) {
+            return false;
+        }
+        final var start = position + VALUE + (page.get(position + CAPACITY) & 0xFF);
+        for (var i = 0; i < key.length; i++) {
+            if (page.get(start + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ByteBuffer page(final long address) {
+        return arena.page(address);
+    }
+
+    private static int position(final long address) {
+        return (int) address & MAX_PAGE_SIZE - 1;
+    }
+
+    private static long slot(final long hash, final long address) {
+        return hash >>> 41 << TAG_SHIFT | offset(address);
+    }
+
+    private static long offset(final long address) {
+        return (address >>> 3) + 1;
+    }
+
+    private static long address(final long slot) {
+        return ((slot & OFFSET_MASK) - 1) << 3;
+    }
+
+    /**
+     * Hash de 64 bits do nome em UTF-8, com a semente da instância: palavras
+     * de 8 bytes misturadas uma a uma e uma mistura final (a do MurmurHash3)
+     * para espalhar os bits pelas partes baixa (posição) e alta (etiqueta)
+     */
+    private long hash(final byte[] key) {
+        var hash = seed ^ key.length * 0x9E3779B97F4A7C15L;
+        var i = 0;
+        for (; i + Long.BYTES <= key.length; i += Long.BYTES) {
+            hash = Long.rotateLeft(hash ^ (long) WORDS.get(key, i) * 0xC2B2AE3D27D4EB4FL, 31) * 0x9E3779B97F4A7C15L;
+        }
+        var tail = 0L;
+        for (var shift = 0; i < key.length; i++, shift += 8) {
+            tail |= (key[i] & 0xFFL) << shift;
+        }
+        hash = Long.rotateLeft(hash ^ tail * 0xC2B2AE3D27D4EB4FL, 31) * 0x9E3779B97F4A7C15L;
+
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        return hash ^ hash >>> 33;
+    }
+
+    private static int align(final int size) {
+        return size + 7 & ~7;
+    }
+
+    private static int size(final ByteBuffer page, final int position) {
+        return align(VALUE + (page.get(position + CAPACITY) & 0xFF)
+                + (page.getShort(position + NAME_LENGTH) & 0xFFFF));
+    }
+
+    private static String readName(final ByteBuffer page, final int position) {
+        final var name = new byte[page.getShort(position + NAME_LENGTH) & 0xFFFF];
+        page.get(position + VALUE + (page.get(position + CAPACITY) & 0xFF), name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    private static String readIp(final ByteBuffer page, final int position) {
+        return switch (page.get(position + KIND)) {
+            case IPV4 -> IpAddresses.formatIpv4(page.getInt(position + VALUE));
+            case IPV6 -> IpAddresses.formatIpv6(page.getLong(position + VALUE), page.getLong(position + VALUE + 8));
+            default -> {
+                final var text = new byte[page.get(position + VALUE) & 0xFF];
+                page.get(position + VALUE + 1, text);
+                yield new String(text, StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    private static void writeValue(final ByteBuffer page, final int position, final Value value) {
+        switch (value.kind()) {
+            case IPV4 -> page.putInt(position + VALUE, (int) value.high());
+            case IPV6 -> page.putLong(position + VALUE, value.high()).putLong(position + VALUE + 8, value.low());
+            default -> page.put(position + VALUE, (byte) value.text().length).put(position + VALUE + 1, value.text());
+        }
+        page.put(position + KIND, value.kind());
+    }
+
+    private static byte[] encodeName(final String name) {
+        final var key = name.getBytes(StandardCharsets.UTF_8);
+        if (key.length > MAX_NAME_BYTES) {
+            throw new IllegalArgumentException("Nome longo demais: " + key.length + " bytes");
+        }
+        return key;
+    }
+
+    private static Value encodeValue(final String ip) {
+        final var ipv4 = IpAddresses.parseIpv4(ip);
+        if (ipv4 >= 0) {
+            return new Value(IPV4, ipv4, 0, null);
+        }
+        final var ipv6 = IpAddresses.parseIpv6(ip);
+        if (ipv6 != null) {
+            return new Value(IPV6, ipv6[0], ipv6[1], null);
+        }
+
+        final var text = ip.getBytes(StandardCharsets.UTF_8);
+        if (text.length > MAX_TEXT_BYTES) {
+            throw new IllegalArgumentException("Endereço longo demais: " + text.length + " bytes");
+        }
+        return new Value(TEXT, 0, 0, text);
+    }
+
+    /**
+     * Páginas de memória direta com os registros, preenchidas em sequência.
+     * A compactação monta uma nova e a troca pela atual.
+     */
+    private static final class Arena {
+
+        private ByteBuffer[] pages = new ByteBuffer[0];
+        private int[] ends = new int[0];
+        // Memória reservada e bytes ocupados por registros
+        private long bytes;
+        private long used;
+
+        private ByteBuffer page(final long address) {
+            return pages[(int) (address >>> PAGE_BITS)];
+        }
+
+        /**
+         * Separa {@code size} bytes no fim da arena e devolve o endereço
+         */
+        private long reserve(final int size) {
+            var last = pages.length - 1;
+            if (last < 0 || ends[last] + size > pages[last].capacity()) {
+                last = pages.length;
+                final var capacity = Math.min(MAX_PAGE_SIZE, FIRST_PAGE_SIZE << Math.min(last, PAGE_BITS - 20));
+                pages = Arrays.copyOf(pages, last + 1);
+                ends = Arrays.copyOf(ends, last + 1);
+                pages[last] = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+                bytes += capacity;
+            }
+
+            final var position = ends[last];
+            ends[last] = position + size;
+            used += size;
+            return (long) last << PAGE_BITS | position;
+        }
+
+    }
+
+    /**
+     * Endereço já convertido para gravar na arena
+     */
+    private record Value(byte kind, long high, long low, byte[] text) {
+
+        int capacity() {
+            return switch (kind) {
+                case IPV4 -> Integer.BYTES;
+                case IPV6 -> 2 * Long.BYTES;
+                default -> text.length + 1;
+            };
+        }
+
+    }
+
+    /**
+     * Valor de um nome antes da alteração de {@code version}; IP {@code null}
+     * se o nome não existia. Encadeado do mais novo para o mais antigo.
+     */
+    private static final class Undo {
+
+        private final long version;
+        private final String ip;
+        private final long expiresAt;
+        private Undo older;
+
+        private Undo(final long version, final String ip, final long expiresAt, final Undo older) {
+            this.version = version;
+            this.ip = ip;
+            this.expiresAt = expiresAt;
+            this.older = older;
+        }
+
+    }
+
+    /**
+     * Visão da tabela numa versão fixa. Deve ser fechada após o uso.
+     */
+    public final class Snapshot implements RecordStore.Snapshot {
+
+        private final long version;
+
+        private Snapshot(final long version) {
+            this.version = version;
+        }
+
+        @Override
+        public long version() {
+            return version;
+        }
+
+        @Override
+        public String get(final String name) {
+            final var key = encodeName(name);
+            final var stamp = lock.readLock();
+            try {
+                final var undone = undoneAt(name, version);
+                return undone != null ? undone.ip : lookup(key, hash(key));
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        @Override
+        public void forEach(final RecordVisitor visitor) {
+            final var names = new ArrayList<String>(CHUNK);
+            final var ips = new ArrayList<String>(CHUNK);
+            final var expirations = new long[CHUNK];
+            var page = 0;
+            var position = 0;
+
+            // Lê um pedaço com a trava e entrega sem ela, para não segurar as escritas
+            while (true) {
+                names.clear();
+                ips.clear();
+                final var stamp = lock.readLock();
+                try {
+                    // Sem compactação enquanto o snapshot está aberto: a arena é sempre a mesma
+                    final var pages = arena.pages;
+                    while (page < pages.length && names.size() < CHUNK) {
+                        if (position >= arena.ends[page]) {
+                            page++;
+                            position = 0;
+                            continue;
+                        }
+
+                        final var buffer = pages[page];
+                        final var record = position;
+                        position += size(buffer, record);
+                        if (buffer.getLong(record + CREATED) > version || buffer.getLong(record + DELETED) <= version) {
+                            continue;
+                        }
+
+                        final var name = readName(buffer, record);
+                        final var undone = undoneAt(name, version);
+                        if (undone == null) {
+                            expirations[names.size()] = buffer.getLong(record + EXPIRES_AT);
+                            names.add(name);
+                            ips.add(readIp(buffer, record));
+                        } else if (undone.ip != null) {
+                            expirations[names.size()] = undone.expiresAt;
+                            names.add(name);
+                            ips.add(undone.ip);
+                        }
+                    }
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+
+                if (names.isEmpty()) {
+                    return;
+                }
+                for (var i = 0; i < names.size(); i++) {
+                    visitor.visit(names.get(i), ips.get(i), expirations[i]);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            final var stamp = lock.writeLock();
+            try {
+                if (!openSnapshots.remove(this)) {
+                    return;
+                }
+                if (openSnapshots.isEmpty()) {
+                    undo.clear();
+                    return;
+                }
+
+                // Valores anteriores só interessam a snapshots de versões mais antigas que eles
+                final var oldest = openSnapshots.stream().mapToLong(Snapshot::version).min().getAsLong();
+                final var entries = undo.values().iterator();
+                while (entries.hasNext()) {
+                    var entry = entries.next();
+                    if (entry.version <= oldest) {
+                        entries.remove();
+                        continue;
+                    }
+                    while (entry.older != null && entry.older.version > oldest) {
+                        entry = entry.older;
+                    }
+                    entry.older = null;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,168 @@
+package br.edu.ufersa.cc.seg.dns.store;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import br.edu.ufersa.cc.seg.dns.store.RecordStore.Change;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Remove da {@link RecordStore} os registros cujo prazo de validade
+ * passou.
+ *
+ * <p>
+ * Acompanha as alterações da tabela como ouvinte: cada registro com prazo
+ * ganha um agendamento numa {@link TimingWheel}, trocado quando o registro é
+ * renovado e cancelado quando ele perde o prazo ou é removido. Agendar e
+ * cancelar custam o mesmo com mil ou milhões de registros, e nada percorre a
+ * tabela. Uma thread avança a roda a cada {@value #TICK_MILLIS} ms e remove
+ * os vencidos em lotes, cada lote numa única versão; um registro sai no
+ * máximo um tick depois do prazo.
+ */
+@Slf4j
+public class RecordExpiry implements RecordStore.ChangeListener, Closeable {
+
+    private static final long TICK_MILLIS = 100;
+
+    /**
+     * Remoções por versão (e por notificação)
+     */
+    private static final int MAX_BATCH = 1000;
+
+    private final RecordStore store;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final TimingWheel wheel = new TimingWheel(tick(System.currentTimeMillis()));
+    private final Map<String, TimingWheel.Timer> timers = new HashMap<>();
+
+    private Thread ticker;
+    private volatile boolean closed;
+
+    private RecordExpiry(final RecordStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Cria o controle de prazos da tabela e passa a acompanhar suas
+     * alterações. Deve ser registrado antes da restauração, para agendar
+     * também os registros recuperados do disco.
+     */
+    public static RecordExpiry of(final RecordStore store) {
+        final var expiry = new RecordExpiry(store);
+        store.addListener(expiry);
+        return expiry;
+    }
+
+    /**
+     * Começa a remover os registros vencidos, avisando {@code onExpired} dos
+     * nomes removidos em cada versão. Só deve ser chamado depois de a tabela
+     * ser restaurada, para que as remoções sejam registradas no log.
+     */
+    public synchronized void start(final Consumer<List<String>> onExpired) {
+        if (ticker == null) {
+            ticker = Thread.ofPlatform().name("dns-expiry").daemon().start(() -> tickLoop(onExpired));
+        }
+    }
+
+    /**
+     * Quantidade de registros com prazo agendado
+     */
+    public int scheduled() {
+        lock.lock();
+        try {
+            return wheel.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onChange(final long version, final String name, final String ip) {
+        // Sem prazo informado
+        onChange(version, new Change(name, ip));
+    }
+
+    @Override
+    public void onChange(final long version, final Change change) {
+        lock.lock();
+        try {
+            final var previous = timers.remove(change.name());
+            if (previous != null) {
+                wheel.cancel(previous);
+            }
+            if (change.ip() != null && change.expiresAt() != 0) {
+                // Arredonda para cima: nunca vence antes do prazo
+                final var deadline = tick(change.expiresAt() + TICK_MILLIS - 1);
+                timers.put(change.name(), wheel.schedule(change.name(), deadline));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void tickLoop(final Consumer<List<String>> onExpired) {
+        while (!closed) {
+            try {
+                final var now = System.currentTimeMillis();
+                TimeUnit.MILLISECONDS.sleep(TICK_MILLIS - now % TICK_MILLIS);
+            } catch (final InterruptedException e) {
+                continue;
+            }
+
+            try {
+                expire(onExpired);
+            } catch (final RuntimeException e) {
+                log.error("Falha ao remover registros vencidos", e);
+            }
+        }
+    }
+
+    private void expire(final Consumer<List<String>> onExpired) {
+        final var due = new ArrayList<String>();
+        lock.lock();
+        try {
+            wheel.advance(tick(System.currentTimeMillis()), name -> {
+                timers.remove(name);
+                due.add(name);
+            });
+        } finally {
+            lock.unlock();
+        }
+
+        // Fora da trava: a tabela chama de volta onChange ao remover
+        final var now = System.currentTimeMillis();
+        for (var start = 0; start < due.size() && !closed; start += MAX_BATCH) {
+            final var removed = store.removeExpired(due.subList(start, Math.min(start + MAX_BATCH, due.size())), now);
+            if (!removed.isEmpty()) {
+                onExpired.accept(removed.stream().map(Change::name).toList());
+            }
+        }
+    }
+
+    private static long tick(final long millis) {
+        return millis / TICK_MILLIS;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        final Thread running;
+        synchronized (this) {
+            running = ticker;
+        }
+        if (running != null) {
+            running.interrupt();
+            try {
+                running.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,191 @@
+package br.edu.ufersa.cc.seg.dns.store;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Tabela de registros DNS (nome → IP) com versões.
+ *
+ * <p>
+ * Cada escrita recebe uma versão maior que a anterior. Leituras veem a
+ * última versão confirmada ({@link #version()}), nunca uma escrita pela
+ * metade, e {@link #snapshot()} fixa uma versão para leituras consistentes
+ * (ex.: gravar a tabela em disco). Ouvintes ({@link #addListener}) recebem
+ * cada alteração já confirmada, na ordem das versões, ainda dentro da seção
+ * de escrita.
+ *
+ * <p>
+ * Um registro pode ter prazo de validade ({@code expiresAt}, em milissegundos
+ * desde a época). A tabela só guarda o prazo; quem remove os vencidos é o
+ * {@link RecordExpiry}, por {@link #removeExpired}.
+ *
+ * <p>
+ * Implementações: {@link VersionedRecordStore}, no heap, e
+ * {@link OffHeapRecordStore}, para tabelas grandes. {@link RecordStores}
+ * escolhe conforme a configuração.
+ */
+public interface RecordStore {
+
+    /**
+     * Recebe as alterações confirmadas. Roda com a escrita travada, então deve
+     * ser rápido (ex.: só enfileirar).
+     */
+    @FunctionalInterface
+    interface ChangeListener {
+
+        /**
+         * @param ip novo IP, ou {@code null} se o nome foi removido
+         */
+        void onChange(long version, String name, String ip);
+
+        /**
+         * Alteração com o prazo de validade. Por padrão, ignora o prazo.
+         */
+        default void onChange(final long version, final Change change) {
+            onChange(version, change.name(), change.ip());
+        }
+
+        /**
+         * Alterações aplicadas juntas, todas com a mesma versão. Por padrão,
+         * repassa cada uma a {@link #onChange(long, Change)}.
+         */
+        default void onChanges(final long version, final List<Change> changes) {
+            for (final var change : changes) {
+                onChange(version, change);
+            }
+        }
+
+    }
+
+    /**
+     * Alteração de um nome; IP {@code null} indica remoção. {@code expiresAt}
+     * é o prazo do registro em milissegundos desde a época, ou 0 se não vence.
+     */
+    record Change(String name, String ip, long expiresAt) {
+
+        public Change(final String name, final String ip) {
+            this(name, ip, 0);
+        }
+
+    }
+
+    /**
+     * Recebe cada registro de um {@link Snapshot}; {@code expiresAt} é 0 se o
+     * registro não vence
+     */
+    @FunctionalInterface
+    interface RecordVisitor {
+        void visit(String name, String ip, long expiresAt);
+    }
+
+    /**
+     * Visão da tabela numa versão fixa. Deve ser fechada após o uso.
+     */
+    interface Snapshot extends AutoCloseable {
+
+        long version();
+
+        /**
+         * IP do nome nesta versão, ou {@code null} se não existia
+         */
+        String get(String name);
+
+        /**
+         * Percorre todos os registros existentes nesta versão, com seus prazos
+         */
+        void forEach(RecordVisitor visitor);
+
+        /**
+         * Percorre todos os registros existentes nesta versão
+         */
+        default void forEach(final BiConsumer<String, String> action) {
+            forEach((name, ip, expiresAt) -> action.accept(name, ip));
+        }
+
+        @Override
+        void close();
+
+    }
+
+    /**
+     * Última versão confirmada
+     */
+    long version();
+
+    /**
+     * IP atual do nome, ou {@code null} se não existir
+     */
+    String get(String name);
+
+    /**
+     * Associa o nome ao IP, sem prazo, e devolve a versão da alteração
+     */
+    default long put(final String name, final String ip) {
+        return put(name, ip, 0);
+    }
+
+    /**
+     * Associa o nome ao IP até {@code expiresAt} (0 para sem prazo) e devolve
+     * a versão da alteração
+     */
+    long put(String name, String ip, long expiresAt);
+
+    /**
+     * Remove o nome e devolve a versão da alteração
+     */
+    long remove(String name);
+
+    /**
+     * Associa todos os nomes aos IPs de uma vez, numa única versão: leitores
+     * e snapshots veem todas as alterações ou nenhuma. Devolve a versão.
+     */
+    default long putAll(final Map<String, String> bindings) {
+        return putAll(bindings, 0);
+    }
+
+    /**
+     * Como {@link #putAll(Map)}, com o mesmo prazo para todos os registros
+     */
+    long putAll(Map<String, String> bindings, long expiresAt);
+
+    /**
+     * Remove, numa única versão, os nomes informados cujo prazo já passou em
+     * {@code now}. Um nome renovado depois de ser escolhido para remoção é
+     * mantido. Devolve as remoções feitas.
+     */
+    List<Change> removeExpired(Collection<String> names, long now);
+
+    /**
+     * Aplica, numa única versão, alterações já confirmadas por outro servidor
+     * (réplica), mantendo a versão de lá. {@code version} deve ser maior que
+     * a atual, mas não precisa ser a seguinte. Ouvintes recebem as alterações
+     * como de qualquer escrita.
+     *
+     * @throws IllegalArgumentException se {@code version} não for maior que a
+     *                                  versão atual
+     */
+    void replicate(long version, List<Change> changes);
+
+    void addListener(ChangeListener listener);
+
+    /**
+     * Abre uma visão somente leitura da tabela na versão confirmada atual
+     */
+    Snapshot snapshot();
+
+    /**
+     * Aplica uma alteração recuperada do disco, com a versão original. Só deve
+     * ser usado pela recuperação ({@link ZoneStorage}), antes de a tabela ser
+     * servida; avisa apenas os ouvintes já registrados (ex.: índices), não os
+     * que a persistência registra depois.
+     */
+    void restore(long version, Change change);
+
+    /**
+     * Define a versão confirmada ao fim da recuperação
+     */
+    void restoreVersion(long version);
+
+}
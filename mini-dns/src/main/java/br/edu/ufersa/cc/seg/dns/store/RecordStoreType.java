@@ -0,0 +1,19 @@
+package br.edu.ufersa.cc.seg.dns.store;
+
+/**
+ * Implementações de {@link RecordStore} disponíveis
+ */
+public enum RecordStoreType {
+
+    /**
+     * Objetos no heap, com uma cadeia de versões por nome
+     */
+    HEAP,
+
+    /**
+     * Registros compactados fora do heap, para dezenas de milhões de nomes
+     */
+    OFF_HEAP,
+    ;
+
+}
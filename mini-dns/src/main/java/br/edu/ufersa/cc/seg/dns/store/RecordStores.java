@@ -0,0 +1,33 @@
+package br.edu.ufersa.cc.seg.dns.store;
+
+import br.edu.ufersa.cc.seg.common.utils.Settings;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+/**
+ * Criação de {@link RecordStore} conforme a configuração
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class RecordStores {
+
+    /**
+     * Chave de configuração da implementação da tabela ({@link RecordStoreType})
+     */
+    public static final String TYPE_SETTING = "dns.store";
+
+    /**
+     * Cria uma tabela vazia do tipo definido em {@value #TYPE_SETTING} (padrão:
+     * {@link RecordStoreType#HEAP})
+     */
+    public static RecordStore create() {
+        return create(Settings.getEnum(TYPE_SETTING, RecordStoreType.class, RecordStoreType.HEAP));
+    }
+
+    public static RecordStore create(final RecordStoreType type) {
+        return switch (type) {
+            case HEAP -> new VersionedRecordStore();
+            case OFF_HEAP -> new OffHeapRecordStore();
+        };
+    }
+
+}
@@ -0,0 +1,92 @@
+package br.edu.ufersa.cc.seg.dns.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Índice reverso da tabela DNS: os nomes que apontam para cada IP, como um
+ * registro PTR. Encontrar os nomes de um IP custa uma busca num mapa, sem
+ * percorrer a tabela.
+ *
+ * <p>
+ * Mantido junto da {@link RecordStore} como ouvinte das alterações, que
+ * chegam já serializadas. Guarda também o IP atual de cada nome, para tirar o
+ * nome do IP antigo quando ele passa a apontar para outro ou é removido.
+ * Consultas não usam travas e podem ver alterações feitas durante a própria
+ * busca.
+ *
+ * <p>
+ * O IP é comparado como foi registrado ({@code 2001:db8::1} e
+ * {@code 2001:DB8::1} são endereços diferentes). Os nomes de um IP saem em
+ * ordem alfabética, e uma consulta pode continuar depois do último nome de
+ * uma página ({@code after}), sem estado no servidor.
+ */
+public class ReverseIndex implements RecordStore.ChangeListener {
+
+    private final Map<String, String> addresses = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<String>> names = new ConcurrentHashMap<>();
+
+    /**
+     * Página de nomes; {@code next} é o nome a informar como {@code after}
+     * para continuar, ou {@code null} se não houver mais
+     */
+    public record Page(List<String> names, String next) {
+    }
+
+    /**
+     * Cria o índice e o registra como ouvinte da tabela, que deve estar vazia
+     * (registros restaurados do disco também passam pelos ouvintes)
+     */
+    public static ReverseIndex of(final RecordStore store) {
+        final var index = new ReverseIndex();
+        store.addListener(index);
+        return index;
+    }
+
+    @Override
+    public void onChange(final long version, final String name, final String ip) {
+        final var previous = ip == null ? addresses.remove(name) : addresses.put(name, ip);
+        if (ip != null && ip.equals(previous)) {
+            return;
+        }
+
+        if (previous != null) {
+            final var stale = names.get(previous);
+            if (stale != null) {
+                stale.remove(name);
+                // Só as escritas, serializadas, alteram o índice
+                if (stale.isEmpty()) {
+                    names.remove(previous, stale);
+                }
+            }
+        }
+        if (ip != null) {
+            names.computeIfAbsent(ip, ignored -> new ConcurrentSkipListSet<>()).add(name);
+        }
+    }
+
+    /**
+     * Nomes que apontam para o IP, depois de {@code after} (se informado), até
+     * {@code limit}
+     */
+    public Page lookup(final String ip, final String after, final int limit) {
+        final var found = names.get(ip);
+        if (found == null) {
+            return new Page(List.of(), null);
+        }
+
+        final var page = new ArrayList<String>(Math.min(limit, 16));
+        for (final var name : after == null ? found : found.tailSet(after, false)) {
+            if (page.size() == limit) {
+                return new Page(page, page.get(page.size() - 1));
+            }
+            page.add(name);
+        }
+        return new Page(page, null);
+    }
+
+}
@@ -0,0 +1,220 @@
+package br.edu.ufersa.cc.seg.dns.store;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+/**
+ * Arquivo com a tabela DNS completa numa versão, usado para reiniciar sem
+ * reaplicar o log inteiro.
+ *
+ * <pre>
+ * mágica (4) | formato (1) | versão (8)
+ * { tamanho nome (2) | nome | tamanho IP (2) | IP | [prazo (8)] } ...
+ * fim 0xFFFF (2) | quantidade (8) | CRC32C dos registros (4)
+ * </pre>
+ *
+ * Textos em UTF-8 e inteiros em big-endian. Como no {@link WriteAheadLog}, o
+ * bit mais alto do tamanho do nome indica que o registro tem prazo de
+ * validade; o formato 1, anterior aos prazos, continua legível. A escrita vai para um arquivo
+ * temporário renomeado no fim, então um snapshot visível está sempre completo.
+ * A leitura mapeia o arquivo em memória em vez de copiá-lo para a heap.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class SnapshotFile {
+
+    private static final int MAGIC = 0x444E535A; // "DNSZ"
+    private static final int FORMAT = 2;
+    private static final int FORMAT_WITHOUT_EXPIRY = 1;
+    private static final int HEADER_SIZE = Integer.BYTES + 1 + Long.BYTES;
+    private static final int END_MARKER = 0xFFFF;
+    private static final int EXPIRES = 0x8000;
+    private static final int TRAILER_SIZE = Short.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int MAX_RECORD_SIZE = 2 * (Short.BYTES + END_MARKER - 1) + Long.BYTES;
+
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Janela máxima mapeada por vez; arquivos maiores são lidos em partes
+     */
+    private static final long MAP_WINDOW = 256L * 1024 * 1024;
+
+    /**
+     * Recebe cada registro lido do arquivo
+     */
+    @FunctionalInterface
+    public interface RecordSink {
+        /**
+         * @param expiresAt prazo do registro, ou 0 se não vence
+         */
+        void accept(String name, String ip, long expiresAt);
+    }
+
+    /**
+     * Grava o snapshot da tabela no arquivo informado e devolve a quantidade
+     * de registros gravados
+     */
+    public static long write(final Path file, final RecordStore.Snapshot snapshot) throws IOException {
+        final var temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        final var checksum = new CRC32C();
+        final long[] count = { 0 };
+
+        try (final var channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final var buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+            buffer.putInt(MAGIC).put((byte) FORMAT).putLong(snapshot.version());
+
+            snapshot.forEach((name, ip, expiresAt) -> {
+                final var nameBytes = name.getBytes(StandardCharsets.UTF_8);
+                final var ipBytes = ip.getBytes(StandardCharsets.UTF_8);
+                final var size = 2 * Short.BYTES + nameBytes.length + ipBytes.length
+                        + (expiresAt == 0 ? 0 : Long.BYTES);
+                if (buffer.remaining() < size) {
+                    drain(channel, buffer);
+                }
+
+                final var start = buffer.position();
+                putName(buffer, nameBytes, expiresAt != 0);
+                putString(buffer, ipBytes);
+                if (expiresAt != 0) {
+                    buffer.putLong(expiresAt);
+                }
+                checksum.update(buffer.array(), start, size);
+                count[0]++;
+            });
+
+            if (buffer.remaining() < TRAILER_SIZE) {
+                drain(channel, buffer);
+            }
+            buffer.putShort((short) END_MARKER).putLong(count[0]).putInt((int) checksum.getValue());
+            drain(channel, buffer);
+            channel.force(true);
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count[0];
+    }
+
+    /**
+     * Lê o arquivo, entregando cada registro, e devolve a versão do snapshot.
+     * Lança {@link StreamCorruptedException} se o arquivo estiver danificado.
+     */
+    public static long read(final Path file, final RecordSink sink) throws IOException {
+        try (final var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final var size = channel.size();
+            final var checksum = new CRC32C();
+            var scratch = new byte[256];
+
+            var window = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, MAP_WINDOW));
+            var windowStart = 0L;
+            if (window.remaining() < HEADER_SIZE || window.getInt() != MAGIC) {
+                throw new StreamCorruptedException("Snapshot inválido: " + file);
+            }
+            final var format = window.get();
+            if (format != FORMAT && format != FORMAT_WITHOUT_EXPIRY) {
+                throw new StreamCorruptedException("Formato de snapshot desconhecido (" + format + "): " + file);
+            }
+            final var version = window.getLong();
+            var checked = window.position();
+            var count = 0L;
+
+            while (true) {
+                // Garante que o próximo registro (ou o trailer) esteja inteiro na janela
+                if (window.remaining() < MAX_RECORD_SIZE + TRAILER_SIZE && windowStart + window.limit() < size) {
+                    checksum.update(window.slice(checked, window.position() - checked));
+                    windowStart += window.position();
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                            Math.min(size - windowStart, MAP_WINDOW));
+                    checked = 0;
+                }
+
+                final var header = readLength(window, file);
+                if (header == END_MARKER) {
+                    checksum.update(window.slice(checked, window.position() - Short.BYTES - checked));
+                    break;
+                }
+                final var expires = format == FORMAT && (header & EXPIRES) != 0;
+                final var nameLength = expires ? header & ~EXPIRES : header;
+                scratch = fill(window, nameLength, scratch, file);
+                final var name = new String(scratch, 0, nameLength, StandardCharsets.UTF_8);
+
+                final var ipLength = readLength(window, file);
+                scratch = fill(window, ipLength, scratch, file);
+                final var ip = new String(scratch, 0, ipLength, StandardCharsets.UTF_8);
+
+                if (expires && window.remaining() < Long.BYTES) {
+                    throw new StreamCorruptedException("Snapshot truncado: " + file);
+                }
+                sink.accept(name, ip, expires ? window.getLong() : 0);
+                count++;
+            }
+
+            if (window.remaining() < Long.BYTES + Integer.BYTES || window.getLong() != count
+                    || window.getInt() != (int) checksum.getValue()) {
+                throw new StreamCorruptedException("Snapshot com soma de verificação inválida: " + file);
+            }
+            return version;
+        }
+    }
+
+    private static int readLength(final ByteBuffer source, final Path file) throws StreamCorruptedException {
+        if (source.remaining() < Short.BYTES) {
+            throw new StreamCorruptedException("Snapshot truncado: " + file);
+        }
+        return Short.toUnsignedInt(source.getShort());
+    }
+
+    private static byte[] fill(final ByteBuffer source, final int length, final byte[] scratch, final Path file)
+            throws StreamCorruptedException {
+        if (source.remaining() < length) {
+            throw new StreamCorruptedException("Snapshot truncado: " + file);
+        }
+        final var target = scratch.length >= length ? scratch : new byte[length];
+        source.get(target, 0, length);
+        return target;
+    }
+
+    /**
+     * O nome não pode usar o bit que marca o prazo nem, com ele, formar o
+     * marcador de fim; é o mesmo limite do {@link WriteAheadLog}
+     */
+    private static void putName(final ByteBuffer buffer, final byte[] bytes, final boolean expires) {
+        if (bytes.length >= (END_MARKER & ~EXPIRES)) {
+            throw new IllegalArgumentException("Nome longo demais para o snapshot: " + bytes.length + " bytes");
+        }
+        buffer.putShort((short) (expires ? bytes.length | EXPIRES : bytes.length)).put(bytes);
+    }
+
+    private static void putString(final ByteBuffer buffer, final byte[] bytes) {
+        if (bytes.length >= END_MARKER) {
+            throw new IllegalArgumentException("Texto longo demais para o snapshot: " + bytes.length + " bytes");
+        }
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static void drain(final FileChannel channel, final ByteBuffer buffer) {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+
+}
@@ -0,0 +1,162 @@
+package br.edu.ufersa.cc.seg.dns.store;
+
+import java.util.function.Consumer;
+
+/**
+ * Roda de temporização hierárquica: agenda prazos em ticks com custo
+ * constante, independentemente de quantos já estão agendados.
+ *
+ * <p>
+ * São {@value #LEVELS} níveis de {@value #SLOTS} posições. No nível 0 cada
+ * posição vale um tick; em cada nível seguinte, uma volta inteira do
+ * anterior. Um prazo entra no nível cuja volta o alcança e, quando aquela
+ * posição chega, desce para um nível mais fino (cascata), até vencer no
+ * nível 0. Cada prazo desce no máximo {@value #LEVELS} vezes, então avançar
+ * a roda custa, amortizado, uma quantidade constante de trabalho por prazo
+ * mais uma por tick. Prazos além do alcance total ficam no último nível e
+ * são reposicionados quando ele dá a volta.
+ *
+ * <p>
+ * Não é seguro para uso concorrente; o {@link RecordExpiry} o protege com sua
+ * trava.
+ */
+final class TimingWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 6;
+
+    /**
+     * Maior distância, em ticks, que cabe na roda sem reposicionamento
+     */
+    private static final long SPAN = 1L << (SLOT_BITS * LEVELS);
+
+    // Primeiro de cada lista de prazos, por nível e posição
+    private final Timer[][] slots = new Timer[LEVELS][SLOTS];
+    private long current;
+    private int size;
+
+    /**
+     * Prazo agendado; guarda sua posição para ser cancelado sem busca
+     */
+    static final class Timer {
+
+        private final String name;
+        private final long deadline;
+        private int level = -1;
+        private int slot;
+        private Timer previous;
+        private Timer next;
+
+        private Timer(final String name, final long deadline) {
+            this.name = name;
+            this.deadline = deadline;
+        }
+
+    }
+
+    /**
+     * @param currentTick último tick considerado já processado
+     */
+    TimingWheel(final long currentTick) {
+        this.current = currentTick;
+    }
+
+    /**
+     * Agenda o nome para o tick informado; um tick já passado vence no
+     * próximo avanço
+     */
+    Timer schedule(final String name, final long deadline) {
+        final var timer = new Timer(name, deadline);
+        place(timer);
+        size++;
+        return timer;
+    }
+
+    void cancel(final Timer timer) {
+        if (timer.level >= 0) {
+            unlink(timer);
+            size--;
+        }
+    }
+
+    /**
+     * Processa todos os ticks até {@code tick}, inclusive, entregando os nomes
+     * cujos prazos venceram
+     */
+    void advance(final long tick, final Consumer<String> expired) {
+        while (current < tick) {
+            current++;
+
+            // Níveis cuja volta terminou neste tick descem para os mais finos
+            for (var level = 1; level < LEVELS && (current & ((1L << (SLOT_BITS * level)) - 1)) == 0; level++) {
+                drain(level, (int) (current >>> (SLOT_BITS * level)) & SLOT_MASK, expired);
+            }
+            drain(0, (int) current & SLOT_MASK, expired);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Esvazia a posição: vence o que já chegou ao prazo e reposiciona o resto
+     */
+    private void drain(final int level, final int slot, final Consumer<String> expired) {
+        var timer = slots[level][slot];
+        slots[level][slot] = null;
+        while (timer != null) {
+            final var next = timer.next;
+            timer.previous = null;
+            timer.next = null;
+            timer.level = -1;
+
+            if (timer.deadline <= current) {
+                size--;
+                expired.accept(timer.name);
+            } else {
+                place(timer);
+            }
+            timer = next;
+        }
+    }
+
+    private void place(final Timer timer) {
+        var target = Math.max(timer.deadline, current + 1);
+        if (target - current >= SPAN) {
+            target = current + SPAN - 1;
+        }
+
+        // Nível em que a distância cabe numa volta
+        final var distance = target - current;
+        final var level = (Long.SIZE - 1 - Long.numberOfLeadingZeros(distance)) / SLOT_BITS;
+        final var slot = (int) (target >>> (SLOT_BITS * level)) & SLOT_MASK;
+
+        final var head = slots[level][slot];
+        timer.level = level;
+        timer.slot = slot;
+        timer.previous = null;
+        timer.next = head;
+        if (head != null) {
+            head.previous = timer;
+        }
+        slots[level][slot] = timer;
+    }
+
+    private void unlink(final Timer timer) {
+        if (timer.previous == null) {
+            slots[timer.level][timer.slot] = timer.next;
+        } else {
+            timer.previous.next = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.previous = timer.previous;
+        }
+        timer.previous = null;
+        timer.next = null;
+        timer.level = -1;
+    }
+
+}
@@ -0,0 +1,363 @@
+package br.edu.ufersa.cc.seg.dns.store;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tabela de registros DNS (nome → IP) com controle de concorrência
+ * multiversão.
+ *
+ * <p>
+ * Cada alteração recebe uma versão maior que a anterior e é guardada no topo
+ * de uma cadeia de versões do nome. Leituras não usam travas: veem a última
+ * versão confirmada ({@link #version()}), nunca uma alteração pela metade.
+ * Escritas são serializadas entre si, mas não bloqueiam leitores.
+ *
+ * <p>
+ * {@link #snapshot()} fixa uma versão e enxerga a tabela exatamente como era
+ * naquele momento, sem copiá-la. Versões antigas são descartadas durante as
+ * escritas quando nenhum snapshot aberto depende delas; as que ficaram por
+ * causa de um snapshot são descartadas quando ele fecha. Por isso snapshots
+ * devem ser fechados.
+ */
+public class VersionedRecordStore implements RecordStore {
+
+    /**
+     * Versão de um snapshot registrado que ainda não leu a versão confirmada
+     */
+    private static final long OPENING = -1;
+
+    private final Map<String, Entry> records = new ConcurrentHashMap<>();
+    private final Set<Snapshot> openSnapshots = ConcurrentHashMap.newKeySet();
+    // Nomes com versões antigas ou remoções mantidas para snapshots abertos
+    private final Set<String> retained = ConcurrentHashMap.newKeySet();
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile long committed;
+
+    /**
+     * Última versão confirmada
+     */
+    @Override
+    public long version() {
+        return committed;
+    }
+
+    /**
+     * IP atual do nome, ou {@code null} se não existir
+     */
+    @Override
+    public String get(final String name) {
+        while (true) {
+            final var version = committed;
+            final var head = records.get(name);
+            final var visible = visible(head, version);
+            if (visible != null) {
+                return visible.ip;
+            }
+
+            // Cadeia podada por uma escrita confirmada depois da leitura da versão
+            if (head == null || committed == version) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Associa o nome ao IP até {@code expiresAt} (0 para sem prazo) e devolve
+     * a versão da alteração
+     */
+    @Override
+    public long put(final String name, final String ip, final long expiresAt) {
+        return write(List.of(new Change(name, ip, expiresAt)));
+    }
+
+    /**
+     * Remove o nome e devolve a versão da alteração
+     */
+    @Override
+    public long remove(final String name) {
+        return write(List.of(new Change(name, null)));
+    }
+
+    /**
+     * Como {@link #putAll(Map)}, com o mesmo prazo para todos os registros
+     */
+    @Override
+    public long putAll(final Map<String, String> bindings, final long expiresAt) {
+        final var changes = new ArrayList<Change>(bindings.size());
+        bindings.forEach((name, ip) -> changes.add(new Change(name, ip, expiresAt)));
+        return write(changes);
+    }
+
+    /**
+     * Remove, numa única versão, os nomes informados cujo prazo já passou em
+     * {@code now}. Um nome renovado depois de ser escolhido para remoção é
+     * mantido. Devolve as remoções feitas.
+     */
+    @Override
+    public List<Change> removeExpired(final Collection<String> names, final long now) {
+        writeLock.lock();
+        try {
+            final var changes = new ArrayList<Change>();
+            for (final var name : names) {
+                final var head = records.get(name);
+                if (head != null && head.ip != null && head.expiresAt != 0 && head.expiresAt <= now) {
+                    changes.add(new Change(name, null));
+                }
+            }
+            if (!changes.isEmpty()) {
+                write(changes);
+            }
+            return changes;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void addListener(final ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Abre uma visão somente leitura da tabela na versão confirmada atual
+     */
+    @Override
+    public Snapshot snapshot() {
+        final var snapshot = new Snapshot();
+        openSnapshots.add(snapshot);
+
+        // Registrado antes de ler a versão: escritas concorrentes não podam o
+        // que este snapshot ainda pode ler
+        snapshot.version = committed;
+        return snapshot;
+    }
+
+    @Override
+    public void replicate(final long version, final List<Change> changes) {
+        writeLock.lock();
+        try {
+            if (version <= committed) {
+                throw new IllegalArgumentException(
+                        "Versão " + version + " não é maior que a atual (" + committed + ")");
+            }
+            write(version, changes);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private long write(final List<Change> changes) {
+        writeLock.lock();
+        try {
+            return write(committed + 1, changes);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Confirma as alterações na versão informada. Chamado com {@code writeLock}.
+     */
+    private long write(final long version, final List<Change> changes) {
+        // Só ficam visíveis quando a versão é confirmada, todas juntas
+        for (final var change : changes) {
+            records.compute(change.name(),
+                    (ignored, head) -> new Entry(change.ip(), change.expiresAt(), version, head));
+        }
+        committed = version;
+
+        for (final var listener : listeners) {
+            listener.onChanges(version, changes);
+        }
+
+        final var oldest = oldestVisible(version);
+        for (final var change : changes) {
+            prune(change.name(), oldest);
+            if (oldest != version) {
+                retained.add(change.name());
+            }
+        }
+        return version;
+    }
+
+    @Override
+    public void restore(final long version, final Change change) {
+        if (change.ip() == null) {
+            records.remove(change.name());
+        } else {
+            records.put(change.name(), new Entry(change.ip(), change.expiresAt(), version, null));
+        }
+
+        for (final var listener : listeners) {
+            listener.onChange(version, change);
+        }
+    }
+
+    @Override
+    public void restoreVersion(final long version) {
+        committed = version;
+    }
+
+    /**
+     * Menor versão que algum leitor ainda pode pedir, ou {@link #OPENING} se
+     * um snapshot está sendo aberto
+     */
+    private long oldestVisible(final long version) {
+        var oldest = version;
+        for (final var snapshot : openSnapshots) {
+            final var snapshotVersion = snapshot.version;
+            if (snapshotVersion == OPENING) {
+                return OPENING;
+            }
+            oldest = Math.min(oldest, snapshotVersion);
+        }
+        return oldest;
+    }
+
+    /**
+     * Poda os nomes que um snapshot impedia de podar, se o que fechou era o
+     * mais antigo
+     */
+    private void release(final long closed) {
+        writeLock.lock();
+        try {
+            final var oldest = oldestVisible(committed);
+            if (oldest == OPENING || oldest < closed) {
+                // Um snapshot mais antigo ainda segura tudo, ou um está abrindo e podará ao fechar
+                return;
+            }
+            final var names = retained.iterator();
+            while (names.hasNext()) {
+                final var name = names.next();
+                prune(name, oldest);
+                final var head = records.get(name);
+                if (head == null || head.previous == null) {
+                    names.remove();
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Nomes mais versões antigas guardados na tabela
+     */
+    int entries() {
+        var count = 0;
+        for (final var head : records.values()) {
+            for (var entry = head; entry != null; entry = entry.previous) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Descarta as versões do nome anteriores à mais recente visível em
+     * {@code oldest}; remove o nome se ela for uma remoção e não houver outras
+     */
+    private void prune(final String name, final long oldest) {
+        if (oldest == OPENING) {
+            return;
+        }
+
+        final var head = records.get(name);
+        final var keep = visible(head, oldest);
+        if (keep == null) {
+            return;
+        }
+
+        keep.previous = null;
+        if (keep == head && keep.ip == null) {
+            records.remove(name, head);
+        }
+    }
+
+    /**
+     * Versão mais recente da cadeia que não passa de {@code version}
+     */
+    private static Entry visible(final Entry head, final long version) {
+        var entry = head;
+        while (entry != null && entry.version > version) {
+            entry = entry.previous;
+        }
+        return entry;
+    }
+
+    /**
+     * Uma versão de um nome; IP {@code null} marca uma remoção
+     */
+    private static final class Entry {
+
+        private final String ip;
+        private final long expiresAt;
+        private final long version;
+
+        // Cortada pelas escritas quando nenhum leitor precisa mais das versões anteriores
+        private volatile Entry previous;
+
+        private Entry(final String ip, final long expiresAt, final long version, final Entry previous) {
+            this.ip = ip;
+            this.expiresAt = expiresAt;
+            this.version = version;
+            this.previous = previous;
+        }
+
+    }
+
+    /**
+     * Visão da tabela numa versão fixa. Deve ser fechada após o uso.
+     */
+    public final class Snapshot implements RecordStore.Snapshot {
+
+        private volatile long version = OPENING;
+
+        private Snapshot() {
+        }
+
+        @Override
+        public long version() {
+            return version;
+        }
+
+        /**
+         * IP do nome nesta versão, ou {@code null} se não existia
+         */
+        @Override
+        public String get(final String name) {
+            final var entry = visible(records.get(name), version);
+            return entry == null ? null : entry.ip;
+        }
+
+        /**
+         * Percorre todos os registros existentes nesta versão, com seus prazos
+         */
+        @Override
+        public void forEach(final RecordVisitor visitor) {
+            records.forEach((name, head) -> {
+                final var entry = visible(head, version);
+                if (entry != null && entry.ip != null) {
+                    visitor.visit(name, entry.ip, entry.expiresAt);
+                }
+            });
+        }
+
+        @Override
+        public void close() {
+            if (openSnapshots.remove(this)) {
+                release(version);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,457 @@
+package br.edu.ufersa.cc.seg.dns.store;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+import br.edu.ufersa.cc.seg.dns.store.RecordStore.Change;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Log de alterações da tabela DNS, só de acréscimo, dividido em segmentos
+ * {@code wal-<primeira versão>.log}.
+ *
+ * <pre>
+ * tamanho (4) | CRC32C (4) | versão (8) [0xFFFF | versão anterior (8)] { tamanho nome (2) | nome | tamanho IP (2) | IP | [prazo (8)] } ...
+ * </pre>
+ *
+ * Cada entrada traz todas as alterações de uma versão (uma, ou várias de um
+ * lote), então um lote é reaplicado inteiro ou não é. Uma remoção tem tamanho
+ * de IP 0xFFFF e nenhum byte de IP. O bit mais alto do tamanho do nome indica
+ * que o registro tem prazo de validade, gravado depois do IP.
+ *
+ * <p>
+ * As versões são seguidas, exceto numa réplica, que grava as versões do
+ * primário e pula as que ele agrupou: a entrada que pula começa com 0xFFFF e
+ * a versão anterior gravada. Assim, a recuperação continua percebendo um
+ * segmento faltando. Uma réplica também grava versões sem alterações, só
+ * para acompanhar a numeração do primário.
+ *
+ * <p>
+ * {@link #append} só enfileira a alteração. Uma thread dedicada grava tudo o
+ * que estiver na fila de uma vez e faz um único {@code fsync} para o lote
+ * (group commit); quem precisa de durabilidade espera com
+ * {@link #awaitDurable}. Assim, atualizações concorrentes dividem o custo do
+ * {@code fsync} em vez de pagar um cada.
+ */
+@Slf4j
+public class WriteAheadLog implements RecordStore.ChangeListener, Closeable {
+
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+
+    private static final int ENTRY_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int REMOVED = 0xFFFF;
+    private static final int EXPIRES = 0x8000;
+    private static final int SKIP = 0xFFFF;
+    private static final int MAX_BATCH = 4096;
+
+    /**
+     * Tamanho a partir do qual o segmento é trocado mesmo sem snapshot
+     */
+    private static final long MAX_SEGMENT_SIZE = 256L * 1024 * 1024;
+
+    private final Path directory;
+    private final boolean fsync;
+    private final BlockingQueue<Command> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition durableChanged = lock.newCondition();
+    private volatile long durable;
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    // Usados apenas pela thread de escrita
+    private FileChannel segment;
+    private long lastWritten;
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    private final CRC32C checksum = new CRC32C();
+
+    /**
+     * Recebe cada alteração lida do log
+     */
+    @FunctionalInterface
+    public interface ChangeSink {
+        void accept(long version, Change change);
+    }
+
+    /**
+     * Abre um novo segmento para as alterações seguintes a
+     * {@code lastVersion}, a última já recuperada
+     */
+    public WriteAheadLog(final Path directory, final long lastVersion, final boolean fsync) throws IOException {
+        this.directory = directory;
+        this.fsync = fsync;
+        this.durable = lastVersion;
+        this.lastWritten = lastVersion;
+        this.segment = openSegment(lastVersion + 1);
+        this.writer = Thread.ofPlatform().name("wal-writer").daemon().start(this::writeLoop);
+    }
+
+    /**
+     * Enfileira a alteração; as versões devem chegar em ordem crescente
+     *
+     * @param ip novo IP, ou {@code null} para remoção
+     * @throws IllegalArgumentException se o nome ou o IP não cabem no
+     *                                  formato da entrada
+     */
+    public void append(final long version, final String name, final String ip) {
+        check(name, ip);
+        queue.add(new Append(version, List.of(new Change(name, ip))));
+    }
+
+    /**
+     * Enfileira as alterações de uma mesma versão, gravadas numa só entrada
+     */
+    public void append(final long version, final List<Change> changes) {
+        for (final var change : changes) {
+            check(change.name(), change.ip());
+        }
+        queue.add(new Append(version, List.copyOf(changes)));
+    }
+
+    @Override
+    public void onChange(final long version, final String name, final String ip) {
+        append(version, name, ip);
+    }
+
+    @Override
+    public void onChanges(final long version, final List<Change> changes) {
+        append(version, changes);
+    }
+
+    /**
+     * Espera até que a versão informada (e todas as anteriores) esteja gravada
+     * em disco
+     */
+    public void awaitDurable(final long version) throws IOException {
+        lock.lock();
+        try {
+            while (durable < version) {
+                if (failure != null) {
+                    throw new IOException("Falha ao gravar o log", failure);
+                }
+                if (closed) {
+                    throw new IOException("Log encerrado");
+                }
+                durableChanged.await();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrompido esperando o log");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Fecha o segmento atual e começa outro, para que os anteriores possam ser
+     * apagados depois de um snapshot
+     */
+    public void roll() throws IOException {
+        final var done = new CompletableFuture<Void>();
+        queue.add(new Roll(done));
+        try {
+            done.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrompido trocando o segmento do log");
+        } catch (final ExecutionException e) {
+            throw new IOException("Falha ao trocar o segmento do log", e.getCause());
+        }
+    }
+
+    /**
+     * Apaga os segmentos cujas alterações são todas de versões até
+     * {@code version} (já cobertas por um snapshot)
+     */
+    public void deleteCoveredSegments(final long version) throws IOException {
+        final var segments = segments(directory);
+        for (var i = 0; i < segments.size() - 1; i++) {
+            if (firstVersion(segments.get(i + 1)) - 1 <= version) {
+                Files.deleteIfExists(segments.get(i));
+            }
+        }
+    }
+
+    /**
+     * Reaplica, em ordem, as alterações posteriores a {@code afterVersion}
+     * gravadas nos segmentos do diretório. Um segmento termina na primeira
+     * entrada incompleta ou corrompida (gravação interrompida). Devolve a
+     * última versão reaplicada.
+     */
+    public static long replay(final Path directory, final long afterVersion, final ChangeSink sink)
+            throws IOException {
+        var last = afterVersion;
+        for (final var file : segments(directory)) {
+            try (final var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                final var data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                final var checksum = new CRC32C();
+
+                while (data.remaining() >= ENTRY_HEADER_SIZE) {
+                    final var length = data.getInt();
+                    final var expected = data.getInt();
+                    // Uma versão sem alterações (réplica) só tem o número da versão
+                    if (length < Long.BYTES || length > data.remaining()) {
+                        log.warn("Entrada incompleta no fim de {}, ignorada", file.getFileName());
+                        break;
+                    }
+
+                    final var entry = data.slice(data.position(), length);
+                    checksum.reset();
+                    checksum.update(entry.duplicate());
+                    if ((int) checksum.getValue() != expected) {
+                        log.warn("Entrada corrompida em {}, restante do segmento ignorado", file.getFileName());
+                        break;
+                    }
+                    data.position(data.position() + length);
+
+                    final var version = entry.getLong();
+                    if (version <= last) {
+                        continue;
+                    }
+                    final var skips = entry.remaining() >= Short.BYTES
+                            && Short.toUnsignedInt(entry.getShort(entry.position())) == SKIP;
+                    final var previous = skips ? entry.position(entry.position() + Short.BYTES).getLong() : version - 1;
+                    if (previous != last) {
+                        throw new EOFException("Log sem as versões entre " + last + " e " + version);
+                    }
+
+                    while (entry.hasRemaining()) {
+                        final var nameLength = Short.toUnsignedInt(entry.getShort());
+                        final var name = readString(entry, nameLength & ~EXPIRES);
+                        final var ipLength = Short.toUnsignedInt(entry.getShort());
+                        final var ip = ipLength == REMOVED ? null : readString(entry, ipLength);
+                        final var expiresAt = (nameLength & EXPIRES) == 0 ? 0 : entry.getLong();
+                        sink.accept(version, new Change(name, ip, expiresAt));
+                    }
+                    last = version;
+                }
+            }
+        }
+        return last;
+    }
+
+    private void writeLoop() {
+        final var batch = new ArrayList<Command>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH - 1);
+            } catch (final InterruptedException e) {
+                if (closed) {
+                    return;
+                }
+                continue;
+            }
+
+            try {
+                var end = false;
+                for (final var command : batch) {
+                    switch (command) {
+                        case Append append -> encode(append);
+                        case Roll roll -> {
+                            flush();
+                            rollSegment();
+                            roll.done().complete(null);
+                        }
+                        case Close close -> end = true;
+                    }
+                }
+                flush();
+                if (end) {
+                    segment.close();
+                    return;
+                }
+                if (segment.position() >= MAX_SEGMENT_SIZE) {
+                    rollSegment();
+                }
+            } catch (final IOException e) {
+                log.error("Falha ao gravar o log de alterações: {}", e.getMessage());
+                failure = e;
+                for (final var command : batch) {
+                    if (command instanceof Roll roll) {
+                        roll.done().completeExceptionally(e);
+                    }
+                }
+                signal();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Valida os tamanhos antes de enfileirar: um nome com 0x7FFF bytes ou mais
+     * invadiria o bit de expiração ou, com ele, viraria o marcador de versões
+     * puladas; um IP com 0xFFFF bytes seria lido como remoção. Falhar aqui
+     * avisa quem chamou, em vez de derrubar a thread de escrita em
+     * {@link #encode}. Cada caractere ocupa no máximo 3 bytes em UTF-8, então
+     * textos curtos nem são codificados
+     */
+    private static void check(final String name, final String ip) {
+        if (name.length() >= (SKIP & ~EXPIRES) / 3) {
+            final var nameLength = name.getBytes(StandardCharsets.UTF_8).length;
+            if (nameLength >= (SKIP & ~EXPIRES)) {
+                throw new IllegalArgumentException("Nome longo demais para o log: " + nameLength + " bytes");
+            }
+        }
+        if (ip != null && ip.length() >= REMOVED / 3) {
+            final var ipLength = ip.getBytes(StandardCharsets.UTF_8).length;
+            if (ipLength >= REMOVED) {
+                throw new IllegalArgumentException("IP longo demais para o log: " + ipLength + " bytes");
+            }
+        }
+    }
+
+    private void encode(final Append append) {
+        final var start = buffer.position();
+        ensureCapacity(ENTRY_HEADER_SIZE + Long.BYTES);
+        buffer.position(start + ENTRY_HEADER_SIZE);
+        buffer.putLong(append.version());
+        if (append.version() != lastWritten + 1) {
+            // Réplica: versões agrupadas pelo primário não existem aqui
+            ensureCapacity(Short.BYTES + Long.BYTES);
+            buffer.putShort((short) SKIP).putLong(lastWritten);
+        }
+
+        for (final var change : append.changes()) {
+            final var name = change.name().getBytes(StandardCharsets.UTF_8);
+            final var ip = change.ip() == null ? null : change.ip().getBytes(StandardCharsets.UTF_8);
+            final var expires = ip != null && change.expiresAt() != 0;
+            ensureCapacity(2 * Short.BYTES + name.length + (ip == null ? 0 : ip.length) + Long.BYTES);
+
+            buffer.putShort((short) (expires ? name.length | EXPIRES : name.length)).put(name);
+            if (ip == null) {
+                buffer.putShort((short) REMOVED);
+            } else {
+                buffer.putShort((short) ip.length).put(ip);
+            }
+            if (expires) {
+                buffer.putLong(change.expiresAt());
+            }
+        }
+        final var length = buffer.position() - start - ENTRY_HEADER_SIZE;
+
+        checksum.reset();
+        checksum.update(buffer.array(), start + ENTRY_HEADER_SIZE, length);
+        buffer.putInt(start, length).putInt(start + Integer.BYTES, (int) checksum.getValue());
+        lastWritten = append.version();
+    }
+
+    private void ensureCapacity(final int size) {
+        if (buffer.remaining() < size) {
+            final var larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + size));
+            buffer.flip();
+            buffer = larger.put(buffer);
+        }
+    }
+
+    /**
+     * Grava o lote acumulado, faz o fsync e libera quem esperava por ele
+     */
+    private void flush() throws IOException {
+        if (buffer.position() == 0) {
+            return;
+        }
+
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            segment.write(buffer);
+        }
+        buffer.clear();
+        if (fsync) {
+            segment.force(false);
+        }
+
+        durable = lastWritten;
+        signal();
+    }
+
+    private void signal() {
+        lock.lock();
+        try {
+            durableChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        segment.close();
+        segment = openSegment(lastWritten + 1);
+    }
+
+    /**
+     * Um segmento já existente com o mesmo nome só pode ter sobras de uma
+     * gravação interrompida, que a recuperação descartou; ele é truncado
+     */
+    private FileChannel openSegment(final long firstVersion) throws IOException {
+        final var file = directory.resolve(PREFIX + "%020d".formatted(firstVersion) + SUFFIX);
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static List<Path> segments(final Path directory) throws IOException {
+        try (final var files = Files.list(directory)) {
+            return files.filter(file -> {
+                final var name = file.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).sorted().toList();
+        }
+    }
+
+    private static long firstVersion(final Path segment) {
+        final var name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static String readString(final ByteBuffer source, final int length) {
+        final var bytes = new byte[length];
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        queue.add(new Close());
+        try {
+            writer.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        signal();
+    }
+
+    private sealed interface Command {
+    }
+
+    private record Append(long version, List<Change> changes) implements Command {
+    }
+
+    private record Roll(CompletableFuture<Void> done) implements Command {
+    }
+
+    private record Close() implements Command {
+    }
+
+}
@@ -0,0 +1,186 @@
+package br.edu.ufersa.cc.seg.dns.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import br.edu.ufersa.cc.seg.common.utils.Settings;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Persistência da tabela DNS: cada alteração vai para o
+ * {@link WriteAheadLog} e, periodicamente, a tabela inteira é gravada num
+ * {@link SnapshotFile}, após o que os segmentos do log já cobertos são
+ * apagados.
+ *
+ * <p>
+ * Ao abrir, carrega o snapshot mais recente e reaplica apenas as alterações
+ * do log posteriores a ele.
+ */
+@Slf4j
+public class ZoneStorage implements Closeable {
+
+    /**
+     * Chave de configuração do diretório de dados
+     */
+    public static final String DATA_DIR_SETTING = "dns.data-dir";
+
+    /**
+     * Chave de configuração que liga o {@code fsync} de cada lote do log
+     */
+    public static final String FSYNC_SETTING = "dns.wal.fsync";
+
+    /**
+     * Chave de configuração do intervalo (ms) entre snapshots
+     */
+    public static final String SNAPSHOT_INTERVAL_SETTING = "dns.snapshot.interval-ms";
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+
+    private final Path directory;
+    private final RecordStore store;
+    private final WriteAheadLog wal;
+    private final ScheduledExecutorService scheduler;
+    private volatile long snapshotVersion;
+
+    private ZoneStorage(final Path directory, final RecordStore store, final boolean fsync,
+            final Duration snapshotInterval) throws IOException {
+        this.directory = directory;
+        this.store = store;
+
+        Files.createDirectories(directory);
+        restore();
+
+        this.wal = new WriteAheadLog(directory, store.version(), fsync);
+        store.addListener(wal);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("zone-snapshot").daemon().factory());
+        scheduler.scheduleWithFixedDelay(this::periodicSnapshot, snapshotInterval.toMillis(),
+                snapshotInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Abre a persistência com o diretório e os intervalos configurados
+     * ({@value #DATA_DIR_SETTING}, {@value #FSYNC_SETTING} e
+     * {@value #SNAPSHOT_INTERVAL_SETTING}), restaurando a tabela informada
+     */
+    public static ZoneStorage open(final RecordStore store) throws IOException {
+        return open(Path.of(Settings.get(DATA_DIR_SETTING, "dns-data")), store,
+                Settings.getBoolean(FSYNC_SETTING, true),
+                Duration.ofMillis(Settings.getLong(SNAPSHOT_INTERVAL_SETTING, 60_000)));
+    }
+
+    /**
+     * Restaura a tabela informada (que deve estar vazia) a partir do diretório
+     * e passa a registrar suas alterações
+     */
+    public static ZoneStorage open(final Path directory, final RecordStore store, final boolean fsync,
+            final Duration snapshotInterval) throws IOException {
+        return new ZoneStorage(directory, store, fsync, snapshotInterval);
+    }
+
+    /**
+     * Espera até que a alteração com a versão informada esteja em disco
+     */
+    public void awaitDurable(final long version) throws IOException {
+        wal.awaitDurable(version);
+    }
+
+    /**
+     * Grava um snapshot da tabela e apaga o que ele torna desnecessário
+     */
+    public synchronized void snapshot() throws IOException {
+        final var start = System.nanoTime();
+        final long version;
+        final long records;
+        try (final var snapshot = store.snapshot()) {
+            version = snapshot.version();
+            records = SnapshotFile.write(snapshotFile(version), snapshot);
+        }
+
+        wal.roll();
+        wal.deleteCoveredSegments(version);
+        deleteOlderSnapshots(version);
+        snapshotVersion = version;
+
+        log.info("Snapshot da versão {} gravado: {} registros em {} ms", version, records,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void periodicSnapshot() {
+        if (store.version() == snapshotVersion) {
+            return;
+        }
+        try {
+            snapshot();
+        } catch (final IOException e) {
+            log.error("Falha ao gravar snapshot da tabela DNS: {}", e.getMessage());
+        }
+    }
+
+    private void restore() throws IOException {
+        final var start = System.nanoTime();
+        final var latest = latestSnapshot();
+
+        final long[] snapshotRecords = { 0 };
+        if (latest != null) {
+            snapshotVersion = SnapshotFile.read(latest, (name, ip, expiresAt) -> {
+                store.restore(0, new RecordStore.Change(name, ip, expiresAt));
+                snapshotRecords[0]++;
+            });
+        }
+
+        final long[] logEntries = { 0 };
+        final var version = WriteAheadLog.replay(directory, snapshotVersion, (entryVersion, change) -> {
+            store.restore(entryVersion, change);
+            logEntries[0]++;
+        });
+        store.restoreVersion(version);
+
+        if (latest != null || logEntries[0] > 0) {
+            log.info("Tabela DNS restaurada na versão {}: {} registros do snapshot e {} alterações do log em {} ms",
+                    store.version(), snapshotRecords[0], logEntries[0],
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    private Path latestSnapshot() throws IOException {
+        try (final var files = Files.list(directory)) {
+            return files.filter(ZoneStorage::isSnapshot).max(Path::compareTo).orElse(null);
+        }
+    }
+
+    private void deleteOlderSnapshots(final long version) throws IOException {
+        final var current = snapshotFile(version);
+        try (final var files = Files.list(directory)) {
+            for (final var file : files.filter(ZoneStorage::isSnapshot).toList()) {
+                if (file.compareTo(current) < 0) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private Path snapshotFile(final long version) {
+        return directory.resolve(SNAPSHOT_PREFIX + "%020d".formatted(version) + SNAPSHOT_SUFFIX);
+    }
+
+    private static boolean isSnapshot(final Path file) {
+        final var name = file.getFileName().toString();
+        return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX);
+    }
+
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdownNow();
+        wal.close();
+    }
+
+}
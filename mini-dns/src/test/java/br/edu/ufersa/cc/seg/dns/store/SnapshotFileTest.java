@@ -0,0 +1,50 @@
+package br.edu.ufersa.cc.seg.dns.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SnapshotFileTest {
+
+    private static final long EXPIRES_AT = 1_700_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void longestNameWithExpiryIsReadBack() throws IOException {
+        final var name = "n".repeat(0x7FFE);
+        final var store = new VersionedRecordStore();
+        store.put(name, "10.0.0.1", EXPIRES_AT);
+        store.put("a.zona", "10.0.0.2");
+
+        final var file = directory.resolve("snapshot.snap");
+        try (final var snapshot = store.snapshot()) {
+            assertThat(SnapshotFile.write(file, snapshot)).isEqualTo(2);
+        }
+
+        final var read = new HashMap<String, Long>();
+        assertThat(SnapshotFile.read(file, (found, ip, expiresAt) -> read.put(found, expiresAt)))
+                .isEqualTo(store.version());
+        assertThat(read).containsEntry(name, EXPIRES_AT).containsEntry("a.zona", 0L);
+    }
+
+    @Test
+    void rejectsNameThatWouldLookLikeTheEndMarker() {
+        // 0x7FFF com o bit de prazo daria 0xFFFF, o marcador de fim
+        final var store = new VersionedRecordStore();
+        store.put("n".repeat(0x7FFF), "10.0.0.1", EXPIRES_AT);
+
+        try (final var snapshot = store.snapshot()) {
+            assertThatThrownBy(() -> SnapshotFile.write(directory.resolve("snapshot.snap"), snapshot))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+package br.edu.ufersa.cc.seg.dns.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Compara a roda com um modelo ingênuo (mapa de nome para prazo) sob uma
+ * sequência aleatória de agendamentos, cancelamentos e avanços
+ */
+class TimingWheelTest {
+
+    private static final int NAMES = 2_000;
+    private static final int OPERATIONS = 50_000;
+
+    @ParameterizedTest
+    @ValueSource(longs = { 1, 42, 2024, 777_777 })
+    void matchesNaiveModel(final long seed) {
+        final var random = new Random(seed);
+        var now = random.nextLong(1L << 40);
+        final var wheel = new TimingWheel(now);
+        final var timers = new HashMap<String, TimingWheel.Timer>();
+        final var model = new HashMap<String, Long>();
+
+        for (var i = 0; i < OPERATIONS; i++) {
+            final var name = "h" + random.nextInt(NAMES);
+            final var operation = random.nextInt(100);
+            if (operation < 55) {
+                // Agenda ou renova; inclui prazos já passados e distâncias de todos os níveis
+                final var deadline = now + distance(random);
+                cancel(wheel, timers, model, name);
+                timers.put(name, wheel.schedule(name, deadline));
+                model.put(name, deadline);
+            } else if (operation < 70) {
+                cancel(wheel, timers, model, name);
+            } else {
+                final var target = now + (random.nextInt(4) == 0 ? 1 : 1 + random.nextInt(3_000));
+                final var expired = new ArrayList<String>();
+                wheel.advance(target, expired::add);
+
+                final var due = due(model, target);
+                assertThat(expired).doesNotHaveDuplicates();
+                assertThat(new HashSet<>(expired)).isEqualTo(due);
+                for (final var gone : due) {
+                    model.remove(gone);
+                    timers.remove(gone);
+                }
+                now = target;
+            }
+            assertThat(wheel.size()).isEqualTo(model.size());
+        }
+
+        // No fim, tudo que estava agendado até o maior prazo vence uma única vez
+        final var last = model.values().stream().mapToLong(Long::longValue).max().orElse(now);
+        if (last - now < 5_000_000) {
+            final var expired = new ArrayList<String>();
+            wheel.advance(last, expired::add);
+            assertThat(expired).doesNotHaveDuplicates().containsExactlyInAnyOrderElementsOf(model.keySet());
+            assertThat(wheel.size()).isZero();
+        }
+    }
+
+    private static long distance(final Random random) {
+        return switch (random.nextInt(5)) {
+            case 0 -> -random.nextInt(10);
+            case 1 -> random.nextInt(64);
+            case 2 -> random.nextInt(4_096);
+            case 3 -> random.nextInt(300_000);
+            default -> random.nextLong(1L << 38);
+        };
+    }
+
+    private static void cancel(final TimingWheel wheel, final Map<String, TimingWheel.Timer> timers,
+            final Map<String, Long> model, final String name) {
+        final var timer = timers.remove(name);
+        if (timer != null) {
+            wheel.cancel(timer);
+        }
+        model.remove(name);
+    }
+
+    private static Set<String> due(final Map<String, Long> model, final long tick) {
+        final var due = new HashSet<String>();
+        model.forEach((name, deadline) -> {
+            if (deadline <= tick) {
+                due.add(name);
+            }
+        });
+        return due;
+    }
+
+}
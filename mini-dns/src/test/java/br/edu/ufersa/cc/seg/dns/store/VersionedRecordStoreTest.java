@@ -0,0 +1,49 @@
+package br.edu.ufersa.cc.seg.dns.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class VersionedRecordStoreTest {
+
+    @Test
+    void removalDuringSnapshotIsPrunedWhenItCloses() {
+        final var store = new VersionedRecordStore();
+        store.put("a.zona", "10.0.0.1");
+        store.put("b.zona", "10.0.0.2");
+
+        try (final var snapshot = store.snapshot()) {
+            store.remove("a.zona");
+            store.put("b.zona", "10.0.0.3");
+
+            // O snapshot ainda enxerga os valores antigos
+            assertThat(snapshot.get("a.zona")).isEqualTo("10.0.0.1");
+            assertThat(snapshot.get("b.zona")).isEqualTo("10.0.0.2");
+            assertThat(store.entries()).isEqualTo(4);
+        }
+
+        assertThat(store.get("a.zona")).isNull();
+        assertThat(store.get("b.zona")).isEqualTo("10.0.0.3");
+        assertThat(store.entries()).isEqualTo(1);
+    }
+
+    @Test
+    void olderSnapshotKeepsWhatItReadsUntilItCloses() {
+        final var store = new VersionedRecordStore();
+        store.put("a.zona", "10.0.0.1");
+
+        final var older = store.snapshot();
+        store.put("a.zona", "10.0.0.2");
+        final var newer = store.snapshot();
+        store.remove("a.zona");
+
+        newer.close();
+        assertThat(older.get("a.zona")).isEqualTo("10.0.0.1");
+        assertThat(store.entries()).isEqualTo(3);
+
+        older.close();
+        assertThat(store.get("a.zona")).isNull();
+        assertThat(store.entries()).isZero();
+    }
+
+}
@@ -0,0 +1,240 @@
+package br.edu.ufersa.cc.seg.dns.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import br.edu.ufersa.cc.seg.dns.store.RecordStore.Change;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    private record Replayed(long version, Change change) {
+    }
+
+    @Test
+    void replaysEveryDurableVersionInOrder() throws IOException {
+        try (final var wal = new WriteAheadLog(directory, 0, false)) {
+            wal.append(1, "a.zona", "10.0.0.1");
+            wal.append(2, List.of(new Change("b.zona", "10.0.0.2", 1_700_000_000_000L), new Change("c.zona", "::1")));
+            wal.append(3, "a.zona", null);
+            wal.awaitDurable(3);
+        }
+
+        final var replayed = new ArrayList<Replayed>();
+        final var last = WriteAheadLog.replay(directory, 0, (version, change) -> replayed.add(new Replayed(version, change)));
+
+        assertThat(last).isEqualTo(3);
+        assertThat(replayed).containsExactly(
+                new Replayed(1, new Change("a.zona", "10.0.0.1")),
+                new Replayed(2, new Change("b.zona", "10.0.0.2", 1_700_000_000_000L)),
+                new Replayed(2, new Change("c.zona", "::1")),
+                new Replayed(3, new Change("a.zona", null)));
+    }
+
+    @Test
+    void rejectsFieldsThatCollideWithMarkers() throws IOException {
+        try (final var wal = new WriteAheadLog(directory, 0, false)) {
+            final var longName = "n".repeat(0x7FFF);
+            final var longIp = "1".repeat(0xFFFF);
+            assertThatThrownBy(() -> wal.append(1, longName, "10.0.0.1"))
+                    .isInstanceOf(IllegalArgumentException.class);
+            assertThatThrownBy(() -> wal.append(1, List.of(new Change(longName, "10.0.0.1", 1_700_000_000_000L))))
+                    .isInstanceOf(IllegalArgumentException.class);
+            assertThatThrownBy(() -> wal.append(1, List.of(new Change("a.zona", longIp))))
+                    .isInstanceOf(IllegalArgumentException.class);
+            // Multibyte: poucos caracteres, mas bytes demais
+            assertThatThrownBy(() -> wal.append(1, "é".repeat(0x4000), "10.0.0.1"))
+                    .isInstanceOf(IllegalArgumentException.class);
+
+            // Nada foi enfileirado e o escritor continua de pé
+            wal.append(1, "n".repeat(0x7FFE), "1".repeat(0xFFFE));
+            wal.awaitDurable(1);
+        }
+
+        final var replayed = new ArrayList<Replayed>();
+        assertThat(WriteAheadLog.replay(directory, 0, (version, change) -> replayed.add(new Replayed(version, change))))
+                .isEqualTo(1);
+        assertThat(replayed).containsExactly(new Replayed(1, new Change("n".repeat(0x7FFE), "1".repeat(0xFFFE))));
+    }
+
+    @Test
+    void skipsVersionsAlreadyCoveredBySnapshot() throws IOException {
+        writeVersions(1, 5);
+
+        final var replayed = new ArrayList<Long>();
+        final var last = WriteAheadLog.replay(directory, 3, (version, change) -> replayed.add(version));
+
+        assertThat(last).isEqualTo(5);
+        assertThat(replayed).containsExactly(4L, 5L);
+    }
+
+    @Test
+    void recoversUpToTheLastCompleteEntryAfterTornWrite() throws IOException {
+        writeVersions(1, 3);
+
+        // Queda no meio da gravação da versão 3: sobra só parte da entrada
+        final var segment = onlySegment();
+        truncate(segment, Files.size(segment) - 5);
+
+        assertThat(WriteAheadLog.replay(directory, 0, (version, change) -> {
+        })).isEqualTo(2);
+
+        // Ao reabrir na versão recuperada, as sobras são descartadas e o log segue
+        try (final var wal = new WriteAheadLog(directory, 2, false)) {
+            wal.append(3, "depois.zona", "10.0.0.3");
+            wal.awaitDurable(3);
+        }
+        final var replayed = new ArrayList<Replayed>();
+        assertThat(WriteAheadLog.replay(directory, 0, (version, change) -> replayed.add(new Replayed(version, change))))
+                .isEqualTo(3);
+        assertThat(replayed).last().isEqualTo(new Replayed(3, new Change("depois.zona", "10.0.0.3")));
+    }
+
+    @Test
+    void stopsAtEntryWithWrongChecksum() throws IOException {
+        writeVersions(1, 3);
+
+        // Corrompe um byte do nome da versão 2
+        final var segment = onlySegment();
+        final var entrySize = Files.size(segment) / 3;
+        flipByte(segment, entrySize + entrySize - 2);
+
+        final var replayed = new ArrayList<Long>();
+        final var last = WriteAheadLog.replay(directory, 0, (version, change) -> replayed.add(version));
+
+        assertThat(last).isEqualTo(1);
+        assertThat(replayed).containsExactly(1L);
+    }
+
+    @Test
+    void deletesOnlySegmentsCoveredBySnapshot() throws IOException {
+        try (final var wal = new WriteAheadLog(directory, 0, false)) {
+            append(wal, 1, 3);
+            wal.roll();
+            append(wal, 4, 6);
+            wal.roll();
+            append(wal, 7, 7);
+            wal.awaitDurable(7);
+
+            // Snapshot na versão 5: o segmento 4-6 ainda tem a versão 6
+            wal.deleteCoveredSegments(5);
+            assertThat(segmentNames()).containsExactly("wal-00000000000000000004.log", "wal-00000000000000000007.log");
+
+            wal.deleteCoveredSegments(6);
+            assertThat(segmentNames()).containsExactly("wal-00000000000000000007.log");
+
+            // O segmento atual nunca é apagado
+            wal.deleteCoveredSegments(7);
+            assertThat(segmentNames()).containsExactly("wal-00000000000000000007.log");
+        }
+
+        assertThat(WriteAheadLog.replay(directory, 6, (version, change) -> {
+        })).isEqualTo(7);
+    }
+
+    @Test
+    void rejectsLogWithMissingSegment() throws IOException {
+        try (final var wal = new WriteAheadLog(directory, 0, false)) {
+            append(wal, 1, 2);
+            wal.roll();
+            append(wal, 3, 4);
+            wal.roll();
+            append(wal, 5, 6);
+            wal.awaitDurable(6);
+        }
+        Files.delete(directory.resolve("wal-00000000000000000003.log"));
+
+        assertThatThrownBy(() -> WriteAheadLog.replay(directory, 0, (version, change) -> {
+        })).isInstanceOf(EOFException.class).hasMessageContaining("entre 2 e 5");
+    }
+
+    @Test
+    void replicaGapsAreRecordedAndReplayed() throws IOException {
+        // Réplica: o primário agrupou as versões 2 a 9
+        try (final var wal = new WriteAheadLog(directory, 0, false)) {
+            wal.append(1, "a.zona", "10.0.0.1");
+            wal.append(10, "b.zona", "10.0.0.2");
+            wal.append(11, "c.zona", "10.0.0.3");
+            wal.awaitDurable(11);
+        }
+
+        final var replayed = new ArrayList<Long>();
+        assertThat(WriteAheadLog.replay(directory, 0, (version, change) -> replayed.add(version))).isEqualTo(11);
+        assertThat(replayed).containsExactly(1L, 10L, 11L);
+    }
+
+    @Test
+    void versionsWithoutChangesAreKept() throws IOException {
+        // Réplica: notificações que não mudaram nada na tabela local
+        try (final var wal = new WriteAheadLog(directory, 0, false)) {
+            wal.append(1, "a.zona", "10.0.0.1");
+            wal.append(2, List.of());
+            wal.append(5, List.of());
+            wal.append(6, "b.zona", "10.0.0.2");
+            wal.awaitDurable(6);
+        }
+
+        final var replayed = new ArrayList<Long>();
+        assertThat(WriteAheadLog.replay(directory, 0, (version, change) -> replayed.add(version))).isEqualTo(6);
+        assertThat(replayed).containsExactly(1L, 6L);
+        assertThat(WriteAheadLog.replay(directory, 1, (version, change) -> {
+        })).isEqualTo(6);
+    }
+
+    private void writeVersions(final long from, final long to) throws IOException {
+        try (final var wal = new WriteAheadLog(directory, from - 1, false)) {
+            append(wal, from, to);
+            wal.awaitDurable(to);
+        }
+    }
+
+    private static void append(final WriteAheadLog wal, final long from, final long to) {
+        for (var version = from; version <= to; version++) {
+            wal.append(version, "h" + version + ".zona", "10.0.0." + version);
+        }
+    }
+
+    private Path onlySegment() throws IOException {
+        final var names = segmentNames();
+        assertThat(names).hasSize(1);
+        return directory.resolve(names.get(0));
+    }
+
+    private List<String> segmentNames() throws IOException {
+        try (final var files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).filter(name -> name.startsWith("wal-")).sorted()
+                    .toList();
+        }
+    }
+
+    private static void truncate(final Path file, final long size) throws IOException {
+        try (final var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    private static void flipByte(final Path file, final long position) throws IOException {
+        try (final var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final var buffer = ByteBuffer.allocate(1);
+            channel.read(buffer, position);
+            buffer.put(0, (byte) (buffer.get(0) ^ 0x01)).rewind();
+            channel.write(buffer, position);
+        }
+    }
+
+}
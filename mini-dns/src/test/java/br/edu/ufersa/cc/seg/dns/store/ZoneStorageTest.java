@@ -0,0 +1,120 @@
+package br.edu.ufersa.cc.seg.dns.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+class ZoneStorageTest {
+
+    // Snapshots só quando o teste pede
+    private static final Duration NO_PERIODIC_SNAPSHOT = Duration.ofHours(1);
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @EnumSource(RecordStoreType.class)
+    void restoresSnapshotPlusLogAfterCrash(final RecordStoreType type) throws IOException {
+        final var expected = new HashMap<String, String>();
+        final long version;
+        final var store = RecordStores.create(type);
+        try (final var storage = ZoneStorage.open(directory, store, false, NO_PERIODIC_SNAPSHOT)) {
+            for (var i = 0; i < 100; i++) {
+                store.put("h" + i + ".zona", "10.0.0." + i);
+                expected.put("h" + i + ".zona", "10.0.0." + i);
+            }
+            storage.snapshot();
+
+            // Depois do snapshot: alterações só no log
+            store.put("h1.zona", "10.0.1.1");
+            expected.put("h1.zona", "10.0.1.1");
+            store.remove("h2.zona");
+            expected.remove("h2.zona");
+            store.putAll(Map.of("novo.zona", "10.0.2.1", "h3.zona", "10.0.2.3"));
+            expected.put("novo.zona", "10.0.2.1");
+            expected.put("h3.zona", "10.0.2.3");
+            version = store.version();
+            storage.awaitDurable(version);
+        }
+
+        final var restored = RecordStores.create(type);
+        try (final var storage = ZoneStorage.open(directory, restored, false, NO_PERIODIC_SNAPSHOT)) {
+            assertThat(restored.version()).isEqualTo(version);
+            assertThat(contents(restored)).isEqualTo(expected);
+
+            // Novas versões seguem as recuperadas
+            assertThat(restored.put("mais.zona", "10.0.3.1")).isEqualTo(version + 1);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(RecordStoreType.class)
+    void snapshotDeletesCoveredSegmentsAndOlderSnapshots(final RecordStoreType type) throws IOException {
+        final var store = RecordStores.create(type);
+        try (final var storage = ZoneStorage.open(directory, store, false, NO_PERIODIC_SNAPSHOT)) {
+            store.put("a.zona", "10.0.0.1");
+            storage.snapshot();
+            store.put("b.zona", "10.0.0.2");
+            storage.snapshot();
+            store.put("c.zona", "10.0.0.3");
+            storage.awaitDurable(store.version());
+
+            assertThat(files()).containsExactly("snapshot-00000000000000000002.snap", "wal-00000000000000000003.log");
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(RecordStoreType.class)
+    void rejectsSnapshotWithWrongChecksum(final RecordStoreType type) throws IOException {
+        final var store = RecordStores.create(type);
+        try (final var storage = ZoneStorage.open(directory, store, false, NO_PERIODIC_SNAPSHOT)) {
+            store.putAll(Map.of("a.zona", "10.0.0.1", "b.zona", "10.0.0.2"));
+            storage.snapshot();
+        }
+
+        final var snapshot = directory.resolve("snapshot-00000000000000000001.snap");
+        try (final var channel = FileChannel.open(snapshot, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Troca um byte de um IP, depois do cabeçalho
+            final var buffer = ByteBuffer.allocate(1);
+            final var position = channel.size() - 20;
+            channel.read(buffer, position);
+            buffer.put(0, (byte) (buffer.get(0) ^ 0x01)).rewind();
+            channel.write(buffer, position);
+        }
+
+        assertThatThrownBy(() -> SnapshotFile.read(snapshot, (name, ip, expiresAt) -> {
+        })).isInstanceOf(StreamCorruptedException.class);
+        assertThatThrownBy(() -> ZoneStorage.open(directory, RecordStores.create(type), false, NO_PERIODIC_SNAPSHOT))
+                .isInstanceOf(StreamCorruptedException.class);
+    }
+
+    private static Map<String, String> contents(final RecordStore store) {
+        final var contents = new HashMap<String, String>();
+        try (final var snapshot = store.snapshot()) {
+            snapshot.forEach((name, ip, expiresAt) -> contents.put(name, ip));
+        }
+        return contents;
+    }
+
+    private List<String> files() throws IOException {
+        try (final var files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).sorted().toList();
+        }
+    }
+
+}
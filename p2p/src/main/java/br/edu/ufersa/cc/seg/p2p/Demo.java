@@ -2,10 +2,11 @@ package br.edu.ufersa.cc.seg.p2p;
 
 import java.util.List;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 import br.edu.ufersa.cc.seg.common.crypto.CryptoService;
+import br.edu.ufersa.cc.seg.common.message.MessageCodec;
 import br.edu.ufersa.cc.seg.common.network.SecureTcpMessaging;
+import br.edu.ufersa.cc.seg.p2p.message.NodeMessage;
+import br.edu.ufersa.cc.seg.p2p.message.NodeMessage.Search;
 import br.edu.ufersa.cc.seg.p2p.node.NodeServer;
 
 public class Demo {
@@ -15,24 +16,18 @@ public class Demo {
             .decode("QYp+xG2d7Ir8Xo2ZyD7m8FJKwrFrxd9ayN9i4mBQlTg=");
 
     private static final CryptoService cryptoService = new CryptoService(ENC_KEY, HMAC_KEY);
-    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final MessageCodec<NodeMessage> codec = new MessageCodec<>(NodeMessage.class);
 
     public static void main(String[] args) throws Exception {
         final var nodeServer = NodeServer.createRing("localhost", List.of(8090, 8091, 8092, 8093, 8094, 8095));
 
         try (var messenger = new SecureTcpMessaging(nodeServer.getHost(), nodeServer.getPort(), cryptoService)) {
-            // Cria requisição
-            final var request = mapper.createObjectNode();
-            request.put("type", "SEARCH");
-            request.put("fileName", "arquivo45");
-
             // Envia requisição
-            messenger.sendSecure(mapper.writeValueAsBytes(request));
+            messenger.sendSecure(codec.encode(new Search("arquivo45", null)));
 
             // Recebe a resposta
-            final var responseInBytes = messenger.receiveSecure();
-            final var responseInJson = mapper.readTree(responseInBytes);
-            System.out.println("Resposta recebida: " + responseInJson.toPrettyString());
+            final var response = codec.decode(messenger.receiveSecure());
+            System.out.println("Resposta recebida: " + response);
         }
 
     }
@@ -0,0 +1,40 @@
+package br.edu.ufersa.cc.seg.p2p.message;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+
+import br.edu.ufersa.cc.seg.common.message.Message;
+import br.edu.ufersa.cc.seg.common.utils.MessageType;
+
+/**
+ * Mensagens trocadas entre os nós do anel
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+@JsonSubTypes({
+        @JsonSubTypes.Type(value = NodeMessage.Search.class, name = "SEARCH"),
+        @JsonSubTypes.Type(value = NodeMessage.Response.class, name = "RESPONSE"),
+})
+public sealed interface NodeMessage extends Message {
+
+    /**
+     * Busca de um arquivo. {@code originId} é nulo até o primeiro nó que a
+     * repassa, que se torna a origem.
+     */
+    record Search(String fileName, Integer originId) implements NodeMessage {
+        @Override
+        public MessageType type() {
+            return MessageType.SEARCH;
+        }
+    }
+
+    /**
+     * Resposta de busca, repassada pelo anel até o nó de origem
+     */
+    record Response(Integer originId, String fileName, Integer holderId) implements NodeMessage {
+        @Override
+        public MessageType type() {
+            return MessageType.RESPONSE;
+        }
+    }
+
+}
@@ -1,20 +1,24 @@
 package br.edu.ufersa.cc.seg.p2p.node;
 
 import java.io.IOException;
-import java.net.ServerSocket;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
-
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.function.Consumer;
 
 import br.edu.ufersa.cc.seg.common.crypto.CryptoService;
+import br.edu.ufersa.cc.seg.common.message.MessageCodec;
+import br.edu.ufersa.cc.seg.common.message.MessageDispatcher;
+import br.edu.ufersa.cc.seg.common.network.SecureConnectionPool;
 import br.edu.ufersa.cc.seg.common.network.SecureMessaging;
-import br.edu.ufersa.cc.seg.common.network.SecureTcpMessaging;
+import br.edu.ufersa.cc.seg.common.network.SecureServers;
+import br.edu.ufersa.cc.seg.common.utils.MessageType;
+import br.edu.ufersa.cc.seg.p2p.message.NodeMessage;
+import br.edu.ufersa.cc.seg.p2p.message.NodeMessage.Response;
+import br.edu.ufersa.cc.seg.p2p.message.NodeMessage.Search;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -27,8 +31,6 @@ import lombok.extern.slf4j.Slf4j;
 @RequiredArgsConstructor
 public class NodeServer {
 
-    private static final String ORIGIN_ID = "originId";
-
     private static final byte[] ENC_KEY = java.util.Base64.getDecoder().decode("DJXkb7GyuXP5Hfep9OLukQ==");
     private static final byte[] HMAC_KEY = java.util.Base64.getDecoder()
             .decode("QYp+xG2d7Ir8Xo2ZyD7m8FJKwrFrxd9ayN9i4mBQlTg=");
@@ -40,10 +42,28 @@ public class NodeServer {
     private NodeServer next;
 
     private final CryptoService cryptoService = new CryptoService(ENC_KEY, HMAC_KEY);
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final MessageCodec<NodeMessage> codec = new MessageCodec<>(NodeMessage.class);
+    private final MessageDispatcher<NodeMessage> dispatcher = new MessageDispatcher<>(codec)
+            .on(MessageType.SEARCH, Search.class, this::handleSearchMessage)
+            .on(MessageType.RESPONSE, Response.class, this::handleResponseMessage)
+            .onUnknown(this::handleUnknown);
+    private final SecureConnectionPool pool = new SecureConnectionPool(cryptoService);
     private final Set<String> localFiles = Collections.synchronizedSet(new HashSet<>());
 
+    @Getter(AccessLevel.NONE)
+    private volatile Consumer<Response> responseListener = response -> {
+    };
+
     public static NodeServer createRing(final String host, final Collection<Integer> ports) {
+        return createRing(host, ports, Thread.ofPlatform());
+    }
+
+    /**
+     * Cria o anel iniciando cada nó numa thread do construtor informado (ex.:
+     * threads daemon, para não impedir o encerramento da JVM)
+     */
+    public static NodeServer createRing(final String host, final Collection<Integer> ports,
+            final Thread.Builder threads) {
         final var index = new AtomicInteger(0);
 
         final var nodeServers = ports.stream()
@@ -63,112 +83,84 @@ public class NodeServer {
                 currentNode.localFiles.add("arquivo" + fileNumber);
             }
 
-            new Thread(() -> {
+            threads.start(() -> {
                 try {
                     currentNode.start();
                 } catch (final IOException e) {
                     log.error("Erro ao iniciar o nó {}: {}", currentNode.getId(), e.getMessage());
                 }
-            }).start();
+            });
         }
 
         return nodeServers.getFirst();
     }
 
+    /**
+     * Define quem recebe as respostas que chegam a este nó como origem da busca
+     */
+    public void onResponse(final Consumer<Response> listener) {
+        this.responseListener = listener;
+    }
+
     public void start() throws IOException {
         log.info("[Nó {}] Iniciando em {}:{}... {} << {} >> {}", id, host, port, previous.getId(), id, next.getId());
 
-        try (final var server = new ServerSocket(port)) {
-            while (true) {
-                final var messenger = new SecureTcpMessaging(server, cryptoService);
-                new Thread(() -> handleClient(messenger)).start();
-            }
+        try (final var server = SecureServers.create(port, cryptoService)) {
+            server.start(this::handleClient);
         }
     }
 
-    private void handleClient(final SecureMessaging messenger) {
+    private void handleClient(final SecureMessaging messenger, final byte[] requestInBytes) {
         try {
-            // Aguarda e recebe a requisição
-            final var requestInBytes = messenger.receiveSecure();
-            final var requestInString = new String(requestInBytes);
-            final var requestInJson = mapper.readTree(requestInString);
-            log.info("[Nó {}] Recebido: {}", id, requestInString);
-
-            // Obtém o tipo de mensagem
-            final var type = requestInJson.path("type").asText(null);
-            if (type == null) {
-                log.error("Mensagem sem tipo");
-                return;
-            }
-
-            // Obtém os dados da origem
-            final int originId = requestInJson.path(ORIGIN_ID).asInt(-1);
-
-            switch (type.toUpperCase()) {
-                case "SEARCH":
-                    // Se for uma busca de arquivo
-                    handleSearchMessage(requestInJson, originId);
-                    break;
-
-                case "RESPONSE":
-                    // Se for uma resposta de busca
-                    handleResponseMessage(requestInJson, originId);
-                    break;
-
-                default:
-                    log.info("[Nó {}] tipo desconhecido: {}", id, type);
-            }
-
+            log.info("[Nó {}] Recebido: {}", id, new String(requestInBytes));
+            dispatcher.onMessage(messenger, requestInBytes);
         } catch (final Exception e) {
             log.error("Erro no nó", e);
         }
     }
 
-    private void handleSearchMessage(JsonNode request, final int originId) {
-        final var fileName = request.path("fileName").asText(null);
+    private void handleSearchMessage(final SecureMessaging messenger, final Search request) {
+        final var fileName = request.fileName();
+        final var originId = request.originId() != null ? request.originId() : -1;
 
         if (fileName == null) {
-            log.error("[Nó {}] Nome do arquivo nulo (inválido).", id, fileName);
+            log.error("[Nó {}] Nome do arquivo nulo (inválido).", id);
         } else if (localFiles.contains(fileName)) {
-            final var response = mapper.createObjectNode();
-            response.put("type", "RESPONSE");
-            response.put(ORIGIN_ID, originId);
-            response.put("fileName", fileName);
-            response.put("holderId", id);
-
-            sendToNext(response.toString());
+            sendToNext(new Response(originId, fileName, id));
         } else {
             if (originId == id) {
                 // Se já tiver percorrido o anel inteiro e voltar ao nó de origem, interrompe e
                 // informa o erro
                 log.info("[Nó {}] arquivo '{}' não encontrado no anel.", id, fileName);
             } else {
-                if (originId == -1) {
-                    request = ((ObjectNode) request).put(ORIGIN_ID, id);
-                }
-
-                // Busca no próximo nó
-                sendToNext(request.toString());
+                // Busca no próximo nó, marcando este como origem se for o primeiro
+                sendToNext(originId == -1 ? new Search(fileName, id) : request);
             }
         }
     }
 
-    private void handleResponseMessage(final JsonNode request, final int originId) {
-        if (originId == id) {
+    private void handleResponseMessage(final SecureMessaging messenger, final Response request) {
+        if (request.originId() != null && request.originId() == id) {
             // Se esse foi o nó de origem, apresenta a resposta
-            log.info("[Nó {}] RESPONSE recebido: {}", id, request.toString());
+            log.info("[Nó {}] RESPONSE recebido: {}", id, request);
+            responseListener.accept(request);
         } else {
             // Senão, vai propagando até chegar ao nó responsável
-            sendToNext(request.toString());
+            sendToNext(request);
         }
     }
 
-    private void sendToNext(final String msg) {
+    private void handleUnknown(final SecureMessaging messenger, final String type) {
+        log.info("[Nó {}] tipo desconhecido: {}", id, type);
+    }
+
+    private void sendToNext(final NodeMessage msg) {
         final var destinationHost = next.getHost();
         final int destinationPort = next.getPort();
 
-        try (final var messenger = new SecureTcpMessaging(destinationHost, destinationPort, cryptoService)) {
-            messenger.sendSecure(msg.getBytes());
+        // A conexão com o sucessor é mantida aberta entre mensagens
+        try (final var messenger = pool.acquire(destinationHost, destinationPort)) {
+            messenger.sendSecure(codec.encode(msg));
         } catch (final Exception e) {
             log.error("[Nó {}] falha ao enviar para {}:{} -> {}", id, destinationHost, destinationPort, e.getMessage());
         }
@@ -1,19 +1,34 @@
 package br.edu.ufersa.cc.seg.servicediscovery.client;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.UnknownHostException;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import br.edu.ufersa.cc.seg.common.crypto.CryptoService;
-import br.edu.ufersa.cc.seg.common.network.SecureTcpMessaging;
+import br.edu.ufersa.cc.seg.common.message.Message;
+import br.edu.ufersa.cc.seg.common.message.MessageCodec;
+import br.edu.ufersa.cc.seg.common.network.MultiplexedClient;
+import br.edu.ufersa.cc.seg.servicediscovery.message.CalculatorMessage;
+import br.edu.ufersa.cc.seg.servicediscovery.message.CalculatorMessage.Call;
+import br.edu.ufersa.cc.seg.servicediscovery.message.DirectoryMessage;
+import br.edu.ufersa.cc.seg.servicediscovery.message.DirectoryMessage.Discover;
+import br.edu.ufersa.cc.seg.servicediscovery.message.DirectoryMessage.DiscoveryResponse;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * Cliente que consulta o DirectoryServer para descobrir serviços e chama um
  * serviço escolhido (round-robin ou random).
+ *
+ * <p>
+ * Cada destino tem uma única conexão multiplexada, então vários cálculos
+ * podem estar em andamento ao mesmo tempo.
  */
 @Slf4j
 public class CalculatorClient {
@@ -27,98 +42,164 @@ public class CalculatorClient {
             .decode("QYp+xG2d7Ir8Xo2ZyD7m8FJKwrFrxd9ayN9i4mBQlTg=");
 
     private final CryptoService crypto = new CryptoService(ENC_KEY, HMAC_KEY);
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final MessageCodec<DirectoryMessage> directoryCodec = new MessageCodec<>(DirectoryMessage.class);
+    private final MessageCodec<CalculatorMessage> calculatorCodec = new MessageCodec<>(CalculatorMessage.class);
+
+    // Conexões com o diretório e as calculadoras, por host:porta
+    private final Map<String, MultiplexedClient> connections = new ConcurrentHashMap<>();
 
     public static void main(final String[] args) {
         final var scanner = new Scanner(System.in);
+        final var client = new CalculatorClient();
 
         var isRunning = true;
         while (isRunning) {
-            isRunning = interact(scanner);
+            isRunning = interact(scanner, client);
         }
 
+        client.close();
         scanner.close();
     }
 
-    private void run(final String op, final double a, final double b) {
-        try (final var messenger = new SecureTcpMessaging(DIRECTORY_HOST, DIRECTORY_PORT, crypto)) {
-            // Cria requisição
-            final var request = mapper.createObjectNode();
-            request.put("type", "DISCOVER");
-            request.put("service", "calculator");
-
-            // Envia requisição
-            messenger.sendSecure(mapper.writeValueAsBytes(request));
-
-            // Recebe resposta
-            final var responseInBytes = messenger.receiveSecure();
-            final var responseInJson = mapper.readTree(responseInBytes);
-            final var address = responseInJson.get("address");
-
-            // Interrompe se não houver endereços associados
-            if (address.isNull()) {
-                System.out.println("Nenhum serviço disponível");
-                return;
-            }
-
-            // 3) Call service
-            callService(address.asText(), op, a, b);
-        } catch (final UnknownHostException e) {
-            log.error("Host '{}' desconhecido", DIRECTORY_HOST, e);
-        } catch (final JsonProcessingException e) {
-            log.error("Falha ao serializar/desserializar", e);
-        } catch (final IOException e) {
-            log.error("Erro de I/O na comunicação com o serviço", e);
-        }
+    private CompletableFuture<Void> run(final String op, final double a, final double b) {
+        // Envia requisição e, com o endereço recebido, chama o serviço
+        return send(DIRECTORY_HOST, DIRECTORY_PORT, directoryCodec, new Discover("calculator"))
+                .thenCompose(response -> {
+                    final var address = response instanceof DiscoveryResponse discovery ? discovery.address() : null;
+
+                    // Interrompe se não houver endereços associados
+                    if (address == null) {
+                        System.out.println("Nenhum serviço disponível");
+                        return CompletableFuture.completedFuture(null);
+                    }
+
+                    // 3) Call service
+                    return callService(address, op, a, b);
+                })
+                .exceptionally(e -> {
+                    logFailure(DIRECTORY_HOST, e);
+                    return null;
+                });
     }
 
-    private void callService(final String address, final String operator, final double a, final double b) {
+    private CompletableFuture<Void> callService(final String address, final String operator, final double a,
+            final double b) {
         final var parts = address.split(":");
         final var host = parts[0];
         final var port = Integer.parseInt(parts[1]);
 
-        try (final var messenger = new SecureTcpMessaging(host, port, crypto)) {
-            final var request = mapper.createObjectNode();
-            request.put("type", "CALL");
-            request.put("op", operator);
-            request.put("a", a);
-            request.put("b", b);
+        return send(host, port, calculatorCodec, new Call(operator, a, b)).thenAccept(response -> {
+            final var expression = "%s %s %s".formatted(a, operator, b);
+            if (response instanceof CalculatorMessage.Response result && result.result() != null) {
+                System.out.println(expression + " = " + result.result());
+            } else if (response instanceof CalculatorMessage.Response result) {
+                System.out.println(expression + ": erro do serviço: " + result.error());
+            } else {
+                System.out.println(expression + ": resposta inesperada: " + response);
+            }
+        }).exceptionally(e -> {
+            logFailure(host, e);
+            return null;
+        });
+    }
 
-            messenger.sendSecure(mapper.writeValueAsBytes(request));
-            final var responseInBytes = messenger.receiveSecure();
-            final var responseInJson = mapper.readTree(responseInBytes);
+    /**
+     * Envia a requisição pela conexão do destino, abrindo-a se necessário
+     */
+    private <M extends Message> CompletableFuture<M> send(final String host, final int port,
+            final MessageCodec<M> codec, final M request) {
+        try {
+            return connection(host, port)
+                    .request(codec.encode(request))
+                    .thenApply(responseInBytes -> decode(codec, responseInBytes));
+        } catch (final IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 
-            if (responseInJson.has("result")) {
-                System.out.println("Resultado: " + responseInJson.get("result").asDouble());
-            } else {
-                System.out.println("Erro do serviço: " + responseInJson.get("error").asText());
+    private MultiplexedClient connection(final String host, final int port) throws IOException {
+        final var key = host + ":" + port;
+        while (true) {
+            final var current = connections.get(key);
+            if (current != null && current.isOpen()) {
+                return current;
             }
-        } catch (final UnknownHostException e) {
-            log.error("Host '{}' desconhecido", host, e);
-        } catch (final JsonProcessingException e) {
-            log.error("Falha ao serializar/desserializar", e);
+
+            // Conecta fora do mapa: um destino lento não trava os demais
+            final var fresh = new MultiplexedClient(host, port, crypto);
+            final var installed = current == null
+                    ? connections.putIfAbsent(key, fresh) == null
+                    : connections.replace(key, current, fresh);
+            if (installed) {
+                return fresh;
+            }
+
+            // Outra thread instalou uma conexão antes: usa a dela
+            closeQuietly(fresh);
+        }
+    }
+
+    private static void closeQuietly(final MultiplexedClient connection) {
+        try {
+            connection.close();
+        } catch (final IOException e) {
+            // Ignora
+        }
+    }
+
+    private static <M extends Message> M decode(final MessageCodec<M> codec, final byte[] json) {
+        try {
+            return codec.decode(json);
         } catch (final IOException e) {
-            log.error("Erro de I/O na comunicação com o serviço", e);
+            throw new UncheckedIOException(e);
         }
     }
 
-    private static boolean interact(final Scanner scanner) {
-        // Obter expressao numérica
+    private static void logFailure(final String host, final Throwable error) {
+        final var cause = error instanceof CompletionException && error.getCause() != null
+                ? error.getCause()
+                : error;
+        final var root = cause instanceof UncheckedIOException unchecked ? unchecked.getCause() : cause;
+
+        if (root instanceof UnknownHostException) {
+            log.error("Host '{}' desconhecido", host, root);
+        } else if (root instanceof JsonProcessingException) {
+            log.error("Falha ao serializar/desserializar", root);
+        } else {
+            log.error("Erro de I/O na comunicação com o serviço", root);
+        }
+    }
+
+    private void close() {
+        for (final var connection : connections.values()) {
+            closeQuietly(connection);
+        }
+    }
+
+    private static boolean interact(final Scanner scanner, final CalculatorClient client) {
+        // Obter expressões numéricas
         System.out.println("\nNOVO CÁLCULO");
-        System.out.print("Expressão simples: ");
-        final var expression = scanner.nextLine().trim();
+        System.out.print("Expressões simples (separadas por ';'): ");
+        final var input = scanner.nextLine().trim();
 
-        if ("x".equalsIgnoreCase(expression)) {
+        if ("x".equalsIgnoreCase(input)) {
             return false;
         }
 
-        // Separar partes do cálculo
-        final var parts = expression.splitWithDelimiters("[\\+\\-\\*\\/]", 99);
-        final var a = Double.parseDouble(parts[0]);
-        final var operator = parts[1];
-        final var b = Double.parseDouble(parts[2]);
+        // Dispara todos os cálculos de uma vez e espera o fim de todos
+        final var calculations = input.split(";");
+        final var results = new CompletableFuture<?>[calculations.length];
+        for (var i = 0; i < calculations.length; i++) {
+            // Separar partes do cálculo
+            final var parts = calculations[i].trim().splitWithDelimiters("[\\+\\-\\*\\/]", 99);
+            final var a = Double.parseDouble(parts[0]);
+            final var operator = parts[1];
+            final var b = Double.parseDouble(parts[2]);
+
+            results[i] = client.run(operator, a, b);
+        }
 
-        new CalculatorClient().run(operator, a, b);
+        CompletableFuture.allOf(results).join();
         return true;
     }
 
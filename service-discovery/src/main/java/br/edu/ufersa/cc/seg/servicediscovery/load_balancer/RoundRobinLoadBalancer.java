@@ -1,10 +1,12 @@
 package br.edu.ufersa.cc.seg.servicediscovery.load_balancer;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class RoundRobinLoadBalancer implements LoadBalancer<String> {
 
-    private int index = 0;
+    // Escolhas concorrentes (requisições multiplexadas) não podem repetir índice
+    private final AtomicInteger index = new AtomicInteger();
 
     @Override
     public String choose(final List<String> options) {
@@ -16,9 +18,7 @@ public class RoundRobinLoadBalancer implements LoadBalancer<String> {
     }
 
     private int getNextIndex(final int size) {
-        final var current = index;
-        index = (index + 1) % size;
-        return current;
+        return Math.floorMod(index.getAndIncrement(), size);
     }
 
 }
@@ -0,0 +1,51 @@
+package br.edu.ufersa.cc.seg.servicediscovery.message;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+
+import br.edu.ufersa.cc.seg.common.message.Message;
+import br.edu.ufersa.cc.seg.common.utils.MessageType;
+
+/**
+ * Mensagens do protocolo do CalculatorServer
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+@JsonSubTypes({
+        @JsonSubTypes.Type(value = CalculatorMessage.Call.class, name = "CALL"),
+        @JsonSubTypes.Type(value = CalculatorMessage.Response.class, name = "RESPONSE"),
+})
+public sealed interface CalculatorMessage extends Message {
+
+    /**
+     * Chamada de uma operação ({@code +}, {@code -}, {@code *} ou {@code /})
+     */
+    record Call(String op, double a, double b) implements CalculatorMessage {
+        @Override
+        public MessageType type() {
+            return MessageType.CALL;
+        }
+    }
+
+    /**
+     * Resultado ou erro de uma chamada; só um dos dois vai na mensagem
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record Response(Double result, String error) implements CalculatorMessage {
+
+        public static Response success(final double result) {
+            return new Response(result, null);
+        }
+
+        public static Response failure(final String error) {
+            return new Response(null, error);
+        }
+
+        @Override
+        public MessageType type() {
+            return MessageType.RESPONSE;
+        }
+
+    }
+
+}
@@ -0,0 +1,66 @@
+package br.edu.ufersa.cc.seg.servicediscovery.message;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+
+import br.edu.ufersa.cc.seg.common.message.Message;
+import br.edu.ufersa.cc.seg.common.utils.MessageType;
+
+/**
+ * Mensagens do protocolo do DirectoryServer
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+@JsonSubTypes({
+        @JsonSubTypes.Type(value = DirectoryMessage.Register.class, name = "REGISTER"),
+        @JsonSubTypes.Type(value = DirectoryMessage.Registered.class, name = "REGISTERED"),
+        @JsonSubTypes.Type(value = DirectoryMessage.Discover.class, name = "DISCOVER"),
+        @JsonSubTypes.Type(value = DirectoryMessage.DiscoveryResponse.class, name = "DISCOVERY_RESPONSE"),
+        @JsonSubTypes.Type(value = DirectoryMessage.ErrorMessage.class, name = "ERROR"),
+})
+public sealed interface DirectoryMessage extends Message {
+
+    /**
+     * Registro de um endereço para o serviço
+     */
+    record Register(String service, String address) implements DirectoryMessage {
+        @Override
+        public MessageType type() {
+            return MessageType.REGISTER;
+        }
+    }
+
+    record Registered(String service, String address) implements DirectoryMessage {
+        @Override
+        public MessageType type() {
+            return MessageType.REGISTERED;
+        }
+    }
+
+    /**
+     * Busca de um endereço para o serviço
+     */
+    record Discover(String service) implements DirectoryMessage {
+        @Override
+        public MessageType type() {
+            return MessageType.DISCOVER;
+        }
+    }
+
+    /**
+     * Endereço escolhido pelo balanceador; nulo se não houver nenhum
+     */
+    record DiscoveryResponse(String service, String address) implements DirectoryMessage {
+        @Override
+        public MessageType type() {
+            return MessageType.DISCOVERY_RESPONSE;
+        }
+    }
+
+    record ErrorMessage(String message) implements DirectoryMessage {
+        @Override
+        public MessageType type() {
+            return MessageType.ERROR;
+        }
+    }
+
+}
@@ -1,15 +1,21 @@
 package br.edu.ufersa.cc.seg.servicediscovery.server;
 
 import java.io.IOException;
-import java.net.ServerSocket;
 import java.util.Scanner;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 import br.edu.ufersa.cc.seg.common.crypto.CryptoService;
+import br.edu.ufersa.cc.seg.common.message.MessageCodec;
+import br.edu.ufersa.cc.seg.common.message.MessageDispatcher;
 import br.edu.ufersa.cc.seg.common.network.SecureMessaging;
+import br.edu.ufersa.cc.seg.common.network.SecureServers;
 import br.edu.ufersa.cc.seg.common.network.SecureTcpMessaging;
+import br.edu.ufersa.cc.seg.common.utils.MessageType;
 import br.edu.ufersa.cc.seg.servicediscovery.exceptions.CalcException;
+import br.edu.ufersa.cc.seg.servicediscovery.message.CalculatorMessage;
+import br.edu.ufersa.cc.seg.servicediscovery.message.CalculatorMessage.Call;
+import br.edu.ufersa.cc.seg.servicediscovery.message.CalculatorMessage.Response;
+import br.edu.ufersa.cc.seg.servicediscovery.message.DirectoryMessage;
+import br.edu.ufersa.cc.seg.servicediscovery.message.DirectoryMessage.Register;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -27,7 +33,12 @@ public class CalculatorServer {
             .decode("QYp+xG2d7Ir8Xo2ZyD7m8FJKwrFrxd9ayN9i4mBQlTg=");
 
     private final CryptoService crypto = new CryptoService(ENC_KEY, HMAC_KEY);
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final MessageCodec<DirectoryMessage> directoryCodec = new MessageCodec<>(DirectoryMessage.class);
+    private final MessageDispatcher<CalculatorMessage> dispatcher = new MessageDispatcher<>(
+            new MessageCodec<>(CalculatorMessage.class))
+            .on(MessageType.CALL, Call.class, this::handleCall)
+            .onUnknown(this::handleUnknown)
+            .onRejected(Response.failure("Servidor sobrecarregado"));
 
     private final int port;
 
@@ -52,67 +63,47 @@ public class CalculatorServer {
 
         // Registra no diretório
         try (final var messenger = new SecureTcpMessaging(DIRECTORY_HOST, DIRECTORY_PORT, crypto)) {
-            // Cria a requisição
-            final var request = mapper.createObjectNode();
-            request.put("type", "REGISTER");
-            request.put("service", "calculator");
-            request.put("address", "localhost:" + port);
-
             // Envia a requisição
-            messenger.sendSecure(mapper.writeValueAsBytes(request));
-
-            // Recebe a resposta
-            final var responseInBytes = messenger.receiveSecure();
-            final var responseInJson = mapper.readTree(responseInBytes);
+            final var request = new Register("calculator", "localhost:" + port);
+            messenger.sendSecure(directoryCodec.encode(request));
 
-            // Imprime resultado do registro
-            log.info("Registro do serviço: {}", responseInJson.toString());
+            // Recebe a resposta e imprime resultado do registro
+            final var response = directoryCodec.decode(messenger.receiveSecure());
+            log.info("Registro do serviço: {}", response);
         } catch (final Exception e) {
             log.warn("Falha ao registrar no diretório: {}", e.getMessage());
         }
 
         log.info("Iniciando servidor na porta {}", port);
-        try (final var server = new ServerSocket(port)) {
-            while (true) {
-                final var client = new SecureTcpMessaging(server, crypto);
-                new Thread(() -> handleClient(client)).start();
-            }
+        try (final var server = SecureServers.create(port, crypto)) {
+            server.start(dispatcher);
         }
     }
 
-    private void handleClient(final SecureMessaging messenger) {
-        // Cria a resposta
-        final var responseInJson = mapper.createObjectNode();
-        responseInJson.put("type", "RESPONSE");
-
+    private void handleCall(final SecureMessaging messenger, final Call call) throws IOException {
+        Response response;
         try {
-            // Recebe a requisição
-            final var requestInBytes = messenger.receiveSecure();
-            final var requestInJson = mapper.readTree(requestInBytes);
-            final var type = requestInJson.get("type").asText();
-
-            if ("CALL".equals(type)) {
-                // Obtém os dados do cálculo
-                final var operator = requestInJson.get("op").asText();
-                final var a = requestInJson.get("a").asDouble();
-                final var b = requestInJson.get("b").asDouble();
-
-                // Adiciona o resultado
-                final double result = calculate(operator, a, b);
-                responseInJson.put("result", result);
-
-                // Envia a resposta
-                messenger.sendSecure(mapper.writeValueAsBytes(responseInJson));
-            }
+            // Calcula o resultado
+            response = Response.success(calculate(call.op(), call.a(), call.b()));
         } catch (final CalcException e) {
-            responseInJson.put("error", e.getMessage());
+            response = Response.failure(e.getMessage());
             log.warn("Erro no cálculo: {}", e.getMessage());
-        } catch (final Exception e) {
-            log.warn("Erro no serviço ao processar requisição: {}", e.getMessage());
         }
+
+        // Envia a resposta
+        dispatcher.send(messenger, response);
+    }
+
+    private void handleUnknown(final SecureMessaging messenger, final String type) throws IOException {
+        // Sempre responde, para que a conexão siga sincronizada entre requisições
+        dispatcher.send(messenger, Response.failure("Tipo de mensagem desconhecido: " + type));
     }
 
     private double calculate(final String operator, final double a, final double b) throws CalcException {
+        if (operator == null) {
+            throw new CalcException("Operação ausente");
+        }
+
         return switch (operator) {
             case "+" -> a + b;
             case "-" -> a - b;
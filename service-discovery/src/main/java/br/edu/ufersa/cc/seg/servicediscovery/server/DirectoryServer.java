@@ -1,22 +1,27 @@
 package br.edu.ufersa.cc.seg.servicediscovery.server;
 
 import java.io.IOException;
-import java.net.ServerSocket;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 import br.edu.ufersa.cc.seg.common.crypto.CryptoService;
+import br.edu.ufersa.cc.seg.common.message.MessageCodec;
+import br.edu.ufersa.cc.seg.common.message.MessageDispatcher;
 import br.edu.ufersa.cc.seg.common.network.SecureMessaging;
-import br.edu.ufersa.cc.seg.common.network.SecureTcpMessaging;
+import br.edu.ufersa.cc.seg.common.network.SecureServers;
+import br.edu.ufersa.cc.seg.common.utils.MessageType;
 import br.edu.ufersa.cc.seg.servicediscovery.load_balancer.LoadBalancer;
 import br.edu.ufersa.cc.seg.servicediscovery.load_balancer.RandomLoadBalancer;
 import br.edu.ufersa.cc.seg.servicediscovery.load_balancer.RoundRobinLoadBalancer;
+import br.edu.ufersa.cc.seg.servicediscovery.message.DirectoryMessage;
+import br.edu.ufersa.cc.seg.servicediscovery.message.DirectoryMessage.Discover;
+import br.edu.ufersa.cc.seg.servicediscovery.message.DirectoryMessage.DiscoveryResponse;
+import br.edu.ufersa.cc.seg.servicediscovery.message.DirectoryMessage.ErrorMessage;
+import br.edu.ufersa.cc.seg.servicediscovery.message.DirectoryMessage.Register;
+import br.edu.ufersa.cc.seg.servicediscovery.message.DirectoryMessage.Registered;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
@@ -42,13 +47,6 @@ public class DirectoryServer {
         }
     }
 
-    /*
-     * Campos JSON para troca de mensagens
-     */
-    private static final String TYPE = "type";
-    private static final String SERVICE = "service";
-    private static final String ADDRESS = "address";
-
     private static final int DEFAULT_PORT = 9100;
     private static final LoadBalancer<String> DEFAULT_LOAD_BALANCER = new RandomLoadBalancer();
 
@@ -59,7 +57,12 @@ public class DirectoryServer {
             .decode("QYp+xG2d7Ir8Xo2ZyD7m8FJKwrFrxd9ayN9i4mBQlTg=");
 
     private final CryptoService crypto = new CryptoService(ENC_KEY, HMAC_KEY);
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final MessageDispatcher<DirectoryMessage> dispatcher = new MessageDispatcher<>(
+            new MessageCodec<>(DirectoryMessage.class))
+            .on(MessageType.REGISTER, Register.class, this::handleRegister)
+            .on(MessageType.DISCOVER, Discover.class, this::handleDiscover)
+            .onUnknown(this::handleUnknown)
+            .onRejected(new ErrorMessage("Servidor sobrecarregado"));
 
     private final Map<String, RegistryItem> registry = Collections.synchronizedMap(new HashMap<>());
 
@@ -70,78 +73,43 @@ public class DirectoryServer {
 
     public void start(final int port) throws IOException {
         log.info("Iniciando DirectoryServer em porta {}", port);
-        try (final var server = new ServerSocket(port)) {
-            while (true) {
-                final var client = new SecureTcpMessaging(server, crypto);
-                new Thread(() -> handleClient(client)).start();
-            }
-        }
-    }
-
-    private void handleClient(final SecureMessaging messenger) {
-        try {
-            // Esperar e receber requisição
-            final var requestInBytes = messenger.receiveSecure();
-            final var requestInJson = mapper.readTree(requestInBytes);
-            
-
-            // Redirecionar conforme o tipo
-            final var type = requestInJson.get(TYPE).asText();
-            switch (type) {
-                case "REGISTER":
-                    handleRegister(requestInJson, messenger);
-                    break;
-                case "DISCOVER":
-                    handleDiscover(requestInJson, messenger);
-                    break;
-                default:
-                    log.warn("Tipo de mensagem desconhecido: {}", type);
-            }
-
-        } catch (final Exception e) {
-            // Pode ser CryptoException ao decodificar (chave errada) — descarta
-            log.warn("Mensagem descartada / erro no cliente: {}", e.getMessage());
+        try (final var server = SecureServers.create(port, crypto)) {
+            server.start(dispatcher);
         }
     }
 
-    private void handleRegister(final JsonNode request, final SecureMessaging messenger) throws IOException {
+    private void handleRegister(final SecureMessaging messenger, final Register request) throws IOException {
         // Obtém nome e endereço do serviço a ser registrado
-        final var serviceName = request.get(SERVICE).asText();
-        final var address = request.get(ADDRESS).asText();
+        final var serviceName = request.service();
+        final var address = request.address();
 
         // Adiciona à tabela (ou a atualiza)
         registry.computeIfAbsent(serviceName, ignoredSvcName -> new RegistryItem(DEFAULT_LOAD_BALANCER));
         registry.get(serviceName).getAddresses().add(address);
 
-        // Cria resposta
-        final var resp = mapper.createObjectNode();
-        resp.put(TYPE, "REGISTERED");
-        resp.put(SERVICE, serviceName);
-        resp.put(ADDRESS, address);
-
         // Envia resposta
-        messenger.sendSecure(mapper.writeValueAsBytes(resp));
+        dispatcher.send(messenger, new Registered(serviceName, address));
     }
 
-    private void handleDiscover(final JsonNode request, final SecureMessaging messenger) throws IOException {
-        // Obtém nome e endereço do serviço a ser buscado
-        final var serviceName = request.get(SERVICE).asText();
+    private void handleDiscover(final SecureMessaging messenger, final Discover request) throws IOException {
+        // Obtém nome do serviço a ser buscado
+        final var serviceName = request.service();
         log.info("Buscando endereços do servidor '{}'...", serviceName);
 
-        // Cria resposta
-        final var response = mapper.createObjectNode();
-        response.put(TYPE, "DISCOVERY_RESPONSE");
-        response.put(SERVICE, serviceName);
-
-        // Adiciona endereço escolhido
+        // Escolhe um endereço
         final var registryItem = registry.getOrDefault(serviceName, RegistryItem.empty());
         final var chosen = registryItem.getNextAddress();
-        response.put(ADDRESS, chosen);
 
         log.info("Endereço fornecido: {}", chosen);
 
         // Envia resposta
-        messenger.sendSecure(mapper.writeValueAsBytes(response));
+        dispatcher.send(messenger, new DiscoveryResponse(serviceName, chosen));
+    }
+
+    private void handleUnknown(final SecureMessaging messenger, final String type) throws IOException {
+        // Responde mesmo assim, para que a conexão siga sincronizada
+        log.warn("Tipo de mensagem desconhecido: {}", type);
+        dispatcher.send(messenger, new ErrorMessage("Tipo de mensagem desconhecido: " + type));
     }
 
 }